@@ -0,0 +1,100 @@
+/*
+ * @(#)BezierFitBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.geom.Bezier;
+import org.jhotdraw.geom.BezierPath;
+import org.jhotdraw.geom.IncrementalBezierFitter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the fitting of a bezier path to a freehand stroke with
+ * {@link Bezier} and {@link IncrementalBezierFitter}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BezierFitBenchmark {
+
+    private static final double ERROR = 1.5;
+    @Param({"256", "4096", "65536"})
+    public int pointCount;
+    private double[] xy;
+    private ArrayList<Point2D.Double> points;
+
+    @Setup
+    public void setUp() {
+        Random r = new Random(1);
+        xy = new double[pointCount * 2];
+        points = new ArrayList<>(pointCount);
+        double x = 0;
+        double y = 0;
+        double angle = 0;
+        for (int i = 0; i < pointCount; i++) {
+            if (r.nextInt(200) == 0) {
+                angle += 1.5 + r.nextDouble();
+            } else {
+                angle += r.nextGaussian() * 0.05;
+            }
+            double step = 1 + r.nextDouble() * 2;
+            x += Math.cos(angle) * step;
+            y += Math.sin(angle) * step;
+            xy[i * 2] = x;
+            xy[i * 2 + 1] = y;
+            points.add(new Point2D.Double(x, y));
+        }
+    }
+
+    @Benchmark
+    public BezierPath fitList() {
+        return Bezier.fitBezierPath(points, ERROR);
+    }
+
+    @Benchmark
+    public BezierPath fitArray() {
+        return Bezier.fitBezierPath(xy, pointCount, ERROR);
+    }
+
+    @Benchmark
+    public BezierPath fitParallel() {
+        return Bezier.fitBezierPath(xy, pointCount, ERROR, null);
+    }
+
+    /**
+     * Adds the points one by one, and fits the path once at the end, like
+     * the {@code BezierTool} does for a drag.
+     */
+    @Benchmark
+    public BezierPath fitIncremental() {
+        IncrementalBezierFitter fitter = new IncrementalBezierFitter(ERROR);
+        for (int i = 0; i < pointCount; i++) {
+            fitter.addPoint(xy[i * 2], xy[i * 2 + 1]);
+        }
+        return fitter.getFittedPath();
+    }
+}
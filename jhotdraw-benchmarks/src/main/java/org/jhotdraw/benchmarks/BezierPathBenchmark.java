@@ -0,0 +1,101 @@
+/*
+ * @(#)BezierPathBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.geom.BezierPath;
+import org.jhotdraw.geom.PackedBezierPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of a {@link BezierPath} into a {@code Path2D}, and
+ * hit-testing and the computation of points on the path.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BezierPathBenchmark {
+
+    /**
+     * The number of query points. Must be a power of two.
+     */
+    private static final int QUERY_COUNT = 1024;
+    private static final AffineTransform TRANSLATE = AffineTransform.getTranslateInstance(0, 0);
+    @Param({"16", "256", "4096"})
+    public int nodeCount;
+    @Param({"false", "true"})
+    public boolean packed;
+    private BezierPath path;
+    private Point2D.Double[] points;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        path = SyntheticDrawings.createBezierPath(nodeCount, 1);
+        if (packed) {
+            path = new PackedBezierPath(path);
+        }
+        Random r = new Random(2);
+        points = new Point2D.Double[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            points[i] = new Point2D.Double(r.nextDouble() * 2 - 1, r.nextDouble() * 2 - 1);
+        }
+    }
+
+    @Benchmark
+    public Path2D.Double toGeneralPath() {
+        return path.toGeneralPath();
+    }
+
+    @Benchmark
+    public Rectangle2D.Double transform() {
+        path.transform(TRANSLATE);
+        return path.getBounds2D();
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return path.contains(points[next++ & (QUERY_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public boolean outlineContains() {
+        return path.outlineContains(points[next++ & (QUERY_COUNT - 1)], 0.01);
+    }
+
+    @Benchmark
+    public Point2D.Double pointOnPath() {
+        return path.getPointOnPath((next++ & (QUERY_COUNT - 1)) / (double) QUERY_COUNT, 0.01);
+    }
+
+    @Benchmark
+    public Point2D.Double chop() {
+        return path.chop(points[next++ & (QUERY_COUNT - 1)]);
+    }
+}
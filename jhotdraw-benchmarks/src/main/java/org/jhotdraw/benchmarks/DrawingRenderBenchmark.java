@@ -0,0 +1,91 @@
+/*
+ * @(#)DrawingRenderBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.draw.LevelOfDetailPolicy;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures headless rendering of a drawing into a {@code BufferedImage}.
+ * <p>
+ * The overview renders the whole drawing scaled down to the image, the detail
+ * renders an area of the size of the image at 100 %.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class DrawingRenderBenchmark {
+
+    private static final int IMAGE_SIZE = 1024;
+    @Param({"1000", "10000", "100000"})
+    public int figureCount;
+    @Param({"overview", "detail"})
+    public String area;
+    @Param({"false", "true"})
+    public boolean isLevelOfDetail;
+    private QuadTreeDrawing drawing;
+    private BufferedImage image;
+    private double scale;
+    private double offset;
+
+    @Setup
+    public void setUp() {
+        drawing = SyntheticDrawings.createDrawing(new QuadTreeDrawing(), figureCount, 1);
+        image = new BufferedImage(IMAGE_SIZE, IMAGE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        double extent = SyntheticDrawings.getExtent(figureCount);
+        if ("overview".equals(area)) {
+            scale = IMAGE_SIZE / extent;
+            offset = 0;
+        } else {
+            scale = 1;
+            offset = Math.max(0, (extent - IMAGE_SIZE) / 2);
+        }
+    }
+
+    @Benchmark
+    public BufferedImage draw() {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setBackground(Color.WHITE);
+            g.clearRect(0, 0, IMAGE_SIZE, IMAGE_SIZE);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            if (isLevelOfDetail) {
+                g.setRenderingHint(LevelOfDetailPolicy.KEY, new LevelOfDetailPolicy());
+            }
+            g.clipRect(0, 0, IMAGE_SIZE, IMAGE_SIZE);
+            g.scale(scale, scale);
+            g.translate(-offset, -offset);
+            drawing.draw(g);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * @(#)QuadTreeDrawingBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures hit-testing on a {@link QuadTreeDrawing}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx4g"})
+public class QuadTreeDrawingBenchmark {
+
+    /**
+     * The number of query points and areas. Must be a power of two.
+     */
+    private static final int QUERY_COUNT = 1024;
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int figureCount;
+    private QuadTreeDrawing drawing;
+    private Point2D.Double[] points;
+    private Rectangle2D.Double[] areas;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        drawing = SyntheticDrawings.createDrawing(new QuadTreeDrawing(), figureCount, 1);
+        double extent = SyntheticDrawings.getExtent(figureCount);
+        Random r = new Random(2);
+        points = new Point2D.Double[QUERY_COUNT];
+        areas = new Rectangle2D.Double[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            points[i] = new Point2D.Double(r.nextDouble() * extent, r.nextDouble() * extent);
+            areas[i] = new Rectangle2D.Double(r.nextDouble() * extent, r.nextDouble() * extent, 200, 200);
+        }
+    }
+
+    @Benchmark
+    public Figure findFigure() {
+        return drawing.findFigure(points[next++ & (QUERY_COUNT - 1)]);
+    }
+
+    @Benchmark
+    public List<Figure> findFigures() {
+        return drawing.findFigures(areas[next++ & (QUERY_COUNT - 1)]);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * @(#)SVGPathParserBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.geom.BezierPath;
+import org.jhotdraw.io.StreamPosTokenizer;
+import org.jhotdraw.samples.svg.io.SVGPathParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing of SVG path data with {@link SVGPathParser}.
+ * <p>
+ * As a baseline, {@code tokenize} splits the path data into tokens with a
+ * {@link StreamPosTokenizer}, configured the way path data used to be read.
+ * It does not build a path, so it is a lower bound for the former reader.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SVGPathParserBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int commandCount;
+    private String pathData;
+    private SVGPathParser parser;
+
+    @Setup
+    public void setUp() {
+        pathData = SyntheticDrawings.createPathData(commandCount, 1);
+        parser = new SVGPathParser();
+    }
+
+    @Benchmark
+    public BezierPath[] parsePath() throws IOException {
+        return parser.parsePath(pathData);
+    }
+
+    @Benchmark
+    public double tokenize() throws IOException {
+        StreamPosTokenizer tt = new StreamPosTokenizer(new StringReader(pathData));
+        tt.resetSyntax();
+        tt.parseNumbers();
+        tt.parseExponents();
+        tt.parsePlusAsNumber();
+        tt.whitespaceChars(0, ' ');
+        tt.whitespaceChars(',', ',');
+        double sum = 0;
+        while (tt.nextToken() != StreamPosTokenizer.TT_EOF) {
+            sum += tt.nval;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * @(#)SVGRoundTripBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.samples.svg.io.SVGInputFormat;
+import org.jhotdraw.samples.svg.io.SVGOutputFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing a drawing with {@link SVGOutputFormat}, and reading it
+ * back with the streaming reader of {@link SVGInputFormat}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class SVGRoundTripBenchmark {
+
+    @Param({"1000", "10000"})
+    public int figureCount;
+    @Param({"false", "true"})
+    public boolean isParallel;
+    private Drawing drawing;
+    private byte[] data;
+
+    @Setup
+    public void setUp() throws IOException {
+        drawing = SyntheticDrawings.createSVGDrawing(new QuadTreeDrawing(), figureCount, 1);
+        data = write().toByteArray();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream write() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SVGOutputFormat().write(out, drawing);
+        return out;
+    }
+
+    @Benchmark
+    public Drawing read() throws IOException {
+        return read(data);
+    }
+
+    @Benchmark
+    public Drawing roundTrip() throws IOException {
+        return read(write().toByteArray());
+    }
+
+    private Drawing read(byte[] data) throws IOException {
+        Drawing result = new QuadTreeDrawing();
+        SVGInputFormat format = new SVGInputFormat();
+        format.setParallel(isParallel);
+        format.readStreaming(new ByteArrayInputStream(data), result, true);
+        return result;
+    }
+}
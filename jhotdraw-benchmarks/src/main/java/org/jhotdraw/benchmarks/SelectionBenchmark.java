@@ -0,0 +1,83 @@
+/*
+ * @(#)SelectionBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.DefaultDrawingEditor;
+import org.jhotdraw.draw.DefaultDrawingView;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures large selections on a {@link DefaultDrawingView}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+public class SelectionBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int figureCount;
+    private DefaultDrawingView view;
+    private ArrayList<Figure> figures;
+
+    @Setup
+    public void setUp() {
+        Drawing drawing = SyntheticDrawings.createDrawing(new DefaultDrawing(), figureCount, 1);
+        figures = new ArrayList<>(drawing.getChildren());
+        view = new DefaultDrawingView();
+        view.setDrawing(drawing);
+        DefaultDrawingEditor editor = new DefaultDrawingEditor();
+        editor.add(view);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearSelection() {
+        view.clearSelection();
+    }
+
+    @Benchmark
+    public int addToSelection() {
+        view.addToSelection(figures);
+        return view.getSelectionCount();
+    }
+
+    @Benchmark
+    public int addToSelectionOneByOne() {
+        for (Figure f : figures) {
+            view.addToSelection(f);
+        }
+        return view.getSelectionCount();
+    }
+
+    @Benchmark
+    public int selectAll() {
+        view.selectAll();
+        return view.getSelectionCount();
+    }
+}
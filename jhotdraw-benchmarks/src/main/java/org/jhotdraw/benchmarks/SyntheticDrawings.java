@@ -0,0 +1,190 @@
+/*
+ * @(#)SyntheticDrawings.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+import org.jhotdraw.draw.AttributeKey;
+import org.jhotdraw.draw.Drawing;
+import static org.jhotdraw.draw.AttributeKeys.*;
+import org.jhotdraw.draw.figure.EllipseFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.draw.figure.TextFigure;
+import org.jhotdraw.geom.BezierPath;
+import org.jhotdraw.samples.svg.io.DefaultSVGFigureFactory;
+
+/**
+ * Generates reproducible synthetic drawings for the benchmarks.
+ * <p>
+ * The figures are placed at random on a square area, which grows with the
+ * number of figures, so that the density of the figures is the same for all
+ * sizes. The same seed always yields the same drawing.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public final class SyntheticDrawings {
+
+    /**
+     * The average area in square pixels which is covered by one figure.
+     */
+    private static final double AREA_PER_FIGURE = 2500;
+    private static final Color[] COLORS = {
+        Color.RED, Color.GREEN, Color.BLUE, Color.ORANGE, Color.GRAY, Color.WHITE
+    };
+
+    private SyntheticDrawings() {
+    }
+
+    /**
+     * Returns the width and height of the area on which the specified number
+     * of figures is placed.
+     */
+    public static double getExtent(int figureCount) {
+        return Math.ceil(Math.sqrt(figureCount * AREA_PER_FIGURE));
+    }
+
+    /**
+     * Adds rectangles, ellipses, lines and texts to the drawing.
+     *
+     * @param drawing the drawing
+     * @param figureCount the number of figures
+     * @param seed the seed of the random generator
+     * @return the drawing
+     */
+    public static <D extends Drawing> D createDrawing(D drawing, int figureCount, long seed) {
+        Random r = new Random(seed);
+        double extent = getExtent(figureCount);
+        ArrayList<Figure> figures = new ArrayList<>(figureCount);
+        for (int i = 0; i < figureCount; i++) {
+            double x = r.nextDouble() * extent;
+            double y = r.nextDouble() * extent;
+            double w = 5 + r.nextDouble() * 40;
+            double h = 5 + r.nextDouble() * 40;
+            Figure f;
+            int kind = r.nextInt(10);
+            if (kind < 4) {
+                f = new RectangleFigure(x, y, w, h);
+            } else if (kind < 7) {
+                f = new EllipseFigure(x, y, w, h);
+            } else if (kind < 9) {
+                f = new LineFigure();
+                f.setBounds(new Point2D.Double(x, y), new Point2D.Double(x + w, y + h));
+            } else {
+                f = new TextFigure("Text " + i);
+                f.setBounds(new Point2D.Double(x, y), new Point2D.Double(x + w, y + h));
+            }
+            f.set(FILL_COLOR, COLORS[r.nextInt(COLORS.length)]);
+            f.set(STROKE_COLOR, Color.BLACK);
+            figures.add(f);
+        }
+        drawing.addAll(figures);
+        return drawing;
+    }
+
+    /**
+     * Adds SVG rectangles, ellipses and paths to the drawing.
+     *
+     * @param drawing the drawing
+     * @param figureCount the number of figures
+     * @param seed the seed of the random generator
+     * @return the drawing
+     */
+    public static <D extends Drawing> D createSVGDrawing(D drawing, int figureCount, long seed) {
+        Random r = new Random(seed);
+        double extent = getExtent(figureCount);
+        DefaultSVGFigureFactory factory = new DefaultSVGFigureFactory();
+        ArrayList<Figure> figures = new ArrayList<>(figureCount);
+        for (int i = 0; i < figureCount; i++) {
+            double x = r.nextDouble() * extent;
+            double y = r.nextDouble() * extent;
+            double w = 5 + r.nextDouble() * 40;
+            double h = 5 + r.nextDouble() * 40;
+            HashMap<AttributeKey<?>, Object> a = new HashMap<>();
+            a.put(FILL_COLOR, COLORS[r.nextInt(COLORS.length)]);
+            a.put(STROKE_COLOR, Color.BLACK);
+            a.put(STROKE_WIDTH, 1d);
+            int kind = r.nextInt(3);
+            if (kind == 0) {
+                figures.add(factory.createRect(x, y, w, h, 0, 0, a));
+            } else if (kind == 1) {
+                figures.add(factory.createEllipse(x + w / 2, y + h / 2, w / 2, h / 2, a));
+            } else {
+                BezierPath path = createBezierPath(4 + r.nextInt(12), r.nextLong());
+                path.transform(new AffineTransform(w / 2, 0, 0, h / 2, x + w / 2, y + h / 2));
+                figures.add(factory.createPath(new BezierPath[]{path}, a));
+            }
+        }
+        drawing.addAll(figures);
+        return drawing;
+    }
+
+    /**
+     * Creates a closed, star shaped path with cubic curve segments around the
+     * unit circle.
+     *
+     * @param nodeCount the number of nodes
+     * @param seed the seed of the random generator
+     */
+    public static BezierPath createBezierPath(int nodeCount, long seed) {
+        Random r = new Random(seed);
+        BezierPath path = new BezierPath();
+        double step = Math.PI * 2 / nodeCount;
+        for (int i = 0; i < nodeCount; i++) {
+            double angle = i * step;
+            double radius = 0.5 + r.nextDouble() * 0.5;
+            double x = Math.cos(angle) * radius;
+            double y = Math.sin(angle) * radius;
+            double dx = -Math.sin(angle) * radius * step / 3;
+            double dy = Math.cos(angle) * radius * step / 3;
+            path.add(new BezierPath.Node(BezierPath.C1C2_MASK, x, y, x - dx, y - dy, x + dx, y + dy));
+        }
+        path.setClosed(true);
+        return path;
+    }
+
+    /**
+     * Creates SVG path data, as it is typically written by drawing programs:
+     * relative commands, and coordinates with two decimals.
+     *
+     * @param commandCount the number of path commands
+     * @param seed the seed of the random generator
+     */
+    public static String createPathData(int commandCount, long seed) {
+        Random r = new Random(seed);
+        StringBuilder buf = new StringBuilder();
+        buf.append(String.format(Locale.US, "M%.2f,%.2f", r.nextDouble() * 1000, r.nextDouble() * 1000));
+        for (int i = 1; i < commandCount; i++) {
+            int kind = r.nextInt(10);
+            if (kind < 5) {
+                buf.append(String.format(Locale.US, "c%.2f,%.2f %.2f,%.2f %.2f,%.2f",
+                        r.nextGaussian() * 10, r.nextGaussian() * 10,
+                        r.nextGaussian() * 10, r.nextGaussian() * 10,
+                        r.nextGaussian() * 10, r.nextGaussian() * 10));
+            } else if (kind < 8) {
+                buf.append(String.format(Locale.US, "l%.2f,%.2f",
+                        r.nextGaussian() * 10, r.nextGaussian() * 10));
+            } else if (kind < 9) {
+                buf.append(String.format(Locale.US, "h%.2f", r.nextGaussian() * 10));
+            } else {
+                buf.append(String.format(Locale.US, "s%.2f,%.2f %.2f,%.2f",
+                        r.nextGaussian() * 10, r.nextGaussian() * 10,
+                        r.nextGaussian() * 10, r.nextGaussian() * 10));
+            }
+        }
+        buf.append('z');
+        return buf.toString();
+    }
+}
@@ -0,0 +1,23 @@
+/* @(#)package-info.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+/**
+ * JMH benchmarks for drawing, hit-testing and input/output, and the
+ * generators for the synthetic drawings which they use.
+ * <p>
+ * The benchmarks are built with the {@code benchmarks} profile, and run with
+ * the JMH launcher:
+ * <pre>
+ * mvn -Pbenchmarks install -DskipTests
+ * cd jhotdraw-benchmarks
+ * mvn dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * java -cp target/classes:$(cat target/classpath.txt) org.openjdk.jmh.Main [regexp]
+ * </pre>
+ */
+package org.jhotdraw.benchmarks;
@@ -9,12 +9,15 @@ package org.jhotdraw.draw;
 
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.figure.AbstractAttributedCompositeFigure;
+import org.jhotdraw.draw.figure.AbstractCompositeFigure;
 import java.awt.font.*;
+import java.awt.geom.Rectangle2D;
 import java.io.*;
 import java.util.*;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.undo.*;
+import org.jhotdraw.draw.event.FigureEvent;
 import org.jhotdraw.draw.io.InputFormat;
 import org.jhotdraw.draw.io.OutputFormat;
 import org.jhotdraw.xml.*;
@@ -33,6 +36,47 @@ public abstract class AbstractDrawing extends AbstractAttributedCompositeFigure
     private LinkedList<InputFormat> inputFormats = new LinkedList<>();
     private LinkedList<OutputFormat> outputFormats = new LinkedList<>();
     private static boolean debugMode = false;
+    /**
+     * The nesting depth of the open change transactions.
+     */
+    private transient int transactionDepth;
+    /**
+     * The union of the areas invalidated during the open transaction, or
+     * null.
+     */
+    private transient Rectangle2D.Double transactionArea;
+    /**
+     * The children which fired a figure changed event during the open
+     * transaction.
+     */
+    private transient LinkedHashSet<Figure> transactionFigures;
+
+    /**
+     * Handles the figure events fired by the children of the drawing.
+     * The events are collected while a change transaction is open.
+     */
+    protected class DrawingEventHandler extends AbstractCompositeFigure.EventHandler {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void figureChanged(FigureEvent e) {
+            if (isInChangeTransaction()) {
+                recordChange(e.getFigure(), e.getInvalidatedArea());
+            } else {
+                super.figureChanged(e);
+            }
+        }
+
+        @Override
+        public void areaInvalidated(FigureEvent e) {
+            if (isInChangeTransaction()) {
+                recordChange(null, e.getInvalidatedArea());
+            } else {
+                super.areaInvalidated(e);
+            }
+        }
+    }
 
     /**
      * Creates a new instance.
@@ -40,6 +84,79 @@ public abstract class AbstractDrawing extends AbstractAttributedCompositeFigure
     public AbstractDrawing() {
     }
 
+    @Override
+    protected AbstractCompositeFigure.EventHandler createEventHandler() {
+        return new DrawingEventHandler();
+    }
+
+    @Override
+    public void beginChanges() {
+        transactionDepth++;
+    }
+
+    @Override
+    public void commitChanges() {
+        if (transactionDepth < 1) {
+            throw new IllegalStateException("commitChanges was called without a prior call to beginChanges.");
+        }
+        if (--transactionDepth == 0 && transactionArea != null) {
+            Rectangle2D.Double area = transactionArea;
+            Set<Figure> changed = transactionFigures;
+            transactionArea = null;
+            transactionFigures = null;
+            if (changed.isEmpty()) {
+                fireAreaInvalidated(area);
+            } else {
+                childrenChanged(changed, area);
+            }
+        }
+    }
+
+    /**
+     * Returns true, if a change transaction is open.
+     */
+    protected boolean isInChangeTransaction() {
+        return transactionDepth > 0;
+    }
+
+    /**
+     * Records a change event of a child during a change transaction.
+     *
+     * @param child the child which fired a figure changed event, or null
+     * if the event only invalidated an area
+     * @param area the invalidated area
+     */
+    protected void recordChange(Figure child, Rectangle2D.Double area) {
+        if (transactionArea == null) {
+            transactionArea = (Rectangle2D.Double) area.clone();
+            transactionFigures = new LinkedHashSet<>();
+        } else {
+            transactionArea.add(area);
+        }
+        if (child != null) {
+            transactionFigures.add(child);
+        }
+    }
+
+    /**
+     * This method is invoked when a change transaction is committed, in
+     * which children have fired figure changed events. The drawing processes
+     * the changes in the same way as a single figure changed event of a
+     * child.
+     *
+     * @param children the changed children
+     * @param area the union of the invalidated areas
+     */
+    protected void childrenChanged(Set<Figure> children, Rectangle2D.Double area) {
+        if (!isChanging()) {
+            area.add(getDrawingArea());
+            invalidate();
+            validate();
+            area.add(getDrawingArea());
+            fireFigureChanged(area);
+        }
+    }
+
     @Override
     public void addUndoableEditListener(UndoableEditListener l) {
         listenerList.add(UndoableEditListener.class, l);
@@ -87,7 +204,7 @@ public abstract class AbstractDrawing extends AbstractAttributedCompositeFigure
     @Override
     public void read(DOMInput in) throws IOException {
         in.openElement("figures");
-        for (int i = 0; i < in.getElementCount(); i++) {
+        for (int i = 0; in.hasElement(i); i++) {
             Figure f;
             add(f = (Figure) in.readObject(i));
         }
@@ -173,6 +290,9 @@ public abstract class AbstractDrawing extends AbstractAttributedCompositeFigure
     @SuppressWarnings("unchecked")
     public AbstractDrawing clone() {
         AbstractDrawing that = (AbstractDrawing) super.clone();
+        that.transactionDepth = 0;
+        that.transactionArea = null;
+        that.transactionFigures = null;
         that.inputFormats = (this.inputFormats == null) ? null : (LinkedList<InputFormat>) this.inputFormats.clone();
         that.outputFormats = (this.outputFormats == null) ? null : (LinkedList<OutputFormat>) this.outputFormats.clone();
         return that;
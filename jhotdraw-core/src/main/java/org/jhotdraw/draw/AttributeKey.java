@@ -56,6 +56,15 @@ public class AttributeKey<T> implements Serializable {
      * assignability of attribute values at runtime.
      */
     private Class<T> clazz;
+    /**
+     * The index of the key plus one, or 0 if the index has not been looked
+     * up yet.
+     */
+    private transient int index;
+    /**
+     * Maps key strings to indices.
+     */
+    private static final HashMap<String, Integer> INDEX_MAP = new HashMap<>();
 
     /**
      * Creates a new instance with the specified attribute key, type token class,
@@ -101,6 +110,29 @@ public class AttributeKey<T> implements Serializable {
         this.labels = (labels == null) ? ResourceBundleUtil.getBundle("org.jhotdraw.draw.Labels") : labels;
     }
 
+    /**
+     * Returns a small non-negative integer which identifies the key string.
+     * <p>
+     * Indices are assigned densely in the order in which the key strings are
+     * first used. Keys which are equal have the same index. The index is used
+     * by {@link CompactAttributeMap} to store attributes in arrays.
+     *
+     * @return the index.
+     */
+    public int getIndex() {
+        if (index == 0) {
+            synchronized (INDEX_MAP) {
+                Integer value = INDEX_MAP.get(key);
+                if (value == null) {
+                    value = INDEX_MAP.size();
+                    INDEX_MAP.put(key, value);
+                }
+                index = value + 1;
+            }
+        }
+        return index - 1;
+    }
+
     /**
      * Returns the key string.
      *
@@ -163,7 +195,7 @@ public class AttributeKey<T> implements Serializable {
      */
     @SuppressWarnings("unchecked")
     public T get(Map<AttributeKey<?>, Object> a) {
-        return a.containsKey(this) ? (T) a.get(this) : defaultValue;
+        return (T) a.getOrDefault(this, defaultValue);
     }
 
     /**
@@ -11,6 +11,7 @@ import org.jhotdraw.draw.figure.Figure;
 import java.awt.*;
 import java.awt.geom.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import org.jhotdraw.draw.decoration.LineDecoration;
 import org.jhotdraw.draw.liner.Liner;
 import org.jhotdraw.geom.Dimension2DDouble;
@@ -31,6 +32,143 @@ import org.jhotdraw.util.ResourceBundleUtil;
 public class AttributeKeys {
 
     private static final ResourceBundleUtil LABELS = ResourceBundleUtil.getBundle("org.jhotdraw.draw.Labels");
+    /**
+     * The maximal number of strokes held by the stroke cache.
+     */
+    private static final int MAX_CACHED_STROKES = 256;
+    /**
+     * Caches the strokes created by {@link #getStroke} and
+     * {@link #getHitStroke}.
+     * <p>
+     * A cache hit does not take a lock, so that figures can be drawn on
+     * multiple threads at once. When the cache is full, strokes are evicted
+     * with the clock algorithm: the eviction moves round the cache, and
+     * keeps a stroke once more, if it has been used since the eviction has
+     * passed it the last time.
+     */
+    private static final ConcurrentHashMap<StrokeKey, CachedStroke> STROKE_CACHE = new ConcurrentHashMap<StrokeKey, CachedStroke>(64);
+    /**
+     * Serializes the evictions from the stroke cache.
+     */
+    private static final Object EVICTION_LOCK = new Object();
+    /**
+     * The position of the eviction in the stroke cache. Each eviction
+     * continues where the previous one has stopped. Access must be
+     * synchronized on {@code EVICTION_LOCK}.
+     */
+    private static Iterator<CachedStroke> evictionHand;
+    /**
+     * Holds a key per thread for looking up the stroke cache, so that a
+     * cache hit does not allocate memory.
+     */
+    private static final ThreadLocal<StrokeKey> LOOKUP_KEY = new ThreadLocal<StrokeKey>() {
+        @Override
+        protected StrokeKey initialValue() {
+            return new StrokeKey();
+        }
+    };
+
+    /**
+     * A stroke in the stroke cache.
+     */
+    private static class CachedStroke {
+
+        private final Stroke stroke;
+        /**
+         * Set when the stroke is cached or used, and cleared by the
+         * eviction.
+         */
+        private volatile boolean isReferenced = true;
+
+        public CachedStroke(Stroke stroke) {
+            this.stroke = stroke;
+        }
+    }
+
+    /**
+     * The attribute values which determine a stroke.
+     */
+    private static class StrokeKey {
+
+        private boolean isHitStroke;
+        private StrokeType type;
+        private double width;
+        private double innerWidthFactor;
+        private int cap;
+        private int join;
+        private double miterLimit;
+        private boolean isDashFactor;
+        private double[] dashes;
+        private double dashPhase;
+        private int hash;
+
+        private void set(boolean isHitStroke, Figure f, double width, double miterLimit) {
+            this.isHitStroke = isHitStroke;
+            this.type = f.get(STROKE_TYPE);
+            this.width = width;
+            this.innerWidthFactor = f.get(STROKE_INNER_WIDTH_FACTOR);
+            this.cap = f.get(STROKE_CAP);
+            this.join = f.get(STROKE_JOIN);
+            this.miterLimit = miterLimit;
+            this.isDashFactor = f.get(IS_STROKE_DASH_FACTOR);
+            this.dashes = isHitStroke ? null : f.get(STROKE_DASHES);
+            this.dashPhase = f.get(STROKE_DASH_PHASE);
+            int h = Boolean.hashCode(isHitStroke);
+            h = h * 31 + type.hashCode();
+            h = h * 31 + Double.hashCode(width);
+            h = h * 31 + Double.hashCode(innerWidthFactor);
+            h = h * 31 + cap;
+            h = h * 31 + join;
+            h = h * 31 + Double.hashCode(miterLimit);
+            h = h * 31 + Boolean.hashCode(isDashFactor);
+            h = h * 31 + Arrays.hashCode(dashes);
+            hash = h * 31 + Double.hashCode(dashPhase);
+        }
+
+        /**
+         * Returns a copy of this key, which does not share the dashes array
+         * with the figure.
+         */
+        private StrokeKey copy() {
+            StrokeKey that = new StrokeKey();
+            that.isHitStroke = isHitStroke;
+            that.type = type;
+            that.width = width;
+            that.innerWidthFactor = innerWidthFactor;
+            that.cap = cap;
+            that.join = join;
+            that.miterLimit = miterLimit;
+            that.isDashFactor = isDashFactor;
+            that.dashes = (dashes == null) ? null : dashes.clone();
+            that.dashPhase = dashPhase;
+            that.hash = hash;
+            return that;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StrokeKey)) {
+                return false;
+            }
+            StrokeKey that = (StrokeKey) o;
+            return this.hash == that.hash
+                    && this.isHitStroke == that.isHitStroke
+                    && this.type == that.type
+                    && this.width == that.width
+                    && this.innerWidthFactor == that.innerWidthFactor
+                    && this.cap == that.cap
+                    && this.join == that.join
+                    && this.miterLimit == that.miterLimit
+                    && this.isDashFactor == that.isDashFactor
+                    && Arrays.equals(this.dashes, that.dashes)
+                    && this.dashPhase == that.dashPhase;
+        }
+    }
     /**
      * Canvas fill color. The value of this attribute is a Color object. This attribute is used by a
      * Drawing object to specify the fill color of the drawing. The default value is white.
@@ -423,9 +561,74 @@ public class AttributeKeys {
         }
     }
 
+    /**
+     * Returns the stroke for drawing the figure. Strokes are immutable, and
+     * are shared by all figures with the same stroke attributes.
+     */
     public static Stroke getStroke(Figure f, double factor) {
         double strokeWidth = f.get(STROKE_WIDTH) * getGlobalValueFactor(f, factor);
         float miterLimit = (float) getStrokeTotalMiterLimit(f, factor);
+        StrokeKey key = LOOKUP_KEY.get();
+        key.set(false, f, strokeWidth, miterLimit);
+        Stroke stroke = getCachedStroke(key);
+        if (stroke == null) {
+            stroke = cacheStroke(key, createStroke(f, strokeWidth, miterLimit));
+        }
+        return stroke;
+    }
+
+    /**
+     * Returns the cached stroke for the key, or null.
+     */
+    private static Stroke getCachedStroke(StrokeKey key) {
+        CachedStroke cached = STROKE_CACHE.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (!cached.isReferenced) {
+            cached.isReferenced = true;
+        }
+        return cached.stroke;
+    }
+
+    /**
+     * Puts a stroke into the cache, and evicts strokes if the cache is full.
+     *
+     * @return the cached stroke, which is a stroke put into the cache by
+     * another thread in the meantime, or the specified stroke
+     */
+    private static Stroke cacheStroke(StrokeKey key, Stroke stroke) {
+        CachedStroke cached = new CachedStroke(stroke);
+        CachedStroke existing = STROKE_CACHE.putIfAbsent(key.copy(), cached);
+        if (existing != null) {
+            return existing.stroke;
+        }
+        if (STROKE_CACHE.size() > MAX_CACHED_STROKES) {
+            synchronized (EVICTION_LOCK) {
+                // After two rounds, strokes are evicted regardless of their
+                // flag, so that the eviction ends even if other threads keep
+                // using all strokes
+                int maxSteps = 2 * STROKE_CACHE.size();
+                for (int steps = 0; STROKE_CACHE.size() > MAX_CACHED_STROKES; steps++) {
+                    if (evictionHand == null || !evictionHand.hasNext()) {
+                        evictionHand = STROKE_CACHE.values().iterator();
+                        if (!evictionHand.hasNext()) {
+                            break;
+                        }
+                    }
+                    CachedStroke c = evictionHand.next();
+                    if (c.isReferenced && steps < maxSteps) {
+                        c.isReferenced = false;
+                    } else if (c != cached) {
+                        evictionHand.remove();
+                    }
+                }
+            }
+        }
+        return stroke;
+    }
+
+    private static Stroke createStroke(Figure f, double strokeWidth, float miterLimit) {
         double dashFactor = f.get(IS_STROKE_DASH_FACTOR) ? strokeWidth : 1d;
         double dashPhase = f.get(STROKE_DASH_PHASE);
         double[] ddashes = f.get(STROKE_DASHES);
@@ -483,6 +686,16 @@ public class AttributeKeys {
     public static Stroke getHitStroke(Figure f, double factor) {
         double strokeWidth = Math.max(1, f.get(STROKE_WIDTH) * getGlobalValueFactor(f, factor));
         float miterLimit = (float) getStrokeTotalMiterLimit(f, factor);
+        StrokeKey key = LOOKUP_KEY.get();
+        key.set(true, f, strokeWidth, miterLimit);
+        Stroke stroke = getCachedStroke(key);
+        if (stroke == null) {
+            stroke = cacheStroke(key, createHitStroke(f, strokeWidth, miterLimit));
+        }
+        return stroke;
+    }
+
+    private static Stroke createHitStroke(Figure f, double strokeWidth, float miterLimit) {
         double dashFactor = f.get(IS_STROKE_DASH_FACTOR) ? strokeWidth : 1d;
         switch (f.get(STROKE_TYPE)) {
             case BASIC:
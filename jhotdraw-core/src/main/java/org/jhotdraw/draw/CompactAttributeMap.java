@@ -0,0 +1,369 @@
+/*
+ * @(#)CompactAttributeMap.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * A compact map for the attributes of a figure.
+ * <p>
+ * The entries are held in a {@link Style}, which consists of arrays sorted by
+ * the {@linkplain AttributeKey#getIndex index} of the attribute keys. A
+ * lookup is a binary search over an array of ints.
+ * <p>
+ * Styles are shared copy-on-write. A clone of the map shares the style with
+ * the original map, and {@link #intern} replaces the style with an equal
+ * style which is shared with other maps. The style is copied when a shared
+ * map is changed.
+ * <p>
+ * Like {@code HashMap}, this map allows {@code null} values, and it is not
+ * synchronized.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class CompactAttributeMap extends AbstractMap<AttributeKey<?>, Object> implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Holds the entries of a map.
+     * <p>
+     * The arrays of a style are not changed while the style is shared.
+     */
+    private static class Style {
+
+        private final int[] indices;
+        private final AttributeKey<?>[] keys;
+        private final Object[] values;
+        private transient int hash;
+
+        public Style(int[] indices, AttributeKey<?>[] keys, Object[] values) {
+            this.indices = indices;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        public int hashCode() {
+            if (hash == 0) {
+                int h = Arrays.hashCode(indices);
+                for (Object value : values) {
+                    h = h * 31 + (value == null ? 0 : value.hashCode());
+                }
+                hash = (h == 0) ? 1 : h;
+            }
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Style)) {
+                return false;
+            }
+            Style that = (Style) o;
+            if (this.hashCode() != that.hashCode()
+                    || !Arrays.equals(this.indices, that.indices)) {
+                return false;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (this.keys[i] != that.keys[i]
+                        || !Objects.equals(this.values[i], that.values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+    private static final Style EMPTY = new Style(new int[0], new AttributeKey<?>[0], new Object[0]);
+    /**
+     * Holds the shared styles.
+     */
+    private static final WeakHashMap<Style, WeakReference<Style>> SHARED_STYLES = new WeakHashMap<>();
+    /**
+     * Holds the entries. Since the indices of the keys are only valid in the
+     * current virtual machine, the entries are serialized as key value pairs.
+     */
+    private transient Style style;
+    /**
+     * True, if the style is only used by this map, and can be changed.
+     */
+    private transient boolean isOwner;
+
+    /**
+     * Creates an empty map.
+     */
+    public CompactAttributeMap() {
+        style = EMPTY;
+    }
+
+    /**
+     * Creates a map with the entries of the specified map.
+     */
+    public CompactAttributeMap(Map<AttributeKey<?>, Object> m) {
+        style = EMPTY;
+        putAll(m);
+    }
+
+    private int find(Object key) {
+        if (!(key instanceof AttributeKey)) {
+            return -1;
+        }
+        return Arrays.binarySearch(style.indices, ((AttributeKey<?>) key).getIndex());
+    }
+
+    @Override
+    public int size() {
+        return style.keys.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return style.keys.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = find(key);
+        return (i >= 0) ? style.values[i] : null;
+    }
+
+    @Override
+    public Object getOrDefault(Object key, Object defaultValue) {
+        int i = find(key);
+        return (i >= 0) ? style.values[i] : defaultValue;
+    }
+
+    @Override
+    public Object put(AttributeKey<?> key, Object value) {
+        int index = key.getIndex();
+        int i = Arrays.binarySearch(style.indices, index);
+        if (i >= 0) {
+            Object oldValue = style.values[i];
+            if (oldValue != value) {
+                if (!isOwner) {
+                    style = new Style(style.indices, style.keys, style.values.clone());
+                    isOwner = true;
+                }
+                style.values[i] = value;
+            }
+            return oldValue;
+        }
+        i = -i - 1;
+        int n = style.keys.length;
+        int[] indices = new int[n + 1];
+        AttributeKey<?>[] keys = new AttributeKey<?>[n + 1];
+        Object[] values = new Object[n + 1];
+        System.arraycopy(style.indices, 0, indices, 0, i);
+        System.arraycopy(style.keys, 0, keys, 0, i);
+        System.arraycopy(style.values, 0, values, 0, i);
+        indices[i] = index;
+        keys[i] = key;
+        values[i] = value;
+        System.arraycopy(style.indices, i, indices, i + 1, n - i);
+        System.arraycopy(style.keys, i, keys, i + 1, n - i);
+        System.arraycopy(style.values, i, values, i + 1, n - i);
+        style = new Style(indices, keys, values);
+        isOwner = true;
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int i = find(key);
+        if (i < 0) {
+            return null;
+        }
+        Object oldValue = style.values[i];
+        int n = style.keys.length - 1;
+        if (n == 0) {
+            style = EMPTY;
+            isOwner = false;
+            return oldValue;
+        }
+        int[] indices = new int[n];
+        AttributeKey<?>[] keys = new AttributeKey<?>[n];
+        Object[] values = new Object[n];
+        System.arraycopy(style.indices, 0, indices, 0, i);
+        System.arraycopy(style.keys, 0, keys, 0, i);
+        System.arraycopy(style.values, 0, values, 0, i);
+        System.arraycopy(style.indices, i + 1, indices, i, n - i);
+        System.arraycopy(style.keys, i + 1, keys, i, n - i);
+        System.arraycopy(style.values, i + 1, values, i, n - i);
+        style = new Style(indices, keys, values);
+        isOwner = true;
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        style = EMPTY;
+        isOwner = false;
+    }
+
+    /**
+     * Replaces the entries of this map by an equal set of entries which is
+     * shared with other maps.
+     * <p>
+     * Call this method after the attributes of a figure have been set up, for
+     * example after the figure has been read from a file. Figures with the
+     * same attribute values will then share their attribute storage, until
+     * one of them is changed.
+     */
+    public void intern() {
+        if (style == EMPTY) {
+            return;
+        }
+        synchronized (SHARED_STYLES) {
+            WeakReference<Style> ref = SHARED_STYLES.get(style);
+            Style shared = (ref == null) ? null : ref.get();
+            if (shared == null) {
+                SHARED_STYLES.put(style, new WeakReference<>(style));
+            } else {
+                style = shared;
+            }
+        }
+        isOwner = false;
+    }
+
+    @Override
+    public CompactAttributeMap clone() {
+        try {
+            CompactAttributeMap that = (CompactAttributeMap) super.clone();
+            this.isOwner = false;
+            that.isOwner = false;
+            return that;
+        } catch (CloneNotSupportedException e) {
+            InternalError error = new InternalError(e.getMessage());
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<AttributeKey<?>, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<AttributeKey<?>, Object>>() {
+            @Override
+            public int size() {
+                return CompactAttributeMap.this.size();
+            }
+
+            @Override
+            public void clear() {
+                CompactAttributeMap.this.clear();
+            }
+
+            @Override
+            public Iterator<Map.Entry<AttributeKey<?>, Object>> iterator() {
+                return new EntryIterator();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the entries of the map. Since insertions and removals
+     * replace the style of the map, the iterator works on a snapshot of the
+     * keys.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<AttributeKey<?>, Object>> {
+
+        private final AttributeKey<?>[] keys = style.keys;
+        private int next;
+        private AttributeKey<?> current;
+
+        @Override
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+
+        @Override
+        public Map.Entry<AttributeKey<?>, Object> next() {
+            if (next >= keys.length) {
+                throw new NoSuchElementException();
+            }
+            current = keys[next++];
+            final AttributeKey<?> key = current;
+            return new Map.Entry<AttributeKey<?>, Object>() {
+                @Override
+                public AttributeKey<?> getKey() {
+                    return key;
+                }
+
+                @Override
+                public Object getValue() {
+                    return get(key);
+                }
+
+                @Override
+                public Object setValue(Object value) {
+                    return put(key, value);
+                }
+
+                @Override
+                public boolean equals(Object o) {
+                    if (!(o instanceof Map.Entry)) {
+                        return false;
+                    }
+                    Map.Entry<?, ?> that = (Map.Entry<?, ?>) o;
+                    return key.equals(that.getKey())
+                            && Objects.equals(getValue(), that.getValue());
+                }
+
+                @Override
+                public int hashCode() {
+                    return key.hashCode() ^ Objects.hashCode(getValue());
+                }
+
+                @Override
+                public String toString() {
+                    return key + "=" + getValue();
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) {
+                throw new IllegalStateException();
+            }
+            CompactAttributeMap.this.remove(current);
+            current = null;
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(style.keys.length);
+        for (int i = 0; i < style.keys.length; i++) {
+            out.writeObject(style.keys[i]);
+            out.writeObject(style.values[i]);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        style = EMPTY;
+        for (int i = 0, n = in.readInt(); i < n; i++) {
+            AttributeKey<?> key = (AttributeKey<?>) in.readObject();
+            put(key, in.readObject());
+        }
+    }
+}
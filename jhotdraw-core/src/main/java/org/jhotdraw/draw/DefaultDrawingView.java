@@ -49,6 +49,11 @@ public class DefaultDrawingView
      * Set this to true to turn on debugging output on System.out.
      */
     private static final boolean DEBUG = false;
+    /**
+     * The margin in pixels around the visible area of the view, in which
+     * handles are created for the selected figures.
+     */
+    private static final int HANDLE_MARGIN = 16;
     private Drawing drawing;
     /**
      * Holds the selected figures in an ordered put. The ordering reflects the sequence that was
@@ -63,6 +68,16 @@ public class DefaultDrawingView
     private Handle activeHandle;
     private LinkedList<Handle> secondaryHandles = new LinkedList<>();
     private boolean handlesAreValid = true;
+    /**
+     * The area in drawing coordinates for which the handles of the selected
+     * figures have been created, or null. Handles are only created for
+     * selected figures which are visible.
+     */
+    private Rectangle2D.Double handleArea;
+    /**
+     * The selected figures for which handles have been created.
+     */
+    private HashSet<Figure> handleOwners = new HashSet<>();
     private transient Dimension cachedPreferredSize;
     private double scaleFactor = 1;
     private Point translation = new Point(0, 0);
@@ -75,6 +90,17 @@ public class DefaultDrawingView
         public void figureHandlesChanged(FigureEvent e) {
             invalidateHandles();
         }
+
+        @Override
+        public void figureChanged(FigureEvent e) {
+            // A selected figure without handles has been moved into the
+            // area with handles.
+            if (handleArea != null && !handleOwners.contains(e.getFigure())
+                    && e.getFigure().getDrawingArea().intersects(handleArea)) {
+                handleArea = null;
+                repaint();
+            }
+        }
     };
     private transient Rectangle2D.Double cachedDrawingArea;
     public static final String DRAWING_DOUBLE_BUFFERED_PROPERTY = "drawingDoubleBuffered";
@@ -82,6 +108,59 @@ public class DefaultDrawingView
      * Whether the drawing is double buffered
      */
     private boolean isDrawingDoubleBuffered = true;
+    public static final String DRAWING_TILED_PROPERTY = "drawingTiled";
+    /**
+     * Whether the drawing is rendered into tiles by worker threads.
+     */
+    private boolean isDrawingTiled = false;
+    /**
+     * Renders the drawing into tiles, if the drawing is tiled.
+     */
+    private transient TiledDrawingRenderer tileRenderer;
+    public static final String LEVEL_OF_DETAIL_POLICY_PROPERTY = "levelOfDetailPolicy";
+    /**
+     * The level of detail policy, or null if figures are always drawn with
+     * full detail.
+     */
+    private transient LevelOfDetailPolicy levelOfDetailPolicy;
+    public static final String GHOST_DRAG_ENABLED_PROPERTY = "ghostDragEnabled";
+    /**
+     * Whether drag trackers move a ghost image of the dragged figures
+     * instead of the figures.
+     */
+    private boolean isGhostDragEnabled = false;
+    /**
+     * The largest ghost image in pixels. Larger ghosts are drawn as outlines.
+     */
+    private static final int MAX_GHOST_PIXELS = 2048 * 2048;
+    /**
+     * The figures of the ghost drag, or null if no ghost drag is in progress.
+     */
+    private transient java.util.List<Figure> ghostFigures;
+    /**
+     * The union of the drawing areas of the ghost figures.
+     */
+    private transient Rectangle2D.Double ghostArea;
+    /**
+     * The transform from the original to the current location of the ghost
+     * in drawing coordinates.
+     */
+    private transient AffineTransform ghostTransform;
+    /**
+     * The rendered ghost figures in view coordinates, or null if the ghost
+     * is drawn as outlines.
+     */
+    private transient BufferedImage ghostImage;
+    /**
+     * The location of the ghost image in view coordinates.
+     */
+    private transient Rectangle ghostImageBounds;
+    /**
+     * The scale factor and translation of the view, when the ghost image
+     * was rendered.
+     */
+    private transient double ghostImageScale;
+    private transient Point ghostImageTranslation;
     /**
      * The drawingBuffer holds a rendered image of the drawing (in view coordinates).
      */
@@ -362,7 +441,9 @@ public class DefaultDrawingView
         drawBackground(g);
         drawCanvas(g);
         drawConstrainer(g);
-        if (isDrawingDoubleBuffered()) {
+        if (isDrawingTiled()) {
+            drawDrawingTiled(g);
+        } else if (isDrawingDoubleBuffered()) {
             if (IS_WINDOWS) {
                 drawDrawingNonvolatileBuffered(g);
             } else {
@@ -371,6 +452,7 @@ public class DefaultDrawingView
         } else {
             drawDrawing(g);
         }
+        drawGhost(g);
         drawHandles(g);
         drawTool(g);
     }
@@ -555,6 +637,28 @@ public class DefaultDrawingView
         dirtyArea.setSize(-1, -1);
     }
 
+    /**
+     * Draws the drawing using the tile cache. Tiles which are not rendered yet
+     * are rendered by worker threads, and painted when they are done.
+     */
+    protected void drawDrawingTiled(Graphics2D g) {
+        if (drawing == null) {
+            return;
+        }
+        if (drawing.getChildCount() == 0 && emptyDrawingLabel != null) {
+            drawDrawing(g);
+            return;
+        }
+        if (tileRenderer == null) {
+            tileRenderer = new TiledDrawingRenderer(this);
+        }
+        Graphics2D gFrc = (Graphics2D) g.create();
+        gFrc.transform(getDrawingToViewTransform());
+        drawing.setFontRenderContext(gFrc.getFontRenderContext());
+        gFrc.dispose();
+        tileRenderer.paint(g, drawing, scaleFactor, translation);
+    }
+
     /**
      * Prints the drawing view. Uses high quality rendering hints for printing. Only prints the
      * drawing. Doesn't print the canvasColor, the grid, the handles and the tool.
@@ -582,6 +686,9 @@ public class DefaultDrawingView
         g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
         g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
         g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        if (levelOfDetailPolicy != null) {
+            g.setRenderingHint(LevelOfDetailPolicy.KEY, levelOfDetailPolicy);
+        }
     }
 
     /**
@@ -686,6 +793,9 @@ public class DefaultDrawingView
             this.drawing.addFigureListener(eventHandler);
         }
         dirtyArea.add(bufferedArea);
+        if (tileRenderer != null) {
+            tileRenderer.clear();
+        }
         firePropertyChange(DRAWING_PROPERTY, oldValue, newValue);
         // Revalidate without flickering
         revalidate();
@@ -713,6 +823,9 @@ public class DefaultDrawingView
         Rectangle vr = drawingToView(r);
         vr.grow(2, 2);
         dirtyArea.add(vr);
+        if (tileRenderer != null) {
+            tileRenderer.invalidate(r);
+        }
         repaint(vr);
     }
 
@@ -733,6 +846,10 @@ public class DefaultDrawingView
             drawingBufferV.flush();
             drawingBufferV = null;
         }
+        if (tileRenderer != null) {
+            tileRenderer.dispose();
+            tileRenderer = null;
+        }
     }
 
     /**
@@ -747,19 +864,7 @@ public class DefaultDrawingView
         if (selectedFigures.add(figure)) {
             figure.addFigureListener(handleInvalidator);
             Set<Figure> newSelection = new HashSet<>(selectedFigures);
-            Rectangle invalidatedArea = null;
-            if (handlesAreValid && getEditor() != null) {
-                for (Handle h : figure.createHandles(detailLevel)) {
-                    h.setView(this);
-                    selectionHandles.add(h);
-                    h.addHandleListener(eventHandler);
-                    if (invalidatedArea == null) {
-                        invalidatedArea = h.getDrawingArea();
-                    } else {
-                        invalidatedArea.add(h.getDrawingArea());
-                    }
-                }
-            }
+            Rectangle invalidatedArea = createHandlesIfVisible(figure, null);
             fireSelectionChanged(oldSelection, newSelection);
             if (invalidatedArea != null) {
                 repaint(invalidatedArea);
@@ -769,34 +874,24 @@ public class DefaultDrawingView
 
     /**
      * Adds a collection of figures to the current selection.
+     * <p>
+     * The selection is changed at once, and a single selection event is
+     * fired. Handles are only created for the figures which are visible.
      */
     @Override
     public void addToSelection(Collection<Figure> figures) {
         Set<Figure> oldSelection = new HashSet<>(selectedFigures);
-        Set<Figure> newSelection = new HashSet<>(selectedFigures);
         boolean selectionChanged = false;
         Rectangle invalidatedArea = null;
         for (Figure figure : figures) {
             if (selectedFigures.add(figure)) {
                 selectionChanged = true;
-                newSelection.add(figure);
                 figure.addFigureListener(handleInvalidator);
-                if (handlesAreValid && getEditor() != null) {
-                    for (Handle h : figure.createHandles(detailLevel)) {
-                        h.setView(this);
-                        selectionHandles.add(h);
-                        h.addHandleListener(eventHandler);
-                        if (invalidatedArea == null) {
-                            invalidatedArea = h.getDrawingArea();
-                        } else {
-                            invalidatedArea.add(h.getDrawingArea());
-                        }
-                    }
-                }
+                invalidatedArea = createHandlesIfVisible(figure, invalidatedArea);
             }
         }
         if (selectionChanged) {
-            fireSelectionChanged(oldSelection, newSelection);
+            fireSelectionChanged(oldSelection, new HashSet<>(selectedFigures));
             if (invalidatedArea != null) {
                 repaint(invalidatedArea);
             }
@@ -842,16 +937,29 @@ public class DefaultDrawingView
      */
     @Override
     public void selectAll() {
-        Set<Figure> oldSelection = new HashSet<>(selectedFigures);
-        selectedFigures.clear();
+        ArrayList<Figure> figures = new ArrayList<>();
+        HashSet<Figure> selectable = new HashSet<>();
         for (Figure figure : drawing.getChildren()) {
             if (figure.isSelectable()) {
-                selectedFigures.add(figure);
+                figures.add(figure);
+                selectable.add(figure);
             }
         }
-        Set<Figure> newSelection = new HashSet<>(selectedFigures);
+        if (selectable.containsAll(selectedFigures)) {
+            addToSelection(figures);
+            return;
+        }
+        Set<Figure> oldSelection = new HashSet<>(selectedFigures);
+        for (Figure figure : selectedFigures) {
+            figure.removeFigureListener(handleInvalidator);
+        }
+        selectedFigures.clear();
+        selectedFigures.addAll(figures);
+        for (Figure figure : figures) {
+            figure.addFigureListener(handleInvalidator);
+        }
         invalidateHandles();
-        fireSelectionChanged(oldSelection, newSelection);
+        fireSelectionChanged(oldSelection, selectable);
         repaint();
     }
 
@@ -862,6 +970,9 @@ public class DefaultDrawingView
     public void clearSelection() {
         if (getSelectionCount() > 0) {
             Set<Figure> oldSelection = new HashSet<>(selectedFigures);
+            for (Figure figure : selectedFigures) {
+                figure.removeFigureListener(handleInvalidator);
+            }
             selectedFigures.clear();
             Set<Figure> newSelection = new HashSet<>(selectedFigures);
             invalidateHandles();
@@ -937,6 +1048,8 @@ public class DefaultDrawingView
             }
             selectionHandles.clear();
             secondaryHandles.clear();
+            handleOwners.clear();
+            handleArea = null;
             setActiveHandle(null);
             if (invalidatedArea != null) {
                 repaint(invalidatedArea);
@@ -945,40 +1058,117 @@ public class DefaultDrawingView
     }
 
     /**
-     * Validates the handles.
+     * Validates the handles of the selected figures which are visible.
      */
     private void validateHandles() {
-        // Validate handles only, if they are invalid, and if
-        // the DrawingView has a DrawingEditor.
-        if (!handlesAreValid && getEditor() != null) {
+        validateHandles(getVisibleDrawingArea());
+    }
+
+    /**
+     * Validates the handles of the selected figures which intersect the
+     * specified area.
+     *
+     * @param area an area in drawing coordinates, or null to validate the
+     * handles of all selected figures
+     */
+    private void validateHandles(Rectangle2D.Double area) {
+        // Validate handles only, if the DrawingView has a DrawingEditor.
+        if (getEditor() == null) {
+            return;
+        }
+        if (!handlesAreValid) {
             handlesAreValid = true;
             selectionHandles.clear();
-            Rectangle invalidatedArea = null;
-            while (true) {
-                for (Figure figure : getSelectedFigures()) {
-                    for (Handle handle : figure.createHandles(detailLevel)) {
-                        handle.setView(this);
-                        selectionHandles.add(handle);
-                        handle.addHandleListener(eventHandler);
-                        if (invalidatedArea == null) {
-                            invalidatedArea = handle.getDrawingArea();
-                        } else {
-                            invalidatedArea.add(handle.getDrawingArea());
-                        }
-                    }
-                }
-                if (selectionHandles.size() == 0 && detailLevel != 0) {
-                    // No handles are available at the desired detail level.
-                    // Retry with detail level 0.
-                    detailLevel = 0;
-                    continue;
+            handleOwners.clear();
+            handleArea = null;
+        }
+        if (handleOwners.size() == selectedFigures.size()
+                || area != null && handleArea != null && (area.isEmpty() || handleArea.contains(area))) {
+            return;
+        }
+        Rectangle invalidatedArea = null;
+        while (true) {
+            ArrayList<Figure> owners = new ArrayList<>();
+            for (Figure figure : selectedFigures) {
+                if (!handleOwners.contains(figure)
+                        && (area == null || figure.getDrawingArea().intersects(area))) {
+                    owners.add(figure);
                 }
-                break;
             }
-            if (invalidatedArea != null) {
-                repaint(invalidatedArea);
+            for (Figure figure : owners) {
+                invalidatedArea = createHandles(figure, invalidatedArea);
+            }
+            if (selectionHandles.size() == 0 && !owners.isEmpty() && detailLevel != 0) {
+                // No handles are available at the desired detail level.
+                // Retry with detail level 0.
+                handleOwners.clear();
+                detailLevel = 0;
+                continue;
+            }
+            break;
+        }
+        if (area != null) {
+            handleArea = (Rectangle2D.Double) area.clone();
+        }
+        if (invalidatedArea != null) {
+            repaint(invalidatedArea);
+        }
+    }
+
+    /**
+     * Creates the handles of a selected figure.
+     *
+     * @param figure a selected figure
+     * @param invalidatedArea the area which must be repainted, or null
+     * @return the area which must be repainted, including the handles
+     */
+    private Rectangle createHandles(Figure figure, Rectangle invalidatedArea) {
+        handleOwners.add(figure);
+        for (Handle handle : figure.createHandles(detailLevel)) {
+            handle.setView(this);
+            selectionHandles.add(handle);
+            handle.addHandleListener(eventHandler);
+            if (invalidatedArea == null) {
+                invalidatedArea = handle.getDrawingArea();
+            } else {
+                invalidatedArea.add(handle.getDrawingArea());
             }
         }
+        return invalidatedArea;
+    }
+
+    /**
+     * Creates the handles of a figure which has been added to the selection,
+     * if the figure is visible and the handles are valid.
+     *
+     * @param figure the figure
+     * @param invalidatedArea the area which must be repainted, or null
+     * @return the area which must be repainted, including the handles
+     */
+    private Rectangle createHandlesIfVisible(Figure figure, Rectangle invalidatedArea) {
+        if (!handlesAreValid || getEditor() == null) {
+            // The handles are created when they are validated.
+            return invalidatedArea;
+        }
+        if (handleArea == null) {
+            validateHandles();
+        } else if (figure.getDrawingArea().intersects(handleArea)) {
+            return createHandles(figure, invalidatedArea);
+        }
+        return invalidatedArea;
+    }
+
+    /**
+     * Returns the visible area of the view in drawing coordinates, grown by
+     * the size of a handle.
+     */
+    private Rectangle2D.Double getVisibleDrawingArea() {
+        Rectangle r = getVisibleRect();
+        if (r.isEmpty()) {
+            return new Rectangle2D.Double();
+        }
+        r.grow(HANDLE_MARGIN, HANDLE_MARGIN);
+        return viewToDrawing(r);
     }
 
     /**
@@ -1010,7 +1200,7 @@ public class DefaultDrawingView
      */
     @Override
     public Collection<Handle> getCompatibleHandles(Handle master) {
-        validateHandles();
+        validateHandles(null);
         HashSet<Figure> owners = new HashSet<>();
         LinkedList<Handle> compatibleHandles = new LinkedList<>();
         owners.add(master.getOwner());
@@ -1464,6 +1654,224 @@ public class DefaultDrawingView
         return isDrawingDoubleBuffered;
     }
 
+    /**
+     * Sets whether the drawing is rendered into a cache of tiles by a pool of
+     * worker threads.
+     * <p>
+     * The default value is false.
+     * <p>
+     * This is a bound property.
+     * <p>
+     * Tiled rendering keeps the user interface responsive when panning and
+     * zooming over drawings with many figures. It takes precedence over
+     * double buffering. If it is turned off, the drawing is painted as
+     * specified by the {@code drawingDoubleBuffered} property.
+     */
+    public void setDrawingTiled(boolean newValue) {
+        boolean oldValue = isDrawingTiled;
+        isDrawingTiled = newValue;
+        if (!isDrawingTiled && tileRenderer != null) {
+            tileRenderer.dispose();
+            tileRenderer = null;
+        }
+        dirtyArea.setBounds(bufferedArea);
+        repaint();
+        firePropertyChange(DRAWING_TILED_PROPERTY, oldValue, newValue);
+    }
+
+    /**
+     * Returns true, if the drawing is rendered into tiles.
+     */
+    public boolean isDrawingTiled() {
+        return isDrawingTiled;
+    }
+
+    /**
+     * Sets the level of detail policy, which is used to draw small figures
+     * with less detail.
+     * <p>
+     * The default value is null, which means that all figures are drawn with
+     * full detail. The policy is only applied when the drawing is painted on
+     * the view, not when the view is printed.
+     * <p>
+     * This is a bound property.
+     */
+    public void setLevelOfDetailPolicy(LevelOfDetailPolicy newValue) {
+        LevelOfDetailPolicy oldValue = levelOfDetailPolicy;
+        levelOfDetailPolicy = newValue;
+        if (tileRenderer != null) {
+            tileRenderer.invalidateAll();
+        }
+        dirtyArea.setBounds(bufferedArea);
+        repaint();
+        firePropertyChange(LEVEL_OF_DETAIL_POLICY_PROPERTY, oldValue, newValue);
+    }
+
+    /**
+     * Returns the level of detail policy, or null.
+     */
+    public LevelOfDetailPolicy getLevelOfDetailPolicy() {
+        return levelOfDetailPolicy;
+    }
+
+    /**
+     * Sets whether drag trackers move a ghost image of the dragged figures
+     * while the mouse is dragged, and only transform the figures when the
+     * mouse is released.
+     * <p>
+     * This is a bound property.
+     *
+     * @see #beginGhostDrag
+     */
+    public void setGhostDragEnabled(boolean newValue) {
+        boolean oldValue = isGhostDragEnabled;
+        isGhostDragEnabled = newValue;
+        firePropertyChange(GHOST_DRAG_ENABLED_PROPERTY, oldValue, newValue);
+    }
+
+    /**
+     * Returns true, if drag trackers move a ghost image of the dragged
+     * figures.
+     */
+    public boolean isGhostDragEnabled() {
+        return isGhostDragEnabled;
+    }
+
+    /**
+     * Begins to draw a ghost of the specified figures on top of the drawing.
+     * <p>
+     * The figures are rendered once into an image, which is then moved
+     * with {@link #setGhostTransform}, without changing the figures. If the
+     * image would be too large, the ghost is drawn as the outlines of the
+     * drawing areas of the figures.
+     *
+     * @param figures the figures of the drawing
+     */
+    public void beginGhostDrag(Collection<Figure> figures) {
+        endGhostDrag();
+        if (drawing == null || figures.isEmpty()) {
+            return;
+        }
+        ghostFigures = drawing.sort(figures);
+        ghostTransform = new AffineTransform();
+        for (Figure f : ghostFigures) {
+            if (ghostArea == null) {
+                ghostArea = f.getDrawingArea(scaleFactor);
+            } else {
+                ghostArea.add(f.getDrawingArea(scaleFactor));
+            }
+        }
+        repaintGhost();
+    }
+
+    /**
+     * Sets the transform from the original location of the ghost to its
+     * current location, in drawing coordinates.
+     */
+    public void setGhostTransform(AffineTransform tx) {
+        if (ghostFigures != null) {
+            repaintGhost();
+            ghostTransform = new AffineTransform(tx);
+            repaintGhost();
+        }
+    }
+
+    /**
+     * Ends the ghost drag, and discards the ghost image.
+     */
+    public void endGhostDrag() {
+        if (ghostFigures != null) {
+            repaintGhost();
+        }
+        ghostFigures = null;
+        ghostArea = null;
+        ghostTransform = null;
+        if (ghostImage != null) {
+            ghostImage.flush();
+            ghostImage = null;
+        }
+        ghostImageBounds = null;
+        ghostImageTranslation = null;
+    }
+
+    /**
+     * Returns true, if a ghost drag is in progress.
+     */
+    public boolean isGhostDragging() {
+        return ghostFigures != null;
+    }
+
+    private void repaintGhost() {
+        Rectangle2D r = ghostTransform.createTransformedShape(ghostArea).getBounds2D();
+        Rectangle vr = drawingToView(new Rectangle2D.Double(r.getX(), r.getY(), r.getWidth(), r.getHeight()));
+        vr.grow(2, 2);
+        repaint(vr);
+    }
+
+    /**
+     * Draws the ghost of a ghost drag.
+     */
+    protected void drawGhost(Graphics2D gr) {
+        if (ghostFigures == null) {
+            return;
+        }
+        Graphics2D g = (Graphics2D) gr.create();
+        try {
+            // Transform view coordinates of the original location to view
+            // coordinates of the current location.
+            g.translate(-translation.x, -translation.y);
+            g.scale(scaleFactor, scaleFactor);
+            g.transform(ghostTransform);
+            g.scale(1 / scaleFactor, 1 / scaleFactor);
+            g.translate(translation.x, translation.y);
+            Rectangle vr = drawingToView(ghostArea);
+            if ((long) vr.width * vr.height <= MAX_GHOST_PIXELS) {
+                validateGhostImage(vr);
+                g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.7f));
+                g.drawImage(ghostImage, ghostImageBounds.x, ghostImageBounds.y, null);
+            } else {
+                g.setColor(SystemColor.textHighlight);
+                g.setStroke(new BasicStroke(1f));
+                for (Figure f : ghostFigures) {
+                    g.draw(drawingToView(f.getDrawingArea(scaleFactor)));
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Renders the ghost figures into the ghost image, unless the image has
+     * already been rendered with the current scale factor and translation.
+     */
+    private void validateGhostImage(Rectangle vr) {
+        if (ghostImage != null && ghostImageScale == scaleFactor
+                && translation.equals(ghostImageTranslation)) {
+            return;
+        }
+        if (ghostImage != null) {
+            ghostImage.flush();
+        }
+        ghostImageScale = scaleFactor;
+        ghostImageTranslation = new Point(translation);
+        ghostImageBounds = vr;
+        ghostImage = new BufferedImage(Math.max(1, vr.width), Math.max(1, vr.height), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = ghostImage.createGraphics();
+        try {
+            setViewRenderingHints(g);
+            g.translate(-vr.x - translation.x, -vr.y - translation.y);
+            g.scale(scaleFactor, scaleFactor);
+            for (Figure f : ghostFigures) {
+                if (f.isVisible()) {
+                    f.draw(g);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
     /**
      * Returns a paint for drawing the background of the drawing area.
      *
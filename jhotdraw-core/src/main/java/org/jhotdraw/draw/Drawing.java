@@ -348,6 +348,41 @@ public interface Drawing extends CompositeFigure, Serializable, DOMStorable {
      */
     Object getLock();
 
+    /**
+     * Begins a change transaction.
+     * <p>
+     * While a transaction is open, the drawing collects the change events
+     * of its children instead of processing them one by one. When the
+     * transaction is committed, the drawing updates its spatial index for
+     * all changed children at once, and fires a single event for the union
+     * of the invalidated areas.
+     * <p>
+     * Transactions can be nested. Only the commit of the outermost
+     * transaction processes the collected events. Each call to this method
+     * must be followed by a call to {@link #commitChanges}, preferably in a
+     * {@code finally} block.
+     * <p>
+     * The drawing must not be queried for figures at a location while a
+     * transaction is open, because the spatial index is not up to date.
+     * <p>
+     * The default implementation does nothing. Drawings which do not batch
+     * the processing of changes process the events one by one.
+     */
+    default void beginChanges() {
+    }
+
+    /**
+     * Commits a change transaction which has been begun with
+     * {@link #beginChanges}.
+     * <p>
+     * The default implementation does nothing.
+     *
+     * @throws IllegalStateException if no transaction is open, and the
+     * drawing keeps track of transactions
+     */
+    default void commitChanges() {
+    }
+
     /**
      * Adds an input format to the drawing.
      */
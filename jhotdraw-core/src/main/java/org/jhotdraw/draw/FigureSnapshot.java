@@ -0,0 +1,131 @@
+/*
+ * @(#)FigureSnapshot.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import org.jhotdraw.draw.figure.CompositeFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+
+/**
+ * Holds clones of figures, which can be drawn on another thread while the
+ * figures are changed.
+ * <p>
+ * The clones are detached from the figures: cloned connections are detached
+ * from their connected figures with
+ * {@link LineConnectionFigure#detachFromConnectedFigures}, so that no clone
+ * registers a listener on a figure of the drawing, and no clone is changed
+ * when the drawing changes.
+ * <p>
+ * The drawing areas of the clones are computed when the snapshot is created.
+ * This lets the clones compute and cache their shapes and text layouts on the
+ * creating thread. Afterwards the clones are only read while they are drawn,
+ * so that parts of one snapshot can be drawn on multiple threads.
+ * <p>
+ * A snapshot must be created on the thread which owns the figures, usually
+ * the event dispatcher thread.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class FigureSnapshot {
+
+    /**
+     * The clones in Z-order from back to front.
+     */
+    private final ArrayList<Figure> figures;
+    /**
+     * The drawing areas of the clones.
+     */
+    private final ArrayList<Rectangle2D.Double> drawingAreas;
+
+    /**
+     * Creates a snapshot of the visible figures of the drawing which
+     * intersect the specified area. A {@link QuadTreeDrawing} only visits
+     * the figures which intersect the area.
+     *
+     * @param drawing the drawing
+     * @param area an area in drawing coordinates
+     * @param scaleFactor the scale factor at which the clones are drawn
+     */
+    public FigureSnapshot(Drawing drawing, Rectangle2D.Double area, double scaleFactor) {
+        this(drawing.sort(findVisible(drawing, area, scaleFactor)), scaleFactor);
+    }
+
+    /**
+     * Creates a snapshot of the specified figures.
+     *
+     * @param figures the figures in Z-order from back to front
+     * @param scaleFactor the scale factor at which the clones are drawn
+     */
+    public FigureSnapshot(Collection<? extends Figure> figures, double scaleFactor) {
+        this.figures = new ArrayList<>(figures.size());
+        this.drawingAreas = new ArrayList<>(figures.size());
+        for (Figure f : figures) {
+            Figure clone = f.clone();
+            detach(clone);
+            this.figures.add(clone);
+            this.drawingAreas.add(clone.getDrawingArea(scaleFactor));
+        }
+    }
+
+    /**
+     * Returns the clones in Z-order from back to front.
+     */
+    public java.util.List<Figure> getFigures() {
+        return Collections.unmodifiableList(figures);
+    }
+
+    /**
+     * Returns the clones whose drawing area intersects the specified area,
+     * in Z-order from back to front.
+     *
+     * @param area an area in drawing coordinates
+     */
+    public java.util.List<Figure> getFigures(Rectangle2D.Double area) {
+        ArrayList<Figure> found = new ArrayList<>();
+        for (int i = 0, n = figures.size(); i < n; i++) {
+            if (drawingAreas.get(i).intersects(area)) {
+                found.add(figures.get(i));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the visible children of the drawing whose drawing area
+     * intersects the specified area.
+     */
+    private static java.util.List<Figure> findVisible(Drawing drawing, Rectangle2D.Double area, double scaleFactor) {
+        Collection<Figure> candidates = (drawing instanceof QuadTreeDrawing)
+                ? drawing.findFigures(area)
+                : drawing.getChildren();
+        ArrayList<Figure> found = new ArrayList<>();
+        for (Figure f : candidates) {
+            if (f.isVisible() && f.getDrawingArea(scaleFactor).intersects(area)) {
+                found.add(f);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Detaches the connections in the specified clone and in its children.
+     */
+    private static void detach(Figure clone) {
+        if (clone instanceof LineConnectionFigure) {
+            ((LineConnectionFigure) clone).detachFromConnectedFigures();
+        }
+        if (clone instanceof CompositeFigure) {
+            for (Figure child : ((CompositeFigure) clone).getChildren()) {
+                detach(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * @(#)LevelOfDetailPolicy.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.*;
+import java.awt.geom.*;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * Decides how much detail of a figure is drawn, depending on the size of the
+ * figure on the screen.
+ * <p>
+ * A drawing view passes the policy to the figures with the rendering hint
+ * {@link #KEY}. If the hint is not set, figures are always drawn with full
+ * detail.
+ * <p>
+ * The policy has three thresholds, which are given in pixels on the screen.
+ * The size of a figure is the larger one of the width and the height of its
+ * bounds on the screen. The bounds are transformed with the
+ * {@link AttributeKeys#TRANSFORM} attribute of the figure, if it is set.
+ * <ul>
+ * <li>A figure which is smaller than the proxy threshold is drawn as a filled
+ * rectangle covering its bounds.</li>
+ * <li>The text of a figure which is smaller than the text threshold is not
+ * drawn.</li>
+ * <li>The line decorations of a figure which is smaller than the decoration
+ * threshold are not drawn.</li>
+ * </ul>
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class LevelOfDetailPolicy {
+
+    /**
+     * The rendering hint key for the level of detail policy. The value of the
+     * hint must be an instance of {@code LevelOfDetailPolicy}.
+     */
+    public static final RenderingHints.Key KEY = new RenderingHints.Key(0x4c4f44) {
+        @Override
+        public boolean isCompatibleValue(Object val) {
+            return val == null || val instanceof LevelOfDetailPolicy;
+        }
+
+        @Override
+        public String toString() {
+            return "Level of detail policy";
+        }
+    };
+    private final double proxyThreshold;
+    private final double textThreshold;
+    private final double decorationThreshold;
+
+    /**
+     * Creates a new instance with a proxy threshold of 3 pixels, a text
+     * threshold of 6 pixels and a decoration threshold of 12 pixels.
+     */
+    public LevelOfDetailPolicy() {
+        this(3, 6, 12);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param proxyThreshold figures smaller than this are drawn as a filled
+     * rectangle
+     * @param textThreshold figures smaller than this are drawn without text
+     * @param decorationThreshold figures smaller than this are drawn without
+     * line decorations
+     */
+    public LevelOfDetailPolicy(double proxyThreshold, double textThreshold, double decorationThreshold) {
+        this.proxyThreshold = proxyThreshold;
+        this.textThreshold = textThreshold;
+        this.decorationThreshold = decorationThreshold;
+    }
+
+    public double getProxyThreshold() {
+        return proxyThreshold;
+    }
+
+    public double getTextThreshold() {
+        return textThreshold;
+    }
+
+    public double getDecorationThreshold() {
+        return decorationThreshold;
+    }
+
+    /**
+     * Returns the policy which is set on the graphics, or null.
+     */
+    public static LevelOfDetailPolicy getPolicy(Graphics2D g) {
+        Object value = g.getRenderingHint(KEY);
+        return (value instanceof LevelOfDetailPolicy) ? (LevelOfDetailPolicy) value : null;
+    }
+
+    /**
+     * Returns the size of the specified bounds on the screen.
+     *
+     * @param g the graphics, with a transform from drawing coordinates to
+     * screen coordinates
+     * @param bounds bounds in drawing coordinates
+     */
+    public static double getScreenSize(Graphics2D g, Rectangle2D bounds) {
+        AffineTransform tx = g.getTransform();
+        double scale = Math.sqrt(Math.abs(tx.getDeterminant()));
+        return Math.max(bounds.getWidth(), bounds.getHeight()) * scale;
+    }
+
+    /**
+     * Returns the bounds of the figure in drawing coordinates, transformed
+     * with the {@link AttributeKeys#TRANSFORM} attribute of the figure.
+     */
+    public static Rectangle2D.Double getTransformedBounds(Figure f) {
+        Rectangle2D.Double r = f.getBounds();
+        AffineTransform t = f.get(AttributeKeys.TRANSFORM);
+        if (t != null) {
+            Rectangle2D rt = t.createTransformedShape(r).getBounds2D();
+            r = new Rectangle2D.Double(rt.getX(), rt.getY(), rt.getWidth(), rt.getHeight());
+        }
+        return r;
+    }
+
+    /**
+     * Returns true, if the figure is drawn as a proxy.
+     */
+    public boolean isProxy(Graphics2D g, Figure f) {
+        return getScreenSize(g, getTransformedBounds(f)) < proxyThreshold;
+    }
+
+    /**
+     * Returns true, if the text of the figure is drawn.
+     */
+    public boolean isTextVisible(Graphics2D g, Figure f) {
+        return getScreenSize(g, getTransformedBounds(f)) >= textThreshold;
+    }
+
+    /**
+     * Returns true, if the line decorations of the figure are drawn.
+     */
+    public boolean isDecorationVisible(Graphics2D g, Figure f) {
+        return getScreenSize(g, getTransformedBounds(f)) >= decorationThreshold;
+    }
+
+    /**
+     * Draws an opaque proxy for the figure.
+     *
+     * @see #drawProxy(Graphics2D, Figure, Paint, double)
+     */
+    public void drawProxy(Graphics2D g, Figure f, Paint paint) {
+        drawProxy(g, f, paint, 1d);
+    }
+
+    /**
+     * Draws a proxy for the figure: a rectangle covering its transformed
+     * bounds, which is at least one pixel wide and high on the screen.
+     *
+     * @param g the graphics
+     * @param f the figure
+     * @param paint the paint for the proxy. Nothing is drawn, if this is null.
+     * @param opacity the opacity of the figure, from 0 to 1
+     */
+    public void drawProxy(Graphics2D g, Figure f, Paint paint, double opacity) {
+        opacity = Math.min(Math.max(0d, opacity), 1d);
+        if (paint == null || opacity == 0d) {
+            return;
+        }
+        Rectangle2D.Double r = getTransformedBounds(f);
+        AffineTransform tx = g.getTransform();
+        double scale = Math.sqrt(Math.abs(tx.getDeterminant()));
+        if (scale > 0) {
+            double min = 1 / scale;
+            if (r.width < min) {
+                r.x -= (min - r.width) / 2;
+                r.width = min;
+            }
+            if (r.height < min) {
+                r.y -= (min - r.height) / 2;
+                r.height = min;
+            }
+        }
+        g.setPaint(paint);
+        if (opacity != 1d) {
+            Composite savedComposite = g.getComposite();
+            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) opacity));
+            g.fill(r);
+            g.setComposite(savedComposite);
+        } else {
+            g.fill(r);
+        }
+    }
+
+    /**
+     * Convenience method which returns true, if the text of the figure is
+     * drawn with the policy set on the graphics. Returns true, if no policy
+     * is set.
+     */
+    public static boolean isTextDrawn(Graphics2D g, Figure f) {
+        LevelOfDetailPolicy policy = getPolicy(g);
+        return policy == null || policy.isTextVisible(g, f);
+    }
+
+    /**
+     * Convenience method which returns true, if the line decorations of the
+     * figure are drawn with the policy set on the graphics. Returns true, if
+     * no policy is set.
+     */
+    public static boolean isDecorationDrawn(Graphics2D g, Figure f) {
+        LevelOfDetailPolicy policy = getPolicy(g);
+        return policy == null || policy.isDecorationVisible(g, f);
+    }
+}
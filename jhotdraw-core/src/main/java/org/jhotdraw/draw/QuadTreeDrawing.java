@@ -8,14 +8,13 @@
 package org.jhotdraw.draw;
 
 import org.jhotdraw.draw.figure.Figure;
-import org.jhotdraw.draw.figure.AbstractCompositeFigure;
 import java.awt.*;
 import java.awt.geom.*;
 import java.util.*;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.draw.event.FigureEvent;
 import org.jhotdraw.geom.Geom;
-import org.jhotdraw.geom.QuadTree;
+import org.jhotdraw.geom.PackedQuadTree;
 import org.jhotdraw.util.*;
 
 /**
@@ -29,8 +28,18 @@ import org.jhotdraw.util.*;
 public class QuadTreeDrawing extends AbstractDrawing {
 
     private static final long serialVersionUID = 1L;
-    private QuadTree<Figure> quadTree = new QuadTree<>();
-    private boolean needsSorting = false;
+    /**
+     * The spatial index. Holds the drawing area of each child.
+     */
+    private PackedQuadTree quadTree = new PackedQuadTree();
+    /**
+     * The z-order index. Maps the ids of the spatial index to the children.
+     */
+    private ZOrderIndex zOrder = new ZOrderIndex(children);
+    /**
+     * Receives the ids found by point queries on the spatial index.
+     */
+    private transient int[] queryBuffer;
 
     @Override
     public int indexOf(Figure figure) {
@@ -40,15 +49,16 @@ public class QuadTreeDrawing extends AbstractDrawing {
     @Override
     public void basicAdd(int index, Figure figure) {
         super.basicAdd(index, figure);
-        quadTree.add(figure, figure.getDrawingArea());
-        needsSorting = true;
+        zOrder.add(index, figure, quadTree.add(figure.getDrawingArea()));
     }
 
     @Override
     public Figure basicRemoveChild(int index) {
         Figure figure = getChild(index);
-        quadTree.remove(figure);
-        needsSorting = true;
+        int id = zOrder.remove(figure);
+        if (id != -1) {
+            quadTree.remove(id);
+        }
         super.basicRemoveChild(index);
         return figure;
     }
@@ -57,9 +67,7 @@ public class QuadTreeDrawing extends AbstractDrawing {
     public void draw(Graphics2D g) {
         Rectangle2D clipBounds = g.getClipBounds();
         if (clipBounds != null) {
-            Collection<Figure> c = quadTree.findIntersects(clipBounds);
-            Collection<Figure> toDraw = sort(c);
-            draw(g, toDraw);
+            draw(g, findIntersects(clipBounds));
         } else {
             draw(g, children);
         }
@@ -67,17 +75,14 @@ public class QuadTreeDrawing extends AbstractDrawing {
 
     /**
      * Implementation note: Sorting can not be done for orphaned children.
+     * <p>
+     * The figures are sorted using the z-order index. The cost is
+     * proportional to the size of the collection and not to the number of
+     * children of the drawing.
      */
     @Override
     public java.util.List<Figure> sort(Collection<? extends Figure> c) {
-        ensureSorted();
-        ArrayList<Figure> sorted = new ArrayList<>(c.size());
-        for (Figure f : children) {
-            if (c.contains(f)) {
-                sorted.add(f);
-            }
-        }
-        return sorted;
+        return zOrder.sort(c);
     }
 
     public void draw(Graphics2D g, Collection<Figure> c) {
@@ -101,7 +106,17 @@ public class QuadTreeDrawing extends AbstractDrawing {
     }
 
     public java.util.List<Figure> getChildren(Rectangle2D.Double bounds) {
-        return new LinkedList<>(quadTree.findInside(bounds));
+        int[] ids = new int[32];
+        int count = quadTree.findInside(bounds.x, bounds.y, bounds.width, bounds.height, ids);
+        if (count > ids.length) {
+            ids = new int[count];
+            quadTree.findInside(bounds.x, bounds.y, bounds.width, bounds.height, ids);
+        }
+        LinkedList<Figure> figures = new LinkedList<>();
+        for (int i = 0; i < count; i++) {
+            figures.add(zOrder.getFigure(ids[i]));
+        }
+        return figures;
     }
 
     @Override
@@ -111,9 +126,9 @@ public class QuadTreeDrawing extends AbstractDrawing {
 
     @Override
     public Figure findFigureInside(Point2D.Double p) {
-        Collection<Figure> c = quadTree.findContains(p);
-        for (Figure f : getFiguresFrontToBack()) {
-            if (c.contains(f) && f.contains(p)) {
+        int count = findContains(p);
+        for (Figure f : new ReversedList<>(zOrder.sort(queryBuffer, count))) {
+            if (f.contains(p)) {
                 return f.findFigureInside(p);
             }
         }
@@ -126,110 +141,43 @@ public class QuadTreeDrawing extends AbstractDrawing {
      */
     @Override
     public java.util.List<Figure> getFiguresFrontToBack() {
-        ensureSorted();
+        zOrder.ensureSorted();
         return new ReversedList<>(children);
     }
 
     @Override
     public Figure findFigure(Point2D.Double p) {
-        Collection<Figure> c = quadTree.findContains(p);
-        switch (c.size()) {
-            case 0:
-                return null;
-            case 1:
-                Figure f = c.iterator().next();
-                return (f.contains(p)) ? f : null;
-            default: 
-                for (Figure f2 : getFiguresFrontToBack()) {
-                    if (c.contains(f2) && f2.contains(p)) {
-                        return f2;
-                    }
-                }
-                return null;
-        }
+        int count = findContains(p);
+        return zOrder.findFrontmost(p, queryBuffer, count, Collections.<Figure>emptySet());
     }
 
     @Override
     public Figure findFigureExcept(Point2D.Double p, Figure ignore) {
-        Collection<Figure> c = quadTree.findContains(p);
-        switch (c.size()) {
-            case 0:
-                return null;
-            case 1: 
-                Figure f = c.iterator().next();
-                return (f == ignore || !f.contains(p)) ? null : f;
-            default: 
-                for (Figure f2 : getFiguresFrontToBack()) {
-                    if (f2 != ignore && f2.contains(p)) {
-                        return f2;
-                    }
-                }
-                return null;
-        }
+        int count = findContains(p);
+        return zOrder.findFrontmost(p, queryBuffer, count, Collections.singleton(ignore));
     }
 
     @Override
     public Figure findFigureExcept(Point2D.Double p, Collection<? extends Figure> ignore) {
-        Collection<Figure> c = quadTree.findContains(p);
-        switch (c.size()) {
-            case 0:
-                return null;
-            case 1:
-                Figure f = c.iterator().next();
-                return (!ignore.contains(f) || !f.contains(p)) ? null : f;
-            default: 
-                for (Figure f2 : getFiguresFrontToBack()) {
-                    if (!ignore.contains(f2) && f2.contains(p)) {
-                        return f2;
-                    }
-                }
-                return null;
-        }
+        int count = findContains(p);
+        return zOrder.findFrontmost(p, queryBuffer, count, ignore);
     }
 
     @Override
     public Figure findFigureBehind(Point2D.Double p, Figure figure) {
-        boolean isBehind = false;
-        for (Figure f : getFiguresFrontToBack()) {
-            if (isBehind) {
-                if (f.isVisible() && f.contains(p)) {
-                    return f;
-                }
-            } else {
-                isBehind = figure == f;
-            }
-        }
-        return null;
+        int count = findContains(p);
+        return zOrder.findFrontmostBehind(p, queryBuffer, count, Collections.singleton(figure));
     }
 
     @Override
     public Figure findFigureBehind(Point2D.Double p, Collection<? extends Figure> children) {
-        int inFrontOf = children.size();
-        for (Figure f : getFiguresFrontToBack()) {
-            if (inFrontOf == 0) {
-                if (f.isVisible() && f.contains(p)) {
-                    return f;
-                }
-            } else {
-                if (children.contains(f)) {
-                    inFrontOf--;
-                }
-            }
-        }
-        return null;
+        int count = findContains(p);
+        return zOrder.findFrontmostBehind(p, queryBuffer, count, children);
     }
 
     @Override
     public java.util.List<Figure> findFigures(Rectangle2D.Double r) {
-        LinkedList<Figure> c = new LinkedList<>(quadTree.findIntersects(r));
-        switch (c.size()) {
-            case 0:
-            // fall through
-            case 1:
-                return c;
-            default:
-                return sort(c);
-        }
+        return findIntersects(r);
     }
 
     @Override
@@ -252,7 +200,7 @@ public class QuadTreeDrawing extends AbstractDrawing {
     public void bringToFront(Figure figure) {
         if (children.remove(figure)) {
             children.add(figure);
-            needsSorting = true;
+            zOrder.add(children.size() - 1, figure, zOrder.remove(figure));
             fireAreaInvalidated(figure.getDrawingArea());
         }
     }
@@ -261,24 +209,52 @@ public class QuadTreeDrawing extends AbstractDrawing {
     public void sendToBack(Figure figure) {
         if (children.remove(figure)) {
             children.add(0, figure);
-            needsSorting = true;
+            zOrder.add(0, figure, zOrder.remove(figure));
             fireAreaInvalidated(figure.getDrawingArea());
         }
     }
 
     @Override
     public boolean contains(Figure f) {
-        return children.contains(f);
+        return zOrder.contains(f);
     }
 
     /**
-     * Ensures that the children are sorted in z-order sequence.
+     * Finds the children whose drawing area contains the specified point.
+     * The ids of the children are written into {@code queryBuffer}.
+     *
+     * @return the number of ids
      */
-    private void ensureSorted() {
-        if (needsSorting) {
-            Collections.sort(children, FigureLayerComparator.INSTANCE);
-            needsSorting = false;
+    private int findContains(Point2D.Double p) {
+        if (queryBuffer == null) {
+            queryBuffer = new int[32];
+        }
+        int count = quadTree.findContains(p.x, p.y, queryBuffer);
+        if (count > queryBuffer.length) {
+            queryBuffer = new int[Math.max(count, queryBuffer.length * 2)];
+            quadTree.findContains(p.x, p.y, queryBuffer);
         }
+        return count;
+    }
+
+    /**
+     * Returns the children whose drawing area intersects the specified
+     * rectangle, sorted in z-order.
+     */
+    private java.util.List<Figure> findIntersects(Rectangle2D r) {
+        double x = r.getX();
+        double y = r.getY();
+        double w = r.getWidth();
+        double h = r.getHeight();
+        // We do not use queryBuffer here, because drawing may be done
+        // outside of the event dispatcher thread.
+        int[] ids = new int[256];
+        int count = quadTree.findIntersects(x, y, w, h, ids);
+        if (count > ids.length) {
+            ids = new int[count];
+            quadTree.findIntersects(x, y, w, h, ids);
+        }
+        return zOrder.sort(ids, count);
     }
 
     @Override
@@ -289,9 +265,12 @@ public class QuadTreeDrawing extends AbstractDrawing {
     @Override
     public QuadTreeDrawing clone() {
         QuadTreeDrawing that = (QuadTreeDrawing) super.clone();
-        that.quadTree = new QuadTree<>();
-        for (Figure f : getChildren()) {
-            quadTree.add(f, f.getDrawingArea());
+        that.quadTree = new PackedQuadTree();
+        that.zOrder = new ZOrderIndex(that.children);
+        that.queryBuffer = null;
+        for (int i = 0, n = that.children.size(); i < n; i++) {
+            Figure f = that.children.get(i);
+            that.zOrder.add(i, f, that.quadTree.add(f.getDrawingArea()));
         }
         return that;
     }
@@ -304,22 +283,57 @@ public class QuadTreeDrawing extends AbstractDrawing {
     /**
      * Handles all figure events fired by Figures contained in the Drawing.
      */
-    protected class QuadTreeEventHandler extends AbstractCompositeFigure.EventHandler {
+    protected class QuadTreeEventHandler extends DrawingEventHandler {
 
         private static final long serialVersionUID = 1L;
 
         @Override
         public void figureChanged(FigureEvent e) {
-            if (!isChanging()) {
-                quadTree.remove(e.getFigure());
-                quadTree.add(e.getFigure(), e.getFigure().getDrawingArea());
-                needsSorting = true;
+            if (isInChangeTransaction()) {
+                recordChange(e.getFigure(), e.getInvalidatedArea());
+            } else if (!isChanging()) {
+                Figure f = e.getFigure();
+                int id = zOrder.getId(f);
+                if (id != -1) {
+                    quadTree.update(id, f.getDrawingArea());
+                    zOrder.updateLayer(f);
+                }
                 invalidate();
                 fireAreaInvalidated(e);
             }
         }
     }
 
+    /**
+     * Updates the spatial index for all changed children at once, and fires
+     * a single area invalidated event.
+     */
+    @Override
+    protected void childrenChanged(Set<Figure> changed, Rectangle2D.Double area) {
+        if (isChanging()) {
+            return;
+        }
+        int[] ids = new int[changed.size()];
+        double[] bounds = new double[ids.length * 4];
+        int count = 0;
+        for (Figure f : changed) {
+            int id = zOrder.getId(f);
+            if (id != -1) {
+                Rectangle2D.Double r = f.getDrawingArea();
+                ids[count] = id;
+                bounds[count * 4] = r.x;
+                bounds[count * 4 + 1] = r.y;
+                bounds[count * 4 + 2] = r.width;
+                bounds[count * 4 + 3] = r.height;
+                count++;
+                zOrder.updateLayer(f);
+            }
+        }
+        quadTree.updateAll(ids, bounds, count);
+        invalidate();
+        fireAreaInvalidated(area);
+    }
+
     @Override
     protected void drawFill(Graphics2D g) {
         //throw new UnsupportedOperationException("Not supported yet.");
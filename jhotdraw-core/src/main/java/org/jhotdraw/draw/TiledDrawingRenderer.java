@@ -0,0 +1,370 @@
+/*
+ * @(#)TiledDrawingRenderer.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * Renders a {@link Drawing} into a cache of fixed-size tiles, using a pool of
+ * worker threads.
+ * <p>
+ * The tiles are laid out on a grid in scaled drawing coordinates, that is,
+ * drawing coordinates multiplied by the scale factor of the view. A tile is
+ * identified by the scale factor and its column and row on the grid. Since
+ * the grid does not depend on the translation of the view, panning the view
+ * does not invalidate any tiles.
+ * <p>
+ * {@link #paint} composites all tiles which are available, and schedules the
+ * rendering of missing and invalid tiles. When a worker thread has rendered a
+ * tile, the tile is stored on the event dispatcher thread, and the area of the
+ * tile on the view is repainted. Until then, the previous contents of an
+ * invalid tile are shown.
+ * <p>
+ * Figures are not thread safe, and the drawing may be changed on the event
+ * dispatcher thread while a worker renders a tile. Therefore the worker
+ * threads do not draw the figures of the drawing. Each call of {@link #paint}
+ * which schedules tiles takes one {@link FigureSnapshot} of the figures which
+ * intersect the scheduled tiles, and the workers draw the clones of the
+ * snapshot. All tiles of the call share the snapshot, so that each figure
+ * is cloned once per call, and not once per tile. Changes to the drawing
+ * invalidate the affected tiles with {@link #invalidate}.
+ * <p>
+ * If the rendering of a tile fails, the failure is logged, and the previous
+ * contents of the tile are kept until the tile is invalidated again.
+ * <p>
+ * All methods of this class must be called on the event dispatcher thread.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class TiledDrawingRenderer {
+
+    /**
+     * A cached tile.
+     */
+    private static class Tile {
+
+        private final double scaleFactor;
+        private final int column;
+        private final int row;
+        /**
+         * The area covered by the tile in drawing coordinates.
+         */
+        private final Rectangle2D.Double drawingArea;
+        private BufferedImage image;
+        /**
+         * Incremented each time the tile is invalidated.
+         */
+        private int version;
+        /**
+         * The version of the tile which is held in the image, or -1.
+         */
+        private int renderedVersion = -1;
+        /**
+         * The version of the tile which could not be rendered, or -1.
+         */
+        private int failedVersion = -1;
+        private boolean isPending;
+
+        public Tile(double scaleFactor, int column, int row, int tileSize) {
+            this.scaleFactor = scaleFactor;
+            this.column = column;
+            this.row = row;
+            drawingArea = new Rectangle2D.Double(
+                    column * tileSize / scaleFactor, row * tileSize / scaleFactor,
+                    tileSize / scaleFactor, tileSize / scaleFactor);
+        }
+    }
+
+    /**
+     * Identifies a tile by scale factor, column and row.
+     */
+    private static class TileKey {
+
+        private final double scaleFactor;
+        private final int column;
+        private final int row;
+
+        public TileKey(double scaleFactor, int column, int row) {
+            this.scaleFactor = scaleFactor;
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey that = (TileKey) o;
+            return this.column == that.column && this.row == that.row
+                    && Double.compare(this.scaleFactor, that.scaleFactor) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(scaleFactor);
+            return (int) (bits ^ (bits >>> 32)) * 31 * 31 + column * 31 + row;
+        }
+    }
+    private static final Logger LOG = Logger.getLogger(TiledDrawingRenderer.class.getName());
+    private final DrawingView view;
+    private final int tileSize;
+    private final int maxTiles;
+    private final ExecutorService executor;
+    /**
+     * The tile cache in least recently used order.
+     */
+    private final LinkedHashMap<TileKey, Tile> tiles;
+    /**
+     * Images of evicted tiles, which can be reused by the worker threads.
+     */
+    private final ConcurrentLinkedQueue<BufferedImage> recycledImages = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a new instance with a tile size of 256 pixels, a cache of 192
+     * tiles, and one worker thread per available processor.
+     */
+    public TiledDrawingRenderer(DrawingView view) {
+        this(view, 256, 192, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param view the view on which the tiles are painted
+     * @param tileSize the width and height of a tile in pixels
+     * @param maxTiles the maximal number of tiles held in the cache
+     * @param threadCount the number of worker threads
+     */
+    public TiledDrawingRenderer(DrawingView view, int tileSize, int maxTiles, int threadCount) {
+        this.view = view;
+        this.tileSize = tileSize;
+        this.maxTiles = maxTiles;
+        this.tiles = new LinkedHashMap<TileKey, Tile>(maxTiles * 4 / 3 + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, Tile> eldest) {
+                if (size() > TiledDrawingRenderer.this.maxTiles) {
+                    recycle(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threadCount), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "TiledDrawingRenderer");
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Paints the tiles which intersect the clip bounds of the graphics, and
+     * schedules the rendering of missing and invalid tiles.
+     *
+     * @param g the graphics of the view, in view coordinates
+     * @param drawing the drawing
+     * @param scaleFactor the scale factor of the view
+     * @param translation the translation of the view
+     */
+    public void paint(Graphics2D g, Drawing drawing, double scaleFactor, Point translation) {
+        Rectangle clip = view.getComponent().getVisibleRect();
+        if (g.getClipBounds() != null) {
+            clip = clip.intersection(g.getClipBounds());
+        }
+        if (clip.isEmpty()) {
+            return;
+        }
+        RenderingHints hints = g.getRenderingHints();
+        ArrayList<Tile> scheduled = new ArrayList<>();
+        int firstColumn = Math.floorDiv(clip.x + translation.x, tileSize);
+        int firstRow = Math.floorDiv(clip.y + translation.y, tileSize);
+        int lastColumn = Math.floorDiv(clip.x + clip.width - 1 + translation.x, tileSize);
+        int lastRow = Math.floorDiv(clip.y + clip.height - 1 + translation.y, tileSize);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                TileKey key = new TileKey(scaleFactor, column, row);
+                Tile tile = tiles.get(key);
+                if (tile == null) {
+                    tile = new Tile(scaleFactor, column, row, tileSize);
+                    tiles.put(key, tile);
+                }
+                if (tile.image != null) {
+                    g.drawImage(tile.image,
+                            column * tileSize - translation.x,
+                            row * tileSize - translation.y, null);
+                }
+                if (tile.renderedVersion != tile.version && tile.failedVersion != tile.version
+                        && !tile.isPending) {
+                    scheduled.add(tile);
+                }
+            }
+        }
+        if (!scheduled.isEmpty()) {
+            Rectangle2D.Double area = (Rectangle2D.Double) scheduled.get(0).drawingArea.clone();
+            for (Tile tile : scheduled) {
+                area.add(tile.drawingArea);
+            }
+            FigureSnapshot snapshot = new FigureSnapshot(drawing, area, scaleFactor);
+            for (Tile tile : scheduled) {
+                render(tile, snapshot.getFigures(tile.drawingArea), hints);
+            }
+        }
+    }
+
+    /**
+     * Invalidates all tiles which intersect the specified area.
+     *
+     * @param r an area in drawing coordinates
+     */
+    public void invalidate(Rectangle2D.Double r) {
+        for (Tile tile : tiles.values()) {
+            // Grow the tile by two pixels to account for antialiasing
+            double grow = 2 / tile.scaleFactor;
+            Rectangle2D.Double a = tile.drawingArea;
+            if (r.x <= a.x + a.width + grow && r.y <= a.y + a.height + grow
+                    && r.x + r.width >= a.x - grow && r.y + r.height >= a.y - grow) {
+                tile.version++;
+            }
+        }
+    }
+
+    /**
+     * Invalidates all tiles.
+     */
+    public void invalidateAll() {
+        for (Tile tile : tiles.values()) {
+            tile.version++;
+        }
+    }
+
+    /**
+     * Removes all tiles from the cache.
+     */
+    public void clear() {
+        for (Tile tile : tiles.values()) {
+            recycle(tile);
+        }
+        tiles.clear();
+        recycledImages.clear();
+    }
+
+    /**
+     * Removes all tiles from the cache, and stops the worker threads.
+     */
+    public void dispose() {
+        clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Schedules the rendering of a tile on a worker thread.
+     *
+     * @param tile the tile
+     * @param figures the clones of a snapshot which intersect the tile
+     * @param hints the rendering hints
+     */
+    private void render(final Tile tile, final java.util.List<Figure> figures, final RenderingHints hints) {
+        final int version = tile.version;
+        tile.isPending = true;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                BufferedImage image = recycledImages.poll();
+                if (image == null) {
+                    image = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB_PRE);
+                }
+                boolean isRendered = false;
+                Graphics2D g = image.createGraphics();
+                try {
+                    g.setComposite(AlphaComposite.Src);
+                    g.setColor(new Color(0x0, true));
+                    g.fillRect(0, 0, tileSize, tileSize);
+                    g.setComposite(AlphaComposite.SrcOver);
+                    g.setRenderingHints(hints);
+                    g.clipRect(0, 0, tileSize, tileSize);
+                    g.translate(-tile.column * tileSize, -tile.row * tileSize);
+                    g.scale(tile.scaleFactor, tile.scaleFactor);
+                    for (Figure f : figures) {
+                        f.draw(g);
+                    }
+                    isRendered = true;
+                } catch (RuntimeException e) {
+                    LOG.log(Level.WARNING, "Failed to render tile " + tile.column + "," + tile.row
+                            + " at scale factor " + tile.scaleFactor, e);
+                } finally {
+                    g.dispose();
+                }
+                final BufferedImage renderedImage = image;
+                final boolean isFailed = !isRendered;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        tileRendered(tile, version, renderedImage, isFailed);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stores a rendered tile, and repaints its area on the view. This method
+     * is invoked on the event dispatcher thread.
+     */
+    private void tileRendered(Tile tile, int version, BufferedImage image, boolean isFailed) {
+        tile.isPending = false;
+        if (isFailed
+                || tiles.get(new TileKey(tile.scaleFactor, tile.column, tile.row)) != tile) {
+            // The tile could not be rendered, or it has been evicted from
+            // the cache
+            if (isFailed) {
+                tile.failedVersion = version;
+            }
+            recycle(image);
+            return;
+        }
+        recycle(tile);
+        tile.image = image;
+        tile.renderedVersion = version;
+        if (tile.scaleFactor == view.getScaleFactor()) {
+            Rectangle r = view.drawingToView(tile.drawingArea);
+            r.grow(1, 1);
+            view.getComponent().repaint(r);
+        }
+    }
+
+    private void recycle(Tile tile) {
+        if (tile.image != null) {
+            recycle(tile.image);
+            tile.image = null;
+        }
+    }
+
+    private void recycle(BufferedImage image) {
+        if (recycledImages.size() < maxTiles / 4) {
+            recycledImages.add(image);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * @(#)ZOrderIndex.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.geom.Point2D;
+import java.io.Serializable;
+import java.util.*;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * A z-order index over the children of a drawing or a composite figure,
+ * which is used together with a spatial index.
+ * <p>
+ * The index holds an ordinal and the layer of each child. The ordinals
+ * strictly increase along the list of children. The z-order of a child is
+ * given by its layer and then by its ordinal. This allows to sort the results
+ * of a spatial query without scanning over all children.
+ * <p>
+ * The index refers to the children by the ids which they have in the spatial
+ * index. The owner of the index updates the children list first, and then
+ * the index.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class ZOrderIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * Gap between the ordinals of two adjacent children after the ordinals
+     * have been renumbered. The gap leaves room for inserting children
+     * without having to renumber all ordinals.
+     */
+    private static final long ORDINAL_GAP = 1L << 16;
+    /**
+     * The children of the owner of the index.
+     */
+    private final java.util.List<Figure> children;
+    private HashMap<Figure, Entry> entries = new HashMap<>();
+    /**
+     * Maps the ids of the spatial index to the entries.
+     */
+    private Entry[] entriesById = new Entry[64];
+    private boolean needsSorting = false;
+
+    /**
+     * Holds the position of a child in the z-order and its id in the spatial
+     * index.
+     */
+    private static class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private final Figure figure;
+        private final int id;
+        private long ordinal;
+        private int layer;
+
+        public Entry(Figure figure, int id, long ordinal, int layer) {
+            this.figure = figure;
+            this.id = id;
+            this.ordinal = ordinal;
+            this.layer = layer;
+        }
+    }
+
+    /**
+     * Compares entries of the index.
+     */
+    private static class EntryComparator implements Comparator<Entry>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+        public static final EntryComparator INSTANCE = new EntryComparator();
+
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            return compareEntries(e1, e2);
+        }
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param children the list of children of the owner of the index. The
+     * index reads this list, and sorts it in {@link #ensureSorted}.
+     */
+    public ZOrderIndex(java.util.List<Figure> children) {
+        this.children = children;
+    }
+
+    /**
+     * Adds the child at the specified index of the children list.
+     * <p>
+     * The ordinal of the child is chosen between the ordinals of its
+     * neighbours. All ordinals are renumbered, if there is no room left
+     * between the neighbours.
+     *
+     * @param index the index of the child in the children list
+     * @param figure the child
+     * @param id the id of the child in the spatial index
+     */
+    public void add(int index, Figure figure, int id) {
+        Entry prev = (index > 0) ? entries.get(children.get(index - 1)) : null;
+        Entry next = (index < children.size() - 1) ? entries.get(children.get(index + 1)) : null;
+        int layer = figure.getLayer();
+        Entry e;
+        if (prev == null && next == null) {
+            e = new Entry(figure, id, 0, layer);
+        } else if (next == null) {
+            e = new Entry(figure, id, prev.ordinal + ORDINAL_GAP, layer);
+        } else if (prev == null) {
+            e = new Entry(figure, id, next.ordinal - ORDINAL_GAP, layer);
+        } else if (next.ordinal - prev.ordinal > 1) {
+            e = new Entry(figure, id, prev.ordinal + (next.ordinal - prev.ordinal) / 2, layer);
+        } else {
+            e = new Entry(figure, id, 0, layer);
+        }
+        entries.put(figure, e);
+        if (id >= entriesById.length) {
+            entriesById = Arrays.copyOf(entriesById, Math.max(id + 1, entriesById.length * 2));
+        }
+        entriesById[id] = e;
+        if (prev != null && next != null && next.ordinal - prev.ordinal <= 1) {
+            renumber();
+        }
+        if (prev != null && prev.layer > layer
+                || next != null && next.layer < layer) {
+            needsSorting = true;
+        }
+    }
+
+    /**
+     * Removes a child.
+     *
+     * @return the id of the child in the spatial index, or -1 if the figure
+     * is not in the index
+     */
+    public int remove(Figure figure) {
+        Entry e = entries.remove(figure);
+        if (e == null) {
+            return -1;
+        }
+        entriesById[e.id] = null;
+        return e.id;
+    }
+
+    public boolean contains(Figure figure) {
+        return entries.containsKey(figure);
+    }
+
+    /**
+     * Returns the id of the child in the spatial index, or -1 if the figure
+     * is not in the index.
+     */
+    public int getId(Figure figure) {
+        Entry e = entries.get(figure);
+        return (e == null) ? -1 : e.id;
+    }
+
+    /**
+     * Returns the child with the specified id in the spatial index.
+     */
+    public Figure getFigure(int id) {
+        return entriesById[id].figure;
+    }
+
+    /**
+     * Updates the layer of a child, after the child has changed.
+     */
+    public void updateLayer(Figure figure) {
+        Entry e = entries.get(figure);
+        if (e != null && e.layer != figure.getLayer()) {
+            e.layer = figure.getLayer();
+            needsSorting = true;
+        }
+    }
+
+    /**
+     * Sorts the children list in z-order sequence, if the layer of a child
+     * has changed.
+     */
+    public void ensureSorted() {
+        if (needsSorting) {
+            Collections.sort(children, FigureLayerComparator.INSTANCE);
+            renumber();
+            needsSorting = false;
+        }
+    }
+
+    /**
+     * Returns the figures of the collection which are in the index, sorted
+     * from back to front. The cost is proportional to the size of the
+     * collection and not to the number of children.
+     */
+    public java.util.List<Figure> sort(Collection<? extends Figure> c) {
+        ArrayList<Entry> found = new ArrayList<>(c.size());
+        for (Figure f : c) {
+            Entry e = entries.get(f);
+            if (e != null) {
+                found.add(e);
+            }
+        }
+        Collections.sort(found, EntryComparator.INSTANCE);
+        ArrayList<Figure> sorted = new ArrayList<>(found.size());
+        for (Entry e : found) {
+            sorted.add(e.figure);
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the children with the specified ids, sorted from back to
+     * front.
+     *
+     * @param ids ids of the spatial index
+     * @param count the number of ids
+     */
+    public java.util.List<Figure> sort(int[] ids, int count) {
+        Entry[] found = new Entry[count];
+        for (int i = 0; i < count; i++) {
+            found[i] = entriesById[ids[i]];
+        }
+        Arrays.sort(found, EntryComparator.INSTANCE);
+        ArrayList<Figure> sorted = new ArrayList<>(count);
+        for (Entry e : found) {
+            sorted.add(e.figure);
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the frontmost child with one of the specified ids, which
+     * contains the point and is not ignored.
+     *
+     * @param p a point
+     * @param ids ids of the spatial index
+     * @param count the number of ids
+     * @param ignore the children to ignore
+     */
+    public Figure findFrontmost(Point2D.Double p, int[] ids, int count, Collection<? extends Figure> ignore) {
+        Entry found = null;
+        for (int i = 0; i < count; i++) {
+            Entry e = entriesById[ids[i]];
+            if (!ignore.contains(e.figure)
+                    && (found == null || compareEntries(e, found) > 0) && e.figure.contains(p)) {
+                found = e;
+            }
+        }
+        return (found == null) ? null : found.figure;
+    }
+
+    /**
+     * Returns the frontmost visible child with one of the specified ids,
+     * which contains the point and is behind all of the specified figures.
+     *
+     * @param p a point
+     * @param ids ids of the spatial index
+     * @param count the number of ids
+     * @param figures the figures. If the collection is empty, all children
+     * are searched.
+     * @return the child, or null if there is no such child or if one of the
+     * figures is not in the index
+     */
+    public Figure findFrontmostBehind(Point2D.Double p, int[] ids, int count, Collection<? extends Figure> figures) {
+        Entry limit = null;
+        for (Figure f : figures) {
+            Entry e = entries.get(f);
+            if (e == null) {
+                return null;
+            }
+            if (limit == null || compareEntries(e, limit) < 0) {
+                limit = e;
+            }
+        }
+        Entry found = null;
+        for (int i = 0; i < count; i++) {
+            Entry e = entriesById[ids[i]];
+            if ((limit == null || compareEntries(e, limit) < 0)
+                    && (found == null || compareEntries(e, found) > 0)
+                    && e.figure.isVisible() && e.figure.contains(p)) {
+                found = e;
+            }
+        }
+        return (found == null) ? null : found.figure;
+    }
+
+    /**
+     * Assigns new ordinals to all children, in the sequence of the children
+     * list.
+     */
+    private void renumber() {
+        long ordinal = 0;
+        for (Figure f : children) {
+            Entry e = entries.get(f);
+            e.ordinal = ordinal;
+            e.layer = f.getLayer();
+            ordinal += ORDINAL_GAP;
+        }
+    }
+
+    /**
+     * Compares two entries. Entries are ordered by layer and then by
+     * ordinal.
+     */
+    private static int compareEntries(Entry e1, Entry e2) {
+        if (e1.layer != e2.layer) {
+            return (e1.layer < e2.layer) ? -1 : 1;
+        }
+        return Long.compare(e1.ordinal, e2.ordinal);
+    }
+}
@@ -9,6 +9,7 @@ package org.jhotdraw.draw.action;
 
 import java.awt.geom.*;
 import java.util.HashSet;
+import org.jhotdraw.draw.Drawing;
 import org.jhotdraw.draw.DrawingEditor;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.event.TransformEdit;
@@ -42,13 +43,19 @@ public abstract class MoveAction extends AbstractSelectedAction {
         AffineTransform tx = new AffineTransform();
         tx.translate(dx, dy);
         HashSet<Figure> transformedFigures = new HashSet<>();
-        for (Figure f : getView().getSelectedFigures()) {
-            if (f.isTransformable()) {
-                transformedFigures.add(f);
-                f.willChange();
-                f.transform(tx);
-                f.changed();
+        Drawing drawing = getDrawing();
+        drawing.beginChanges();
+        try {
+            for (Figure f : getView().getSelectedFigures()) {
+                if (f.isTransformable()) {
+                    transformedFigures.add(f);
+                    f.willChange();
+                    f.transform(tx);
+                    f.changed();
+                }
             }
+        } finally {
+            drawing.commitChanges();
         }
         fireUndoableEditHappened(new TransformEdit(transformedFigures, tx));
     }
@@ -43,10 +43,12 @@ public class SelectSameAction extends AbstractSelectedAction {
         for (Figure selected : getView().getSelectedFigures()) {
             selectedClasses.add(selected.getClass());
         }
+        ArrayList<Figure> figures = new ArrayList<>();
         for (Figure f : getDrawing().getChildren()) {
             if (selectedClasses.contains(f.getClass())) {
-                getView().addToSelection(f);
+                figures.add(f);
             }
         }
+        getView().addToSelection(figures);
     }
 }
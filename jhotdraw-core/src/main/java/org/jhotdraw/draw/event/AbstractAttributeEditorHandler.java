@@ -26,6 +26,9 @@ import org.jhotdraw.draw.AttributeKey;
 import org.jhotdraw.draw.DrawingEditor;
 import org.jhotdraw.draw.DrawingView;
 import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.undo.CoalescableEdit;
+import org.jhotdraw.undo.SizedEdit;
+import org.jhotdraw.undo.UndoRedoManager;
 
 /**
  * AbstractAttributeEditorHandler mediates between an AttributeEditor and the
@@ -110,7 +113,7 @@ public abstract class AbstractAttributeEditorHandler<T> implements Disposable {
     }
     private EventHandler eventHandler;
 
-    private static class UndoableAttributeEdit<T> extends AbstractUndoableEdit {
+    private static class UndoableAttributeEdit<T> extends AbstractUndoableEdit implements CoalescableEdit, SizedEdit {
 
         private static final long serialVersionUID = 1L;
         private Set<Figure> editedFigures;
@@ -156,6 +159,24 @@ public abstract class AbstractAttributeEditorHandler<T> implements Disposable {
             }
             return false;
         }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean coalesce(UndoableEdit anEdit) {
+            if (anEdit instanceof UndoableAttributeEdit) {
+                UndoableAttributeEdit<T> that = (UndoableAttributeEdit<T>) anEdit;
+                if (that.attributeKey == this.attributeKey && that.editedFigures.equals(this.editedFigures)) {
+                    this.editRedoValue = that.editRedoValue;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return 64 + 24L * editedFigures.size() + UndoRedoManager.estimateSize(editUndoData);
+        }
     }
 
     public AbstractAttributeEditorHandler(AttributeKey<T> key, AttributeEditor<T> attributeEditor, DrawingEditor drawingEditor) {
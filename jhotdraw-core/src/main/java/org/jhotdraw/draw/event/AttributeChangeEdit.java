@@ -10,15 +10,21 @@ package org.jhotdraw.draw.event;
 import org.jhotdraw.draw.figure.Figure;
 import javax.swing.undo.*;
 import org.jhotdraw.draw.*;
+import org.jhotdraw.undo.CoalescableEdit;
+import org.jhotdraw.undo.SizedEdit;
+import org.jhotdraw.undo.UndoRedoManager;
 
 /**
  * An {@code UndoableEdit} event which can undo a change of a {@link Figure}
  * attribute.
+ * <p>
+ * Consecutive changes of the same attribute of the same figure can be
+ * coalesced into a single edit.
  *
  * @author Werner Randelshofer
  * @version $Id$
  */
-public class AttributeChangeEdit<T> extends AbstractUndoableEdit {
+public class AttributeChangeEdit<T> extends AbstractUndoableEdit implements CoalescableEdit, SizedEdit {
 
     private static final long serialVersionUID = 1L;
     private Figure owner;
@@ -57,4 +63,22 @@ public class AttributeChangeEdit<T> extends AbstractUndoableEdit {
         owner.set(name, oldValue);
         owner.changed();
     }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean coalesce(UndoableEdit anEdit) {
+        if (anEdit instanceof AttributeChangeEdit) {
+            AttributeChangeEdit<T> that = (AttributeChangeEdit<T>) anEdit;
+            if (that.owner == this.owner && that.name == this.name) {
+                this.newValue = that.newValue;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return 48 + UndoRedoManager.estimateSize(oldValue) + UndoRedoManager.estimateSize(newValue);
+    }
 }
@@ -66,8 +66,18 @@ public class HandleMulticaster {
     }
 
     public void trackEnd(Point current, Point anchor, int modifiersEx, DrawingView view) {
-        for (Handle h : new ReversedList<>(handles)) {
-            h.trackEnd(current, anchor, modifiersEx);
+        Drawing drawing = (view == null) ? null : view.getDrawing();
+        if (drawing != null) {
+            drawing.beginChanges();
+        }
+        try {
+            for (Handle h : new ReversedList<>(handles)) {
+                h.trackEnd(current, anchor, modifiersEx);
+            }
+        } finally {
+            if (drawing != null) {
+                drawing.commitChanges();
+            }
         }
     }
 
@@ -83,9 +93,23 @@ public class HandleMulticaster {
         }
     }
 
+    /**
+     * Forwards a track step to the handles. The changes made by the handles
+     * are committed to the drawing as a single change transaction.
+     */
     public void trackStep(Point anchor, Point lead, int modifiersEx, DrawingView view) {
-        for (Handle h : handles) {
-            h.trackStep(anchor, lead, modifiersEx);
+        Drawing drawing = (view == null) ? null : view.getDrawing();
+        if (drawing != null) {
+            drawing.beginChanges();
+        }
+        try {
+            for (Handle h : handles) {
+                h.trackStep(anchor, lead, modifiersEx);
+            }
+        } finally {
+            if (drawing != null) {
+                drawing.commitChanges();
+            }
         }
     }
 }
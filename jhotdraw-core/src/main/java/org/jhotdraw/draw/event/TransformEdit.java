@@ -12,6 +12,8 @@ import java.awt.geom.*;
 import java.util.*;
 import javax.swing.undo.*;
 import org.jhotdraw.draw.*;
+import org.jhotdraw.undo.CoalescableEdit;
+import org.jhotdraw.undo.SizedEdit;
 import org.jhotdraw.util.*;
 
 /**
@@ -28,7 +30,7 @@ import org.jhotdraw.util.*;
  * @author Werner Randelshofer
  * @version $Id$
  */
-public class TransformEdit extends AbstractUndoableEdit {
+public class TransformEdit extends AbstractUndoableEdit implements CoalescableEdit, SizedEdit {
 
     private static final long serialVersionUID = 1L;
     private Collection<Figure> figures;
@@ -80,6 +82,28 @@ public class TransformEdit extends AbstractUndoableEdit {
         return false;
     }
 
+    /**
+     * Coalesces a following transform of the same figures, for example the
+     * next step of a repeated arrow key move.
+     */
+    @Override
+    public boolean coalesce(UndoableEdit anEdit) {
+        if (anEdit instanceof TransformEdit) {
+            TransformEdit that = (TransformEdit) anEdit;
+            if (that.figures == this.figures
+                    || (that.figures.size() == this.figures.size() && new HashSet<>(that.figures).equals(new HashSet<>(this.figures)))) {
+                this.tx.preConcatenate(that.tx);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        return 120 + 24L * figures.size();
+    }
+
     @Override
     public void redo() throws CannotRedoException {
         super.redo();
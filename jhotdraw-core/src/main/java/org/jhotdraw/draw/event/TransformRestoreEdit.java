@@ -8,9 +8,16 @@
 package org.jhotdraw.draw.event;
 
 import org.jhotdraw.draw.figure.Figure;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
 import org.jhotdraw.draw.*;
 import javax.swing.undo.*;
+import org.jhotdraw.geom.BezierPath;
 import org.jhotdraw.util.*;
+import org.jhotdraw.undo.CoalescableEdit;
+import org.jhotdraw.undo.SizedEdit;
+import org.jhotdraw.undo.UndoRedoManager;
 
 /**
  * An {@code UndoableEdit} event which can undo a lossy transform of a single
@@ -21,16 +28,40 @@ import org.jhotdraw.util.*;
  * <p>
  * The transform restore data may consume a lot of memory. Undos of lossless
  * transforms, such as translations of a figure, should use {@link TransformEdit}.
+ * <p>
+ * When the edit is created with the transform which has been applied to the
+ * figure, the edit stores only the transform instead of the restore data, if
+ * the transform can be undone with its inverse. This is the case for figures
+ * whose transform restore data is a {@link BezierPath}, because these figures
+ * transform the nodes of the path with the affine transform, and if the
+ * rounding errors of the transformed nodes, amplified by the inverse, stay
+ * within {@link #INVERSE_TOLERANCE} of the size of the path. A transform
+ * which scales the path to nearly zero is undone with the restore data.
  *
  * @author Werner Randelshofer
  * @version $Id$
  */
-public class TransformRestoreEdit extends AbstractUndoableEdit {
+public class TransformRestoreEdit extends AbstractUndoableEdit implements CoalescableEdit, SizedEdit {
 
     private static final long serialVersionUID = 1L;
+    /**
+     * The maximal error of a node, relative to the size of the path, which
+     * is allowed when the transform is undone with its inverse.
+     */
+    public static final double INVERSE_TOLERANCE = 1e-9;
     private Figure owner;
     private Object oldTransformRestoreData;
     private Object newTransformRestoreData;
+    /**
+     * The transform which has been applied to the owner, or null if the edit
+     * uses the restore data.
+     */
+    private AffineTransform tx;
+    /**
+     * The bounds of the path before the transform, or null if the edit uses
+     * the restore data.
+     */
+    private Rectangle2D.Double bounds;
 
     /**
      * Creates a new instance.
@@ -41,17 +72,118 @@ public class TransformRestoreEdit extends AbstractUndoableEdit {
         this.newTransformRestoreData = newTransformRestoreData;
     }
 
+    /**
+     * Creates a new instance for a figure, which has been transformed with
+     * the specified transform since the old transform restore data was taken.
+     * <p>
+     * If the transform can be undone with its inverse, the edit only stores
+     * the transform. Otherwise it stores the old restore data and takes the
+     * new restore data from the figure.
+     */
+    public TransformRestoreEdit(Figure owner, AffineTransform tx, Object oldTransformRestoreData) {
+        this.owner = owner;
+        Rectangle2D.Double pathBounds = (oldTransformRestoreData instanceof BezierPath)
+                ? ((BezierPath) oldTransformRestoreData).getBounds2D() : null;
+        if (pathBounds != null && isInverseAccurate(tx, pathBounds)) {
+            this.tx = (AffineTransform) tx.clone();
+            this.bounds = pathBounds;
+        } else {
+            this.oldTransformRestoreData = oldTransformRestoreData;
+            this.newTransformRestoreData = owner.getTransformRestoreData();
+        }
+    }
+
+    /**
+     * Returns true, if a path with the specified bounds is restored within
+     * {@link #INVERSE_TOLERANCE} when it is transformed with the transform
+     * and then with its inverse.
+     * <p>
+     * The transformed nodes have a rounding error of about one ulp of their
+     * magnitude. The inverse amplifies the error by the reciprocal of the
+     * smallest scale factor of the transform, which is at least
+     * {@code |det| / norm}.
+     */
+    private static boolean isInverseAccurate(AffineTransform tx, Rectangle2D.Double bounds) {
+        double size = Math.max(bounds.width, bounds.height);
+        double det = Math.abs(tx.getDeterminant());
+        if (size == 0 || det == 0 || Double.isNaN(det) || Double.isInfinite(det)) {
+            return false;
+        }
+        double norm = Math.max(Math.abs(tx.getScaleX()) + Math.abs(tx.getShearX()),
+                Math.abs(tx.getShearY()) + Math.abs(tx.getScaleY()));
+        double magnitude = Math.max(
+                Math.max(Math.abs(bounds.x), Math.abs(bounds.x + bounds.width)),
+                Math.max(Math.abs(bounds.y), Math.abs(bounds.y + bounds.height)));
+        double transformedMagnitude = norm * magnitude
+                + Math.abs(tx.getTranslateX()) + Math.abs(tx.getTranslateY());
+        double error = Math.ulp(transformedMagnitude) * norm / det;
+        return error <= INVERSE_TOLERANCE * size;
+    }
+
     @Override
     public String getPresentationName() {
         ResourceBundleUtil labels = ResourceBundleUtil.getBundle("org.jhotdraw.draw.Labels");
         return labels.getString("edit.transform.text");
     }
 
+    /**
+     * Coalesces a following transform of the same figure. The coalesced edit
+     * keeps the old state of this edit and the new state of the following
+     * edit. An edit which stores a transform can only coalesce a following
+     * edit which stores a transform, and only if the combined transform can
+     * still be undone with its inverse.
+     */
+    @Override
+    public boolean coalesce(UndoableEdit anEdit) {
+        if (anEdit instanceof TransformRestoreEdit) {
+            TransformRestoreEdit that = (TransformRestoreEdit) anEdit;
+            if (that.owner != this.owner) {
+                return false;
+            }
+            if (this.tx == null) {
+                this.newTransformRestoreData = (that.tx == null) ? that.newTransformRestoreData : owner.getTransformRestoreData();
+                return true;
+            }
+            if (that.tx != null) {
+                AffineTransform combined = (AffineTransform) this.tx.clone();
+                combined.preConcatenate(that.tx);
+                if (isInverseAccurate(combined, bounds)) {
+                    this.tx = combined;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getEstimatedSize() {
+        if (tx != null) {
+            return 80 + UndoRedoManager.estimateSize(tx);
+        }
+        return 48 + UndoRedoManager.estimateSize(oldTransformRestoreData)
+                + UndoRedoManager.estimateSize(newTransformRestoreData);
+    }
+
     @Override
     public void undo() throws CannotUndoException {
         super.undo();
+        AffineTransform inverse = null;
+        if (tx != null) {
+            try {
+                inverse = tx.createInverse();
+            } catch (NoninvertibleTransformException e) {
+                CannotUndoException error = new CannotUndoException();
+                error.initCause(e);
+                throw error;
+            }
+        }
         owner.willChange();
-        owner.restoreTransformTo(oldTransformRestoreData);
+        if (inverse == null) {
+            owner.restoreTransformTo(oldTransformRestoreData);
+        } else {
+            owner.transform(inverse);
+        }
         owner.changed();
     }
 
@@ -59,7 +191,11 @@ public class TransformRestoreEdit extends AbstractUndoableEdit {
     public void redo() throws CannotRedoException {
         super.redo();
         owner.willChange();
-        owner.restoreTransformTo(newTransformRestoreData);
+        if (tx == null) {
+            owner.restoreTransformTo(newTransformRestoreData);
+        } else {
+            owner.transform(tx);
+        }
         owner.changed();
     }
 }
@@ -13,6 +13,7 @@ import java.io.*;
 import java.util.*;
 import org.jhotdraw.draw.AttributeKey;
 import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.CompactAttributeMap;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.geom.Dimension2DDouble;
 import org.jhotdraw.geom.Geom;
@@ -29,7 +30,7 @@ import org.jhotdraw.xml.DOMOutput;
 public abstract class AbstractAttributedCompositeFigure extends AbstractCompositeFigure {
 
     private static final long serialVersionUID = 1L;
-    private HashMap<AttributeKey<?>, Object> attributes = new HashMap<>();
+    private CompactAttributeMap attributes = new CompactAttributeMap();
     /**
      * Forbidden attributes can't be put by the put() operation.
      * They can only be changed by put().
@@ -62,6 +63,7 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
         for (Map.Entry<AttributeKey<?>, Object> entry : map.entrySet()) {
             set((AttributeKey<Object>) entry.getKey(), entry.getValue());
         }
+        attributes.intern();
     }
 
     @Override
@@ -198,7 +200,7 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
     @Override
     public AbstractAttributedCompositeFigure clone() {
         AbstractAttributedCompositeFigure that = (AbstractAttributedCompositeFigure) super.clone();
-        that.attributes = new HashMap<>(this.attributes);
+        that.attributes = this.attributes.clone();
         if (this.forbiddenAttributes != null) {
             that.forbiddenAttributes = new HashSet<>(this.forbiddenAttributes);
         }
@@ -250,6 +252,7 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractComposit
                 in.closeElement();
             }
             in.closeElement();
+            attributes.intern();
         }
     }
 
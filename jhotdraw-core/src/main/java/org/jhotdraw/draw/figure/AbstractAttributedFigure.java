@@ -13,6 +13,8 @@ import java.io.*;
 import java.util.*;
 import org.jhotdraw.draw.AttributeKey;
 import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.CompactAttributeMap;
+import org.jhotdraw.draw.LevelOfDetailPolicy;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.geom.Dimension2DDouble;
 import org.jhotdraw.geom.Geom;
@@ -34,12 +36,16 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
     /**
      * Holds the attributes of the figure.
      */
-    private HashMap<AttributeKey<?>, Object> attributes = new HashMap<>();
+    private CompactAttributeMap attributes = new CompactAttributeMap();
     /**
      * Forbidden attributes can't be put by the put() operation. They can only
      * be changed by put().
      */
     private HashSet<AttributeKey<?>> forbiddenAttributes;
+    /**
+     * Caches the shape returned by {@link #getCachedHitShape}.
+     */
+    private transient Shape cachedHitShape;
 
     /**
      * Creates a new instance.
@@ -67,6 +73,7 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
         for (Map.Entry<AttributeKey<?>, Object> entry : map.entrySet()) {
             set((AttributeKey<Object>) entry.getKey(), entry.getValue());
         }
+        attributes.intern();
     }
 
     @Override
@@ -74,17 +81,51 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
         return (Map<AttributeKey<?>, Object>) new HashMap<>(attributes);
     }
 
+    /**
+     * Returns a copy-on-write snapshot of the attributes. The snapshot
+     * shares its storage with the attributes of the figure. When an attribute
+     * of the figure is changed afterwards, only the array of values is
+     * copied, so the snapshot retains little more than the changed values.
+     */
     @Override
     public Object getAttributesRestoreData() {
-        return getAttributes();
+        return attributes.clone();
     }
 
+    /**
+     * Restores the attributes from a snapshot.
+     * <p>
+     * Only the attributes which differ from the snapshot are changed. They
+     * are changed with {@link #set}, so that subclasses can update the state
+     * which they derive from their attributes. Attributes which are not in
+     * the snapshot are removed.
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public void restoreAttributesTo(Object restoreData) {
-        attributes.clear();
-        @SuppressWarnings("unchecked")
-        HashMap<AttributeKey<?>, Object> restoreDataHashMap = (HashMap<AttributeKey<?>, Object>) restoreData;
-        setAttributes(restoreDataHashMap);
+        if (!(restoreData instanceof CompactAttributeMap)) {
+            attributes.clear();
+            setAttributes((Map<AttributeKey<?>, Object>) restoreData);
+            return;
+        }
+        CompactAttributeMap snapshot = (CompactAttributeMap) restoreData;
+        ArrayList<AttributeKey<?>> removedKeys = new ArrayList<>();
+        for (AttributeKey<?> key : attributes.keySet()) {
+            if (!snapshot.containsKey(key)) {
+                removedKeys.add(key);
+            }
+        }
+        for (AttributeKey<?> key : removedKeys) {
+            Object oldValue = attributes.remove(key);
+            cachedHitShape = null;
+            fireAttributeChanged((AttributeKey<Object>) key, oldValue, null);
+        }
+        for (Map.Entry<AttributeKey<?>, Object> entry : snapshot.entrySet()) {
+            AttributeKey<Object> key = (AttributeKey<Object>) entry.getKey();
+            if (!attributes.containsKey(key) || attributes.get(key) != entry.getValue()) {
+                set(key, entry.getValue());
+            }
+        }
     }
 
     /**
@@ -97,6 +138,9 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
                 || !forbiddenAttributes.contains(key)) {
             @SuppressWarnings("unchecked")
             T oldValue = key.put(attributes, newValue);
+            if (oldValue != newValue) {
+                cachedHitShape = null;
+            }
             fireAttributeChanged(key, oldValue, newValue);
         }
     }
@@ -111,6 +155,11 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
 
     @Override
     public void draw(Graphics2D g) {
+        LevelOfDetailPolicy lod = LevelOfDetailPolicy.getPolicy(g);
+        if (lod != null && lod.isProxy(g, this)) {
+            lod.drawProxy(g, this, get(FILL_COLOR) != null ? get(FILL_COLOR) : get(STROKE_COLOR));
+            return;
+        }
         if (get(FILL_COLOR) != null) {
             g.setColor(get(FILL_COLOR));
             drawFill(g);
@@ -120,7 +169,7 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
             g.setColor(get(STROKE_COLOR));
             drawStroke(g);
         }
-        if (get(TEXT_COLOR) != null) {
+        if (get(TEXT_COLOR) != null && (lod == null || lod.isTextVisible(g, this))) {
             if (get(TEXT_SHADOW_COLOR) != null
                     && get(TEXT_SHADOW_OFFSET) != null) {
                 Dimension2DDouble d = get(TEXT_SHADOW_OFFSET);
@@ -159,6 +208,40 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
         return r;
     }
 
+    /**
+     * Returns the shape which is used for hit testing the figure. The shape
+     * is created by {@link #createHitShape} on first use, and is discarded
+     * when the figure is invalidated or validated, or when an attribute
+     * changes.
+     */
+    protected Shape getCachedHitShape() {
+        if (cachedHitShape == null) {
+            cachedHitShape = createHitShape();
+        }
+        return cachedHitShape;
+    }
+
+    /**
+     * Creates the shape which is used for hit testing the figure. Subclasses
+     * which call {@link #getCachedHitShape} must override this method. This
+     * implementation returns the bounds of the figure.
+     */
+    protected Shape createHitShape() {
+        return getBounds();
+    }
+
+    @Override
+    protected void invalidate() {
+        super.invalidate();
+        cachedHitShape = null;
+    }
+
+    @Override
+    protected void validate() {
+        super.validate();
+        cachedHitShape = null;
+    }
+
     /**
      * This method is called by method draw() to draw the fill area of the
      * figure. AbstractAttributedFigure configures the Graphics2D object with
@@ -187,7 +270,8 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
     @Override
     public AbstractAttributedFigure clone() {
         AbstractAttributedFigure that = (AbstractAttributedFigure) super.clone();
-        that.attributes = new HashMap<>(this.attributes);
+        that.attributes = this.attributes.clone();
+        that.cachedHitShape = null;
         if (this.forbiddenAttributes != null) {
             that.forbiddenAttributes = new HashSet<>(this.forbiddenAttributes);
         }
@@ -241,6 +325,7 @@ public abstract class AbstractAttributedFigure extends AbstractFigure implements
                 in.closeElement();
             }
             in.closeElement();
+            attributes.intern();
         }
     }
 
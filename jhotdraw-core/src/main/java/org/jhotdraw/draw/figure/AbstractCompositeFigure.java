@@ -528,7 +528,7 @@ public abstract class AbstractCompositeFigure
     @Override
     public void read(DOMInput in) throws IOException {
         in.openElement("children");
-        for (int i = 0; i < in.getElementCount(); i++) {
+        for (int i = 0; in.hasElement(i); i++) {
             basicAdd((Figure) in.readObject(i));
         }
         in.closeElement();
@@ -16,6 +16,7 @@ import javax.swing.undo.*;
 import org.jhotdraw.draw.AttributeKey;
 import org.jhotdraw.draw.AttributeKeys;
 import org.jhotdraw.draw.DrawingView;
+import org.jhotdraw.draw.LevelOfDetailPolicy;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.draw.connector.ChopBezierConnector;
 import org.jhotdraw.draw.connector.Connector;
@@ -27,6 +28,7 @@ import org.jhotdraw.draw.handle.TransformHandleKit;
 import org.jhotdraw.geom.BezierPath;
 import org.jhotdraw.geom.Geom;
 import org.jhotdraw.geom.GrowStroke;
+import org.jhotdraw.geom.PackedBezierPath;
 import org.jhotdraw.util.*;
 import org.jhotdraw.xml.DOMInput;
 import org.jhotdraw.xml.DOMOutput;
@@ -130,7 +132,7 @@ public class BezierFigure extends AbstractAttributedFigure {
     }
 
     protected void drawCaps(Graphics2D g) {
-        if (getNodeCount() > 1) {
+        if (getNodeCount() > 1 && LevelOfDetailPolicy.isDecorationDrawn(g, this)) {
             if (get(START_DECORATION) != null) {
                 BezierPath cp = getCappedPath();
                 Point2D.Double p1 = path.get(0, 0);
@@ -174,11 +176,7 @@ public class BezierFigure extends AbstractAttributedFigure {
             if (path.contains(p)) {
                 return true;
             }
-            double grow = AttributeKeys.getPerpendicularHitGrowth(this, 1.0) * 2d;
-            GrowStroke gs = new GrowStroke(grow,
-                    AttributeKeys.getStrokeTotalWidth(this, 1.0)
-                    * get(STROKE_MITER_LIMIT));
-            if (gs.createStrokedShape(path).contains(p)) {
+            if (getCachedHitShape().contains(p)) {
                 return true;
             } else {
                 if (isClosed()) {
@@ -272,10 +270,43 @@ public class BezierFigure extends AbstractAttributedFigure {
     }
 
     public void setBezierPath(BezierPath newValue) {
-        path = newValue.clone();
+        path = isPackedPath() ? new PackedBezierPath(newValue) : newValue.clone();
         this.setClosed(newValue.isClosed());
     }
 
+    /**
+     * Sets whether this figure stores its bezier path in a
+     * {@link PackedBezierPath}. A packed path takes less memory and is faster
+     * to transform, which pays off for paths with a large number of nodes.
+     * <p>
+     * The nodes of a packed path can not be changed in place. Subclasses
+     * which change the nodes returned by {@code BezierPath.get} must reject
+     * packed paths, like {@link LineConnectionFigure} does.
+     */
+    public void setPackedPath(boolean newValue) {
+        if (newValue != isPackedPath()) {
+            path = newValue ? new PackedBezierPath(path) : ((PackedBezierPath) path).toBezierPath();
+            invalidate();
+        }
+    }
+
+    /**
+     * Returns true, if this figure stores its bezier path in a
+     * {@link PackedBezierPath}.
+     */
+    public boolean isPackedPath() {
+        return path instanceof PackedBezierPath;
+    }
+
+    /**
+     * Returns true, if the outline of the bezier path of this figure contains
+     * the specified point. Unlike {@link #contains}, this method does not
+     * take the stroke or the decorations of the figure into account.
+     */
+    public boolean outlineContains(Point2D.Double p, double tolerance) {
+        return path.outlineContains(p, tolerance);
+    }
+
     public Point2D.Double getPointOnPath(float relative, double flatness) {
         return path.getPointOnPath(relative, flatness);
     }
@@ -318,6 +349,19 @@ public class BezierFigure extends AbstractAttributedFigure {
         invalidate();
     }
 
+    /**
+     * Returns the area of the path grown by the hit growth. This shape is
+     * used for hit testing closed and filled paths.
+     */
+    @Override
+    protected Shape createHitShape() {
+        double grow = AttributeKeys.getPerpendicularHitGrowth(this, 1.0) * 2d;
+        GrowStroke gs = new GrowStroke(grow,
+                AttributeKeys.getStrokeTotalWidth(this, 1.0)
+                * get(STROKE_MITER_LIMIT));
+        return gs.createStrokedShape(path);
+    }
+
     @Override
     public void invalidate() {
         super.invalidate();
@@ -432,6 +476,7 @@ public class BezierFigure extends AbstractAttributedFigure {
             node.x[i] += dx;
             node.y[i] += dy;
         }
+        path.set(index, node);
         invalidate();
     }
 
@@ -552,7 +597,9 @@ public class BezierFigure extends AbstractAttributedFigure {
      * Removes the Node at the specified index.
      */
     public BezierPath.Node removeNode(int index) {
-        return path.remove(index);
+        BezierPath.Node node = path.remove(index);
+        invalidate();
+        return node;
     }
 
     /**
@@ -560,6 +607,7 @@ public class BezierFigure extends AbstractAttributedFigure {
      */
     protected void removeAllNodes() {
         path.clear();
+        invalidate();
     }
 
     /**
@@ -580,6 +628,7 @@ public class BezierFigure extends AbstractAttributedFigure {
     @Override
     public void restoreTransformTo(Object geometry) {
         path.setTo((BezierPath) geometry);
+        invalidate();
     }
 
     @Override
@@ -366,6 +366,29 @@ public class LineConnectionFigure extends LineFigure
         return that;
     }
 
+    /**
+     * Removes the listeners which this connection has registered on its
+     * start and end figures, and drops its connectors. The path of the
+     * connection is kept. Unlike {@link #setStartConnector} and
+     * {@link #setEndConnector}, this method does not invoke
+     * {@link #handleDisconnect}, and thus does not change the connected
+     * figures.
+     * <p>
+     * This is used for clones which are only drawn, such as the figures of a
+     * {@link org.jhotdraw.draw.FigureSnapshot}. {@link #clone} registers the
+     * clone on the connected figures of this connection.
+     */
+    public void detachFromConnectedFigures() {
+        if (startConnector != null) {
+            getStartFigure().removeFigureListener(connectionHandler);
+            startConnector = null;
+        }
+        if (endConnector != null) {
+            getEndFigure().removeFigureListener(connectionHandler);
+            endConnector = null;
+        }
+    }
+
     @Override
     public void remap(Map<Figure, Figure> oldToNew, boolean disconnectIfNotInMap) {
         willChange();
@@ -501,6 +524,20 @@ public class LineConnectionFigure extends LineFigure
         out.closeElement();
     }
 
+    /**
+     * Line connections do not support packed paths, because the liners
+     * change the nodes of the path in place.
+     *
+     * @throws UnsupportedOperationException if newValue is true
+     */
+    @Override
+    public void setPackedPath(boolean newValue) {
+        if (newValue) {
+            throw new UnsupportedOperationException("LineConnectionFigure does not support packed paths.");
+        }
+        super.setPackedPath(newValue);
+    }
+
     @Override
     public void setLiner(Liner newValue) {
         Liner oldValue = liner;
@@ -11,12 +11,12 @@ import java.awt.*;
 import java.awt.geom.*;
 import java.util.*;
 import javax.swing.event.*;
-import org.jhotdraw.draw.FigureLayerComparator;
+import org.jhotdraw.draw.ZOrderIndex;
 import static org.jhotdraw.draw.AttributeKeys.*;
 import org.jhotdraw.draw.event.FigureAdapter;
 import org.jhotdraw.draw.event.FigureEvent;
 import org.jhotdraw.geom.Dimension2DDouble;
-import org.jhotdraw.geom.QuadTree;
+import org.jhotdraw.geom.PackedQuadTree;
 import org.jhotdraw.util.*;
 
 /**
@@ -30,8 +30,18 @@ public abstract class QuadTreeCompositeFigure
         extends AbstractCompositeFigure {
 
     private static final long serialVersionUID = 1L;
-    private QuadTree<Figure> quadTree = new QuadTree<>();
-    private boolean needsSorting = false;
+    /**
+     * The spatial index. Holds the drawing area of each child.
+     */
+    private PackedQuadTree quadTree = new PackedQuadTree();
+    /**
+     * The z-order index. Maps the ids of the spatial index to the children.
+     */
+    private ZOrderIndex zOrder = new ZOrderIndex(children);
+    /**
+     * Receives the ids found by point queries on the spatial index.
+     */
+    private transient int[] queryBuffer;
     private FigureHandler figureHandler;
     private Dimension2DDouble canvasSize;
 
@@ -54,18 +64,19 @@ public abstract class QuadTreeCompositeFigure
     @Override
     public void basicAdd(int index, Figure figure) {
         children.add(index, figure);
-        quadTree.add(figure, figure.getDrawingArea());
+        zOrder.add(index, figure, quadTree.add(figure.getDrawingArea()));
         figure.addFigureListener(figureHandler);
-        needsSorting = true;
     }
 
     @Override
     public Figure basicRemoveChild(int index) {
         Figure figure = children.get(index);
         children.remove(index);
-        quadTree.remove(figure);
+        int id = zOrder.remove(figure);
+        if (id != -1) {
+            quadTree.remove(id);
+        }
         figure.removeFigureListener(figureHandler);
-        needsSorting = true;
         return figure;
     }
 
@@ -73,9 +84,7 @@ public abstract class QuadTreeCompositeFigure
     public void draw(Graphics2D g) {
         Rectangle2D clipBounds = g.getClipBounds();
         if (clipBounds != null) {
-            Collection<Figure> c = quadTree.findIntersects(clipBounds);
-            Collection<Figure> toDraw = sort(c);
-            draw(g, toDraw);
+            draw(g, findIntersects(clipBounds));
         } else {
             draw(g, children);
         }
@@ -85,14 +94,7 @@ public abstract class QuadTreeCompositeFigure
      * Implementation note: Sorting can not be done for orphaned children.
      */
     public java.util.List<Figure> sort(Collection<Figure> c) {
-        ensureSorted();
-        ArrayList<Figure> sorted = new ArrayList<>(c.size());
-        for (Figure f : children) {
-            if (c.contains(f)) {
-                sorted.add(f);
-            }
-        }
-        return sorted;
+        return zOrder.sort(c);
     }
 
     public void draw(Graphics2D g, Collection<Figure> c) {
@@ -102,7 +104,17 @@ public abstract class QuadTreeCompositeFigure
     }
 
     public java.util.List<Figure> getFigures(Rectangle2D.Double bounds) {
-        return new LinkedList<>(quadTree.findInside(bounds));
+        int[] ids = new int[32];
+        int count = quadTree.findInside(bounds.x, bounds.y, bounds.width, bounds.height, ids);
+        if (count > ids.length) {
+            ids = new int[count];
+            quadTree.findInside(bounds.x, bounds.y, bounds.width, bounds.height, ids);
+        }
+        LinkedList<Figure> figures = new LinkedList<>();
+        for (int i = 0; i < count; i++) {
+            figures.add(zOrder.getFigure(ids[i]));
+        }
+        return figures;
     }
 
     @Override
@@ -112,9 +124,9 @@ public abstract class QuadTreeCompositeFigure
 
     @Override
     public Figure findFigureInside(Point2D.Double p) {
-        Collection<Figure> c = quadTree.findContains(p);
-        for (Figure f : getFiguresFrontToBack()) {
-            if (c.contains(f) && f.contains(p)) {
+        int count = findContains(p);
+        for (Figure f : new ReversedList<>(zOrder.sort(queryBuffer, count))) {
+            if (f.contains(p)) {
                 return f.findFigureInside(p);
             }
         }
@@ -126,106 +138,37 @@ public abstract class QuadTreeCompositeFigure
      * Z-order front to back over the children.
      */
     public java.util.List<Figure> getFiguresFrontToBack() {
-        ensureSorted();
+        zOrder.ensureSorted();
         return new ReversedList<>(children);
     }
 
     public Figure findFigure(Point2D.Double p) {
-        Collection<Figure> c = quadTree.findContains(p);
-        switch (c.size()) {
-            case 0:
-                return null;
-            case 1: 
-                Figure f = c.iterator().next();
-                return (f.contains(p)) ? f : null;
-            
-            default: 
-                for (Figure f2 : getFiguresFrontToBack()) {
-                    if (c.contains(f2) && f2.contains(p)) {
-                        return f2;
-                    }
-                }
-                return null;
-            
-        }
+        int count = findContains(p);
+        return zOrder.findFrontmost(p, queryBuffer, count, Collections.<Figure>emptySet());
     }
 
     public Figure findFigureExcept(Point2D.Double p, Figure ignore) {
-        Collection<Figure> c = quadTree.findContains(p);
-        switch (c.size()) {
-            case 0: 
-                return null;
-            case 1: 
-                Figure f = c.iterator().next();
-                return (f == ignore || !f.contains(p)) ? null : f;
-            default: 
-                for (Figure f2 : getFiguresFrontToBack()) {
-                    if (f2 != ignore && f2.contains(p)) {
-                        return f2;
-                    }
-                }
-                return null;
-        }
+        int count = findContains(p);
+        return zOrder.findFrontmost(p, queryBuffer, count, Collections.singleton(ignore));
     }
 
     public Figure findFigureExcept(Point2D.Double p, Collection<Figure> ignore) {
-        Collection<Figure> c = quadTree.findContains(p);
-        switch (c.size()) {
-            case 0:
-                return null;
-            case 1:
-                Figure f = c.iterator().next();
-                return (!ignore.contains(f) || !f.contains(p)) ? null : f;
-            default:
-                for (Figure f2 : getFiguresFrontToBack()) {
-                    if (!ignore.contains(f2) && f2.contains(p)) {
-                        return f2;
-                    }
-                }
-                return null;
-        }
+        int count = findContains(p);
+        return zOrder.findFrontmost(p, queryBuffer, count, ignore);
     }
 
     public Figure findFigureBehind(Point2D.Double p, Figure figure) {
-        boolean isBehind = false;
-        for (Figure f : getFiguresFrontToBack()) {
-            if (isBehind) {
-                if (f.isVisible() && f.contains(p)) {
-                    return f;
-                }
-            } else {
-                isBehind = figure == f;
-            }
-        }
-        return null;
+        int count = findContains(p);
+        return zOrder.findFrontmostBehind(p, queryBuffer, count, Collections.singleton(figure));
     }
 
     public Figure findFigureBehind(Point2D.Double p, Collection<Figure> figures) {
-        int inFrontOf = figures.size();
-        for (Figure f : getFiguresFrontToBack()) {
-            if (inFrontOf == 0) {
-                if (f.isVisible() && f.contains(p)) {
-                    return f;
-                }
-            } else {
-                if (figures.contains(f)) {
-                    inFrontOf--;
-                }
-            }
-        }
-        return null;
+        int count = findContains(p);
+        return zOrder.findFrontmostBehind(p, queryBuffer, count, figures);
     }
 
     public java.util.List<Figure> findFigures(Rectangle2D.Double r) {
-        LinkedList<Figure> c = new LinkedList<>(quadTree.findIntersects(r));
-        switch (c.size()) {
-            case 0:
-            // fall through
-            case 1:
-                return c;
-            default:
-                return sort(c);
-        }
+        return findIntersects(r);
     }
 
     public java.util.List<Figure> findFiguresWithin(Rectangle2D.Double bounds) {
@@ -246,7 +189,7 @@ public abstract class QuadTreeCompositeFigure
     public void bringToFront(Figure figure) {
         if (children.remove(figure)) {
             children.add(figure);
-            needsSorting = true;
+            zOrder.add(children.size() - 1, figure, zOrder.remove(figure));
             fireAreaInvalidated(figure.getDrawingArea());
         }
     }
@@ -255,24 +198,66 @@ public abstract class QuadTreeCompositeFigure
     public void sendToBack(Figure figure) {
         if (children.remove(figure)) {
             children.add(0, figure);
-            needsSorting = true;
+            zOrder.add(0, figure, zOrder.remove(figure));
             fireAreaInvalidated(figure.getDrawingArea());
         }
     }
 
     @Override
     public boolean contains(Figure f) {
-        return children.contains(f);
+        return zOrder.contains(f);
+    }
+
+    /**
+     * Finds the children whose drawing area contains the specified point.
+     * The ids of the children are written into {@code queryBuffer}.
+     *
+     * @return the number of ids
+     */
+    private int findContains(Point2D.Double p) {
+        if (queryBuffer == null) {
+            queryBuffer = new int[32];
+        }
+        int count = quadTree.findContains(p.x, p.y, queryBuffer);
+        if (count > queryBuffer.length) {
+            queryBuffer = new int[Math.max(count, queryBuffer.length * 2)];
+            quadTree.findContains(p.x, p.y, queryBuffer);
+        }
+        return count;
     }
 
     /**
-     * Ensures that the children are sorted in z-order sequence.
+     * Returns the children whose drawing area intersects the specified
+     * rectangle, sorted in z-order.
      */
-    private void ensureSorted() {
-        if (needsSorting) {
-            Collections.sort(children, FigureLayerComparator.INSTANCE);
-            needsSorting = false;
+    private java.util.List<Figure> findIntersects(Rectangle2D r) {
+        double x = r.getX();
+        double y = r.getY();
+        double w = r.getWidth();
+        double h = r.getHeight();
+        int[] ids = new int[256];
+        int count = quadTree.findIntersects(x, y, w, h, ids);
+        if (count > ids.length) {
+            ids = new int[count];
+            quadTree.findIntersects(x, y, w, h, ids);
+        }
+        return zOrder.sort(ids, count);
+    }
+
+    @Override
+    public QuadTreeCompositeFigure clone() {
+        QuadTreeCompositeFigure that = (QuadTreeCompositeFigure) super.clone();
+        that.figureHandler = that.createFigureHandler();
+        that.quadTree = new PackedQuadTree();
+        that.zOrder = new ZOrderIndex(that.children);
+        that.queryBuffer = null;
+        for (int i = 0, n = that.children.size(); i < n; i++) {
+            Figure f = that.children.get(i);
+            f.removeFigureListener(that.eventHandler);
+            f.addFigureListener(that.figureHandler);
+            that.zOrder.add(i, f, that.quadTree.add(f.getDrawingArea()));
         }
+        return that;
     }
 
     public void setCanvasSize(Dimension2DDouble newValue) {
@@ -306,9 +291,12 @@ public abstract class QuadTreeCompositeFigure
 
         @Override
         public void figureChanged(FigureEvent e) {
-            quadTree.remove(e.getFigure());
-            quadTree.add(e.getFigure(), e.getFigure().getDrawingArea());
-            needsSorting = true;
+            Figure f = e.getFigure();
+            int id = zOrder.getId(f);
+            if (id != -1) {
+                quadTree.update(id, f.getDrawingArea());
+                zOrder.updateLayer(f);
+            }
             if (!isChanging()) {
                 fireAreaInvalidated(e.getInvalidatedArea());
             }
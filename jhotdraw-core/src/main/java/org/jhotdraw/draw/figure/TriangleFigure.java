@@ -187,6 +187,11 @@ public class TriangleFigure extends AbstractAttributedFigure {
      */
     @Override
     public boolean contains(Point2D.Double p) {
+        return getCachedHitShape().contains(p);
+    }
+
+    @Override
+    protected Shape createHitShape() {
         Shape triangle = getBezierPath();
         double grow = AttributeKeys.getPerpendicularHitGrowth(this, 1.0);
         if (grow != 0d) {
@@ -196,7 +201,7 @@ public class TriangleFigure extends AbstractAttributedFigure {
             );
             triangle = gs.createStrokedShape(triangle);
         }
-        return triangle.contains(p);
+        return triangle;
     }
 
     @Override
@@ -205,6 +210,7 @@ public class TriangleFigure extends AbstractAttributedFigure {
         rectangle.y = Math.min(anchor.y, lead.y);
         rectangle.width = Math.max(0.1, Math.abs(lead.x - anchor.x));
         rectangle.height = Math.max(0.1, Math.abs(lead.y - anchor.y));
+        invalidate();
     }
 
     @Override
@@ -280,6 +286,7 @@ public class TriangleFigure extends AbstractAttributedFigure {
         rectangle.y = r.y;
         rectangle.width = r.width;
         rectangle.height = r.height;
+        invalidate();
     }
 
     @Override
@@ -141,7 +141,7 @@ public abstract class AbstractRotateHandle extends AbstractHandle {
     @Override
     public void trackEnd(Point anchor, Point lead, int modifiersEx) {
         view.getDrawing().fireUndoableEditHappened(
-                new TransformRestoreEdit(getOwner(), restoreData, getOwner().getTransformRestoreData()));
+                new TransformRestoreEdit(getOwner(), transform, restoreData));
         fireAreaInvalidated(getDrawingArea());
         location = null;
         invalidate();
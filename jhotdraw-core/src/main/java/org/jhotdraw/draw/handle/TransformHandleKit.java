@@ -14,6 +14,7 @@ import java.awt.geom.*;
 import java.util.*;
 import org.jhotdraw.draw.*;
 import static org.jhotdraw.draw.AttributeKeys.*;
+import javax.swing.undo.UndoableEdit;
 import org.jhotdraw.draw.event.TransformRestoreEdit;
 import static org.jhotdraw.draw.handle.HandleAttributeKeys.*;
 import org.jhotdraw.draw.locator.Locator;
@@ -148,6 +149,11 @@ public class TransformHandleKit {
          * Caches the value returned by getOwner().isTransformable():
          */
         private boolean isTransformableCache;
+        /**
+         * The transforms which have been applied to the owner since
+         * {@link #startTransform} was called.
+         */
+        private AffineTransform appliedTransform = new AffineTransform();
 
         TransformHandle(Figure owner, Locator loc) {
             super(owner, loc);
@@ -201,7 +207,7 @@ public class TransformHandleKit {
             if (!isTransformableCache) {
                 return;
             }
-            geometry = getOwner().getTransformRestoreData();
+            geometry = startTransform();
             Point location = getLocation();
             dx = -anchor.x + location.x;
             dy = -anchor.y + location.y;
@@ -225,12 +231,29 @@ public class TransformHandleKit {
                 return;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geometry, getOwner().getTransformRestoreData()));
+                    createTransformEdit(geometry));
         }
 
         protected void trackStepNormalized(Point2D.Double p) {
         }
 
+        /**
+         * Returns the transform restore data of the owner, and starts to
+         * record the transforms which are applied to the owner.
+         */
+        protected Object startTransform() {
+            appliedTransform.setToIdentity();
+            return getOwner().getTransformRestoreData();
+        }
+
+        /**
+         * Creates an edit which undoes the transforms which have been applied
+         * to the owner since {@link #startTransform} was called.
+         */
+        protected UndoableEdit createTransformEdit(Object restoreData) {
+            return new TransformRestoreEdit(getOwner(), appliedTransform, restoreData);
+        }
+
         protected void transform(Point2D.Double anchor, Point2D.Double lead) {
             Figure f = getOwner();
             f.willChange();
@@ -248,13 +271,16 @@ public class TransformHandleKit {
                     && (sx != 1d || sy != 1d)
                     && !(sx < 0.0001) && !(sy < 0.0001)) {
                 f.transform(tx);
+                appliedTransform.preConcatenate(tx);
                 tx.setToIdentity();
                 tx.scale(sx, sy);
                 f.transform(tx);
+                appliedTransform.preConcatenate(tx);
                 tx.setToIdentity();
             }
             tx.translate(newBounds.x, newBounds.y);
             f.transform(tx);
+            appliedTransform.preConcatenate(tx);
             f.changed();
         }
     }
@@ -279,7 +305,7 @@ public class TransformHandleKit {
                 evt.consume();
                 return;
             }
-            Object geom = getOwner().getTransformRestoreData();
+            Object geom = startTransform();
             Rectangle2D.Double r = getTransformedBounds();
             switch (evt.getKeyCode()) {
                 case KeyEvent.VK_UP:
@@ -312,7 +338,7 @@ public class TransformHandleKit {
                     break;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geom, getOwner().getTransformRestoreData()));
+                    createTransformEdit(geom));
         }
 
         @Override
@@ -342,7 +368,7 @@ public class TransformHandleKit {
                 evt.consume();
                 return;
             }
-            Object geom = getOwner().getTransformRestoreData();
+            Object geom = startTransform();
             Rectangle2D.Double r = getTransformedBounds();
             switch (evt.getKeyCode()) {
                 case KeyEvent.VK_UP:
@@ -367,7 +393,7 @@ public class TransformHandleKit {
                     break;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geom, getOwner().getTransformRestoreData()));
+                    createTransformEdit(geom));
         }
 
         @Override
@@ -396,7 +422,7 @@ public class TransformHandleKit {
                 evt.consume();
                 return;
             }
-            Object geom = getOwner().getTransformRestoreData();
+            Object geom = startTransform();
             Rectangle2D.Double r = getTransformedBounds();
             switch (evt.getKeyCode()) {
                 case KeyEvent.VK_UP:
@@ -421,7 +447,7 @@ public class TransformHandleKit {
                     break;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geom, getOwner().getTransformRestoreData()));
+                    createTransformEdit(geom));
         }
 
         @Override
@@ -450,7 +476,7 @@ public class TransformHandleKit {
                 evt.consume();
                 return;
             }
-            Object geom = getOwner().getTransformRestoreData();
+            Object geom = startTransform();
             Rectangle2D.Double r = getTransformedBounds();
             switch (evt.getKeyCode()) {
                 case KeyEvent.VK_UP:
@@ -483,7 +509,7 @@ public class TransformHandleKit {
                     break;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geom, getOwner().getTransformRestoreData()));
+                    createTransformEdit(geom));
         }
 
         @Override
@@ -512,7 +538,7 @@ public class TransformHandleKit {
                 evt.consume();
                 return;
             }
-            Object geom = getOwner().getTransformRestoreData();
+            Object geom = startTransform();
             Rectangle2D.Double r = getTransformedBounds();
             switch (evt.getKeyCode()) {
                 case KeyEvent.VK_UP:
@@ -545,7 +571,7 @@ public class TransformHandleKit {
                     break;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geom, getOwner().getTransformRestoreData()));
+                    createTransformEdit(geom));
         }
 
         @Override
@@ -574,7 +600,7 @@ public class TransformHandleKit {
                 evt.consume();
                 return;
             }
-            Object geom = getOwner().getTransformRestoreData();
+            Object geom = startTransform();
             Rectangle2D.Double r = getTransformedBounds();
             switch (evt.getKeyCode()) {
                 case KeyEvent.VK_UP:
@@ -599,7 +625,7 @@ public class TransformHandleKit {
                     break;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geom, getOwner().getTransformRestoreData()));
+                    createTransformEdit(geom));
         }
 
         @Override
@@ -628,7 +654,7 @@ public class TransformHandleKit {
                 evt.consume();
                 return;
             }
-            Object geom = getOwner().getTransformRestoreData();
+            Object geom = startTransform();
             Rectangle2D.Double r = getTransformedBounds();
             switch (evt.getKeyCode()) {
                 case KeyEvent.VK_UP:
@@ -661,7 +687,7 @@ public class TransformHandleKit {
                     break;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geom, getOwner().getTransformRestoreData()));
+                    createTransformEdit(geom));
         }
 
         @Override
@@ -690,7 +716,7 @@ public class TransformHandleKit {
                 evt.consume();
                 return;
             }
-            Object geom = getOwner().getTransformRestoreData();
+            Object geom = startTransform();
             Rectangle2D.Double r = getTransformedBounds();
             switch (evt.getKeyCode()) {
                 case KeyEvent.VK_UP:
@@ -715,7 +741,7 @@ public class TransformHandleKit {
                     break;
             }
             fireUndoableEditHappened(
-                    new TransformRestoreEdit(getOwner(), geom, getOwner().getTransformRestoreData()));
+                    createTransformEdit(geom));
         }
 
         @Override
@@ -0,0 +1,450 @@
+/*
+ * @(#)BatchImageRenderer.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw.io;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import org.jhotdraw.draw.*;
+import static org.jhotdraw.draw.AttributeKeys.*;
+
+/**
+ * Renders drawings into image files on a pool of worker threads, without
+ * a user interface.
+ * <p>
+ * A {@link Job} specifies a drawing, the region of the drawing, the scale
+ * factor, the image format and the output stream. Each job is rendered and
+ * encoded on one of the worker threads, so that as many images are encoded
+ * in parallel as there are workers. The {@link Result} of a job holds the
+ * time the job has been waiting in the queue, and the time needed for
+ * rendering and encoding.
+ * <p>
+ * The pixel buffers are reused from job to job. A job which needs a smaller
+ * image than a recycled buffer renders into a sub-image of the buffer.
+ * Buffers with more than {@code maxRetainedPixels} pixels are not retained.
+ * <p>
+ * The drawings are rendered with their {@code draw} method, with a clip set
+ * to the region of the job. Drawings with a spatial index, such as
+ * {@link QuadTreeDrawing}, only visit the figures which intersect the region.
+ * <p>
+ * Figures are not thread safe. A worker holds the lock of the drawing while
+ * it renders the drawing, so that jobs for the same drawing are rendered one
+ * after the other. A drawing must not be changed while it has pending jobs.
+ * <p>
+ * This class does not use Swing, and can be used with
+ * {@code java.awt.headless=true}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class BatchImageRenderer {
+
+    /**
+     * A rendering job.
+     */
+    public static class Job {
+
+        private final Drawing drawing;
+        private final Rectangle2D.Double region;
+        private final double scaleFactor;
+        private final String formatName;
+        private final OutputStream out;
+
+        /**
+         * Creates a job which renders the drawing area of the drawing.
+         *
+         * @param drawing the drawing
+         * @param scaleFactor the scale factor
+         * @param formatName the Image IO format name, for example "PNG"
+         * @param out the output stream; the stream is not closed
+         */
+        public Job(Drawing drawing, double scaleFactor, String formatName, OutputStream out) {
+            this(drawing, null, scaleFactor, formatName, out);
+        }
+
+        /**
+         * Creates a job.
+         *
+         * @param drawing the drawing
+         * @param region the region of the drawing in drawing coordinates, or
+         * null for the drawing area of the drawing
+         * @param scaleFactor the scale factor
+         * @param formatName the Image IO format name, for example "PNG"
+         * @param out the output stream; the stream is not closed
+         */
+        public Job(Drawing drawing, Rectangle2D.Double region, double scaleFactor, String formatName, OutputStream out) {
+            if (scaleFactor <= 0) {
+                throw new IllegalArgumentException("scaleFactor must be positive:" + scaleFactor);
+            }
+            this.drawing = drawing;
+            this.region = (region == null) ? null : (Rectangle2D.Double) region.clone();
+            this.scaleFactor = scaleFactor;
+            this.formatName = formatName;
+            this.out = out;
+        }
+
+        public Drawing getDrawing() {
+            return drawing;
+        }
+
+        /**
+         * Returns the region of the drawing, or null for the drawing area.
+         */
+        public Rectangle2D.Double getRegion() {
+            return (region == null) ? null : (Rectangle2D.Double) region.clone();
+        }
+
+        public double getScaleFactor() {
+            return scaleFactor;
+        }
+
+        public String getFormatName() {
+            return formatName;
+        }
+
+        public OutputStream getOutputStream() {
+            return out;
+        }
+    }
+
+    /**
+     * The result of a rendering job.
+     */
+    public static class Result {
+
+        private final Job job;
+        private final int width;
+        private final int height;
+        private final long byteCount;
+        private final long queueNanos;
+        private final long renderNanos;
+        private final long encodeNanos;
+
+        public Result(Job job, int width, int height, long byteCount, long queueNanos, long renderNanos, long encodeNanos) {
+            this.job = job;
+            this.width = width;
+            this.height = height;
+            this.byteCount = byteCount;
+            this.queueNanos = queueNanos;
+            this.renderNanos = renderNanos;
+            this.encodeNanos = encodeNanos;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        /**
+         * Returns the width of the image in pixels.
+         */
+        public int getWidth() {
+            return width;
+        }
+
+        /**
+         * Returns the height of the image in pixels.
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Returns the number of bytes written to the output stream.
+         */
+        public long getByteCount() {
+            return byteCount;
+        }
+
+        /**
+         * Returns the time in nanoseconds from the submission of the job,
+         * until a worker started it.
+         */
+        public long getQueueNanos() {
+            return queueNanos;
+        }
+
+        /**
+         * Returns the time in nanoseconds needed for rendering the drawing,
+         * including the time for waiting on the lock of the drawing.
+         */
+        public long getRenderNanos() {
+            return renderNanos;
+        }
+
+        /**
+         * Returns the time in nanoseconds needed for encoding the image.
+         */
+        public long getEncodeNanos() {
+            return encodeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" + width + "x" + height + ", " + byteCount + " bytes, queue="
+                    + TimeUnit.NANOSECONDS.toMillis(queueNanos) + "ms, render="
+                    + TimeUnit.NANOSECONDS.toMillis(renderNanos) + "ms, encode="
+                    + TimeUnit.NANOSECONDS.toMillis(encodeNanos) + "ms}";
+        }
+    }
+
+    /**
+     * The default maximal size of a retained pixel buffer: 4096 by 4096
+     * pixels.
+     */
+    public static final int DEFAULT_MAX_RETAINED_PIXELS = 4096 * 4096;
+    private final ExecutorService executor;
+    private final int maxRetainedPixels;
+    /**
+     * Recycled buffers with an alpha channel.
+     */
+    private final ConcurrentLinkedQueue<BufferedImage> recycledARGB = new ConcurrentLinkedQueue<>();
+    /**
+     * Recycled buffers without an alpha channel.
+     */
+    private final ConcurrentLinkedQueue<BufferedImage> recycledRGB = new ConcurrentLinkedQueue<>();
+    /**
+     * Caches for each format name whether the format supports an alpha
+     * channel.
+     */
+    private final ConcurrentHashMap<String, Boolean> alphaSupport = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new instance with one worker thread per available processor.
+     */
+    public BatchImageRenderer() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_RETAINED_PIXELS);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param threadCount the number of worker threads
+     * @param maxRetainedPixels the maximal number of pixels of a pixel buffer
+     * which is retained for reuse
+     */
+    public BatchImageRenderer(int threadCount, int maxRetainedPixels) {
+        this.maxRetainedPixels = maxRetainedPixels;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threadCount), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "BatchImageRenderer");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Submits a job. The future throws an {@code ExecutionException} with an
+     * {@code IOException} as its cause, if the image could not be written.
+     */
+    public Future<Result> submit(final Job job) {
+        final long submitTime = System.nanoTime();
+        return executor.submit(new Callable<Result>() {
+            @Override
+            public Result call() throws IOException {
+                return render(job, submitTime);
+            }
+        });
+    }
+
+    /**
+     * Submits the jobs in the order of the collection.
+     */
+    public java.util.List<Future<Result>> submitAll(Collection<? extends Job> jobs) {
+        ArrayList<Future<Result>> futures = new ArrayList<>(jobs.size());
+        for (Job job : jobs) {
+            futures.add(submit(job));
+        }
+        return futures;
+    }
+
+    /**
+     * Completes the submitted jobs, and terminates the worker threads.
+     * Jobs can not be submitted after this method has been called.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        recycledARGB.clear();
+        recycledRGB.clear();
+    }
+
+    /**
+     * Blocks until all jobs have been completed after a shutdown, or the
+     * timeout elapses.
+     *
+     * @return true if all jobs have been completed
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Renders and encodes the image of a job on the current thread.
+     */
+    private Result render(Job job, long submitTime) throws IOException {
+        long startTime = System.nanoTime();
+        boolean hasAlpha = supportsAlpha(job.formatName);
+        BufferedImage buf;
+        BufferedImage img;
+        long renderTime;
+        synchronized (job.drawing.getLock()) {
+            Rectangle2D.Double region = job.region;
+            if (region == null) {
+                region = job.drawing.getDrawingArea(job.scaleFactor);
+            }
+            int width = Math.max(1, (int) Math.ceil(region.width * job.scaleFactor));
+            int height = Math.max(1, (int) Math.ceil(region.height * job.scaleFactor));
+            Color background = getBackground(job.drawing);
+            if (!hasAlpha && background.getAlpha() != 255) {
+                background = compositeOverWhite(background);
+            }
+            buf = acquireBuffer(width, height, background.getAlpha() != 255);
+            img = (buf.getWidth() == width && buf.getHeight() == height) ? buf : buf.getSubimage(0, 0, width, height);
+            Graphics2D g = img.createGraphics();
+            try {
+                g.setComposite(AlphaComposite.Src);
+                g.setColor(background);
+                g.fillRect(0, 0, width, height);
+                g.setComposite(AlphaComposite.SrcOver);
+                setRenderingHints(g);
+                g.clipRect(0, 0, width, height);
+                g.scale(job.scaleFactor, job.scaleFactor);
+                g.translate(-region.x, -region.y);
+                job.drawing.draw(g);
+            } finally {
+                g.dispose();
+            }
+            renderTime = System.nanoTime();
+        }
+        long byteCount;
+        try {
+            byteCount = encode(img, job.formatName, job.out);
+        } finally {
+            releaseBuffer(buf);
+        }
+        long endTime = System.nanoTime();
+        return new Result(job, img.getWidth(), img.getHeight(), byteCount,
+                startTime - submitTime, renderTime - startTime, endTime - renderTime);
+    }
+
+    /**
+     * Encodes the image with an in-memory cache, and returns the number of
+     * bytes written.
+     */
+    private long encode(BufferedImage img, String formatName, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for format:" + formatName);
+        }
+        ImageWriter writer = writers.next();
+        try {
+            ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+            try {
+                writer.setOutput(ios);
+                writer.write(img);
+                ios.flush();
+                return ios.getStreamPosition();
+            } finally {
+                ios.close();
+            }
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private boolean supportsAlpha(String formatName) {
+        Boolean b = alphaSupport.get(formatName);
+        if (b == null) {
+            b = false;
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+            if (writers.hasNext()) {
+                ImageWriter writer = writers.next();
+                b = writer.getOriginatingProvider().canEncodeImage(
+                        ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_ARGB));
+                writer.dispose();
+            }
+            alphaSupport.put(formatName, b);
+        }
+        return b;
+    }
+
+    private BufferedImage acquireBuffer(int width, int height, boolean hasAlpha) {
+        ConcurrentLinkedQueue<BufferedImage> recycled = hasAlpha ? recycledARGB : recycledRGB;
+        BufferedImage buf = recycled.poll();
+        if (buf == null || buf.getWidth() < width || buf.getHeight() < height) {
+            int w = width;
+            int h = height;
+            if (buf != null && (long) Math.max(w, buf.getWidth()) * Math.max(h, buf.getHeight()) <= maxRetainedPixels) {
+                // Grow the buffer, so that it fits previous jobs as well
+                w = Math.max(w, buf.getWidth());
+                h = Math.max(h, buf.getHeight());
+            }
+            buf = new BufferedImage(w, h, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        }
+        return buf;
+    }
+
+    private void releaseBuffer(BufferedImage buf) {
+        if ((long) buf.getWidth() * buf.getHeight() <= maxRetainedPixels) {
+            if (buf.getType() == BufferedImage.TYPE_INT_ARGB) {
+                recycledARGB.offer(buf);
+            } else {
+                recycledRGB.offer(buf);
+            }
+        }
+    }
+
+    /**
+     * Returns the canvas color of the drawing, multiplied with the canvas
+     * opacity.
+     */
+    private static Color getBackground(Drawing drawing) {
+        Color background = drawing.get(CANVAS_FILL_COLOR);
+        double opacity = drawing.get(CANVAS_FILL_OPACITY);
+        if (background == null) {
+            return new Color(0xff, 0xff, 0xff, 0x0);
+        }
+        return new Color(background.getRed(), background.getGreen(), background.getBlue(), (int) (background.getAlpha() * opacity));
+    }
+
+    private static Color compositeOverWhite(Color c) {
+        float a = c.getAlpha() / 255f;
+        return new Color(
+                (int) (c.getRed() * a + 255 * (1 - a)),
+                (int) (c.getGreen() * a + 255 * (1 - a)),
+                (int) (c.getBlue() * a + 255 * (1 - a)));
+    }
+
+    protected void setRenderingHints(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * @(#)BinaryInputOutputFormat.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw.io;
+
+import org.jhotdraw.draw.figure.Figure;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.*;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedList;
+import java.util.List;
+import javax.swing.JComponent;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import org.jhotdraw.datatransfer.InputStreamTransferable;
+import org.jhotdraw.draw.*;
+import org.jhotdraw.xml.*;
+
+/**
+ * An InputFormat and OutputFormat that can read and write Drawings with
+ * DOMStorable Figure's in the binary encoding of {@link BinaryDOMOutput}.
+ * <p>
+ * This format stores the same element tree as
+ * {@link DOMStorableInputOutputFormat}, and uses the same {@link DOMFactory}
+ * for mapping figure classes to element names. But the tree is written
+ * directly to a channel instead of being built as a DOM document first, and
+ * the encoding is much smaller and faster to read than XML.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class BinaryInputOutputFormat implements OutputFormat, InputFormat {
+
+    private DOMFactory factory;
+    /**
+     * Format description used for the file filter.
+     */
+    private String description;
+    /**
+     * File name extension used for the file filter.
+     */
+    private String fileExtension;
+    /**
+     * The mime type is used for clipboard access.
+     */
+    private String mimeType;
+    /**
+     * The data flavor constructed from the mime type.
+     */
+    private DataFlavor dataFlavor;
+
+    /**
+     * Creates a new instance with format name "Binary Drawing", file extension
+     * "jhdb" and mime type "application/x-jhotdraw-binary".
+     */
+    public BinaryInputOutputFormat(DOMFactory factory) {
+        this(factory, "Binary Drawing", "jhdb", "application/x-jhotdraw-binary");
+    }
+
+    /**
+     * Creates a new instance using the specified parameters.
+     *
+     * @param factory The factory for creating Figures from element names.
+     * @param description The format description to be used for the file filter.
+     * @param fileExtension The file extension to be used for file filter.
+     * @param mimeType The Mime Type is used for clipboard access.
+     */
+    public BinaryInputOutputFormat(
+            DOMFactory factory,
+            String description, String fileExtension, String mimeType) {
+        this.factory = factory;
+        this.description = description;
+        this.fileExtension = fileExtension;
+        this.mimeType = mimeType;
+        try {
+            this.dataFlavor = new DataFlavor(mimeType);
+        } catch (ClassNotFoundException ex) {
+            InternalError error = new InternalError("Unable to create data flavor for mime type:" + mimeType);
+            error.initCause(ex);
+            throw error;
+        }
+    }
+
+    @Override
+    public javax.swing.filechooser.FileFilter getFileFilter() {
+        return new FileNameExtensionFilter(description, fileExtension);
+    }
+
+    @Override
+    public JComponent getOutputFormatAccessory() {
+        return null;
+    }
+
+    @Override
+    public JComponent getInputFormatAccessory() {
+        return null;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    @Override
+    public boolean isDataFlavorSupported(DataFlavor flavor) {
+        return flavor.equals(dataFlavor);
+    }
+
+    @Override
+    public void write(URI uri, Drawing drawing) throws IOException {
+        write(new File(uri), drawing);
+    }
+
+    public void write(File file, Drawing drawing) throws IOException {
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(out, drawing);
+        }
+    }
+
+    @Override
+    public void write(OutputStream out, Drawing drawing) throws IOException {
+        write(new BinaryDOMOutput(factory, out), drawing);
+    }
+
+    /**
+     * Writes the drawing to the specified channel. The channel is not closed.
+     */
+    public void write(WritableByteChannel out, Drawing drawing) throws IOException {
+        write(new BinaryDOMOutput(factory, out), drawing);
+    }
+
+    private void write(BinaryDOMOutput domo, Drawing drawing) throws IOException {
+        domo.openElement(factory.getName(drawing));
+        drawing.write(domo);
+        domo.closeElement();
+        domo.finish();
+    }
+
+    @Override
+    public void read(URI uri, Drawing drawing) throws IOException {
+        read(new File(uri), drawing);
+    }
+
+    @Override
+    public void read(URI uri, Drawing drawing, boolean replace) throws IOException {
+        read(new File(uri), drawing, replace);
+    }
+
+    public void read(File file, Drawing drawing) throws IOException {
+        read(file, drawing, true);
+    }
+
+    public void read(File file, Drawing drawing, boolean replace) throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            read(in, drawing, replace);
+        }
+    }
+
+    @Override
+    public void read(InputStream in, Drawing drawing, boolean replace) throws IOException {
+        read(new BinaryDOMInput(factory, in), drawing, replace);
+    }
+
+    /**
+     * Reads a drawing from the specified channel. The channel is not closed.
+     */
+    public void read(ReadableByteChannel in, Drawing drawing, boolean replace) throws IOException {
+        read(new BinaryDOMInput(factory, in), drawing, replace);
+    }
+
+    private void read(BinaryDOMInput domi, Drawing drawing, boolean replace) throws IOException {
+        domi.openElement(factory.getName(drawing));
+        if (replace) {
+            drawing.removeAllChildren();
+        }
+        drawing.read(domi);
+        domi.closeElement();
+    }
+
+    @Override
+    public void read(Transferable t, Drawing drawing, boolean replace) throws UnsupportedFlavorException, IOException {
+        LinkedList<Figure> figures = new LinkedList<>();
+        InputStream in = (InputStream) t.getTransferData(new DataFlavor(mimeType, description));
+        BinaryDOMInput domi = new BinaryDOMInput(factory, in);
+        domi.openElement("Drawing-Clip");
+        for (int i = 0, n = domi.getElementCount(); i < n; i++) {
+            Figure f = (Figure) domi.readObject(i);
+            figures.add(f);
+        }
+        domi.closeElement();
+        if (replace) {
+            drawing.removeAllChildren();
+        }
+        drawing.addAll(figures);
+    }
+
+    @Override
+    public Transferable createTransferable(Drawing drawing, List<Figure> figures, double scaleFactor) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        BinaryDOMOutput domo = new BinaryDOMOutput(factory, buf);
+        domo.openElement("Drawing-Clip");
+        for (Figure f : figures) {
+            domo.writeObject(f);
+        }
+        domo.closeElement();
+        domo.finish();
+        return new InputStreamTransferable(new DataFlavor(mimeType, description), buf.toByteArray());
+    }
+}
@@ -14,6 +14,8 @@ import java.awt.datatransfer.UnsupportedFlavorException;
 import java.io.*;
 import java.net.URI;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.LinkedList;
 import java.util.List;
 import javax.swing.JComponent;
@@ -113,12 +115,12 @@ public class DOMStorableInputOutputFormat implements OutputFormat, InputFormat {
      * in the element that represents the drawing.
      */
     protected void read(URL url, InputStream in, Drawing drawing, LinkedList<Figure> figures) throws IOException {
-        JavaxDOMInput domi = new JavaxDOMInput(factory, in);
+        StreamingDOMInput domi = new StreamingDOMInput(factory, in);
         domi.openElement(factory.getName(drawing));
         domi.openElement("figures", 0);
         figures.clear();
-        for (int i = 0, n = domi.getElementCount(); i < n; i++) {
-            Figure f = (Figure) domi.readObject();
+        for (int i = 0; domi.hasElement(i); i++) {
+            Figure f = (Figure) domi.readObject(i);
             figures.add(f);
         }
         domi.closeElement();
@@ -142,18 +144,26 @@ public class DOMStorableInputOutputFormat implements OutputFormat, InputFormat {
     }
 
     public void write(File file, Drawing drawing) throws IOException {
-        try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
-            write(out, drawing);
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            write(new StreamingDOMOutput(factory, out), drawing);
         }
     }
 
+    /**
+     * Writes the drawing while its figures are being output, without
+     * building a DOM document in memory.
+     */
     @Override
     public void write(OutputStream out, Drawing drawing) throws IOException {
-        JavaxDOMOutput domo = new JavaxDOMOutput(factory);
+        write(new StreamingDOMOutput(factory, out), drawing);
+    }
+
+    private void write(StreamingDOMOutput domo, Drawing drawing) throws IOException {
         domo.openElement(factory.getName(drawing));
         drawing.write(domo);
         domo.closeElement();
-        domo.save(out);
+        domo.finish();
     }
 
     @Override
@@ -176,9 +186,13 @@ public class DOMStorableInputOutputFormat implements OutputFormat, InputFormat {
         }
     }
 
+    /**
+     * Reads the drawing while the input stream is being parsed, without
+     * building a DOM document in memory.
+     */
     @Override
     public void read(InputStream in, Drawing drawing, boolean replace) throws IOException {
-        JavaxDOMInput domi = new JavaxDOMInput(factory, in);
+        StreamingDOMInput domi = new StreamingDOMInput(factory, in);
         domi.openElement(factory.getName(drawing));
         if (replace) {
             drawing.removeAllChildren();
@@ -191,9 +205,9 @@ public class DOMStorableInputOutputFormat implements OutputFormat, InputFormat {
     public void read(Transferable t, Drawing drawing, boolean replace) throws UnsupportedFlavorException, IOException {
         LinkedList<Figure> figures = new LinkedList<>();
         InputStream in = (InputStream) t.getTransferData(new DataFlavor(mimeType, description));
-        JavaxDOMInput domi = new JavaxDOMInput(factory, in);
+        StreamingDOMInput domi = new StreamingDOMInput(factory, in);
         domi.openElement("Drawing-Clip");
-        for (int i = 0, n = domi.getElementCount(); i < n; i++) {
+        for (int i = 0; domi.hasElement(i); i++) {
             Figure f = (Figure) domi.readObject(i);
             figures.add(f);
         }
@@ -207,13 +221,13 @@ public class DOMStorableInputOutputFormat implements OutputFormat, InputFormat {
     @Override
     public Transferable createTransferable(Drawing drawing, List<Figure> figures, double scaleFactor) throws IOException {
         ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        JavaxDOMOutput domo = new JavaxDOMOutput(factory);
+        StreamingDOMOutput domo = new StreamingDOMOutput(factory, buf);
         domo.openElement("Drawing-Clip");
         for (Figure f : figures) {
             domo.writeObject(f);
         }
         domo.closeElement();
-        domo.save(buf);
+        domo.finish();
         return new InputStreamTransferable(new DataFlavor(mimeType, description), buf.toByteArray());
     }
 }
@@ -14,6 +14,15 @@ import java.awt.geom.*;
 import java.awt.image.*;
 import java.io.*;
 import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import javax.imageio.*;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -24,6 +33,12 @@ import static org.jhotdraw.draw.AttributeKeys.*;
 /**
  * An output format for exporting drawings using one of the image formats
  * supported by javax.imageio.
+ * <p>
+ * PNG images with more pixels than the tiled export threshold are exported
+ * with {@link #writeTiled}, which renders the image in strips on worker
+ * threads, and encodes the strips in sequence while the next strips are
+ * rendered. This needs memory for a few strips per worker thread instead of
+ * the whole image.
  *
  * @author Werner Randelshofer
  * @version $Id$
@@ -47,6 +62,18 @@ public class ImageOutputFormat implements OutputFormat {
      * BufferedImage.TYPE_INT_ARGB whereas GIF needs BufferedImage.TYPE_
      */
     private int imageType;
+    /**
+     * The default tiled export threshold: 4096 by 4096 pixels.
+     */
+    public static final long DEFAULT_TILED_EXPORT_THRESHOLD = 4096L * 4096L;
+    /**
+     * Images with more pixels are exported with {@link #writeTiled}.
+     */
+    private long tiledExportThreshold = DEFAULT_TILED_EXPORT_THRESHOLD;
+    /**
+     * The height in pixels of the strips of the tiled export.
+     */
+    private int stripHeight = 256;
 
     /**
      * Creates a new image output format for Portable Network Graphics PNG.
@@ -151,14 +178,199 @@ public class ImageOutputFormat implements OutputFormat {
             AffineTransform drawingTransform, Dimension imageSize) throws IOException {
         BufferedImage img;
         if (drawingTransform == null || imageSize == null) {
-            img = toImage(drawing, figures, 1d, false);
-        } else {
-            img = toImage(drawing, figures, drawingTransform, imageSize);
+            if (drawing.getChildCount() == 0) {
+                img = toImage(drawing, figures, 1d, false);
+                ImageIO.write(img, formatName, out);
+                img.flush();
+                return;
+            }
+            drawingTransform = new AffineTransform();
+            imageSize = computeImageTransform(figures, 1d, false, drawingTransform);
         }
+        if (isTiledExportSupported()
+                && (long) imageSize.width * imageSize.height > tiledExportThreshold) {
+            writeTiled(out, drawing, figures, drawingTransform, imageSize);
+            return;
+        }
+        img = toImage(drawing, figures, drawingTransform, imageSize);
         ImageIO.write(img, formatName, out);
         img.flush();
     }
 
+    /**
+     * Returns true if this format supports {@link #writeTiled}. This is the
+     * case for the PNG format.
+     */
+    public boolean isTiledExportSupported() {
+        return "PNG".equalsIgnoreCase(formatName);
+    }
+
+    /**
+     * Sets the number of pixels above which {@link #write} exports an image
+     * with {@link #writeTiled}.
+     */
+    public void setTiledExportThreshold(long pixels) {
+        this.tiledExportThreshold = pixels;
+    }
+
+    public long getTiledExportThreshold() {
+        return tiledExportThreshold;
+    }
+
+    /**
+     * Sets the height in pixels of the strips of the tiled export. The strips
+     * span the full width of the image.
+     */
+    public void setStripHeight(int stripHeight) {
+        if (stripHeight < 1) {
+            throw new IllegalArgumentException("stripHeight must be positive:" + stripHeight);
+        }
+        this.stripHeight = stripHeight;
+    }
+
+    public int getStripHeight() {
+        return stripHeight;
+    }
+
+    /**
+     * Writes the figures to the specified output stream as a PNG image,
+     * without creating an image of the full size.
+     * <p>
+     * The image is rendered in horizontal strips with the strip height. Each
+     * strip only draws the figures whose drawing area intersects with it.
+     * The memory needed is proportional to the width of the image, but does
+     * not depend on its height.
+     * <p>
+     * The strips are rendered in parallel on worker threads, and encoded in
+     * sequence on the calling thread. Figures are not thread safe, therefore
+     * the workers do not draw the figures. Before a strip is rendered, the
+     * calling thread takes a {@link FigureSnapshot} of the figures of the
+     * strip, and the worker draws the clones of the snapshot. The figures
+     * must not be changed until this method returns.
+     *
+     * @param out the output stream; the stream is not closed
+     * @param drawing the drawing
+     * @param figures a list of figures of the drawing
+     * @param drawingTransform the transform from drawing coordinates to image
+     * coordinates
+     * @param imageSize the width and height of the image
+     */
+    public void writeTiled(OutputStream out, final Drawing drawing, java.util.List<Figure> figures,
+            final AffineTransform drawingTransform, Dimension imageSize) throws IOException {
+        if (!isTiledExportSupported()) {
+            throw new IOException("Tiled export is not supported for format:" + formatName);
+        }
+        final int width = Math.max(1, imageSize.width);
+        final int height = Math.max(1, imageSize.height);
+        final int stripHeight = Math.min(this.stripHeight, height);
+        final Color background = getBackground(drawing);
+        boolean hasAlpha = background.getAlpha() != 255;
+
+        // Assign the figures to the strips which they intersect
+        int stripCount = (height + stripHeight - 1) / stripHeight;
+        final ArrayList<ArrayList<Figure>> strips = new ArrayList<>(stripCount);
+        for (int i = 0; i < stripCount; i++) {
+            strips.add(new ArrayList<Figure>());
+        }
+        double factor = AttributeKeys.getScaleFactor(drawingTransform);
+        for (Figure f : figures) {
+            if (f.isVisible()) {
+                Rectangle2D area = drawingTransform.createTransformedShape(f.getDrawingArea(factor)).getBounds2D();
+                int first = Math.max(0, (int) Math.floor(area.getMinY() / stripHeight));
+                int last = Math.min(stripCount - 1, (int) Math.floor(area.getMaxY() / stripHeight));
+                for (int i = first; i <= last; i++) {
+                    strips.get(i).add(f);
+                }
+            }
+        }
+
+        final int imgType = hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        final ConcurrentLinkedQueue<BufferedImage> buffers = new ConcurrentLinkedQueue<>();
+        int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), stripCount));
+        // Each worker renders at most two strips ahead of the encoder
+        int maxPending = 2 * threadCount;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ImageOutputFormat");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        ArrayDeque<Future<BufferedImage>> pending = new ArrayDeque<>(maxPending);
+        try {
+            PNGStripEncoder encoder = new PNGStripEncoder(out, width, height, hasAlpha);
+            int next = 0;
+            for (int i = 0; i < stripCount; i++) {
+                for (; next < stripCount && next < i + maxPending; next++) {
+                    final int y = next * stripHeight;
+                    final FigureSnapshot snapshot = new FigureSnapshot(strips.get(next), factor);
+                    strips.set(next, null);
+                    pending.add(executor.submit(new Callable<BufferedImage>() {
+                        @Override
+                        public BufferedImage call() {
+                            BufferedImage buffer = buffers.poll();
+                            if (buffer == null) {
+                                buffer = new BufferedImage(width, stripHeight, imgType);
+                            }
+                            renderStrip(buffer, y, snapshot.getFigures(), drawingTransform, background);
+                            return buffer;
+                        }
+                    }));
+                }
+                BufferedImage buffer = await(pending.remove());
+                encoder.writeRows(buffer, Math.min(stripHeight, height - i * stripHeight));
+                buffers.add(buffer);
+            }
+            encoder.finish();
+        } finally {
+            executor.shutdownNow();
+            for (BufferedImage buffer : buffers) {
+                buffer.flush();
+            }
+        }
+    }
+
+    /**
+     * Renders the figures of a strip into the specified buffer.
+     */
+    private void renderStrip(BufferedImage buffer, int y, java.util.List<Figure> stripFigures,
+            AffineTransform drawingTransform, Color background) {
+        Graphics2D g = buffer.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC));
+            g.setColor(background);
+            g.fillRect(0, 0, buffer.getWidth(), buffer.getHeight());
+            g.setComposite(AlphaComposite.SrcOver);
+            setRenderingHints(g);
+            g.clipRect(0, 0, buffer.getWidth(), buffer.getHeight());
+            g.translate(0, -y);
+            g.transform(drawingTransform);
+            for (Figure f : stripFigures) {
+                f.draw(g);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            InterruptedIOException error = new InterruptedIOException("Tiled export interrupted");
+            error.initCause(e);
+            throw error;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            IOException error = new IOException("Tiled export failed: " + e.getCause());
+            error.initCause(e.getCause());
+            throw error;
+        }
+    }
+
     /**
      * Creates a BufferedImage from the specified list of figures.
      * <p>
@@ -180,6 +392,25 @@ public class ImageOutputFormat implements OutputFormat {
         if (drawing.getChildCount() == 0) {
             return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
         }
+        AffineTransform transform = new AffineTransform();
+        Dimension imageSize = computeImageTransform(figures, scaleFactor, clipToFigures, transform);
+        return toImage(drawing, figures, transform, imageSize);
+    }
+
+    /**
+     * Computes the transform and the size of an image of the specified
+     * figures.
+     *
+     * @param figures A list of figures of the drawing.
+     * @param scaleFactor The scale factor used when drawing the figures.
+     * @param clipToFigures If this is true, the image is clipped to the figures.
+     * If this is false, the image includes the drawing area,
+     * @param transform Is set to the transform from drawing coordinates to
+     * image coordinates.
+     * @return the size of the image
+     */
+    private Dimension computeImageTransform(java.util.List<Figure> figures,
+            double scaleFactor, boolean clipToFigures, AffineTransform transform) {
         // Determine the draw bounds of the figures
         Rectangle2D.Double drawBounds = null;
         for (Figure f : figures) {
@@ -189,17 +420,15 @@ public class ImageOutputFormat implements OutputFormat {
                 drawBounds.add(f.getDrawingArea());
             }
         }
+        transform.setToIdentity();
         if (clipToFigures) {
-            AffineTransform transform = new AffineTransform();
             transform.translate(-drawBounds.x * scaleFactor,
                     -drawBounds.y * scaleFactor);
             transform.scale(scaleFactor, scaleFactor);
-            return toImage(drawing, figures, transform,
-                    new Dimension(
-                            (int) (drawBounds.width * scaleFactor),
-                            (int) (drawBounds.height * scaleFactor)));
+            return new Dimension(
+                    (int) (drawBounds.width * scaleFactor),
+                    (int) (drawBounds.height * scaleFactor));
         } else {
-            AffineTransform transform = new AffineTransform();
             if (drawBounds.x < 0) {
                 transform.translate(-drawBounds.x * scaleFactor, 0);
             }
@@ -207,10 +436,9 @@ public class ImageOutputFormat implements OutputFormat {
                 transform.translate(0, -drawBounds.y * scaleFactor);
             }
             transform.scale(scaleFactor, scaleFactor);
-            return toImage(drawing, figures, transform,
-                    new Dimension(
-                            (int) ((Math.max(0, drawBounds.x) + drawBounds.width) * scaleFactor),
-                            (int) ((Math.max(0, drawBounds.y) + drawBounds.height) * scaleFactor)));
+            return new Dimension(
+                    (int) ((Math.max(0, drawBounds.x) + drawBounds.width) * scaleFactor),
+                    (int) ((Math.max(0, drawBounds.y) + drawBounds.height) * scaleFactor));
         }
     }
 
@@ -229,13 +457,7 @@ public class ImageOutputFormat implements OutputFormat {
             AffineTransform transform,
             Dimension imageSize) {
         // Create the buffered image and clear it
-        Color background = drawing.get(CANVAS_FILL_COLOR);
-        double opacity = drawing.get(CANVAS_FILL_OPACITY);
-        if (background == null) {
-            background = new Color(0xff, 0xff, 0xff, 0x0);
-        } else {
-            background = new Color(background.getRed(), background.getGreen(), background.getBlue(), (int) (background.getAlpha() * opacity));
-        }
+        Color background = getBackground(drawing);
         BufferedImage buf = new BufferedImage(
                 Math.max(1, imageSize.width), Math.max(1, imageSize.height),
                 (background.getAlpha() == 255) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
@@ -269,6 +491,19 @@ public class ImageOutputFormat implements OutputFormat {
         return buf;
     }
 
+    /**
+     * Returns the canvas color of the drawing, multiplied with the canvas
+     * opacity.
+     */
+    private static Color getBackground(Drawing drawing) {
+        Color background = drawing.get(CANVAS_FILL_COLOR);
+        double opacity = drawing.get(CANVAS_FILL_OPACITY);
+        if (background == null) {
+            return new Color(0xff, 0xff, 0xff, 0x0);
+        }
+        return new Color(background.getRed(), background.getGreen(), background.getBlue(), (int) (background.getAlpha() * opacity));
+    }
+
     protected void setRenderingHints(Graphics2D g) {
         g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION,
                 RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
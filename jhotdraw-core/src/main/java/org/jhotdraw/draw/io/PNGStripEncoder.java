@@ -0,0 +1,240 @@
+/*
+ * @(#)PNGStripEncoder.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw.io;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes a PNG image strip by strip, so that the whole image never has to
+ * be held in memory.
+ * <p>
+ * The image is written as 8-bit truecolor, with or without an alpha channel.
+ * The rows are passed in with {@link #writeRows}, from top to bottom, as
+ * strips of a {@code BufferedImage} of type {@code TYPE_INT_ARGB} or
+ * {@code TYPE_INT_RGB}. Each row is filtered with the filter type which gives
+ * the smallest sum of absolute differences, and the compressed data is
+ * written in {@code IDAT} chunks of at most {@link #CHUNK_SIZE} bytes.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+class PNGStripEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    /**
+     * The maximal size of an IDAT chunk.
+     */
+    static final int CHUNK_SIZE = 1 << 16;
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final boolean hasAlpha;
+    private final int bytesPerPixel;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    /**
+     * The unfiltered bytes of the previous row and of the current row.
+     */
+    private byte[] previousRow;
+    private byte[] currentRow;
+    /**
+     * The filtered bytes of the current row for each filter type, each
+     * prefixed with the filter type.
+     */
+    private final byte[][] filteredRows = new byte[5][];
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int rowCount;
+
+    /**
+     * Creates a new encoder, and writes the PNG signature and header.
+     *
+     * @param out the output stream; the stream is not closed
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param hasAlpha whether the image has an alpha channel
+     */
+    public PNGStripEncoder(OutputStream out, int width, int height, boolean hasAlpha) throws IOException {
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.hasAlpha = hasAlpha;
+        this.bytesPerPixel = hasAlpha ? 4 : 3;
+        int rowLength = width * bytesPerPixel;
+        previousRow = new byte[rowLength];
+        currentRow = new byte[rowLength];
+        for (int i = 0; i < filteredRows.length; i++) {
+            filteredRows[i] = new byte[rowLength + 1];
+            filteredRows[i][0] = (byte) i;
+        }
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // bit depth
+        header[9] = (byte) (hasAlpha ? 6 : 2); // color type
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * Writes the specified number of rows from the top of a strip.
+     *
+     * @param strip an image of type {@code TYPE_INT_ARGB} or
+     * {@code TYPE_INT_RGB} with the width of the encoded image
+     * @param rows the number of rows
+     */
+    public void writeRows(BufferedImage strip, int rows) throws IOException {
+        if (rowCount + rows > height) {
+            throw new IllegalArgumentException("Too many rows:" + (rowCount + rows) + " > " + height);
+        }
+        if (strip.getWidth() != width) {
+            throw new IllegalArgumentException("Illegal strip width:" + strip.getWidth() + " != " + width);
+        }
+        int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < rows; y++) {
+            int offset = y * width;
+            for (int x = 0, i = 0; x < width; x++) {
+                int argb = pixels[offset + x];
+                currentRow[i++] = (byte) (argb >>> 16);
+                currentRow[i++] = (byte) (argb >>> 8);
+                currentRow[i++] = (byte) argb;
+                if (hasAlpha) {
+                    currentRow[i++] = (byte) (argb >>> 24);
+                }
+            }
+            byte[] filtered = filterRow();
+            deflater.setInput(filtered);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+            byte[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+            rowCount++;
+        }
+    }
+
+    /**
+     * Writes the remaining compressed data and the end of the image.
+     * The output stream is flushed but not closed.
+     */
+    public void finish() throws IOException {
+        if (rowCount != height) {
+            throw new IOException("Missing rows:" + rowCount + " < " + height);
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+        deflater.end();
+        writeChunk("IEND", chunk, 0);
+        out.flush();
+    }
+
+    private void deflate() throws IOException {
+        int length = deflater.deflate(chunk);
+        if (length > 0) {
+            writeChunk("IDAT", chunk, length);
+        }
+    }
+
+    /**
+     * Filters the current row with all filter types, and returns the row
+     * with the smallest sum of absolute differences.
+     */
+    private byte[] filterRow() {
+        byte[] cur = currentRow;
+        byte[] prev = previousRow;
+        int bpp = bytesPerPixel;
+        byte[] none = filteredRows[0];
+        byte[] sub = filteredRows[1];
+        byte[] up = filteredRows[2];
+        byte[] average = filteredRows[3];
+        byte[] paeth = filteredRows[4];
+        long noneSum = 0, subSum = 0, upSum = 0, averageSum = 0, paethSum = 0;
+        for (int i = 0; i < cur.length; i++) {
+            int x = cur[i] & 0xff;
+            int a = (i >= bpp) ? cur[i - bpp] & 0xff : 0;
+            int b = (rowCount > 0) ? prev[i] & 0xff : 0;
+            int c = (i >= bpp && rowCount > 0) ? prev[i - bpp] & 0xff : 0;
+            byte v;
+            v = (byte) x;
+            none[i + 1] = v;
+            noneSum += Math.abs(v);
+            v = (byte) (x - a);
+            sub[i + 1] = v;
+            subSum += Math.abs(v);
+            v = (byte) (x - b);
+            up[i + 1] = v;
+            upSum += Math.abs(v);
+            v = (byte) (x - ((a + b) >>> 1));
+            average[i + 1] = v;
+            averageSum += Math.abs(v);
+            v = (byte) (x - paethPredictor(a, b, c));
+            paeth[i + 1] = v;
+            paethSum += Math.abs(v);
+        }
+        byte[] best = none;
+        long bestSum = noneSum;
+        if (subSum < bestSum) {
+            best = sub;
+            bestSum = subSum;
+        }
+        if (upSum < bestSum) {
+            best = up;
+            bestSum = upSum;
+        }
+        if (averageSum < bestSum) {
+            best = average;
+            bestSum = averageSum;
+        }
+        if (paethSum < bestSum) {
+            best = paeth;
+        }
+        return best;
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return (pb <= pc) ? b : c;
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] buf = new byte[8];
+        putInt(buf, 0, length);
+        for (int i = 0; i < 4; i++) {
+            buf[4 + i] = (byte) type.charAt(i);
+        }
+        out.write(buf, 0, 8);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(buf, 4, 4);
+        crc.update(data, 0, length);
+        putInt(buf, 0, (int) crc.getValue());
+        out.write(buf, 0, 4);
+    }
+
+    private static void putInt(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) (value >>> 24);
+        buf[offset + 1] = (byte) (value >>> 16);
+        buf[offset + 2] = (byte) (value >>> 8);
+        buf[offset + 3] = (byte) value;
+    }
+}
@@ -18,6 +18,7 @@ import org.jhotdraw.draw.*;
 import org.jhotdraw.geom.Bezier;
 import org.jhotdraw.geom.BezierPath;
 import org.jhotdraw.geom.Geom;
+import org.jhotdraw.geom.IncrementalBezierFitter;
 import org.jhotdraw.util.*;
 
 /**
@@ -58,6 +59,11 @@ public class BezierTool extends AbstractTool {
      */
     private DrawingView creationView;
     private final boolean calculateFittedCurveAfterCreation;
+    /**
+     * Fits a curve to the points of the current drag while they are added,
+     * or null if no curve is fitted.
+     */
+    private IncrementalBezierFitter fitter;
 
     /**
      * Creates a new instance.
@@ -153,6 +159,12 @@ public class BezierTool extends AbstractTool {
             }
         }
         nodeCountBeforeDrag = createdFigure.getNodeCount();
+        if (calculateFittedCurveAfterCreation) {
+            fitter = new IncrementalBezierFitter(1.5d / getView().getScaleFactor());
+            fitter.addPoint(createdFigure.getPoint(nodeCountBeforeDrag - 1, 0));
+        } else {
+            fitter = null;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -270,6 +282,7 @@ public class BezierTool extends AbstractTool {
             createdFigure.changed();
             nodeCountBeforeDrag = createdFigure.getNodeCount();
         }
+        fitter = null;
         if (finishWhenMouseReleased == Boolean.TRUE) {
             if (createdFigure.getNodeCount() > 1) {
                 Rectangle r = new Rectangle(anchor.x, anchor.y, 0, 0);
@@ -310,6 +323,30 @@ public class BezierTool extends AbstractTool {
         int x = evt.getX();
         int y = evt.getY();
         addPointToFigure(getView().viewToDrawing(new Point(x, y)));
+        updateFitter();
+    }
+
+    /**
+     * Passes the points, which have been added to the figure during the
+     * current drag, to the fitter.
+     * <p>
+     * Method addPointToFigure either adds a point, or moves the last point.
+     */
+    private void updateFitter() {
+        if (fitter != null) {
+            int first = nodeCountBeforeDrag - 1;
+            int n = createdFigure.getNodeCount() - first;
+            if (n < fitter.getPointCount()) {
+                // The figure has been changed in a way the fitter can not follow
+                fitter = null;
+                return;
+            }
+            Point2D.Double p = createdFigure.getPoint(first + fitter.getPointCount() - 1, 0);
+            fitter.setLastPoint(p.x, p.y);
+            for (int i = fitter.getPointCount(); i < n; i++) {
+                fitter.addPoint(createdFigure.getPoint(first + i, 0));
+            }
+        }
     }
 
     @Override
@@ -345,9 +382,20 @@ public class BezierTool extends AbstractTool {
         }
     }
 
+    /**
+     * Fits a curve to the points of a drag.
+     * <p>
+     * The curve segments up to the last corner have usually already been
+     * fitted during the drag, so that only the trailing segment needs to be
+     * fitted here.
+     */
     protected BezierPath calculateFittedCurve(BezierPath path) {
         if (calculateFittedCurveAfterCreation) {
-            return Bezier.fitBezierPath(path, 1.5d / getView().getScaleFactor());
+            double error = 1.5d / getView().getScaleFactor();
+            if (fitter != null && fitter.getPointCount() == path.size() && fitter.getError() == error) {
+                return fitter.getFittedPath();
+            }
+            return Bezier.fitBezierPath(path, error);
         } else {
             return path;
         }
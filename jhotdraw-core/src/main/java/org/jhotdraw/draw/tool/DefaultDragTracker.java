@@ -23,6 +23,10 @@ import org.jhotdraw.draw.event.TransformEdit;
  * <code>SelectionTool</code>. It comes into action, when the user presses
  * the mouse button over the content area of a <code>Figure</code>.
  * <p>
+ * If the ghost drag of a {@link DefaultDrawingView} is enabled, the tracker
+ * only moves a ghost image of the figures while the mouse is dragged, and
+ * transforms the figures once, when the mouse is released.
+ * <p>
  * Design pattern:<br>
  * Name: Chain of Responsibility.<br>
  * Role: Handler.<br>
@@ -73,6 +77,11 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
     protected Point2D.Double anchorPoint;
     private boolean isDragging;
     private HashSet<Figure> transformedFigures;
+    /**
+     * The view which draws the ghost of the dragged figures, or null if the
+     * figures are transformed while the mouse is dragged.
+     */
+    private DefaultDrawingView ghostView;
 
     /**
      * Creates a new instance.
@@ -131,6 +140,10 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
             if (isDragging == false) {
                 isDragging = true;
                 updateCursor(editor.findView((Container) evt.getSource()), new Point(evt.getX(), evt.getY()));
+                if (view instanceof DefaultDrawingView && ((DefaultDrawingView) view).isGhostDragEnabled()) {
+                    ghostView = (DefaultDrawingView) view;
+                    ghostView.beginGhostDrag(transformedFigures);
+                }
             }
             Point2D.Double currentPoint = view.viewToDrawing(new Point(evt.getX(), evt.getY()));
             dragRect.x += currentPoint.x - previousPoint.x;
@@ -139,26 +152,65 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
             if (view.getConstrainer() != null) {
                 view.getConstrainer().constrainRectangle(constrainedRect);
             }
-            AffineTransform tx = new AffineTransform();
-            tx.translate(
-                    constrainedRect.x - previousOrigin.x,
-                    constrainedRect.y - previousOrigin.y);
+            if (ghostView != null) {
+                ghostView.setGhostTransform(AffineTransform.getTranslateInstance(
+                        constrainedRect.x - anchorOrigin.x,
+                        constrainedRect.y - anchorOrigin.y));
+            } else {
+                AffineTransform tx = new AffineTransform();
+                tx.translate(
+                        constrainedRect.x - previousOrigin.x,
+                        constrainedRect.y - previousOrigin.y);
+                transformFigures(tx);
+            }
+            previousPoint = currentPoint;
+            previousOrigin = new Point2D.Double(constrainedRect.x, constrainedRect.y);
+        }
+    }
+
+    /**
+     * Transforms the dragged figures in a single change transaction of the
+     * drawing.
+     */
+    protected void transformFigures(AffineTransform tx) {
+        Drawing drawing = getDrawing();
+        drawing.beginChanges();
+        try {
             for (Figure f : transformedFigures) {
                 f.willChange();
                 f.transform(tx);
                 f.changed();
             }
-            previousPoint = currentPoint;
-            previousOrigin = new Point2D.Double(constrainedRect.x, constrainedRect.y);
+        } finally {
+            drawing.commitChanges();
         }
     }
 
+    @Override
+    public void deactivate(DrawingEditor editor) {
+        if (ghostView != null) {
+            ghostView.endGhostDrag();
+            ghostView = null;
+        }
+        super.deactivate(editor);
+    }
+
     @Override
     public void mouseReleased(MouseEvent evt) {
         super.mouseReleased(evt);
         DrawingView view = getView();
         if (transformedFigures != null && !transformedFigures.isEmpty()) {
             isDragging = false;
+            if (ghostView != null) {
+                // Move the figures from the anchor to the ghost location
+                ghostView.endGhostDrag();
+                ghostView = null;
+                if (previousOrigin.x != anchorOrigin.x || previousOrigin.y != anchorOrigin.y) {
+                    transformFigures(AffineTransform.getTranslateInstance(
+                            previousOrigin.x - anchorOrigin.x,
+                            previousOrigin.y - anchorOrigin.y));
+                }
+            }
             int x = evt.getX();
             int y = evt.getY();
             updateCursor(editor.findView((Container) evt.getSource()), new Point(x, y));
@@ -171,11 +223,7 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
                     tx.translate(
                             anchorOrigin.x - previousOrigin.x,
                             anchorOrigin.y - previousOrigin.y);
-                    for (Figure f : transformedFigures) {
-                        f.willChange();
-                        f.transform(tx);
-                        f.changed();
-                    }
+                    transformFigures(tx);
                     Rectangle r = new Rectangle(anchor.x, anchor.y, 0, 0);
                     r.add(evt.getX(), evt.getY());
                     maybeFireBoundsInvalidated(r);
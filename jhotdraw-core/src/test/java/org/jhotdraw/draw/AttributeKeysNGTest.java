@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.BasicStroke;
+import java.awt.Stroke;
+import java.awt.geom.Point2D;
+import java.util.concurrent.atomic.AtomicReference;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.draw.figure.TriangleFigure;
+import org.jhotdraw.geom.DoubleStroke;
+import static org.jhotdraw.draw.AttributeKeys.*;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the stroke cache of {@link AttributeKeys} and the hit shape cache of
+ * the figures.
+ */
+public class AttributeKeysNGTest {
+
+    public AttributeKeysNGTest() {
+    }
+
+    @Test
+    public void testStrokesAreShared() {
+        RectangleFigure f = new RectangleFigure();
+        RectangleFigure g = new RectangleFigure();
+        f.set(STROKE_WIDTH, 3d);
+        g.set(STROKE_WIDTH, 3d);
+        assertSame(AttributeKeys.getStroke(f, 1.0), AttributeKeys.getStroke(g, 1.0));
+        assertSame(AttributeKeys.getHitStroke(f, 1.0), AttributeKeys.getHitStroke(g, 1.0));
+        assertNotSame(AttributeKeys.getStroke(f, 1.0), AttributeKeys.getHitStroke(f, 1.0));
+
+        g.set(STROKE_WIDTH, 4d);
+        assertEquals(((BasicStroke) AttributeKeys.getStroke(g, 1.0)).getLineWidth(), 4f);
+        g.set(STROKE_TYPE, StrokeType.DOUBLE);
+        assertTrue(AttributeKeys.getStroke(g, 1.0) instanceof DoubleStroke);
+    }
+
+    /**
+     * A stroke which is used between the creation of other strokes survives
+     * the eviction, because it gets a second chance.
+     */
+    @Test
+    public void testUsedStrokeSurvivesEviction() {
+        RectangleFigure used = new RectangleFigure();
+        used.set(STROKE_WIDTH, 0.123);
+        Stroke stroke = AttributeKeys.getStroke(used, 1.0);
+        RectangleFigure other = new RectangleFigure();
+        for (int i = 0; i < 2000; i++) {
+            other.set(STROKE_WIDTH, 1000d + i);
+            AttributeKeys.getStroke(other, 1.0);
+            assertSame(AttributeKeys.getStroke(used, 1.0), stroke);
+        }
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        RectangleFigure f = new RectangleFigure();
+                        for (int i = 0; i < 20000; i++) {
+                            double width = (i * 7 + seed) % 600;
+                            f.set(STROKE_WIDTH, width);
+                            float actual = ((BasicStroke) AttributeKeys.getStroke(f, 1.0)).getLineWidth();
+                            if (actual != (float) width) {
+                                throw new AssertionError("width " + width + " but found " + actual);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    @Test
+    public void testDashesAreCopied() {
+        RectangleFigure f = new RectangleFigure();
+        f.set(IS_STROKE_DASH_FACTOR, false);
+        double[] dashes = {5, 5};
+        f.set(STROKE_DASHES, dashes);
+        Stroke stroke = AttributeKeys.getStroke(f, 1.0);
+        assertEquals(((BasicStroke) stroke).getDashArray(), new float[]{5f, 5f});
+        dashes[0] = 7;
+        Stroke changed = AttributeKeys.getStroke(f, 1.0);
+        assertEquals(((BasicStroke) changed).getDashArray(), new float[]{7f, 5f});
+        dashes[0] = 5;
+        assertSame(AttributeKeys.getStroke(f, 1.0), stroke);
+    }
+
+    @Test
+    public void testHitShapeFollowsChanges() {
+        TriangleFigure f = new TriangleFigure(0, 0, 10, 10);
+        assertTrue(f.contains(new Point2D.Double(5, 5)));
+        f.setBounds(new Point2D.Double(100, 100), new Point2D.Double(110, 110));
+        assertFalse(f.contains(new Point2D.Double(5, 5)));
+        assertTrue(f.contains(new Point2D.Double(105, 105)));
+        f.set(ORIENTATION, Orientation.SOUTH);
+        assertFalse(f.contains(new Point2D.Double(101, 108)));
+        assertTrue(f.contains(new Point2D.Double(105, 108)));
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.jhotdraw.draw.AttributeKeys.*;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link CompactAttributeMap}.
+ */
+public class CompactAttributeMapNGTest {
+
+    public CompactAttributeMapNGTest() {
+    }
+
+    private static final AttributeKey<?>[] KEYS = {
+        FILL_COLOR, STROKE_COLOR, STROKE_WIDTH, TEXT_COLOR, FONT_SIZE, FONT_BOLD,
+        STROKE_DASHES, WINDING_RULE, TEXT, CANVAS_WIDTH
+    };
+
+    /**
+     * Applies random operations to a compact map and to a hash map, and
+     * compares their contents.
+     */
+    @Test
+    public void testRandomOperations() {
+        Random r = new Random(7);
+        CompactAttributeMap map = new CompactAttributeMap();
+        HashMap<AttributeKey<?>, Object> expected = new HashMap<>();
+        CompactAttributeMap copy = null;
+        HashMap<AttributeKey<?>, Object> expectedCopy = null;
+        for (int i = 0; i < 2000; i++) {
+            AttributeKey<?> key = KEYS[r.nextInt(KEYS.length)];
+            switch (r.nextInt(6)) {
+                case 0:
+                case 1:
+                case 2:
+                    Object value = r.nextBoolean() ? null : (Object) r.nextInt(4);
+                    assertEquals(map.put(key, value), expected.put(key, value));
+                    break;
+                case 3:
+                    assertEquals(map.remove(key), expected.remove(key));
+                    break;
+                case 4:
+                    copy = map.clone();
+                    expectedCopy = new HashMap<>(expected);
+                    break;
+                default:
+                    map.intern();
+                    break;
+            }
+            assertEquals(map.containsKey(key), expected.containsKey(key));
+            assertEquals(map, expected);
+            assertEquals(expected, map);
+            if (copy != null) {
+                assertEquals(copy, expectedCopy);
+            }
+        }
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        CompactAttributeMap map = new CompactAttributeMap();
+        map.put(FILL_COLOR, Color.RED);
+        map.put(STROKE_COLOR, Color.BLUE);
+        map.put(STROKE_WIDTH, 2d);
+        for (Iterator<Map.Entry<AttributeKey<?>, Object>> i = map.entrySet().iterator(); i.hasNext();) {
+            if (i.next().getKey() == STROKE_COLOR) {
+                i.remove();
+            }
+        }
+        assertEquals(map.size(), 2);
+        assertFalse(map.containsKey(STROKE_COLOR));
+        assertEquals(map.get(STROKE_WIDTH), 2d);
+    }
+
+    @Test
+    public void testFigureAttributes() throws Exception {
+        RectangleFigure f = new RectangleFigure();
+        f.set(FILL_COLOR, Color.RED);
+        f.set(STROKE_COLOR, null);
+        RectangleFigure g = f.clone();
+        g.set(FILL_COLOR, Color.GREEN);
+        assertEquals(f.get(FILL_COLOR), Color.RED);
+        assertEquals(g.get(FILL_COLOR), Color.GREEN);
+        assertNull(g.get(STROKE_COLOR));
+        assertEquals(g.get(STROKE_WIDTH), STROKE_WIDTH.getDefaultValue());
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+            out.writeObject(f);
+        }
+        RectangleFigure h;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buf.toByteArray()))) {
+            h = (RectangleFigure) in.readObject();
+        }
+        assertEquals(h.getAttributes(), f.getAttributes());
+    }
+
+    @Test
+    public void testAttributesRestoreData() {
+        RectangleFigure f = new RectangleFigure();
+        f.set(FILL_COLOR, Color.RED);
+        f.set(STROKE_WIDTH, 2d);
+        Map<AttributeKey<?>, Object> expected = f.getAttributes();
+        Object restoreData = f.getAttributesRestoreData();
+        f.set(FILL_COLOR, Color.GREEN);
+        f.set(TEXT_COLOR, Color.BLUE);
+        f.restoreAttributesTo(restoreData);
+        assertEquals(f.getAttributes(), expected);
+        f.set(FILL_COLOR, Color.YELLOW);
+        f.restoreAttributesTo(restoreData);
+        assertEquals(f.get(FILL_COLOR), Color.RED);
+
+        f.restoreAttributesTo(new HashMap<>(expected));
+        assertEquals(f.getAttributes(), expected);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import org.jhotdraw.draw.event.FigureSelectionEvent;
+import org.jhotdraw.draw.event.FigureSelectionListener;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.draw.handle.Handle;
+import static org.testng.Assert.*;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the selection and the ghost drag of {@link DefaultDrawingView}.
+ */
+public class DefaultDrawingViewNGTest {
+
+    /**
+     * A rectangle figure which counts how often its handles are created.
+     */
+    private static class CountingFigure extends RectangleFigure {
+
+        private static final long serialVersionUID = 1L;
+        private int handleCount;
+
+        public CountingFigure(double x, double y) {
+            super(x, y, 10, 10);
+        }
+
+        @Override
+        public Collection<Handle> createHandles(int detailLevel) {
+            handleCount++;
+            return super.createHandles(detailLevel);
+        }
+    }
+    private DefaultDrawingView view;
+    private List<CountingFigure> visible;
+    private List<CountingFigure> invisible;
+    private List<FigureSelectionEvent> events;
+
+    public DefaultDrawingViewNGTest() {
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        Drawing drawing = new DefaultDrawing();
+        visible = new ArrayList<>();
+        invisible = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            visible.add(new CountingFigure(i * 15, 0));
+            invisible.add(new CountingFigure(i * 15, 5000));
+        }
+        drawing.addAll(visible);
+        drawing.addAll(invisible);
+        view = new DefaultDrawingView();
+        view.setDrawing(drawing);
+        view.setSize(200, 200);
+        new DefaultDrawingEditor().add(view);
+        events = new ArrayList<>();
+        view.addFigureSelectionListener(new FigureSelectionListener() {
+            @Override
+            public void selectionChanged(FigureSelectionEvent evt) {
+                events.add(evt);
+            }
+        });
+    }
+
+    @Test
+    public void testAddToSelectionFiresOneEvent() {
+        List<Figure> figures = new ArrayList<Figure>(visible);
+        figures.addAll(invisible);
+        view.addToSelection(figures);
+        assertEquals(events.size(), 1);
+        assertEquals(events.get(0).getOldSelection().size(), 0);
+        assertEquals(events.get(0).getNewSelection().size(), 20);
+        assertEquals(view.getSelectionCount(), 20);
+    }
+
+    @Test
+    public void testSelectAllFiresOneEvent() {
+        view.addToSelection(invisible.get(0));
+        events.clear();
+        view.selectAll();
+        assertEquals(events.size(), 1);
+        assertEquals(events.get(0).getNewSelection().size(), 20);
+        view.clearSelection();
+        assertEquals(events.size(), 2);
+        assertEquals(view.getSelectionCount(), 0);
+    }
+
+    @Test
+    public void testHandlesAreOnlyCreatedForVisibleFigures() {
+        view.selectAll();
+        assertNotNull(view.findHandle(view.drawingToView(visible.get(0).getStartPoint())));
+        for (CountingFigure f : visible) {
+            assertEquals(f.handleCount, 1);
+        }
+        for (CountingFigure f : invisible) {
+            assertEquals(f.handleCount, 0);
+        }
+    }
+
+    private BufferedImage paintView() {
+        BufferedImage img = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setClip(0, 0, 200, 200);
+        view.paintComponent(g);
+        g.dispose();
+        return img;
+    }
+
+    private static boolean isRed(int rgb) {
+        Color c = new Color(rgb);
+        return c.getRed() > 200 && c.getGreen() < 120 && c.getBlue() < 120;
+    }
+
+    @Test
+    public void testGhostDragDoesNotMoveFigures() {
+        view.setDrawingDoubleBuffered(false);
+        CountingFigure f = visible.get(0);
+        f.set(AttributeKeys.FILL_COLOR, Color.RED);
+        Rectangle2D.Double bounds = f.getBounds();
+        view.beginGhostDrag(Arrays.<Figure>asList(f));
+        assertTrue(view.isGhostDragging());
+        view.setGhostTransform(AffineTransform.getTranslateInstance(50, 100));
+        BufferedImage img = paintView();
+        assertTrue(isRed(img.getRGB(5, 5)), "original must be drawn");
+        assertTrue(isRed(img.getRGB(55, 105)), "ghost must be drawn");
+        assertEquals(f.getBounds(), bounds);
+        view.endGhostDrag();
+        assertFalse(view.isGhostDragging());
+        img = paintView();
+        assertFalse(isRed(img.getRGB(55, 105)), "ghost must be removed");
+    }
+}
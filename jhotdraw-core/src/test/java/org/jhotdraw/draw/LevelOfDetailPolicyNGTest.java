@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link LevelOfDetailPolicy}.
+ */
+public class LevelOfDetailPolicyNGTest {
+
+    public LevelOfDetailPolicyNGTest() {
+    }
+
+    private static RectangleFigure createFigure(double x, double y, double width, double height) {
+        RectangleFigure f = new RectangleFigure();
+        f.setBounds(new Point2D.Double(x, y), new Point2D.Double(x + width, y + height));
+        return f;
+    }
+
+    private static Graphics2D createGraphics(BufferedImage img, double scale) {
+        Graphics2D g = img.createGraphics();
+        g.scale(scale, scale);
+        return g;
+    }
+
+    @Test
+    public void testThresholdDecisions() {
+        LevelOfDetailPolicy lod = new LevelOfDetailPolicy(3, 6, 12);
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        RectangleFigure f = createFigure(0, 0, 10, 4);
+
+        // The larger side is 10 units. At a scale of 0.2 it is 2 pixels.
+        Graphics2D g = createGraphics(img, 0.2);
+        assertTrue(lod.isProxy(g, f));
+        assertFalse(lod.isTextVisible(g, f));
+        assertFalse(lod.isDecorationVisible(g, f));
+        g.dispose();
+
+        // 3 pixels: exactly at the proxy threshold
+        g = createGraphics(img, 0.3);
+        assertFalse(lod.isProxy(g, f));
+        assertFalse(lod.isTextVisible(g, f));
+        assertFalse(lod.isDecorationVisible(g, f));
+        g.dispose();
+
+        // 8 pixels
+        g = createGraphics(img, 0.8);
+        assertFalse(lod.isProxy(g, f));
+        assertTrue(lod.isTextVisible(g, f));
+        assertFalse(lod.isDecorationVisible(g, f));
+        g.dispose();
+
+        // 12 pixels: exactly at the decoration threshold
+        g = createGraphics(img, 1.2);
+        assertFalse(lod.isProxy(g, f));
+        assertTrue(lod.isTextVisible(g, f));
+        assertTrue(lod.isDecorationVisible(g, f));
+        g.dispose();
+    }
+
+    @Test
+    public void testThresholdDecisionsHonourTransform() {
+        LevelOfDetailPolicy lod = new LevelOfDetailPolicy(3, 6, 12);
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = createGraphics(img, 1);
+
+        RectangleFigure enlarged = createFigure(0, 0, 2, 2);
+        assertTrue(lod.isProxy(g, enlarged));
+        enlarged.set(AttributeKeys.TRANSFORM, AffineTransform.getScaleInstance(10, 10));
+        assertFalse(lod.isProxy(g, enlarged));
+        assertTrue(lod.isTextVisible(g, enlarged));
+        assertTrue(lod.isDecorationVisible(g, enlarged));
+
+        RectangleFigure shrunk = createFigure(0, 0, 20, 20);
+        assertFalse(lod.isProxy(g, shrunk));
+        shrunk.set(AttributeKeys.TRANSFORM, AffineTransform.getScaleInstance(0.1, 0.1));
+        assertTrue(lod.isProxy(g, shrunk));
+        assertFalse(lod.isTextVisible(g, shrunk));
+        g.dispose();
+    }
+
+    @Test
+    public void testDrawProxyCoversTransformedBounds() {
+        LevelOfDetailPolicy lod = new LevelOfDetailPolicy();
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = createGraphics(img, 1);
+        RectangleFigure f = createFigure(1, 1, 1, 1);
+        f.set(AttributeKeys.TRANSFORM, AffineTransform.getScaleInstance(4, 4));
+        lod.drawProxy(g, f, Color.RED);
+        g.dispose();
+
+        // The transformed bounds are 4,4 to 8,8
+        assertEquals(img.getRGB(5, 5), Color.RED.getRGB());
+        assertEquals(img.getRGB(7, 7), Color.RED.getRGB());
+        assertEquals(img.getRGB(1, 1), 0);
+        assertEquals(img.getRGB(8, 8), 0);
+    }
+
+    @Test
+    public void testDrawProxyIsAtLeastOnePixel() {
+        LevelOfDetailPolicy lod = new LevelOfDetailPolicy();
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = createGraphics(img, 1);
+        lod.drawProxy(g, createFigure(5, 5, 0, 0), Color.RED);
+        g.dispose();
+
+        int count = 0;
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                if (img.getRGB(x, y) != 0) {
+                    count++;
+                }
+            }
+        }
+        assertTrue(count >= 1, "proxy pixels: " + count);
+    }
+
+    @Test
+    public void testDrawProxyHonoursOpacity() {
+        LevelOfDetailPolicy lod = new LevelOfDetailPolicy();
+        BufferedImage img = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = createGraphics(img, 1);
+        lod.drawProxy(g, createFigure(0, 0, 4, 4), Color.RED, 0.5);
+        lod.drawProxy(g, createFigure(5, 5, 4, 4), Color.RED, 0);
+        Color color = new Color(img.getRGB(2, 2), true);
+        assertEquals(color.getAlpha(), 128, 1);
+        assertEquals(img.getRGB(7, 7), 0);
+
+        // The composite of the graphics is restored
+        assertEquals(g.getComposite(), AlphaComposite.SrcOver);
+        g.dispose();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.jhotdraw.draw.event.FigureAdapter;
+import org.jhotdraw.draw.event.FigureEvent;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the z-order index and the change transactions of
+ * {@link QuadTreeDrawing}.
+ */
+public class QuadTreeDrawingNGTest {
+
+    public QuadTreeDrawingNGTest() {
+    }
+
+    @Test
+    public void testFindFigureReturnsFrontmost() {
+        QuadTreeDrawing drawing = new QuadTreeDrawing();
+        Figure back = new RectangleFigure(0, 0, 100, 100);
+        Figure middle = new RectangleFigure(10, 10, 100, 100);
+        Figure front = new RectangleFigure(20, 20, 100, 100);
+        drawing.add(back);
+        drawing.add(middle);
+        drawing.add(front);
+        Point2D.Double p = new Point2D.Double(50, 50);
+        assertSame(drawing.findFigure(p), front);
+        assertSame(drawing.findFigureBehind(p, front), middle);
+        assertSame(drawing.findFigureExcept(p, Arrays.asList(front, middle)), back);
+
+        drawing.sendToBack(front);
+        assertSame(drawing.findFigure(p), middle);
+        drawing.bringToFront(back);
+        assertSame(drawing.findFigure(p), back);
+    }
+
+    @Test
+    public void testSortMatchesChildrenOrder() {
+        QuadTreeDrawing drawing = new QuadTreeDrawing();
+        for (int i = 0; i < 20; i++) {
+            drawing.add(new RectangleFigure(i, i, 10, 10));
+        }
+        // Insert repeatedly at the same index, to exhaust the ordinal gap
+        for (int i = 0; i < 40; i++) {
+            drawing.add(10, new RectangleFigure(i, 0, 10, 10));
+        }
+        drawing.remove(drawing.getChild(5));
+        List<Figure> found = drawing.findFigures(new Rectangle2D.Double(-10, -10, 200, 200));
+        assertEquals(found, drawing.getChildren());
+        List<Figure> reversed = new ArrayList<>(drawing.getChildren());
+        Collections.reverse(reversed);
+        assertEquals(drawing.sort(reversed), drawing.getChildren());
+    }
+
+    @Test
+    public void testChangeTransactionFiresSingleEvent() {
+        QuadTreeDrawing drawing = new QuadTreeDrawing();
+        ArrayList<Figure> figures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Figure f = new RectangleFigure(i * 20, 0, 10, 10);
+            figures.add(f);
+            drawing.add(f);
+        }
+        final ArrayList<Rectangle2D.Double> events = new ArrayList<>();
+        drawing.addFigureListener(new FigureAdapter() {
+            @Override
+            public void areaInvalidated(FigureEvent e) {
+                events.add(e.getInvalidatedArea());
+            }
+
+            @Override
+            public void figureChanged(FigureEvent e) {
+                events.add(e.getInvalidatedArea());
+            }
+        });
+        drawing.beginChanges();
+        drawing.beginChanges();
+        for (Figure f : figures) {
+            f.willChange();
+            f.transform(AffineTransform.getTranslateInstance(0, 1000));
+            f.changed();
+        }
+        drawing.commitChanges();
+        assertTrue(events.isEmpty(), "nested commit must not fire events");
+        drawing.commitChanges();
+        assertEquals(events.size(), 1);
+        Rectangle2D.Double area = events.get(0);
+        assertTrue(area.contains(figures.get(0).getDrawingArea()));
+        assertTrue(area.contains(figures.get(99).getDrawingArea()));
+        assertTrue(area.contains(new Point2D.Double(1985, 5)), "old area must be invalidated");
+        assertNull(drawing.findFigure(new Point2D.Double(5, 5)));
+        for (int i = 0; i < figures.size(); i++) {
+            assertSame(drawing.findFigure(new Point2D.Double(i * 20 + 5, 1005)), figures.get(i));
+        }
+        try {
+            drawing.commitChanges();
+            fail("commit without begin must fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
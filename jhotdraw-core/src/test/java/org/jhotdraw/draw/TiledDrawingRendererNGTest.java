@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import org.jhotdraw.draw.connector.ChopRectangleConnector;
+import org.jhotdraw.draw.event.FigureListener;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link TiledDrawingRenderer}.
+ */
+public class TiledDrawingRendererNGTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * A rectangle figure which records the instances which are drawn on
+     * worker threads. Clones share the records with the original figure.
+     */
+    private static class RecordingFigure extends RectangleFigure {
+
+        private static final long serialVersionUID = 1L;
+        private final Set<Figure> drawnOnWorker;
+        private final AtomicInteger drawCount;
+        private final boolean isFailing;
+
+        public RecordingFigure(boolean isFailing) {
+            super(4, 4, 16, 16);
+            this.isFailing = isFailing;
+            drawnOnWorker = Collections.synchronizedSet(new HashSet<Figure>());
+            drawCount = new AtomicInteger();
+            set(AttributeKeys.FILL_COLOR, Color.RED);
+            set(AttributeKeys.STROKE_COLOR, null);
+        }
+
+        @Override
+        public void draw(Graphics2D g) {
+            if (!SwingUtilities.isEventDispatchThread()) {
+                drawnOnWorker.add(this);
+            }
+            drawCount.incrementAndGet();
+            if (isFailing) {
+                throw new IllegalStateException("failing figure");
+            }
+            super.draw(g);
+        }
+
+        public int getFigureListenerCount() {
+            return listenerList.getListenerCount(FigureListener.class);
+        }
+    }
+    private Drawing drawing;
+    private DefaultDrawingView view;
+    private TiledDrawingRenderer renderer;
+
+    public TiledDrawingRendererNGTest() {
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                drawing = new DefaultDrawing();
+                view = new DefaultDrawingView();
+                view.setDrawing(drawing);
+                view.setSize(64, 64);
+                renderer = new TiledDrawingRenderer(view, 32, 16, 2);
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                renderer.dispose();
+            }
+        });
+    }
+
+    /**
+     * Paints the tiles on the event dispatcher thread, and returns the color
+     * of the pixel at 10,10.
+     */
+    private Color paint() throws Exception {
+        final BufferedImage img = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                Graphics2D g = img.createGraphics();
+                g.setClip(0, 0, 64, 64);
+                renderer.paint(g, drawing, 1.0, new Point(0, 0));
+                g.dispose();
+            }
+        });
+        return new Color(img.getRGB(10, 10), true);
+    }
+
+    /**
+     * Paints the tiles until the pixel at 10,10 has the specified color.
+     */
+    private void awaitColor(Color expected) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        Color actual = paint();
+        while (!actual.equals(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            actual = paint();
+        }
+        assertEquals(actual, expected);
+    }
+
+    /**
+     * Paints the tiles until the figure has been drawn more than the
+     * specified number of times.
+     */
+    private void awaitDrawCount(RecordingFigure f, int drawCount) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        paint();
+        while (f.drawCount.get() <= drawCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            paint();
+        }
+        assertTrue(f.drawCount.get() > drawCount, "the figure must be drawn");
+    }
+
+    @Test
+    public void testWorkersDrawClonesOfTheFigures() throws Exception {
+        final RecordingFigure f = new RecordingFigure(false);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                drawing.add(f);
+            }
+        });
+        awaitColor(Color.RED);
+        assertFalse(f.drawnOnWorker.isEmpty());
+        assertFalse(f.drawnOnWorker.contains(f), "the figure of the drawing must not be drawn by a worker");
+    }
+
+    @Test
+    public void testConnectedFiguresKeepTheirListeners() throws Exception {
+        final RecordingFigure start = new RecordingFigure(false);
+        final RecordingFigure end = new RecordingFigure(false);
+        final int[] listenerCounts = new int[4];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                end.setBounds(new Point2D.Double(40, 40), new Point2D.Double(56, 56));
+                LineConnectionFigure c = new LineConnectionFigure();
+                c.setStartConnector(new ChopRectangleConnector(start));
+                c.setEndConnector(new ChopRectangleConnector(end));
+                drawing.add(start);
+                drawing.add(end);
+                drawing.add(c);
+                listenerCounts[0] = start.getFigureListenerCount();
+                listenerCounts[1] = end.getFigureListenerCount();
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            int startDrawCount = start.drawCount.get();
+            int endDrawCount = end.drawCount.get();
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    renderer.invalidateAll();
+                }
+            });
+            awaitDrawCount(start, startDrawCount);
+            awaitDrawCount(end, endDrawCount);
+        }
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                listenerCounts[2] = start.getFigureListenerCount();
+                listenerCounts[3] = end.getFigureListenerCount();
+            }
+        });
+        assertEquals(listenerCounts[2], listenerCounts[0], "listeners of the start figure");
+        assertEquals(listenerCounts[3], listenerCounts[1], "listeners of the end figure");
+    }
+
+    @Test
+    public void testChangesAfterSchedulingDoNotAffectTheTile() throws Exception {
+        final RecordingFigure f = new RecordingFigure(false);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                drawing.add(f);
+                Graphics2D g = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB).createGraphics();
+                renderer.paint(g, drawing, 1.0, new Point(0, 0));
+                g.dispose();
+                // The tile has been scheduled; change the figure without
+                // invalidating the tile
+                f.set(AttributeKeys.FILL_COLOR, Color.BLUE);
+            }
+        });
+        awaitColor(Color.RED);
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                renderer.invalidate(f.getDrawingArea());
+            }
+        });
+        awaitColor(Color.BLUE);
+    }
+
+    @Test
+    public void testFailedTileIsReportedAndNotRenderedAgain() throws Exception {
+        final Set<LogRecord> records = Collections.synchronizedSet(new HashSet<LogRecord>());
+        Logger log = Logger.getLogger(TiledDrawingRenderer.class.getName());
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        log.addHandler(handler);
+        boolean useParentHandlers = log.getUseParentHandlers();
+        log.setUseParentHandlers(false);
+        try {
+            final RecordingFigure f = new RecordingFigure(true);
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    drawing.add(f);
+                }
+            });
+            paint();
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (records.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(records.size(), 1);
+            assertTrue(records.iterator().next().getThrown() instanceof IllegalStateException);
+
+            // Let the tile be stored, then paint again
+            paint();
+            paint();
+            Thread.sleep(50);
+            paint();
+            assertEquals(f.drawCount.get(), 1, "a failed tile must not be rendered again");
+
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    renderer.invalidateAll();
+                }
+            });
+            paint();
+            deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (records.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(f.drawCount.get(), 2, "an invalidated tile must be rendered again");
+        } finally {
+            log.removeHandler(handler);
+            log.setUseParentHandlers(useParentHandlers);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link ZOrderIndex}.
+ */
+public class ZOrderIndexNGTest {
+
+    public ZOrderIndexNGTest() {
+    }
+
+    /**
+     * A rectangle figure with a settable layer.
+     */
+    private static class LayeredFigure extends RectangleFigure {
+
+        private static final long serialVersionUID = 1L;
+        private int layer;
+
+        @Override
+        public int getLayer() {
+            return layer;
+        }
+    }
+
+    private static LayeredFigure createFigure(double x, double y) {
+        LayeredFigure f = new LayeredFigure();
+        f.setBounds(new Point2D.Double(x, y), new Point2D.Double(x + 10, y + 10));
+        return f;
+    }
+
+    private static int[] ids(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i;
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts children in front of the same child, until the ordinals have
+     * to be renumbered.
+     */
+    @Test
+    public void testSortAfterRenumbering() {
+        ArrayList<Figure> children = new ArrayList<>();
+        ZOrderIndex index = new ZOrderIndex(children);
+        int count = 100;
+        for (int id = 0; id < count; id++) {
+            Figure f = createFigure(0, 0);
+            int i = Math.min(1, children.size());
+            children.add(i, f);
+            index.add(i, f, id);
+        }
+        assertEquals(index.sort(ids(count), count), children);
+        ArrayList<Figure> shuffled = new ArrayList<>(children);
+        Collections.shuffle(shuffled);
+        assertEquals(index.sort(shuffled), children);
+    }
+
+    @Test
+    public void testRemove() {
+        ArrayList<Figure> children = new ArrayList<>();
+        ZOrderIndex index = new ZOrderIndex(children);
+        Figure f1 = createFigure(0, 0);
+        Figure f2 = createFigure(0, 0);
+        children.add(f1);
+        index.add(0, f1, 0);
+        children.add(f2);
+        index.add(1, f2, 1);
+        children.remove(f1);
+        assertEquals(index.remove(f1), 0);
+        assertEquals(index.remove(f1), -1);
+        assertFalse(index.contains(f1));
+        assertTrue(index.contains(f2));
+        assertEquals(index.getId(f2), 1);
+        assertSame(index.getFigure(1), f2);
+        assertEquals(index.sort(Arrays.asList(f1, f2)), Collections.singletonList(f2));
+    }
+
+    @Test
+    public void testLayerTakesPrecedenceOverOrdinal() {
+        ArrayList<Figure> children = new ArrayList<>();
+        ZOrderIndex index = new ZOrderIndex(children);
+        LayeredFigure f1 = createFigure(0, 0);
+        LayeredFigure f2 = createFigure(0, 0);
+        children.add(f1);
+        index.add(0, f1, 0);
+        children.add(f2);
+        index.add(1, f2, 1);
+        f1.layer = 1;
+        index.updateLayer(f1);
+        List<Figure> expected = Arrays.<Figure>asList(f2, f1);
+        assertEquals(index.sort(children), expected);
+        index.ensureSorted();
+        assertEquals(children, expected);
+    }
+
+    @Test
+    public void testFindFrontmost() {
+        ArrayList<Figure> children = new ArrayList<>();
+        ZOrderIndex index = new ZOrderIndex(children);
+        Figure back = createFigure(0, 0);
+        Figure middle = createFigure(5, 5);
+        Figure front = createFigure(0, 0);
+        Figure[] figures = {back, middle, front};
+        for (int i = 0; i < figures.length; i++) {
+            children.add(figures[i]);
+            index.add(i, figures[i], i);
+        }
+        Point2D.Double p = new Point2D.Double(6, 6);
+        int[] ids = {2, 0, 1};
+        assertSame(index.findFrontmost(p, ids, 3, Collections.<Figure>emptySet()), front);
+        assertSame(index.findFrontmost(p, ids, 3, Collections.singleton(front)), middle);
+        assertSame(index.findFrontmost(p, ids, 3, Arrays.asList(front, middle, back)), null);
+        assertSame(index.findFrontmostBehind(p, ids, 3, Collections.singleton(front)), middle);
+        assertSame(index.findFrontmostBehind(p, ids, 3, Arrays.asList(front, middle)), back);
+        assertSame(index.findFrontmostBehind(p, ids, 3, Collections.<Figure>emptySet()), front);
+        assertSame(index.findFrontmostBehind(p, ids, 3, Collections.singleton(createFigure(0, 0))), null);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.event;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import org.jhotdraw.draw.figure.BezierFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.geom.BezierPath;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the transform and restore data representations of
+ * {@link TransformRestoreEdit}.
+ */
+public class TransformRestoreEditNGTest {
+
+    public TransformRestoreEditNGTest() {
+    }
+
+    @Test
+    public void testPathStoresTransform() {
+        BezierFigure f = new BezierFigure();
+        for (int i = 0; i < 1000; i++) {
+            f.addNode(new BezierPath.Node(i, i % 7));
+        }
+        Rectangle2D.Double bounds = f.getBounds();
+        Object restoreData = f.getTransformRestoreData();
+        AffineTransform tx = AffineTransform.getRotateInstance(0.3, 10, 20);
+        f.transform(tx);
+        Rectangle2D.Double transformed = f.getBounds();
+        TransformRestoreEdit edit = new TransformRestoreEdit(f, tx, restoreData);
+        assertTrue(edit.getEstimatedSize() < 1000);
+
+        edit.undo();
+        assertRectEquals(f.getBounds(), bounds);
+        Point2D.Double p = f.getNode(999).getControlPoint(0);
+        assertEquals(p.x, 999, 1e-9);
+        assertEquals(p.y, 999 % 7, 1e-9);
+        edit.redo();
+        assertRectEquals(f.getBounds(), transformed);
+    }
+
+    @Test
+    public void testRectangleStoresRestoreData() {
+        RectangleFigure f = new RectangleFigure(10, 20, 30, 40);
+        Rectangle2D.Double bounds = f.getBounds();
+        Object restoreData = f.getTransformRestoreData();
+        AffineTransform tx = AffineTransform.getRotateInstance(0.3, 10, 20);
+        f.transform(tx);
+        Rectangle2D.Double transformed = f.getBounds();
+        TransformRestoreEdit edit = new TransformRestoreEdit(f, tx, restoreData);
+        edit.undo();
+        assertEquals(f.getBounds(), bounds);
+        edit.redo();
+        assertEquals(f.getBounds(), transformed);
+    }
+
+    @Test
+    public void testNearlySingularScaleStoresRestoreData() {
+        BezierFigure f = createPath();
+        Object restoreData = f.getTransformRestoreData();
+        AffineTransform tx = new AffineTransform();
+        tx.translate(50, 50);
+        tx.scale(1e-9, 1e-9);
+        tx.translate(-50, -50);
+        f.transform(tx);
+        TransformRestoreEdit edit = new TransformRestoreEdit(f, tx, restoreData);
+        edit.undo();
+        assertNodesEqual(f, createPath());
+        edit.redo();
+        edit.undo();
+        assertNodesEqual(f, createPath());
+    }
+
+    @Test
+    public void testCoalescingToNearlySingularScaleIsRefused() {
+        BezierFigure f = createPath();
+        AffineTransform tx1 = AffineTransform.getScaleInstance(1e-5, 1e-5);
+        tx1.translate(-50, -50);
+        AffineTransform tx2 = AffineTransform.getTranslateInstance(60, 70);
+        tx2.scale(1e-4, 1e-4);
+        Object restoreData = f.getTransformRestoreData();
+        f.transform(tx1);
+        TransformRestoreEdit edit1 = new TransformRestoreEdit(f, tx1, restoreData);
+        restoreData = f.getTransformRestoreData();
+        f.transform(tx2);
+        TransformRestoreEdit edit2 = new TransformRestoreEdit(f, tx2, restoreData);
+        if (!edit1.coalesce(edit2)) {
+            edit2.undo();
+        }
+        edit1.undo();
+        assertNodesEqual(f, createPath());
+    }
+
+    private static BezierFigure createPath() {
+        BezierFigure f = new BezierFigure();
+        for (int i = 0; i < 100; i++) {
+            f.addNode(new BezierPath.Node(i, i % 7));
+        }
+        return f;
+    }
+
+    private static void assertNodesEqual(BezierFigure actual, BezierFigure expected) {
+        assertEquals(actual.getNodeCount(), expected.getNodeCount());
+        for (int i = 0; i < expected.getNodeCount(); i++) {
+            Point2D.Double a = actual.getNode(i).getControlPoint(0);
+            Point2D.Double e = expected.getNode(i).getControlPoint(0);
+            assertEquals(a.x, e.x, 1e-7, "node " + i);
+            assertEquals(a.y, e.y, 1e-7, "node " + i);
+        }
+    }
+
+    private static void assertRectEquals(Rectangle2D actual, Rectangle2D expected) {
+        assertEquals(actual.getX(), expected.getX(), 1e-9);
+        assertEquals(actual.getY(), expected.getY(), 1e-9);
+        assertEquals(actual.getWidth(), expected.getWidth(), 1e-9);
+        assertEquals(actual.getHeight(), expected.getHeight(), 1e-9);
+    }
+}
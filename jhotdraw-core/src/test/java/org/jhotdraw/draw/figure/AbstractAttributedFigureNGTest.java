@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.figure;
+
+import java.awt.Color;
+import java.awt.geom.Path2D;
+import static org.jhotdraw.draw.AttributeKeys.*;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the restoring of attributes of {@link AbstractAttributedFigure}.
+ */
+public class AbstractAttributedFigureNGTest {
+
+    public AbstractAttributedFigureNGTest() {
+    }
+
+    @Test
+    public void testRestoreAttributes() {
+        RectangleFigure figure = new RectangleFigure();
+        figure.set(FILL_COLOR, Color.RED);
+        Object restoreData = figure.getAttributesRestoreData();
+
+        figure.set(FILL_COLOR, Color.BLUE);
+        figure.set(STROKE_COLOR, Color.GREEN);
+        figure.restoreAttributesTo(restoreData);
+
+        assertEquals(figure.get(FILL_COLOR), Color.RED);
+        assertFalse(figure.getAttributes().containsKey(STROKE_COLOR));
+    }
+
+    @Test
+    public void testRestoreAttributesUpdatesBezierPath() {
+        BezierFigure figure = new BezierFigure();
+        figure.set(PATH_CLOSED, false);
+        figure.set(WINDING_RULE, WindingRule.NON_ZERO);
+        Object restoreData = figure.getAttributesRestoreData();
+
+        figure.set(PATH_CLOSED, true);
+        figure.set(WINDING_RULE, WindingRule.EVEN_ODD);
+        assertTrue(figure.getBezierPath().isClosed());
+        assertEquals(figure.getBezierPath().getWindingRule(), Path2D.WIND_EVEN_ODD);
+
+        figure.restoreAttributesTo(restoreData);
+        assertFalse(figure.get(PATH_CLOSED));
+        assertFalse(figure.getBezierPath().isClosed());
+        assertEquals(figure.getBezierPath().getWindingRule(), Path2D.WIND_NON_ZERO);
+    }
+
+    @Test
+    public void testRestoreAttributesUpdatesLabels() {
+        LabeledLineConnectionFigure figure = new LabeledLineConnectionFigure();
+        TextFigure label = new TextFigure("label");
+        figure.add(label);
+        figure.set(TEXT_COLOR, Color.RED);
+        Object restoreData = figure.getAttributesRestoreData();
+
+        figure.set(TEXT_COLOR, Color.BLUE);
+        assertEquals(label.get(TEXT_COLOR), Color.BLUE);
+
+        figure.restoreAttributesTo(restoreData);
+        assertEquals(figure.get(TEXT_COLOR), Color.RED);
+        assertEquals(label.get(TEXT_COLOR), Color.RED);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.figure;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link LineConnectionFigure}.
+ */
+public class LineConnectionFigureNGTest {
+
+    public LineConnectionFigureNGTest() {
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testPackedPathIsRejected() {
+        new LineConnectionFigure().setPackedPath(true);
+    }
+
+    @Test
+    public void testUnpackedPathIsAccepted() {
+        LineConnectionFigure f = new LineConnectionFigure();
+        f.setPackedPath(false);
+        assertFalse(f.isPackedPath());
+    }
+}
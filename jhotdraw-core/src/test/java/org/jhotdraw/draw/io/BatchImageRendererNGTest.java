@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.io;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link BatchImageRenderer}.
+ */
+public class BatchImageRendererNGTest {
+
+    public BatchImageRendererNGTest() {
+    }
+
+    private static Drawing createDrawing(Color color) {
+        Drawing drawing = new QuadTreeDrawing();
+        RectangleFigure r = new RectangleFigure();
+        r.setBounds(new Point2D.Double(10, 10), new Point2D.Double(30, 30));
+        r.set(AttributeKeys.FILL_COLOR, color);
+        r.set(AttributeKeys.STROKE_COLOR, null);
+        drawing.add(r);
+        return drawing;
+    }
+
+    @Test
+    public void testRenderJobs() throws Exception {
+        BatchImageRenderer renderer = new BatchImageRenderer(3, BatchImageRenderer.DEFAULT_MAX_RETAINED_PIXELS);
+        List<BatchImageRenderer.Job> jobs = new ArrayList<>();
+        List<ByteArrayOutputStream> outs = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            outs.add(out);
+            Drawing drawing = createDrawing((i % 2 == 0) ? Color.RED : Color.BLUE);
+            drawing.set(AttributeKeys.CANVAS_FILL_COLOR, null);
+            jobs.add(new BatchImageRenderer.Job(drawing, new Rectangle2D.Double(0, 0, 40, 20 + i), 2, "PNG", out));
+        }
+        List<Future<BatchImageRenderer.Result>> futures = renderer.submitAll(jobs);
+        for (int i = 0; i < futures.size(); i++) {
+            BatchImageRenderer.Result result = futures.get(i).get();
+            assertSame(result.getJob(), jobs.get(i));
+            assertEquals(result.getWidth(), 80);
+            assertEquals(result.getHeight(), 40 + 2 * i);
+            assertEquals(result.getByteCount(), outs.get(i).size());
+            assertTrue(result.getRenderNanos() > 0);
+            assertTrue(result.getEncodeNanos() > 0);
+            BufferedImage img = ImageIO.read(new ByteArrayInputStream(outs.get(i).toByteArray()));
+            assertEquals(img.getWidth(), 80);
+            assertEquals(img.getHeight(), 40 + 2 * i);
+            assertEquals(img.getRGB(40, 30), ((i % 2 == 0) ? Color.RED : Color.BLUE).getRGB());
+            assertEquals(img.getRGB(5, 5) >>> 24, 0, "background must be transparent");
+        }
+        renderer.shutdown();
+        assertTrue(renderer.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRenderDrawingAreaWithoutAlpha() throws Exception {
+        BatchImageRenderer renderer = new BatchImageRenderer(1, BatchImageRenderer.DEFAULT_MAX_RETAINED_PIXELS);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Drawing drawing = createDrawing(Color.BLACK);
+        drawing.set(AttributeKeys.CANVAS_FILL_OPACITY, 0.0);
+        BatchImageRenderer.Result result = renderer.submit(
+                new BatchImageRenderer.Job(drawing, 1, "BMP", out)).get();
+        Rectangle2D.Double area = drawing.getDrawingArea();
+        assertEquals(result.getWidth(), (int) Math.ceil(area.width));
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(img.getWidth(), result.getWidth());
+        assertEquals(img.getRGB(img.getWidth() / 2, img.getHeight() / 2), Color.BLACK.getRGB());
+        assertEquals(img.getRGB(0, 0), Color.WHITE.getRGB(), "transparent canvas must be white");
+        renderer.shutdown();
+    }
+}
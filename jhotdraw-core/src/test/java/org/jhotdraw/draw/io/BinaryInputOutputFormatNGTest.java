@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.io;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.BezierFigure;
+import org.jhotdraw.draw.figure.EllipseFigure;
+import org.jhotdraw.draw.figure.GroupFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.draw.figure.TextFigure;
+import org.jhotdraw.xml.DefaultDOMFactory;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that {@link BinaryInputOutputFormat} reads back the same drawings as
+ * {@link DOMStorableInputOutputFormat}.
+ */
+public class BinaryInputOutputFormatNGTest {
+
+    private static class TestFactory extends DefaultDOMFactory {
+
+        public TestFactory() {
+            addStorableClass("drawing", DefaultDrawing.class);
+            addStorableClass("r", RectangleFigure.class);
+            addStorableClass("e", EllipseFigure.class);
+            addStorableClass("b", BezierFigure.class);
+            addStorableClass("t", TextFigure.class);
+            addStorableClass("g", GroupFigure.class);
+            addEnumClass("strokePlacement", AttributeKeys.StrokePlacement.class);
+            addEnumClass("strokeType", AttributeKeys.StrokeType.class);
+            addEnumClass("underfill", AttributeKeys.Underfill.class);
+            addEnumClass("orientation", AttributeKeys.Orientation.class);
+        }
+    }
+
+    public BinaryInputOutputFormatNGTest() {
+    }
+
+    private static Drawing createDrawing() {
+        Random r = new Random(0);
+        Drawing drawing = new DefaultDrawing();
+        GroupFigure group = new GroupFigure();
+        for (int i = 0; i < 50; i++) {
+            RectangleFigure rect = new RectangleFigure(r.nextInt(1000), r.nextInt(1000), 10.5, 0.1);
+            rect.set(AttributeKeys.FILL_COLOR, new Color(r.nextInt()));
+            rect.set(AttributeKeys.STROKE_WIDTH, r.nextDouble());
+            drawing.add(rect);
+            EllipseFigure ellipse = new EllipseFigure(r.nextDouble() * 1e6, -r.nextDouble(), 1e-9, 1e20);
+            ellipse.set(AttributeKeys.STROKE_TYPE, AttributeKeys.StrokeType.DOUBLE);
+            group.add(ellipse);
+            BezierFigure bezier = new BezierFigure(i % 2 == 0);
+            for (int j = 0; j < 5; j++) {
+                bezier.addNode(new org.jhotdraw.geom.BezierPath.Node(r.nextInt(100) / 4d, -r.nextInt(100) / 3d));
+            }
+            drawing.add(bezier);
+            TextFigure text = new TextFigure("Text ä€ " + i);
+            text.setBounds(new Point2D.Double(i, i), new Point2D.Double(i + 100, i + 20));
+            drawing.add(text);
+        }
+        drawing.add(group);
+        return drawing;
+    }
+
+    private static Drawing roundTrip(InputFormat in, OutputFormat out, Drawing drawing) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        out.write(buf, drawing);
+        Drawing result = new DefaultDrawing();
+        in.read(new ByteArrayInputStream(buf.toByteArray()), result, true);
+        return result;
+    }
+
+    @Test
+    public void testRoundTripMatchesXML() throws IOException {
+        TestFactory factory = new TestFactory();
+        Drawing drawing = createDrawing();
+        BinaryInputOutputFormat binary = new BinaryInputOutputFormat(factory);
+        DOMStorableInputOutputFormat xml = new DOMStorableInputOutputFormat(factory);
+        Drawing fromBinary = roundTrip(binary, binary, drawing);
+        Drawing fromXML = roundTrip(xml, xml, drawing);
+        FigureAssert.assertFiguresEqual(fromBinary.getChildren(), fromXML.getChildren());
+        assertEquals(fromBinary.getChildCount(), drawing.getChildCount());
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanXML() throws IOException {
+        TestFactory factory = new TestFactory();
+        Drawing drawing = createDrawing();
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        new BinaryInputOutputFormat(factory).write(binary, drawing);
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        new DOMStorableInputOutputFormat(factory).write(xml, drawing);
+        assertTrue(binary.size() * 2 < xml.size(), binary.size() + " bytes vs " + xml.size() + " bytes");
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testReadRejectsOtherData() throws IOException {
+        new BinaryInputOutputFormat(new TestFactory()).read(
+                new ByteArrayInputStream("<drawing/>".getBytes("UTF-8")), new DefaultDrawing(), true);
+    }
+}
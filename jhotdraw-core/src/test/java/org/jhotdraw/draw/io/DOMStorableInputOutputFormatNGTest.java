@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.io;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedList;
+import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.connector.StickyRectangleConnector;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.GroupFigure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.draw.figure.RoundRectangleFigure;
+import org.jhotdraw.draw.figure.TextFigure;
+import org.jhotdraw.xml.DefaultDOMFactory;
+import org.jhotdraw.xml.JavaxDOMInput;
+import org.jhotdraw.xml.JavaxDOMOutput;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link DOMStorableInputOutputFormat}.
+ */
+public class DOMStorableInputOutputFormatNGTest {
+
+    public DOMStorableInputOutputFormatNGTest() {
+    }
+
+    private static DefaultDOMFactory createFactory() {
+        DefaultDOMFactory factory = new DefaultDOMFactory();
+        factory.addStorableClass("drawing", DefaultDrawing.class);
+        factory.addStorableClass("r", RectangleFigure.class);
+        factory.addStorableClass("t", TextFigure.class);
+        factory.addStorableClass("g", GroupFigure.class);
+        factory.addStorableClass("rr", RoundRectangleFigure.class);
+        factory.addStorableClass("lc", LineConnectionFigure.class);
+        factory.addStorableClass("sticky", StickyRectangleConnector.class);
+        return factory;
+    }
+
+    private static Drawing createDrawing() {
+        Drawing drawing = new DefaultDrawing();
+        GroupFigure group = new GroupFigure();
+        for (int i = 0; i < 10; i++) {
+            RectangleFigure rect = new RectangleFigure(i, i * 0.5, 3, 4);
+            rect.set(AttributeKeys.FILL_COLOR, (i % 2 == 0) ? Color.RED : new Color(i));
+            group.add(rect);
+        }
+        drawing.add(group);
+        drawing.add(new TextFigure("a<b & \"c\" \u00e4"));
+        return drawing;
+    }
+
+    /**
+     * Test that the streaming output is the same as the output of a DOM
+     * document. The XML declarations are not compared, because they depend
+     * on the transformer implementation.
+     */
+    @Test
+    public void testWriteIsSameAsJavaxDOMOutput() throws IOException {
+        DefaultDOMFactory factory = createFactory();
+        Drawing drawing = createDrawing();
+
+        JavaxDOMOutput domo = new JavaxDOMOutput(factory);
+        domo.openElement("drawing");
+        drawing.write(domo);
+        domo.closeElement();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        domo.save(expected);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new DOMStorableInputOutputFormat(factory).write(actual, drawing);
+        assertEquals(stripDeclaration(actual.toString("UTF-8")), stripDeclaration(expected.toString("UTF-8")));
+    }
+
+    /**
+     * Creates a drawing with figures which add attributes to their element
+     * after they have added child elements.
+     */
+    private static Drawing createConnectedDrawing() {
+        Drawing drawing = new DefaultDrawing();
+        RoundRectangleFigure start = new RoundRectangleFigure(0, 0, 20, 10);
+        start.set(AttributeKeys.FILL_COLOR, Color.YELLOW);
+        start.setArc(7, 5);
+        RectangleFigure end = new RectangleFigure(50, 40, 10, 10);
+        drawing.add(start);
+        drawing.add(end);
+        LineConnectionFigure connection = new LineConnectionFigure();
+        StickyRectangleConnector startConnector = new StickyRectangleConnector(start);
+        startConnector.setAngle(0.5f);
+        connection.setStartConnector(startConnector);
+        connection.setEndConnector(new StickyRectangleConnector(end));
+        connection.updateConnection();
+        drawing.add(connection);
+        return drawing;
+    }
+
+    /**
+     * Test that attributes which are added after child elements are written,
+     * and that the drawing can be read back.
+     */
+    @Test
+    public void testRoundTripWithLateAttributes() throws IOException {
+        DefaultDOMFactory factory = createFactory();
+        DOMStorableInputOutputFormat format = new DOMStorableInputOutputFormat(factory);
+        Drawing drawing = createConnectedDrawing();
+
+        JavaxDOMOutput domo = new JavaxDOMOutput(factory);
+        domo.openElement("drawing");
+        drawing.write(domo);
+        domo.closeElement();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        domo.save(expected);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        format.write(actual, drawing);
+        assertEquals(stripDeclaration(actual.toString("UTF-8")), stripDeclaration(expected.toString("UTF-8")));
+
+        Drawing read = new DefaultDrawing();
+        format.read(new ByteArrayInputStream(actual.toByteArray()), read, true);
+        FigureAssert.assertFiguresEqual(read.getChildren(), drawing.getChildren());
+        RoundRectangleFigure start = (RoundRectangleFigure) read.getChild(0);
+        assertEquals(start.getArcWidth(), 7.0);
+        assertEquals(start.getArcHeight(), 5.0);
+        LineConnectionFigure connection = (LineConnectionFigure) read.getChild(2);
+        assertSame(connection.getStartFigure(), start);
+        assertSame(connection.getEndFigure(), read.getChild(1));
+        assertEquals(((StickyRectangleConnector) connection.getStartConnector()).getAngle(), 0.5, 1e-6);
+    }
+
+    /**
+     * Test that the figures list of a drawing is read with more than one
+     * top-level figure.
+     */
+    @Test
+    public void testReadFigureList() throws IOException {
+        DefaultDOMFactory factory = createFactory();
+        DOMStorableInputOutputFormat format = new DOMStorableInputOutputFormat(factory);
+        Drawing drawing = createConnectedDrawing();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        format.write(buf, drawing);
+
+        Drawing read = new DefaultDrawing();
+        LinkedList<Figure> figures = new LinkedList<>();
+        format.read(null, new ByteArrayInputStream(buf.toByteArray()), read, figures);
+        assertEquals(figures.size(), 3);
+        FigureAssert.assertFiguresEqual(read.getChildren(), drawing.getChildren());
+    }
+
+    private static String stripDeclaration(String xml) {
+        return xml.startsWith("<?xml") ? xml.substring(xml.indexOf("?>") + 2) : xml;
+    }
+
+    /**
+     * Test that the streaming input reads the same figures as a DOM document.
+     */
+    @Test
+    public void testReadIsSameAsJavaxDOMInput() throws IOException {
+        DefaultDOMFactory factory = createFactory();
+        DOMStorableInputOutputFormat format = new DOMStorableInputOutputFormat(factory);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        format.write(buf, createDrawing());
+
+        JavaxDOMInput domi = new JavaxDOMInput(factory, new ByteArrayInputStream(buf.toByteArray()));
+        domi.openElement("drawing");
+        Drawing expected = new DefaultDrawing();
+        expected.read(domi);
+        domi.closeElement();
+
+        Drawing actual = new DefaultDrawing();
+        format.read(new ByteArrayInputStream(buf.toByteArray()), actual, true);
+        FigureAssert.assertFiguresEqual(actual.getChildren(), expected.getChildren());
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.io;
+
+import java.util.List;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.GroupFigure;
+import static org.testng.Assert.*;
+
+/**
+ * Assertions for comparing figures which have been read by an input format.
+ */
+final class FigureAssert {
+
+    private FigureAssert() {
+    }
+
+    /**
+     * Asserts that the figures have the same classes, bounds and attributes.
+     * The children of group figures are compared recursively.
+     */
+    static void assertFiguresEqual(List<Figure> actual, List<Figure> expected) {
+        assertEquals(actual.size(), expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Figure a = actual.get(i);
+            Figure e = expected.get(i);
+            assertEquals(a.getClass(), e.getClass());
+            assertEquals(a.getBounds(), e.getBounds());
+            assertEquals(a.getAttributes(), e.getAttributes());
+            if (e instanceof GroupFigure) {
+                assertFiguresEqual(((GroupFigure) a).getChildren(), ((GroupFigure) e).getChildren());
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.io;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.figure.EllipseFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the tiled export of {@link ImageOutputFormat}.
+ */
+public class ImageOutputFormatNGTest {
+
+    public ImageOutputFormatNGTest() {
+    }
+
+    private static Drawing createDrawing() {
+        Drawing drawing = new QuadTreeDrawing();
+        Random rnd = new Random(7);
+        for (int i = 0; i < 60; i++) {
+            Figure f = (i % 2 == 0) ? new RectangleFigure() : new EllipseFigure();
+            double x = rnd.nextInt(180);
+            double y = rnd.nextInt(130);
+            f.setBounds(new Point2D.Double(x, y), new Point2D.Double(x + 5 + rnd.nextInt(40), y + 5 + rnd.nextInt(40)));
+            f.set(AttributeKeys.FILL_COLOR, new Color(rnd.nextInt(0xffffff)));
+            drawing.add(f);
+        }
+        return drawing;
+    }
+
+    private static void assertSimilar(BufferedImage actual, BufferedImage expected) {
+        assertEquals(actual.getWidth(), expected.getWidth());
+        assertEquals(actual.getHeight(), expected.getHeight());
+        int differences = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int a = actual.getRGB(x, y);
+                int e = expected.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs(((a >>> shift) & 0xff) - ((e >>> shift) & 0xff)) > 2) {
+                        differences++;
+                        break;
+                    }
+                }
+            }
+        }
+        assertTrue(differences <= expected.getWidth() * expected.getHeight() / 1000, "differences:" + differences);
+    }
+
+    @Test
+    public void testWriteTiled() throws Exception {
+        ImageOutputFormat format = new ImageOutputFormat();
+        format.setStripHeight(32);
+        for (Color canvas : new Color[]{Color.WHITE, null}) {
+            Drawing drawing = createDrawing();
+            drawing.set(AttributeKeys.CANVAS_FILL_COLOR, canvas);
+            AffineTransform tx = AffineTransform.getScaleInstance(1.5, 1.5);
+            tx.translate(-3, -2);
+            Dimension size = new Dimension(331, 270);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            format.writeTiled(out, drawing, drawing.getChildren(), tx, size);
+            BufferedImage actual = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+            BufferedImage expected = format.toImage(drawing, drawing.getChildren(), tx, size);
+            assertEquals(actual.getColorModel().hasAlpha(), canvas == null);
+            assertSimilar(actual, expected);
+        }
+    }
+
+    @Test
+    public void testWriteAboveThreshold() throws Exception {
+        ImageOutputFormat format = new ImageOutputFormat();
+        format.setStripHeight(64);
+        Drawing drawing = createDrawing();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.setTiledExportThreshold(1000);
+        format.write(out, drawing);
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertSimilar(actual, format.toImage(drawing, drawing.getChildren(), 1d, false));
+    }
+
+    @Test
+    public void testWriteTiledDrawsClonesOnWorkerThreads() throws Exception {
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        final Set<Figure> drawn = Collections.synchronizedSet(new HashSet<Figure>());
+        Drawing drawing = new QuadTreeDrawing();
+        for (int i = 0; i < 4; i++) {
+            Figure f = new RectangleFigure() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public void draw(Graphics2D g) {
+                    threads.add(Thread.currentThread());
+                    drawn.add(this);
+                    super.draw(g);
+                }
+            };
+            // Each figure spans many strips
+            f.setBounds(new Point2D.Double(i * 10, 0), new Point2D.Double(200 + i * 10, 150));
+            f.set(AttributeKeys.FILL_COLOR, Color.BLUE);
+            drawing.add(f);
+        }
+        ImageOutputFormat format = new ImageOutputFormat();
+        format.setStripHeight(16);
+        format.writeTiled(new ByteArrayOutputStream(), drawing, drawing.getChildren(),
+                new AffineTransform(), new Dimension(240, 160));
+        assertFalse(threads.contains(Thread.currentThread()), "the figures must be drawn on worker threads");
+        assertEquals(drawn.size(), 4 * 10, "each strip must draw its own clones");
+        for (Figure f : drawing.getChildren()) {
+            assertFalse(drawn.contains(f), "the figures of the drawing must not be drawn");
+        }
+    }
+}
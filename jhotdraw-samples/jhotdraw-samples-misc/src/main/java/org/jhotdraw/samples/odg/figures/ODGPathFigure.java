@@ -31,7 +31,6 @@ import org.jhotdraw.draw.handle.TransformHandleKit;
 import org.jhotdraw.geom.BezierPath;
 import org.jhotdraw.geom.Geom;
 import org.jhotdraw.geom.GrowStroke;
-import org.jhotdraw.geom.Shapes;
 import org.jhotdraw.samples.odg.Gradient;
 import org.jhotdraw.samples.odg.ODGAttributeKeys;
 import static org.jhotdraw.samples.odg.ODGAttributeKeys.*;
@@ -217,8 +216,10 @@ public class ODGPathFigure extends AbstractAttributedCompositeFigure implements
             }
         }
         if (!isClosed) {
-            if (Shapes.outlineContains(getPath(), p, tolerance)) {
-                return true;
+            for (int i = 0, n = getChildCount(); i < n; i++) {
+                if (getChild(i).outlineContains(p, tolerance)) {
+                    return true;
+                }
             }
         }
         return false;
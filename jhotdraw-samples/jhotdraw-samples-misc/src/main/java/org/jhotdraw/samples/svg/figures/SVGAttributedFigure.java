@@ -42,6 +42,11 @@ public abstract class SVGAttributedFigure extends AbstractAttributedFigure {
         double opacity = get(OPACITY);
         opacity = Math.min(Math.max(0d, opacity), 1d);
         if (opacity != 0d) {
+            LevelOfDetailPolicy lod = LevelOfDetailPolicy.getPolicy(g);
+            if (lod != null && lod.isProxy(g, this)) {
+                lod.drawProxy(g, this, get(FILL_COLOR) != null ? get(FILL_COLOR) : get(STROKE_COLOR), opacity);
+                return;
+            }
             if (opacity != 1d) {
                 Rectangle2D.Double drawingArea = getDrawingArea();
                 Rectangle2D clipBounds = g.getClipBounds();
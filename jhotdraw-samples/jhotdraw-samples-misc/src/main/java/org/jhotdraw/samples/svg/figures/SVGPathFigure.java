@@ -29,7 +29,6 @@ import org.jhotdraw.draw.handle.Handle;
 import org.jhotdraw.draw.handle.TransformHandleKit;
 import org.jhotdraw.geom.Geom;
 import org.jhotdraw.geom.GrowStroke;
-import org.jhotdraw.geom.Shapes;
 import org.jhotdraw.samples.svg.Gradient;
 import org.jhotdraw.samples.svg.SVGAttributeKeys;
 import static org.jhotdraw.samples.svg.SVGAttributeKeys.*;
@@ -239,8 +238,10 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
             }
         }
         if (!isClosed) {
-            if (Shapes.outlineContains(getPath(), p, tolerance)) {
-                return true;
+            for (int i = 0, n = getChildCount(); i < n; i++) {
+                if (getChild(i).outlineContains(p, tolerance)) {
+                    return true;
+                }
             }
         }
         return false;
@@ -77,6 +77,17 @@ public class SVGTextAreaFigure extends SVGAttributedFigure
     protected void drawText(java.awt.Graphics2D g) {
     }
 
+    /**
+     * Draws nothing, if the level of detail policy set on the graphics
+     * suppresses text, so that the text is not laid out.
+     */
+    @Override
+    public void drawFigure(Graphics2D g) {
+        if (LevelOfDetailPolicy.isTextDrawn(g, this)) {
+            super.drawFigure(g);
+        }
+    }
+
     @Override
     protected void drawFill(Graphics2D g) {
         g.fill(getTextShape());
@@ -83,6 +83,17 @@ public class SVGTextFigure
         */
     }
 
+    /**
+     * Draws nothing, if the level of detail policy set on the graphics
+     * suppresses text, so that the text is not laid out.
+     */
+    @Override
+    public void drawFigure(Graphics2D g) {
+        if (LevelOfDetailPolicy.isTextDrawn(g, this)) {
+            super.drawFigure(g);
+        }
+    }
+
     @Override
     protected void drawFill(Graphics2D g) {
         g.fill(getTextShape());
@@ -19,6 +19,8 @@ import java.io.*;
 import java.net.*;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.*;
@@ -29,12 +31,15 @@ import javax.swing.text.DefaultStyledDocument;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.jhotdraw.draw.*;
 import org.jhotdraw.draw.io.InputFormat;
 import org.jhotdraw.formatter.FontFormatter;
 import org.jhotdraw.geom.BezierPath;
 import org.jhotdraw.io.Base64;
-import org.jhotdraw.io.StreamPosTokenizer;
 import org.jhotdraw.samples.svg.Gradient;
 import static org.jhotdraw.samples.svg.SVGAttributeKeys.*;
 import org.jhotdraw.samples.svg.SVGAttributeKeys.TextAnchor;
@@ -43,8 +48,11 @@ import org.jhotdraw.samples.svg.figures.SVGFigure;
 import org.jhotdraw.util.LocaleUtil;
 import org.jhotdraw.xml.css.CSSParser;
 import org.jhotdraw.xml.css.StyleManager;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.Text;
 import org.xml.sax.SAXException;
 
 /**
@@ -87,10 +95,9 @@ public class SVGInputFormat implements InputFormat {
      */
     private HashMap<Element, Object> elementObjects;
     /**
-     * Tokenizer for parsing SVG path expressions.
-     *
+     * Parser for SVG path expressions and point lists.
      */
-    private StreamPosTokenizer toPathTokenizer;
+    private SVGPathParser pathParser = new SVGPathParser();
     /**
      * FontFormatter for parsing font family names.
      */
@@ -159,6 +166,225 @@ public class SVGInputFormat implements InputFormat {
      * Holds the document that is currently being read.
      */
     private Element document;
+    /**
+     * Files which are at least this large are read with {@link #readStreaming}.
+     */
+    private long streamingThreshold = 16L << 20;
+    /**
+     * The number of figures which {@link #readStreaming} adds to the drawing
+     * at once.
+     */
+    private int batchSize = 1000;
+    /**
+     * Set to true, when an element refers to an element which has not been
+     * read yet.
+     */
+    private boolean hasUnresolvedReferences;
+    /**
+     * The namespace of xlink attributes.
+     */
+    private static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+
+    /**
+     * An open container element of the streaming reader.
+     */
+    private static class StreamingFrame {
+
+        private final StreamingFrame parent;
+        private final Element elem;
+        /**
+         * The name of the container element: "svg", "g", "a" or "defs".
+         * The name is empty for elements outside of the "svg" element.
+         */
+        private final String name;
+        private HashMap<AttributeKey<?>, Object> attributes;
+        private CompositeFigure group;
+        /**
+         * The transform which is applied to the children of the container.
+         */
+        private AffineTransform transform;
+        private String href;
+        private String target;
+        /**
+         * Number of deferred children which have been inserted into the group.
+         */
+        private int insertedCount;
+        private boolean hasDeferredChildren;
+        /**
+         * Whether the element must be kept, because it is referenced, or
+         * because it is an ancestor of a referenced or deferred element.
+         * The children of a retained element are released, unless they are
+         * retained themselves, or the subtree of the element is retained.
+         */
+        private boolean isRetained;
+        /**
+         * Whether the element and all its descendants must be kept, because
+         * the element or one of its ancestors is referenced.
+         */
+        private boolean isSubtreeRetained;
+
+        public StreamingFrame(StreamingFrame parent, Element elem, String name) {
+            this.parent = parent;
+            this.elem = elem;
+            this.name = name;
+            this.isSubtreeRetained = parent != null && parent.isSubtreeRetained;
+        }
+    }
+
+    /**
+     * An element which refers to an element which has not been read yet.
+     */
+    private static class DeferredElement {
+
+        private final Element elem;
+        private final StreamingFrame parent;
+        /**
+         * The index at which the figure is inserted into the parent, or into
+         * the drawing.
+         */
+        private final int slot;
+
+        public DeferredElement(Element elem, StreamingFrame parent, int slot) {
+            this.elem = elem;
+            this.parent = parent;
+            this.slot = slot;
+        }
+    }
+    /**
+     * Holds the figures which have not yet been added to the drawing by the
+     * streaming reader.
+     */
+    private ArrayList<Figure> batch;
+    /**
+     * The drawing which is being read by the streaming reader.
+     */
+    private Drawing streamingDrawing;
+    /**
+     * The number of figures in the drawing before the streaming reader started.
+     */
+    private int drawingOffset;
+    /**
+     * The number of top level figures read by the streaming reader.
+     */
+    private int emittedCount;
+    /**
+     * The number of deferred top level figures which have been inserted into
+     * the drawing.
+     */
+    private int insertedCount;
+    private ArrayList<DeferredElement> deferredElements;
+    /**
+     * Creates the elements of the streaming reader.
+     */
+    private Document elementFactory;
+    /**
+     * The pool which parses path data, points and transforms in parallel,
+     * or null if they are parsed sequentially.
+     */
+    private ForkJoinPool parsePool;
+    /**
+     * Holds path data and points which have been parsed in advance.
+     */
+    private IdentityHashMap<Element, Object> parsedShapes = new IdentityHashMap<Element, Object>();
+    /**
+     * Holds transforms which have been parsed in advance.
+     */
+    private IdentityHashMap<Element, AffineTransform> parsedTransforms = new IdentityHashMap<Element, AffineTransform>();
+    /**
+     * Leaf elements which the streaming reader has not read yet.
+     */
+    private ArrayList<PendingElement> pendingElements = new ArrayList<PendingElement>();
+
+    /**
+     * A leaf element which is waiting for the parallel parser, or a container
+     * element which is closed after its pending children have been read.
+     */
+    private static class PendingElement {
+
+        private final StreamingFrame frame;
+        /**
+         * The leaf element, or null if the frame is closed.
+         */
+        private final Element elem;
+        private final boolean isIdentified;
+
+        public PendingElement(StreamingFrame frame, Element elem, boolean isIdentified) {
+            this.frame = frame;
+            this.elem = elem;
+            this.isIdentified = isIdentified;
+        }
+    }
+
+    /**
+     * An attribute value which is parsed in advance.
+     */
+    private static class ParseTask {
+
+        private final Element elem;
+        /**
+         * The name of the attribute: "d", "points" or "transform".
+         */
+        private final String attribute;
+        private final String value;
+        private Object result;
+
+        public ParseTask(Element elem, String attribute, String value) {
+            this.elem = elem;
+            this.attribute = attribute;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Parses a range of parse tasks, splitting it up until it is small
+     * enough.
+     * <p>
+     * The action runs on the threads of the parse pool, and must therefore
+     * not access the state of the reader. A task which can not be parsed
+     * without the state of the reader gets a null result.
+     */
+    private static class ParseAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 32;
+        private final ParseTask[] tasks;
+        private final int from;
+        private final int to;
+
+        public ParseAction(ParseTask[] tasks, int from, int to) {
+            this.tasks = tasks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                SVGPathParser parser = new SVGPathParser();
+                for (int i = from; i < to; i++) {
+                    ParseTask task = tasks[i];
+                    try {
+                        if ("d".equals(task.attribute)) {
+                            task.result = parser.parsePath(task.value);
+                        } else if ("points".equals(task.attribute)) {
+                            // Points with units are left to the reading
+                            // thread, because they depend on the viewport
+                            task.result = parser.parsePoints(task.value);
+                        } else {
+                            task.result = parser.parseTransform(task.value);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // The value is parsed again when the element is read,
+                        // which reports the error.
+                        task.result = null;
+                    }
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParseAction(tasks, from, mid), new ParseAction(tasks, mid, to));
+            }
+        }
+    }
 
     /**
      * Creates a new instance.
@@ -189,7 +415,11 @@ public class SVGInputFormat implements InputFormat {
         this.url = file.toURI().toURL();
         BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
         try {
-            read(in, drawing, replace);
+            if (file.length() >= streamingThreshold) {
+                readStreaming(in, drawing, replace);
+            } else {
+                read(in, drawing, replace);
+            }
         } finally {
             in.close();
         }
@@ -224,6 +454,7 @@ public class SVGInputFormat implements InputFormat {
         }
         this.figures = new LinkedList<Figure>();
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
         DocumentBuilder builder;
         try {
             builder = factory.newDocumentBuilder();
@@ -235,7 +466,12 @@ public class SVGInputFormat implements InputFormat {
             System.out.println("SVGInputFormat parser created " + (System.currentTimeMillis() - start));
         }
         try {
-            document = (Element) builder.parse(in);
+            Document doc = builder.parse(in);
+            document = doc.getDocumentElement();
+            // Detach the root element and drop ignorable nodes, so that the
+            // tree has the same shape as the tree of the streaming reader
+            doc.removeChild(document);
+            removeIgnorableNodes(document);
         } catch (SAXException ex) {
             Logger.getLogger(SVGInputFormat.class.getName()).log(Level.SEVERE, null, ex);
             throw new IOException(ex);
@@ -245,40 +481,15 @@ public class SVGInputFormat implements InputFormat {
         }
         // Search for the first 'svg' element in the XML document
         // in preorder sequence
-        Element svg = document;
-        Stack<Element> stack = new Stack<Element>();
-        //LinkedList<Element> ll = new LinkedList<Element>();
-        //ll.add(document);
-        stack.push((Element) document.getFirstChild());
-        while (!stack.empty() && stack.peek().getNextSibling() != null) {
-            Element iter = stack.peek();
-            Element node = (Element) iter.getNextSibling();
-            stack.set(stack.indexOf(iter), node);
-            Element children = (Element) node.getFirstChild();
-            if (iter.getNextSibling() == null) {
-                stack.pop();
-            }
-            if (children != null && children.getNextSibling() != null) {
-                stack.push(children);
-            }
-            if (node.getLocalName() != null
-                    && node.getLocalName().equals("svg")
-                    && (node.getPrefix() == null
-                    || node.getPrefix().equals(SVG_NAMESPACE))) {
-                svg = node;
-                break;
-            }
-        }
-        if (svg.getLocalName() == null
-                || !svg.getLocalName().equals("svg")
-                || (svg.getPrefix() != null
-                && !svg.getPrefix().equals(SVG_NAMESPACE))) {
-            throw new IOException("'svg' element expected: " + svg.getLocalName());
+        Element svg = findSVGElement(document);
+        if (svg == null) {
+            throw new IOException("'svg' element expected: " + document.getLocalName());
         }
         //long end1 = System.currentTimeMillis();
         // Flatten CSS Styles
         initStorageContext(document);
         flattenStyles(svg);
+        prefetch(Collections.singletonList(svg));
         //long end2 = System.currentTimeMillis();
         readElement(svg);
         if (DEBUG) {
@@ -303,6 +514,8 @@ public class SVGInputFormat implements InputFormat {
         // Get rid of all objects we don't need anymore to help garbage collector.
         identifiedElements.clear();
         elementObjects.clear();
+        parsedShapes.clear();
+        parsedTransforms.clear();
         viewportStack.clear();
         styleManager.clear();
         document = null;
@@ -312,6 +525,636 @@ public class SVGInputFormat implements InputFormat {
         styleManager = null;
     }
 
+    /**
+     * Removes comments, processing instructions and text nodes which only
+     * contain whitespace from the subtree of the specified element. The text
+     * of "text", "textArea" and "style" elements is kept.
+     */
+    private void removeIgnorableNodes(Element elem) {
+        String name = elem.getLocalName();
+        if ("text".equals(name) || "textArea".equals(name) || "style".equals(name)) {
+            return;
+        }
+        Node child = elem.getFirstChild();
+        while (child != null) {
+            Node next = child.getNextSibling();
+            if (child instanceof Element) {
+                removeIgnorableNodes((Element) child);
+            } else if (!(child instanceof Text) || child.getNodeValue().trim().isEmpty()) {
+                elem.removeChild(child);
+            }
+            child = next;
+        }
+    }
+
+    /**
+     * Returns the first "svg" element of the subtree of the specified element
+     * in preorder sequence, or null.
+     */
+    private Element findSVGElement(Element elem) {
+        if ("svg".equals(elem.getLocalName())
+                && (elem.getPrefix() == null || elem.getPrefix().equals(SVG_NAMESPACE))) {
+            return elem;
+        }
+        for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                Element svg = findSVGElement((Element) child);
+                if (svg != null) {
+                    return svg;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads an SVG document without building a DOM tree of the whole
+     * document.
+     * <p>
+     * This method parses the document with a streaming parser, and creates
+     * the figures as their elements arrive. Only the ancestors of the current
+     * element, and elements which can be referenced by an id, are held in
+     * memory. Figures are added to the drawing in batches.
+     * <p>
+     * Elements which refer to an element further down in the document, are
+     * read again after the whole document has been read, and their figures are
+     * inserted at their place in the drawing.
+     * <p>
+     * CSS style sheets only apply to the elements which follow them in the
+     * document.
+     *
+     * @param in The input stream.
+     * @param drawing The drawing to which this method adds figures.
+     * @param replace Whether attributes on the drawing object
+     * should by changed by this method.
+     */
+    public void readStreaming(InputStream in, Drawing drawing, boolean replace) throws IOException {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        try {
+            elementFactory = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException ex) {
+            Logger.getLogger(SVGInputFormat.class.getName()).log(Level.SEVERE, null, ex);
+            throw new IOException(ex);
+        }
+        this.figures = new LinkedList<Figure>();
+        identifiedElements = new HashMap<String, Element>();
+        elementObjects = new HashMap<Element, Object>();
+        viewportStack = new Stack<Viewport>();
+        viewportStack.push(new Viewport());
+        styleManager = new StyleManager();
+        batch = new ArrayList<Figure>();
+        deferredElements = new ArrayList<DeferredElement>();
+        streamingDrawing = drawing;
+        emittedCount = 0;
+        insertedCount = 0;
+        if (replace) {
+            drawing.removeAllChildren();
+        }
+        drawingOffset = drawing.getChildCount();
+        try {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+            // The innermost open container element
+            StreamingFrame frame = null;
+            // The root and the innermost open element of a subtree which is read as a whole
+            Element subtree = null;
+            Element current = null;
+            boolean isText = false;
+            boolean isIdentified = false;
+            boolean isSVGFound = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    Element elem = createStreamingElement(reader);
+                    if (subtree != null) {
+                        current.appendChild(elem);
+                        current = elem;
+                    } else if (frame != null) {
+                        frame.elem.appendChild(elem);
+                    }
+                    if (elem.getPrefix() == null) {
+                        flattenStyle(elem);
+                    }
+                    String id = elem.getAttribute("id");
+                    if (id.isEmpty()) {
+                        id = elem.getAttribute("xml:id");
+                    }
+                    if (!id.isEmpty()) {
+                        identifiedElements.put(id, elem);
+                        isIdentified = true;
+                    }
+                    if (subtree == null) {
+                        String name = elem.getPrefix() == null ? elem.getLocalName() : "";
+                        if (frame == null || frame.name.isEmpty()) {
+                            if ("svg".equals(name) && !isSVGFound) {
+                                isSVGFound = true;
+                            } else {
+                                name = "";
+                            }
+                        } else if (!"svg".equals(name) && !"g".equals(name)
+                                && !"a".equals(name) && !"defs".equals(name)) {
+                            name = null;
+                        }
+                        if (name == null) {
+                            subtree = current = elem;
+                            isText = "text".equals(elem.getLocalName())
+                                    || "textArea".equals(elem.getLocalName())
+                                    || "style".equals(elem.getLocalName());
+                        } else {
+                            if ("svg".equals(name)) {
+                                // The viewport affects the parsing of lengths
+                                drainPendingElements();
+                            }
+                            frame = openStreamingFrame(frame, elem, name);
+                            if (isIdentified) {
+                                frame.isSubtreeRetained = true;
+                                isIdentified = false;
+                            }
+                            if (frame.isSubtreeRetained) {
+                                retain(frame);
+                            }
+                        }
+                    }
+                } else if (event == XMLStreamConstants.CHARACTERS
+                        || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE) {
+                    if (current != null) {
+                        String text = reader.getText();
+                        if (isText || !text.trim().isEmpty()) {
+                            current.appendChild(elementFactory.createTextNode(text));
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (subtree != null) {
+                        if (current == subtree) {
+                            if (parsePool == null || "style".equals(subtree.getLocalName())) {
+                                drainPendingElements();
+                                readStreamingElement(frame, subtree, isIdentified);
+                            } else {
+                                pendingElements.add(new PendingElement(frame, subtree, isIdentified));
+                                if (pendingElements.size() >= batchSize) {
+                                    drainPendingElements();
+                                }
+                            }
+                            subtree = current = null;
+                            isIdentified = false;
+                        } else {
+                            current = (Element) current.getParentNode();
+                        }
+                    } else if (frame != null) {
+                        StreamingFrame closed = frame;
+                        frame = frame.parent;
+                        if (parsePool == null || "svg".equals(closed.name)) {
+                            drainPendingElements();
+                            closeStreamingFrame(closed);
+                        } else {
+                            pendingElements.add(new PendingElement(closed, null, false));
+                        }
+                    }
+                }
+            }
+            reader.close();
+            if (!isSVGFound) {
+                throw new IOException("'svg' element expected");
+            }
+            drainPendingElements();
+            flushBatch();
+            readDeferredElements();
+            flushBatch();
+        } catch (XMLStreamException ex) {
+            Logger.getLogger(SVGInputFormat.class.getName()).log(Level.SEVERE, null, ex);
+            throw new IOException(ex);
+        }
+        if (replace) {
+            Viewport viewport = viewportStack.firstElement();
+            drawing.set(VIEWPORT_FILL, VIEWPORT_FILL.get(viewport.attributes));
+            drawing.set(VIEWPORT_FILL_OPACITY, VIEWPORT_FILL_OPACITY.get(viewport.attributes));
+            drawing.set(VIEWPORT_HEIGHT, VIEWPORT_HEIGHT.get(viewport.attributes));
+            drawing.set(VIEWPORT_WIDTH, VIEWPORT_WIDTH.get(viewport.attributes));
+        }
+        // Get rid of all objects we don't need anymore to help garbage collector.
+        identifiedElements = null;
+        elementObjects = null;
+        viewportStack = null;
+        styleManager = null;
+        figures = null;
+        batch = null;
+        deferredElements = null;
+        streamingDrawing = null;
+        elementFactory = null;
+        parsedShapes.clear();
+        parsedTransforms.clear();
+    }
+
+    /**
+     * Creates an element for the current start tag of the streaming reader.
+     * <p>
+     * SVG elements get no prefix, elements of other namespaces always get a
+     * prefix. Attributes in no namespace are created without a namespace, so
+     * that {@code readAttribute} finds them, xlink attributes are created with
+     * the "xlink" prefix.
+     */
+    private Element createStreamingElement(XMLStreamReader reader) {
+        String uri = reader.getNamespaceURI();
+        String localName = reader.getLocalName();
+        Element elem;
+        if (uri == null || uri.isEmpty()) {
+            elem = elementFactory.createElementNS(null, localName);
+        } else if (uri.equals(SVG_NAMESPACE)) {
+            elem = elementFactory.createElementNS(SVG_NAMESPACE, localName);
+        } else {
+            String prefix = reader.getPrefix();
+            elem = elementFactory.createElementNS(uri,
+                    (prefix == null || prefix.isEmpty() ? "ns" : prefix) + ":" + localName);
+        }
+        for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+            String attributeUri = reader.getAttributeNamespace(i);
+            String name = reader.getAttributeLocalName(i);
+            if (attributeUri == null || attributeUri.isEmpty()) {
+                elem.setAttribute(name, reader.getAttributeValue(i));
+            } else if (attributeUri.equals(XLINK_NAMESPACE)) {
+                elem.setAttribute("xlink:" + name, reader.getAttributeValue(i));
+            } else if (attributeUri.equals(javax.xml.XMLConstants.XML_NS_URI)) {
+                elem.setAttribute("xml:" + name, reader.getAttributeValue(i));
+            } else {
+                elem.setAttribute(reader.getAttributePrefix(i) + ":" + name, reader.getAttributeValue(i));
+            }
+        }
+        return elem;
+    }
+
+    /**
+     * Opens a container element in the streaming reader.
+     */
+    private StreamingFrame openStreamingFrame(StreamingFrame parent, Element elem, String name)
+            throws IOException {
+        StreamingFrame frame = new StreamingFrame(parent, elem, name);
+        if ("svg".equals(name)) {
+            frame.transform = readViewport(elem);
+        } else if ("g".equals(name)) {
+            frame.attributes = new HashMap<AttributeKey<?>, Object>();
+            readCoreAttributes(elem, frame.attributes);
+            readOpacityAttribute(elem, frame.attributes);
+            frame.group = factory.createG(frame.attributes);
+        } else if ("a".equals(name)) {
+            frame.attributes = new HashMap<AttributeKey<?>, Object>();
+            readCoreAttributes(elem, frame.attributes);
+            frame.group = factory.createG(frame.attributes);
+            frame.href = readAttribute(elem, "xlink:href", null);
+            if (frame.href == null) {
+                frame.href = readAttribute(elem, "href", null);
+            }
+            frame.target = readAttribute(elem, "target", null);
+        }
+        return frame;
+    }
+
+    /**
+     * Closes a container element in the streaming reader.
+     */
+    private void closeStreamingFrame(StreamingFrame frame)
+            throws IOException {
+        Figure figure = null;
+        if ("svg".equals(frame.name)) {
+            viewportStack.pop();
+        } else if ("g".equals(frame.name)) {
+            readTransformAttribute(frame.elem, frame.attributes);
+            if (TRANSFORM.get(frame.attributes) != null) {
+                frame.transform = TRANSFORM.get(frame.attributes);
+                frame.group.transform(frame.transform);
+            }
+            figure = frame.group;
+        } else if ("a".equals(frame.name)) {
+            figure = (frame.group.getChildCount() == 1 && !frame.hasDeferredChildren)
+                    ? frame.group.getChild(0) : frame.group;
+        }
+        if (figure instanceof SVGFigure && ((SVGFigure) figure).isEmpty()
+                && !frame.hasDeferredChildren) {
+            figure = null;
+        }
+        if (frame.parent != null) {
+            addStreamingFigure(frame.parent, frame.elem, figure);
+        }
+        if (!frame.isRetained) {
+            release(frame.elem);
+        }
+    }
+
+    /**
+     * Reads an element and its subtree in the streaming reader.
+     */
+    private void readStreamingElement(StreamingFrame frame, Element elem, boolean isIdentified)
+            throws IOException {
+        if (frame == null || frame.name.isEmpty()) {
+            // Elements outside of the "svg" element are ignored
+            release(elem);
+            return;
+        }
+        if (elem.getPrefix() == null && "style".equals(elem.getLocalName())) {
+            if (readAttribute(elem, "type", "").equals("text/css")) {
+                CSSParser cssParser = new CSSParser();
+                cssParser.parse(elem.getTextContent(), styleManager);
+            }
+            release(elem);
+            return;
+        }
+        hasUnresolvedReferences = false;
+        Figure figure = readElement(elem);
+        emitNestedFigures();
+        if (hasUnresolvedReferences) {
+            int slot;
+            if ("svg".equals(frame.name)) {
+                slot = emittedCount;
+            } else if (frame.group != null) {
+                slot = frame.group.getChildCount();
+            } else {
+                slot = -1;
+            }
+            deferredElements.add(new DeferredElement(elem, frame, slot));
+            frame.hasDeferredChildren = true;
+            retain(frame);
+            return;
+        }
+        addStreamingFigure(frame, elem, figure);
+        if (isIdentified || frame.isSubtreeRetained) {
+            retain(frame);
+        } else {
+            release(elem);
+        }
+    }
+
+    /**
+     * Adds a figure to the container in the streaming reader.
+     */
+    private void addStreamingFigure(StreamingFrame frame, Element elem, Figure figure) {
+        if (figure == null) {
+            return;
+        }
+        boolean isVisible = readAttribute(elem, "visibility", "visible").equals("visible")
+                && !readAttribute(elem, "display", "inline").equals("none");
+        if ("svg".equals(frame.name)) {
+            if (isVisible) {
+                figure.transform(frame.transform);
+                emit(figure);
+            }
+        } else if ("g".equals(frame.name)) {
+            if (isVisible) {
+                frame.group.basicAdd(figure);
+            }
+        } else if ("a".equals(frame.name)) {
+            if (isVisible) {
+                frame.group.basicAdd(figure);
+            }
+            figure.set(LINK, frame.href);
+            figure.set(LINK_TARGET, frame.target);
+        }
+    }
+
+    /**
+     * Reads the deferred elements after the whole document has been read,
+     * and inserts their figures into the drawing. Paint servers are read
+     * first, so that the figures can refer to them.
+     */
+    private void readDeferredElements() throws IOException {
+        for (int pass = 0; pass < 2; pass++) {
+            for (DeferredElement deferred : deferredElements) {
+                String name = deferred.elem.getLocalName();
+                boolean isPaintServer = "linearGradient".equals(name)
+                        || "radialGradient".equals(name) || "solidColor".equals(name);
+                if (isPaintServer != (pass == 0)) {
+                    continue;
+                }
+                Figure figure = readElement(deferred.elem);
+                emitNestedFigures();
+                if (figure == null || deferred.slot < 0
+                        || !readAttribute(deferred.elem, "visibility", "visible").equals("visible")
+                        || readAttribute(deferred.elem, "display", "inline").equals("none")) {
+                    continue;
+                }
+                StreamingFrame parent = deferred.parent;
+                for (StreamingFrame f = parent; f != null; f = f.parent) {
+                    if (f.transform != null) {
+                        figure.transform(f.transform);
+                    }
+                    if ("svg".equals(f.name)) {
+                        break;
+                    }
+                }
+                if ("svg".equals(parent.name)) {
+                    flushBatch();
+                    streamingDrawing.add(drawingOffset + deferred.slot + insertedCount, figure);
+                    insertedCount++;
+                } else {
+                    if ("a".equals(parent.name)) {
+                        figure.set(LINK, parent.href);
+                        figure.set(LINK_TARGET, parent.target);
+                    }
+                    parent.group.basicAdd(deferred.slot + parent.insertedCount, figure);
+                    parent.group.willChange();
+                    parent.group.changed();
+                    parent.insertedCount++;
+                }
+            }
+        }
+        deferredElements.clear();
+    }
+
+    /**
+     * Reads the pending leaf elements and closes the pending container
+     * elements of the streaming reader, after the attributes of the leaf
+     * elements have been parsed in parallel.
+     */
+    private void drainPendingElements() throws IOException {
+        if (pendingElements.isEmpty()) {
+            return;
+        }
+        ArrayList<Element> elements = new ArrayList<Element>(pendingElements.size());
+        for (PendingElement pending : pendingElements) {
+            if (pending.elem != null) {
+                elements.add(pending.elem);
+            }
+        }
+        prefetch(elements);
+        for (PendingElement pending : pendingElements) {
+            if (pending.elem == null) {
+                closeStreamingFrame(pending.frame);
+            } else {
+                readStreamingElement(pending.frame, pending.elem, pending.isIdentified);
+            }
+        }
+        pendingElements.clear();
+    }
+
+    /**
+     * Parses the path data, points and transforms of the specified elements
+     * and of their descendants in parallel, if a parse pool has been set.
+     * The results are picked up when the elements are read.
+     * <p>
+     * If the pool fails to run the parse tasks, all results are discarded,
+     * and the values are parsed sequentially when the elements are read.
+     */
+    private void prefetch(java.util.List<Element> elements) {
+        if (parsePool == null) {
+            return;
+        }
+        ArrayList<ParseTask> tasks = new ArrayList<ParseTask>();
+        for (Element elem : elements) {
+            collectParseTasks(elem, tasks);
+        }
+        if (tasks.size() < 2) {
+            return;
+        }
+        ParseTask[] array = tasks.toArray(new ParseTask[tasks.size()]);
+        try {
+            parsePool.invoke(new ParseAction(array, 0, array.length));
+        } catch (RuntimeException e) {
+            Logger.getLogger(SVGInputFormat.class.getName()).log(Level.WARNING,
+                    "Parallel parsing failed, parsing sequentially", e);
+            return;
+        }
+        for (ParseTask task : array) {
+            if (task.result == null) {
+                // nothing to do
+            } else if ("transform".equals(task.attribute)) {
+                parsedTransforms.put(task.elem, (AffineTransform) task.result);
+            } else {
+                parsedShapes.put(task.elem, task.result);
+            }
+        }
+    }
+
+    private void collectParseTasks(Node node, java.util.List<ParseTask> tasks) {
+        if (!(node instanceof Element)) {
+            return;
+        }
+        Element elem = (Element) node;
+        if (elem.getPrefix() == null || elem.getPrefix().equals(SVG_NAMESPACE)) {
+            String name = elem.getLocalName();
+            if ("path".equals(name)) {
+                tasks.add(new ParseTask(elem, "d", readAttribute(elem, "d", "")));
+            } else if ("polyline".equals(name) || "polygon".equals(name)) {
+                tasks.add(new ParseTask(elem, "points", readAttribute(elem, "points", "")));
+            }
+            String transform = readAttribute(elem, "transform", "none");
+            if (!transform.equals("none")) {
+                tasks.add(new ParseTask(elem, "transform", transform));
+            }
+        }
+        for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+            collectParseTasks(child, tasks);
+        }
+    }
+
+    /**
+     * Emits the figures which have been read by nested "svg" elements.
+     */
+    private void emitNestedFigures() {
+        for (Figure f : figures) {
+            emit(f);
+        }
+        figures.clear();
+    }
+
+    /**
+     * Adds a top level figure to the current batch.
+     */
+    private void emit(Figure figure) {
+        batch.add(figure);
+        emittedCount++;
+        if (batch.size() >= batchSize) {
+            flushBatch();
+        }
+    }
+
+    /**
+     * Adds the current batch of figures to the drawing.
+     */
+    private void flushBatch() {
+        if (!batch.isEmpty()) {
+            streamingDrawing.addAll(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Marks a container and all its ancestors as retained. Only the
+     * elements are kept, so that referenced elements can inherit their
+     * attributes. Their other children are released.
+     */
+    private void retain(StreamingFrame frame) {
+        for (StreamingFrame f = frame; f != null && !f.isRetained; f = f.parent) {
+            f.isRetained = true;
+        }
+    }
+
+    /**
+     * Removes an element from its parent, and forgets the objects which have
+     * been created from the element and its descendants.
+     */
+    private void release(Element elem) {
+        if (elem.getParentNode() != null) {
+            elem.getParentNode().removeChild(elem);
+        }
+        forget(elem);
+    }
+
+    private void forget(Node node) {
+        elementObjects.remove(node);
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            forget(child);
+        }
+    }
+
+    /**
+     * Sets the file size at which {@code read(File, Drawing, boolean)} uses
+     * the streaming reader. The default value is 16 MiB.
+     */
+    public void setStreamingThreshold(long newValue) {
+        streamingThreshold = newValue;
+    }
+
+    public long getStreamingThreshold() {
+        return streamingThreshold;
+    }
+
+    /**
+     * Sets the number of figures which the streaming reader adds to the
+     * drawing at once. The default value is 1000.
+     */
+    public void setBatchSize(int newValue) {
+        batchSize = Math.max(1, newValue);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets whether path data, points and transforms are parsed in parallel
+     * on the common fork join pool. The figures are still created in document
+     * order on the calling thread. The default value is false.
+     */
+    public void setParallel(boolean newValue) {
+        setParsePool(newValue ? ForkJoinPool.commonPool() : null);
+    }
+
+    public boolean isParallel() {
+        return parsePool != null;
+    }
+
+    /**
+     * Sets the pool on which path data, points and transforms are parsed, or
+     * null to parse them sequentially.
+     */
+    public void setParsePool(ForkJoinPool newValue) {
+        parsePool = newValue;
+    }
+
+    public ForkJoinPool getParsePool() {
+        return parsePool;
+    }
+
     private void initStorageContext(Element root) {
         identifiedElements = new HashMap<String, Element>();
         identifyElements(root);
@@ -336,26 +1179,34 @@ public class SVGInputFormat implements InputFormat {
         } else {
             if (elem.getPrefix() == null
                     || elem.getPrefix().equals(SVG_NAMESPACE)) {
-                String style = readAttribute(elem, "style", null);
-                if (style != null) {
-                    for (String styleProperty : style.split(";")) {
-                        String[] stylePropertyElements = styleProperty.split(":");
-                        if (stylePropertyElements.length == 2
-                                && !elem.hasAttributeNS(SVG_NAMESPACE, stylePropertyElements[0].trim())) {
-                            //if (DEBUG) System.out.println("flatten:"+Arrays.toString(stylePropertyElements));
-                            elem.setAttributeNS(SVG_NAMESPACE, stylePropertyElements[0].trim(),
-                                    stylePropertyElements[1].trim());
-                        }
-                    }
-                }
-                styleManager.applyStylesTo(elem);
+                flattenStyle(elem);
                 NodeList list = elem.getChildNodes();
                 for (int i = 0; i < list.getLength(); i++) {
-                    Element child = (Element) list.item(i);
-                    flattenStyles(child);
+                    if (list.item(i) instanceof Element) {
+                        flattenStyles((Element) list.item(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Flattens the CSS styles of a single element.
+     */
+    private void flattenStyle(Element elem) {
+        String style = readAttribute(elem, "style", null);
+        if (style != null) {
+            for (String styleProperty : style.split(";")) {
+                String[] stylePropertyElements = styleProperty.split(":");
+                if (stylePropertyElements.length == 2
+                        && !elem.hasAttributeNS(SVG_NAMESPACE, stylePropertyElements[0].trim())) {
+                    //if (DEBUG) System.out.println("flatten:"+Arrays.toString(stylePropertyElements));
+                    elem.setAttributeNS(SVG_NAMESPACE, stylePropertyElements[0].trim(),
+                            stylePropertyElements[1].trim());
                 }
             }
         }
+        styleManager.applyStylesTo(elem);
     }
 
     /**
@@ -529,6 +1380,33 @@ public class SVGInputFormat implements InputFormat {
      */
     private Figure readSVGElement(Element elem)
             throws IOException {
+        AffineTransform viewBoxTransform = readViewport(elem);
+        // Read the figures
+        NodeList list = elem.getChildNodes();
+        for (int i = 0; i < list.getLength(); i++) {
+            Element child = (Element) list.item(i);
+            Figure childFigure = readElement(child);
+            // skip invisible elements
+            if (readAttribute(child, "visibility", "visible").equals("visible")
+                    && !readAttribute(child, "display", "inline").equals("none")) {
+                if (childFigure != null) {
+                    childFigure.transform(viewBoxTransform);
+                    figures.add(childFigure);
+                }
+            }
+        }
+        viewportStack.pop();
+        return null;
+    }
+
+    /**
+     * Establishes the viewport of an SVG "svg" element, and pushes it on the
+     * viewport stack.
+     *
+     * @return the transform from the view box to the viewport.
+     */
+    private AffineTransform readViewport(Element elem)
+            throws IOException {
         // Establish a new viewport
         Viewport viewport = new Viewport();
         String widthValue = readAttribute(elem, "width", "100%");
@@ -580,22 +1458,7 @@ public class SVGInputFormat implements InputFormat {
         }
         viewportStack.push(viewport);
         readViewportAttributes(elem, viewportStack.firstElement().attributes);
-        // Read the figures
-        NodeList list = elem.getChildNodes();
-        for (int i = 0; i < list.getLength(); i++) {
-            Element child = (Element) list.item(i);
-            Figure childFigure = readElement(child);
-            // skip invisible elements
-            if (readAttribute(child, "visibility", "visible").equals("visible")
-                    && !readAttribute(child, "display", "inline").equals("none")) {
-                if (childFigure != null) {
-                    childFigure.transform(viewBoxTransform);
-                    figures.add(childFigure);
-                }
-            }
-        }
-        viewportStack.pop();
-        return null;
+        return viewBoxTransform;
     }
 
     /**
@@ -789,7 +1652,10 @@ public class SVGInputFormat implements InputFormat {
         readTransformAttribute(elem, a);
         readOpacityAttribute(elem, a);
         readLineAttributes(elem, a);
-        Point2D.Double[] points = toPoints(elem, readAttribute(elem, "points", ""));
+        Point2D.Double[] points = (Point2D.Double[]) parsedShapes.remove(elem);
+        if (points == null) {
+            points = toPoints(elem, readAttribute(elem, "points", ""), pathParser);
+        }
         Figure figure = factory.createPolyline(points, a);
         elementObjects.put(elem, figure);
         return figure;
@@ -805,7 +1671,10 @@ public class SVGInputFormat implements InputFormat {
         readTransformAttribute(elem, a);
         readOpacityAttribute(elem, a);
         readShapeAttributes(elem, a);
-        Point2D.Double[] points = toPoints(elem, readAttribute(elem, "points", ""));
+        Point2D.Double[] points = (Point2D.Double[]) parsedShapes.remove(elem);
+        if (points == null) {
+            points = toPoints(elem, readAttribute(elem, "points", ""), pathParser);
+        }
         Figure figure = factory.createPolygon(points, a);
         elementObjects.put(elem, figure);
         return figure;
@@ -821,7 +1690,10 @@ public class SVGInputFormat implements InputFormat {
         readTransformAttribute(elem, a);
         readOpacityAttribute(elem, a);
         readShapeAttributes(elem, a);
-        BezierPath[] beziers = toPath(elem, readAttribute(elem, "d", ""));
+        BezierPath[] beziers = (BezierPath[]) parsedShapes.remove(elem);
+        if (beziers == null) {
+            beziers = toPath(elem, readAttribute(elem, "d", ""));
+        }
         Figure figure = factory.createPath(beziers, a);
         elementObjects.put(elem, figure);
         return figure;
@@ -1081,6 +1953,7 @@ public class SVGInputFormat implements InputFormat {
         if (href != null && href.startsWith("#")) {
             Element refElem = identifiedElements.get(href.substring(1));
             if (refElem == null) {
+                hasUnresolvedReferences = true;
                 if (DEBUG) {
                     System.out.println("SVGInputFormat couldn't find href for <use> element:" + href);
                 }
@@ -1338,15 +2211,20 @@ public class SVGInputFormat implements InputFormat {
      * Returns a value as a Point2D.Double array.
      * as specified in http://www.w3.org/TR/SVGMobile12/shapes.html#PointsBNF
      */
-    private Point2D.Double[] toPoints(Element elem, String str) throws IOException {
-        StringTokenizer tt = new StringTokenizer(str, " ,");
-        Point2D.Double[] points = new Point2D.Double[tt.countTokens() / 2];
-        for (int i = 0; i < points.length; i++) {
-            points[i] = new Point2D.Double(
-                    toNumber(elem, tt.nextToken()),
-                    toNumber(elem, tt.nextToken()));
+    private Point2D.Double[] toPoints(Element elem, String str, SVGPathParser parser) throws IOException {
+        try {
+            return parser.parsePoints(str);
+        } catch (IOException e) {
+            // The points may have units, which are not allowed by the BNF
+            StringTokenizer tt = new StringTokenizer(str, " ,");
+            Point2D.Double[] points = new Point2D.Double[tt.countTokens() / 2];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = new Point2D.Double(
+                        toNumber(elem, tt.nextToken()),
+                        toNumber(elem, tt.nextToken()));
+            }
+            return points;
         }
-        return points;
     }
 
     /**
@@ -1357,419 +2235,7 @@ public class SVGInputFormat implements InputFormat {
      * http://www.w3.org/TR/SVG/paths.html#PathDataEllipticalArcCommands
      */
     private BezierPath[] toPath(Element elem, String str) throws IOException {
-        LinkedList<BezierPath> paths = new LinkedList<BezierPath>();
-        BezierPath path = null;
-        Point2D.Double p = new Point2D.Double();
-        Point2D.Double c1 = new Point2D.Double();
-        Point2D.Double c2 = new Point2D.Double();
-        StreamPosTokenizer tt;
-        if (toPathTokenizer == null) {
-            tt = new StreamPosTokenizer(new StringReader(str));
-            tt.resetSyntax();
-            tt.parseNumbers();
-            tt.parseExponents();
-            tt.parsePlusAsNumber();
-            tt.whitespaceChars(0, ' ');
-            tt.whitespaceChars(',', ',');
-            toPathTokenizer = tt;
-        } else {
-            tt = toPathTokenizer;
-            tt.setReader(new StringReader(str));
-        }
-        char nextCommand = 'M';
-        char command = 'M';
-        Commands:
-        while (tt.nextToken() != StreamPosTokenizer.TT_EOF) {
-            if (tt.ttype > 0) {
-                command = (char) tt.ttype;
-            } else {
-                command = nextCommand;
-                tt.pushBack();
-            }
-            BezierPath.Node node;
-            switch (command) {
-                case 'M':
-                    // absolute-moveto x y
-                    if (path != null) {
-                        paths.add(path);
-                    }
-                    path = new BezierPath();
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'M' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'M' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
-                    path.moveTo(p.x, p.y);
-                    nextCommand = 'L';
-                    break;
-                case 'm':
-                    // relative-moveto dx dy
-                    if (path != null) {
-                        paths.add(path);
-                    }
-                    path = new BezierPath();
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'm' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'm' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
-                    path.moveTo(p.x, p.y);
-                    nextCommand = 'l';
-                    break;
-                case 'Z':
-                case 'z':
-                    // close path
-                    p.x = path.get(0).x[0];
-                    p.y = path.get(0).y[0];
-                    // If the last point and the first point are the same, we
-                    // can merge them
-                    if (path.size() > 1) {
-                        BezierPath.Node first = path.get(0);
-                        BezierPath.Node last = path.get(path.size() - 1);
-                        if (first.x[0] == last.x[0]
-                                && first.y[0] == last.y[0]) {
-                            if ((last.mask & BezierPath.C1_MASK) != 0) {
-                                first.mask |= BezierPath.C1_MASK;
-                                first.x[1] = last.x[1];
-                                first.y[1] = last.y[1];
-                            }
-                            path.remove(path.size() - 1);
-                        }
-                    }
-                    path.setClosed(true);
-                    break;
-                case 'L':
-                    // absolute-lineto x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'L' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'L' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
-                    path.lineTo(p.x, p.y);
-                    nextCommand = 'L';
-                    break;
-                case 'l':
-                    // relative-lineto dx dy
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'l' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'l' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
-                    path.lineTo(p.x, p.y);
-                    nextCommand = 'l';
-                    break;
-                case 'H':
-                    // absolute-horizontal-lineto x
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'H' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    path.lineTo(p.x, p.y);
-                    nextCommand = 'H';
-                    break;
-                case 'h':
-                    // relative-horizontal-lineto dx
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'h' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    path.lineTo(p.x, p.y);
-                    nextCommand = 'h';
-                    break;
-                case 'V':
-                    // absolute-vertical-lineto y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'V' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
-                    path.lineTo(p.x, p.y);
-                    nextCommand = 'V';
-                    break;
-                case 'v':
-                    // relative-vertical-lineto dy
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'v' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
-                    path.lineTo(p.x, p.y);
-                    nextCommand = 'v';
-                    break;
-                case 'C':
-                    // absolute-curveto x1 y1 x2 y2 x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x1 coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y1 coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.y = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x2 coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y2 coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.y = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
-                    path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
-                    nextCommand = 'C';
-                    break;
-                case 'c':
-                    // relative-curveto dx1 dy1 dx2 dy2 dx dy
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx1 coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.x = p.x + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy1 coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.y = p.y + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx2 coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.x = p.x + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy2 coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.y = p.y + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'c' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
-                    path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
-                    nextCommand = 'c';
-                    break;
-                case 'S':
-                    // absolute-shorthand-curveto x2 y2 x y
-                    node = path.get(path.size() - 1);
-                    c1.x = node.x[0] * 2d - node.x[1];
-                    c1.y = node.y[0] * 2d - node.y[1];
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x2 coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y2 coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.y = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
-                    path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
-                    nextCommand = 'S';
-                    break;
-                case 's':
-                    // relative-shorthand-curveto dx2 dy2 dx dy
-                    node = path.get(path.size() - 1);
-                    c1.x = node.x[0] * 2d - node.x[1];
-                    c1.y = node.y[0] * 2d - node.y[1];
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx2 coordinate missing for 's' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.x = p.x + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy2 coordinate missing for 's' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c2.y = p.y + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 's' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 's' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
-                    path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
-                    nextCommand = 's';
-                    break;
-                case 'Q':
-                    // absolute-quadto x1 y1 x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x1 coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y1 coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.y = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
-                    path.quadTo(c1.x, c1.y, p.x, p.y);
-                    nextCommand = 'Q';
-                    break;
-                case 'q':
-                    // relative-quadto dx1 dy1 dx dy
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx1 coordinate missing for 'q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.x = p.x + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy1 coordinate missing for 'q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    c1.y = p.y + tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 'q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 'q' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
-                    path.quadTo(c1.x, c1.y, p.x, p.y);
-                    nextCommand = 'q';
-                    break;
-                case 'T':
-                    // absolute-shorthand-quadto x y
-                    node = path.get(path.size() - 1);
-                    c1.x = node.x[0] * 2d - node.x[1];
-                    c1.y = node.y[0] * 2d - node.y[1];
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'T' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'T' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
-                    path.quadTo(c1.x, c1.y, p.x, p.y);
-                    nextCommand = 'T';
-                    break;
-                case 't':
-                    // relative-shorthand-quadto dx dy
-                    node = path.get(path.size() - 1);
-                    c1.x = node.x[0] * 2d - node.x[1];
-                    c1.y = node.y[0] * 2d - node.y[1];
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dx coordinate missing for 't' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("dy coordinate missing for 't' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
-                    path.quadTo(c1.x, c1.y, p.x, p.y);
-                    nextCommand = 's';
-                    break;
-                case 'A': 
-                    // absolute-elliptical-arc rx ry x-axis-rotation large-arc-flag sweep-flag x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("rx coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    // If rX or rY have negative signs, these are dropped;
-                    // the absolute value is used instead.
-                    double rx = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("ry coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    double ry = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x-axis-rotation missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    double xAxisRotation = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("large-arc-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    boolean largeArcFlag = tt.nval != 0;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("sweep-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    boolean sweepFlag = tt.nval != 0;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y = tt.nval;
-                    path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, p.x, p.y);
-                    nextCommand = 'A';
-                    break;
-                
-                case 'a': 
-                    // absolute-elliptical-arc rx ry x-axis-rotation large-arc-flag sweep-flag x y
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("rx coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    // If rX or rY have negative signs, these are dropped;
-                    // the absolute value is used instead.
-                    rx = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("ry coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    ry = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x-axis-rotation missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    xAxisRotation = tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("large-arc-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    largeArcFlag = tt.nval != 0;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("sweep-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    sweepFlag = tt.nval != 0;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("x coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.x += tt.nval;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("y coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-                    }
-                    p.y += tt.nval;
-                    path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, p.x, p.y);
-                    nextCommand = 'a';
-                    break;
-                
-                default:
-                    if (DEBUG) {
-                        System.out.println("SVGInputFormat.toPath aborting after illegal path command: " + command + " found in path " + str);
-                    }
-                    break Commands;
-                //throw new IOException("Illegal command: "+command);
-            }
-        }
-        if (path != null) {
-            paths.add(path);
-        }
-        return paths.toArray(new BezierPath[paths.size()]);
+        return pathParser.parsePath(str);
     }
 
     /* Reads core attributes as listed in
@@ -1796,8 +2262,9 @@ public class SVGInputFormat implements InputFormat {
         identifiedElements.put(elem.getAttribute("xml:id"), elem);
         NodeList list = elem.getChildNodes();
         for (int i = 0; i < list.getLength(); i++) {
-            Element child = (Element) list.item(i);
-            identifyElements(child);
+            if (list.item(i) instanceof Element) {
+                identifyElements((Element) list.item(i));
+            }
         }
     }
 
@@ -1905,7 +2372,8 @@ public class SVGInputFormat implements InputFormat {
         String value;
         value = readAttribute(elem, "transform", "none");
         if (!value.equals("none")) {
-            TRANSFORM.put(a, toTransform(elem, value));
+            AffineTransform tx = parsedTransforms.remove(elem);
+            TRANSFORM.put(a, tx != null ? tx : toTransform(elem, value));
         }
     }
 
@@ -2687,6 +3155,10 @@ public class SVGInputFormat implements InputFormat {
         if (stops.getLength() == 0) {
             // FIXME - Implement xlink support throughouth SVGInputFormat
             String xlink = readAttribute(elem, "xlink:href", "");
+            if (xlink.startsWith("#")
+                    && identifiedElements.get(xlink.substring(1)) == null) {
+                hasUnresolvedReferences = true;
+            }
             if (xlink.startsWith("#")
                     && identifiedElements.get(xlink.substring(1)) != null) {
                 stops = identifiedElements.get(xlink.substring(1)).getElementsByTagNameNS(SVG_NAMESPACE, "stop");
@@ -2766,6 +3238,10 @@ public class SVGInputFormat implements InputFormat {
         if (stops.getLength() == 0) {
             // FIXME - Implement xlink support throughout SVGInputFormat
             String xlink = readAttribute(elem, "xlink:href", "");
+            if (xlink.startsWith("#")
+                    && identifiedElements.get(xlink.substring(1)) == null) {
+                hasUnresolvedReferences = true;
+            }
             if (xlink.startsWith("#")
                     && identifiedElements.get(xlink.substring(1)) != null) {
                 stops = identifiedElements.get(xlink.substring(1)).getElementsByTagNameNS(SVG_NAMESPACE, "stop");
@@ -2983,6 +3459,7 @@ public class SVGInputFormat implements InputFormat {
                 Object obj = elementObjects.get(identifiedElements.get(href.substring(1)));
                 return obj;
             }
+            hasUnresolvedReferences = true;
             // XXX - Implement me
             if (DEBUG) {
                 System.out.println("SVGInputFormat.toPaint not implemented for " + href);
@@ -3092,108 +3569,11 @@ public class SVGInputFormat implements InputFormat {
      * http://www.w3.org/TR/SVGMobile12/coords.html#TransformAttribute
      */
     public static AffineTransform toTransform(Element elem, String str) throws IOException {
-        AffineTransform t = new AffineTransform();
-        if (str != null && !str.equals("none")) {
-            StreamPosTokenizer tt = new StreamPosTokenizer(new StringReader(str));
-            tt.resetSyntax();
-            tt.wordChars('a', 'z');
-            tt.wordChars('A', 'Z');
-            tt.wordChars(128 + 32, 255);
-            tt.whitespaceChars(0, ' ');
-            tt.whitespaceChars(',', ',');
-            tt.parseNumbers();
-            tt.parseExponents();
-            while (tt.nextToken() != StreamPosTokenizer.TT_EOF) {
-                if (tt.ttype != StreamPosTokenizer.TT_WORD) {
-                    throw new IOException("Illegal transform " + str);
-                }
-                String type = tt.sval;
-                if (tt.nextToken() != '(') {
-                    throw new IOException("'(' not found in transform " + str);
-                }
-                if ("matrix".equals(type)) {
-                    double[] m = new double[6];
-                    for (int i = 0; i < 6; i++) {
-                        if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                            throw new IOException("Matrix value " + i + " not found in transform " + str + " token:" + tt.ttype + " " + tt.sval);
-                        }
-                        m[i] = tt.nval;
-                    }
-                    t.concatenate(new AffineTransform(m));
-                } else if ("translate".equals(type)) {
-                    double tx, ty;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("X-translation value not found in transform " + str);
-                    }
-                    tx = tt.nval;
-                    if (tt.nextToken() == StreamPosTokenizer.TT_NUMBER) {
-                        ty = tt.nval;
-                    } else {
-                        tt.pushBack();
-                        ty = 0;
-                    }
-                    t.translate(tx, ty);
-                } else if ("scale".equals(type)) {
-                    double sx, sy;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("X-scale value not found in transform " + str);
-                    }
-                    sx = tt.nval;
-                    if (tt.nextToken() == StreamPosTokenizer.TT_NUMBER) {
-                        sy = tt.nval;
-                    } else {
-                        tt.pushBack();
-                        sy = sx;
-                    }
-                    t.scale(sx, sy);
-                } else if ("rotate".equals(type)) {
-                    double angle, cx, cy;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("Angle value not found in transform " + str);
-                    }
-                    angle = tt.nval;
-                    if (tt.nextToken() == StreamPosTokenizer.TT_NUMBER) {
-                        cx = tt.nval;
-                        if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                            throw new IOException("Y-center value not found in transform " + str);
-                        }
-                        cy = tt.nval;
-                    } else {
-                        tt.pushBack();
-                        cx = cy = 0;
-                    }
-                    t.rotate(angle * Math.PI / 180d, cx, cy);
-                } else if ("skewX".equals(type)) {
-                    double angle;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("Skew angle not found in transform " + str);
-                    }
-                    angle = tt.nval;
-                    t.concatenate(new AffineTransform(
-                            1, 0, Math.tan(angle * Math.PI / 180), 1, 0, 0));
-                } else if ("skewY".equals(type)) {
-                    double angle;
-                    if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-                        throw new IOException("Skew angle not found in transform " + str);
-                    }
-                    angle = tt.nval;
-                    t.concatenate(new AffineTransform(
-                            1, Math.tan(angle * Math.PI / 180), 0, 1, 0, 0));
-                } else if ("ref".equals(type)) {
-                    System.err.println("SVGInputFormat warning: ignored ref(...) transform attribute in element " + elem);
-                    while (tt.nextToken() != ')' && tt.ttype != StreamPosTokenizer.TT_EOF) {
-                        // ignore tokens between brackets
-                    }
-                    tt.pushBack();
-                } else {
-                    throw new IOException("Unknown transform " + type + " in " + str + " in element " + elem);
-                }
-                if (tt.nextToken() != ')') {
-                    throw new IOException("')' not found in transform " + str);
-                }
-            }
+        try {
+            return new SVGPathParser().parseTransform(str);
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + " in element " + elem, e);
         }
-        return t;
     }
 
     @Override
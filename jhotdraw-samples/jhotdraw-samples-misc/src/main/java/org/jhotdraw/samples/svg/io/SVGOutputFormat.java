@@ -1305,14 +1305,11 @@ public class SVGOutputFormat implements OutputFormat {
         for (Figure f : figures) {
             writeElement(document, f);
         }
-        // Write XML prolog
-        PrintWriter writer = new PrintWriter(
-                new OutputStreamWriter(out, "UTF-8"));
-        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        // Write XML content
+        // Write XML prolog and content. The transformer writes the prolog.
         Transformer t;
         try {
             t = TransformerFactory.newInstance().newTransformer();
+            t.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
             if (isPrettyPrint) {
                 t.setOutputProperty(OutputKeys.INDENT, "yes");
             }
@@ -1320,8 +1317,7 @@ public class SVGOutputFormat implements OutputFormat {
         } catch (TransformerException ex) {
             Logger.getLogger(SVGOutputFormat.class.getName()).log(Level.SEVERE, null, ex);
         }
-        // Flush writer
-        writer.flush();
+        out.flush();
     }
 
     private void initStorageContext(Element root) {
@@ -0,0 +1,489 @@
+/*
+ * @(#)SVGPathParser.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.samples.svg.io;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jhotdraw.geom.BezierPath;
+
+/**
+ * Parses SVG path data, point lists and transform lists.
+ * <p>
+ * The parser scans the characters of the attribute value in place. It does
+ * not create tokens or intermediate points, the coordinates of a path are
+ * written straight into the nodes of a {@link BezierPath}.
+ * <p>
+ * Numbers with a mantissa of at most 2<sup>53</sup> and a decimal exponent
+ * in the range of -22 to 22 are converted with a single floating point
+ * operation on exact operands, which yields the correctly rounded value. All
+ * other numbers are converted by {@link Double#parseDouble}.
+ * <p>
+ * An instance of this class can be reused, but it is not thread safe.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class SVGPathParser {
+
+    /**
+     * Powers of ten which can be represented exactly by a double.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_DIGITS = 18;
+    /**
+     * The largest mantissa which can be represented exactly by a double.
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private String str;
+    private int pos;
+    private int length;
+    /**
+     * The value of the number which has been scanned by {@link #scanNumber}.
+     */
+    private double value;
+
+    /**
+     * Creates a new instance.
+     */
+    public SVGPathParser() {
+    }
+
+    private void reset(String str) {
+        this.str = str;
+        this.pos = 0;
+        this.length = str.length();
+    }
+
+    /**
+     * Skips white space and commas. Returns false if the end of the string
+     * has been reached.
+     */
+    private boolean skipSeparators() {
+        while (pos < length) {
+            char c = str.charAt(pos);
+            if (c > ' ' && c != ',') {
+                return true;
+            }
+            pos++;
+        }
+        return false;
+    }
+
+    private static boolean isNumberStart(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+';
+    }
+
+    /**
+     * Scans a number, and stores it in {@link #value}. Returns false, and
+     * does not move the position, if there is no number at the current
+     * position.
+     */
+    private boolean scanNumber() {
+        if (!skipSeparators()) {
+            return false;
+        }
+        int start = pos;
+        int i = pos;
+        char c = str.charAt(i);
+        boolean isNegative = false;
+        if (c == '-' || c == '+') {
+            isNegative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        boolean isTruncated = false;
+        for (; i < length && (c = str.charAt(i)) >= '0' && c <= '9'; i++) {
+            hasDigits = true;
+            if (digits < MAX_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+            } else {
+                exponent++;
+                isTruncated |= c != '0';
+            }
+        }
+        if (i < length && str.charAt(i) == '.') {
+            for (i++; i < length && (c = str.charAt(i)) >= '0' && c <= '9'; i++) {
+                hasDigits = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        digits++;
+                    }
+                    exponent--;
+                } else {
+                    isTruncated |= c != '0';
+                }
+            }
+        }
+        if (!hasDigits) {
+            return false;
+        }
+        if (i < length && ((c = str.charAt(i)) == 'e' || c == 'E')) {
+            int j = i + 1;
+            boolean isExponentNegative = false;
+            if (j < length && ((c = str.charAt(j)) == '-' || c == '+')) {
+                isExponentNegative = c == '-';
+                j++;
+            }
+            if (j < length && (c = str.charAt(j)) >= '0' && c <= '9') {
+                int e = 0;
+                for (; j < length && (c = str.charAt(j)) >= '0' && c <= '9'; j++) {
+                    if (e < 100000) {
+                        e = e * 10 + (c - '0');
+                    }
+                }
+                exponent += isExponentNegative ? -e : e;
+                i = j;
+            }
+        }
+        pos = i;
+        if (!isTruncated && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            double v = (double) mantissa;
+            v = (exponent < 0) ? v / POWERS_OF_TEN[-exponent] : v * POWERS_OF_TEN[exponent];
+            value = isNegative ? -v : v;
+        } else {
+            value = Double.parseDouble(str.substring(start, i));
+        }
+        return true;
+    }
+
+    /**
+     * Parses a number string.
+     *
+     * @param str a number as specified in
+     * http://www.w3.org/TR/SVGMobile12/types.html#DataTypeNumber
+     * @return the value of the number
+     * @throws NumberFormatException if the string is not a number
+     */
+    public double parseNumber(String str) {
+        reset(str);
+        if (!scanNumber() || skipSeparators()) {
+            throw new NumberFormatException("Illegal number \"" + str + "\"");
+        }
+        return value;
+    }
+
+    /**
+     * Returns the next coordinate of a path command.
+     *
+     * @param command the path command
+     * @param index the index of the coordinate in the arguments of the command
+     */
+    private double nextCoordinate(char command, int index) throws IOException {
+        if (!scanNumber()) {
+            throw new IOException(getArgumentName(command, index) + " missing for '" + command
+                    + "' at position " + pos + " in " + str);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the next flag of an arc command. Flags are single digits, which
+     * need not be separated from the following number.
+     */
+    private boolean nextFlag(char command, int index) throws IOException {
+        if (skipSeparators()) {
+            char c = str.charAt(pos);
+            if (c == '0' || c == '1') {
+                pos++;
+                return c == '1';
+            }
+        }
+        throw new IOException(getArgumentName(command, index) + " missing for '" + command
+                + "' at position " + pos + " in " + str);
+    }
+
+    private static String getArgumentName(char command, int index) {
+        char absolute = Character.toUpperCase(command);
+        String name;
+        if (absolute == 'A') {
+            return new String[]{"rx coordinate", "ry coordinate", "x-axis-rotation",
+                "large-arc-flag", "sweep-flag", "x coordinate", "y coordinate"}[index];
+        } else if (absolute == 'H') {
+            name = "x";
+        } else if (absolute == 'V') {
+            name = "y";
+        } else if (absolute == 'C') {
+            name = new String[]{"x1", "y1", "x2", "y2", "x", "y"}[index];
+        } else if (absolute == 'S') {
+            name = new String[]{"x2", "y2", "x", "y"}[index];
+        } else if (absolute == 'Q') {
+            name = new String[]{"x1", "y1", "x", "y"}[index];
+        } else {
+            name = new String[]{"x", "y"}[index];
+        }
+        return (command == absolute ? name : "d" + name) + " coordinate";
+    }
+
+    /**
+     * Parses path data.
+     * <p>
+     * Each subpath is returned as a separate BezierPath. Parsing stops
+     * silently at the first illegal command, so that the path is rendered up
+     * to the error.
+     *
+     * @param str path data as specified in
+     * http://www.w3.org/TR/SVGMobile12/paths.html#PathDataBNF, including the
+     * elliptical arc commands 'a' and 'A' as specified in
+     * http://www.w3.org/TR/SVG/paths.html#PathDataEllipticalArcCommands
+     * @throws IOException if an argument of a command is missing
+     */
+    public BezierPath[] parsePath(String str) throws IOException {
+        reset(str);
+        ArrayList<BezierPath> paths = new ArrayList<>();
+        BezierPath path = null;
+        double x = 0;
+        double y = 0;
+        char command;
+        char nextCommand = 'M';
+        while (skipSeparators()) {
+            char c = str.charAt(pos);
+            if (isNumberStart(c)) {
+                command = nextCommand;
+            } else {
+                command = c;
+                pos++;
+            }
+            boolean isRelative = command >= 'a';
+            double ox = isRelative ? x : 0;
+            double oy = isRelative ? y : 0;
+            char absolute = isRelative ? (char) (command - 'a' + 'A') : command;
+            if (absolute == 'M') {
+                if (path != null) {
+                    paths.add(path);
+                }
+                path = new BezierPath();
+                x = ox + nextCoordinate(command, 0);
+                y = oy + nextCoordinate(command, 1);
+                path.moveTo(x, y);
+                nextCommand = isRelative ? 'l' : 'L';
+                continue;
+            }
+            if (path == null) {
+                if ("ZLHVCSQTA".indexOf(absolute) >= 0) {
+                    throw new IOException("'M' missing before '" + command
+                            + "' at position " + (pos - 1) + " in " + str);
+                }
+                break;
+            }
+            if (absolute == 'Z') {
+                BezierPath.Node first = path.get(0);
+                x = first.x[0];
+                y = first.y[0];
+                if (path.size() > 1) {
+                    BezierPath.Node last = path.get(path.size() - 1);
+                    if (first.x[0] == last.x[0] && first.y[0] == last.y[0]) {
+                        if ((last.mask & BezierPath.C1_MASK) != 0) {
+                            first.mask |= BezierPath.C1_MASK;
+                            first.x[1] = last.x[1];
+                            first.y[1] = last.y[1];
+                        }
+                        path.remove(path.size() - 1);
+                    }
+                }
+                path.setClosed(true);
+            } else if (absolute == 'L') {
+                x = ox + nextCoordinate(command, 0);
+                y = oy + nextCoordinate(command, 1);
+                path.lineTo(x, y);
+                nextCommand = command;
+            } else if (absolute == 'H') {
+                x = ox + nextCoordinate(command, 0);
+                path.lineTo(x, y);
+                nextCommand = command;
+            } else if (absolute == 'V') {
+                y = oy + nextCoordinate(command, 0);
+                path.lineTo(x, y);
+                nextCommand = command;
+            } else if (absolute == 'C') {
+                double x1 = ox + nextCoordinate(command, 0);
+                double y1 = oy + nextCoordinate(command, 1);
+                double x2 = ox + nextCoordinate(command, 2);
+                double y2 = oy + nextCoordinate(command, 3);
+                x = ox + nextCoordinate(command, 4);
+                y = oy + nextCoordinate(command, 5);
+                path.curveTo(x1, y1, x2, y2, x, y);
+                nextCommand = command;
+            } else if (absolute == 'S') {
+                BezierPath.Node node = path.get(path.size() - 1);
+                double x1 = node.x[0] * 2d - node.x[1];
+                double y1 = node.y[0] * 2d - node.y[1];
+                double x2 = ox + nextCoordinate(command, 0);
+                double y2 = oy + nextCoordinate(command, 1);
+                x = ox + nextCoordinate(command, 2);
+                y = oy + nextCoordinate(command, 3);
+                path.curveTo(x1, y1, x2, y2, x, y);
+                nextCommand = command;
+            } else if (absolute == 'Q') {
+                double x1 = ox + nextCoordinate(command, 0);
+                double y1 = oy + nextCoordinate(command, 1);
+                x = ox + nextCoordinate(command, 2);
+                y = oy + nextCoordinate(command, 3);
+                path.quadTo(x1, y1, x, y);
+                nextCommand = command;
+            } else if (absolute == 'T') {
+                BezierPath.Node node = path.get(path.size() - 1);
+                double x1 = node.x[0] * 2d - node.x[1];
+                double y1 = node.y[0] * 2d - node.y[1];
+                x = ox + nextCoordinate(command, 0);
+                y = oy + nextCoordinate(command, 1);
+                path.quadTo(x1, y1, x, y);
+                nextCommand = command;
+            } else if (absolute == 'A') {
+                double rx = nextCoordinate(command, 0);
+                double ry = nextCoordinate(command, 1);
+                double xAxisRotation = nextCoordinate(command, 2);
+                boolean largeArcFlag = nextFlag(command, 3);
+                boolean sweepFlag = nextFlag(command, 4);
+                x = ox + nextCoordinate(command, 5);
+                y = oy + nextCoordinate(command, 6);
+                path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, x, y);
+                nextCommand = command;
+            } else {
+                break;
+            }
+        }
+        if (path != null) {
+            paths.add(path);
+        }
+        return paths.toArray(new BezierPath[paths.size()]);
+    }
+
+    /**
+     * Parses a list of points. A trailing single coordinate is ignored.
+     *
+     * @param str a list of points as specified in
+     * http://www.w3.org/TR/SVGMobile12/shapes.html#PointsBNF
+     * @throws IOException if the list contains something else than numbers
+     */
+    public Point2D.Double[] parsePoints(String str) throws IOException {
+        reset(str);
+        ArrayList<Point2D.Double> points = new ArrayList<>();
+        while (scanNumber()) {
+            double x = value;
+            if (!scanNumber()) {
+                break;
+            }
+            points.add(new Point2D.Double(x, value));
+        }
+        if (skipSeparators()) {
+            throw new IOException("Illegal point list at position " + pos + " in " + str);
+        }
+        return points.toArray(new Point2D.Double[points.size()]);
+    }
+
+    /**
+     * Returns true, if the name at the current position equals the specified
+     * name.
+     */
+    private boolean isName(int start, int end, String name) {
+        return end - start == name.length() && str.regionMatches(start, name, 0, name.length());
+    }
+
+    private boolean scanChar(char c) {
+        if (skipSeparators() && str.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private double nextTransformValue(String name) throws IOException {
+        if (!scanNumber()) {
+            throw new IOException(name + " not found in transform " + str);
+        }
+        return value;
+    }
+
+    /**
+     * Parses a transform list.
+     *
+     * @param str a transform list as specified in
+     * http://www.w3.org/TR/SVGMobile12/coords.html#TransformAttribute, or
+     * "none"
+     * @throws IOException if the transform list is illegal
+     */
+    public AffineTransform parseTransform(String str) throws IOException {
+        AffineTransform t = new AffineTransform();
+        if (str == null || str.equals("none")) {
+            return t;
+        }
+        reset(str);
+        while (skipSeparators()) {
+            int start = pos;
+            char c;
+            while (pos < length && (((c = str.charAt(pos)) >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                pos++;
+            }
+            int end = pos;
+            if (start == end) {
+                throw new IOException("Illegal transform " + str);
+            }
+            if (!scanChar('(')) {
+                throw new IOException("'(' not found in transform " + str);
+            }
+            if (isName(start, end, "matrix")) {
+                double[] m = new double[6];
+                for (int i = 0; i < 6; i++) {
+                    m[i] = nextTransformValue("Matrix value " + i);
+                }
+                t.concatenate(new AffineTransform(m));
+            } else if (isName(start, end, "translate")) {
+                double tx = nextTransformValue("X-translation value");
+                double ty = scanNumber() ? value : 0;
+                t.translate(tx, ty);
+            } else if (isName(start, end, "scale")) {
+                double sx = nextTransformValue("X-scale value");
+                double sy = scanNumber() ? value : sx;
+                t.scale(sx, sy);
+            } else if (isName(start, end, "rotate")) {
+                double angle = nextTransformValue("Angle value");
+                double cx = 0;
+                double cy = 0;
+                if (scanNumber()) {
+                    cx = value;
+                    cy = nextTransformValue("Y-center value");
+                }
+                t.rotate(angle * Math.PI / 180d, cx, cy);
+            } else if (isName(start, end, "skewX")) {
+                double angle = nextTransformValue("Skew angle");
+                t.concatenate(new AffineTransform(
+                        1, 0, Math.tan(angle * Math.PI / 180), 1, 0, 0));
+            } else if (isName(start, end, "skewY")) {
+                double angle = nextTransformValue("Skew angle");
+                t.concatenate(new AffineTransform(
+                        1, Math.tan(angle * Math.PI / 180), 0, 1, 0, 0));
+            } else if (isName(start, end, "ref")) {
+                Logger.getLogger(SVGInputFormat.class.getName()).log(Level.WARNING,
+                        "Ignored ref(...) transform attribute in {0}", str);
+                while (pos < length && str.charAt(pos) != ')') {
+                    pos++;
+                }
+            } else {
+                throw new IOException("Unknown transform " + str.substring(start, end) + " in " + str);
+            }
+            if (!scanChar(')')) {
+                throw new IOException("')' not found in transform " + str);
+            }
+        }
+        return t;
+    }
+}
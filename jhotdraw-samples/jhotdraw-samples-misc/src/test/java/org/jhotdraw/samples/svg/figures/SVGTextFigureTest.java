@@ -1,9 +1,15 @@
 package org.jhotdraw.samples.svg.figures;
 
+import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.LevelOfDetailPolicy;
+import org.jhotdraw.draw.figure.Figure;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 
 import static org.junit.Assert.*;
 
@@ -40,4 +46,50 @@ public class SVGTextFigureTest {
         //Assert
         assertArrayEquals(textFigure.getCoordinates(), coordinates);
     }
-}
\ No newline at end of file
+
+    /**
+     * Counts the pixels, which are drawn by the figure at the specified
+     * scale with a level of detail policy.
+     */
+    private static int countDrawnPixels(Figure f, double scale) {
+        BufferedImage img = new BufferedImage(200, 200, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(LevelOfDetailPolicy.KEY, new LevelOfDetailPolicy(3, 40, 80));
+        g.scale(scale, scale);
+        f.draw(g);
+        g.dispose();
+        int count = 0;
+        for (int y = 0; y < img.getHeight(); y++) {
+            for (int x = 0; x < img.getWidth(); x++) {
+                if (img.getRGB(x, y) != 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void assertTextSuppressed(Figure f) {
+        f.set(AttributeKeys.FILL_COLOR, Color.BLACK);
+        f.set(AttributeKeys.FONT_SIZE, 20d);
+        double size = Math.max(f.getBounds().width, f.getBounds().height);
+        // Above the text threshold of 40 pixels
+        assertTrue(countDrawnPixels(f, 60 / size) > 0);
+        // Between the proxy threshold and the text threshold
+        assertEquals(0, countDrawnPixels(f, 20 / size));
+    }
+
+    @Test
+    public void textIsSuppressedBelowTextThreshold() {
+        SVGTextFigure f = new SVGTextFigure("Hello World");
+        f.setBounds(new Point2D.Double(0, 20), new Point2D.Double(0, 20));
+        assertTextSuppressed(f);
+    }
+
+    @Test
+    public void textAreaIsSuppressedBelowTextThreshold() {
+        SVGTextAreaFigure f = new SVGTextAreaFigure("Hello World");
+        f.setBounds(new Point2D.Double(0, 0), new Point2D.Double(150, 30));
+        assertTextSuppressed(f);
+    }
+}
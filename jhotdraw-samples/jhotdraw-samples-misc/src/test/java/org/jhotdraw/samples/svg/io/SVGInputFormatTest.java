@@ -0,0 +1,183 @@
+package org.jhotdraw.samples.svg.io;
+
+import org.jhotdraw.draw.AttributeKey;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.CompositeFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SVGInputFormatTest {
+
+    /**
+     * A document with references to elements further up and further down,
+     * and with referenced elements which inherit attributes from their
+     * ancestors. The DOM reader does not resolve references to paint servers
+     * further down, so the gradient is defined first.
+     */
+    static final String REFERENCES_SVG
+            = "<?xml version=\"1.0\"?>\n"
+            + "<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+            + " width=\"400\" height=\"300\">\n"
+            + "<defs><linearGradient id=\"grad\" x1=\"0\" y1=\"0\" x2=\"1\" y2=\"0\">"
+            + "<stop offset=\"0\" stop-color=\"red\"/><stop offset=\"1\" stop-color=\"yellow\"/>"
+            + "</linearGradient></defs>\n"
+            + "<style type=\"text/css\">.thick { stroke-width: 4 } rect.thick { stroke: red }</style>\n"
+            + "<g id=\"layer1\" fill=\"#00ff00\">\n"
+            + "  <rect x=\"10\" y=\"10\" width=\"20\" height=\"30\" class=\"thick\"/>\n"
+            + "  <g transform=\"translate(5,7) rotate(10)\" stroke=\"blue\">\n"
+            + "    <path d=\"M0,0 L40,0 C50,10 50,20 40,30 Z\"/>\n"
+            + "    <polyline points=\"0,0 10,5 20,0 30,5\" fill=\"none\"/>\n"
+            + "  </g>\n"
+            + "</g>\n"
+            + "<g fill=\"#0000ff\" stroke=\"black\" transform=\"scale(2)\">\n"
+            + "  <circle cx=\"50\" cy=\"50\" r=\"10\"/>\n"
+            + "  <rect id=\"r1\" x=\"60\" y=\"60\" width=\"10\" height=\"10\"/>\n"
+            + "  <g>\n"
+            + "    <ellipse cx=\"80\" cy=\"20\" rx=\"15\" ry=\"5\" fill=\"url(#grad)\"/>\n"
+            + "    <line x1=\"0\" y1=\"0\" x2=\"30\" y2=\"40\"/>\n"
+            + "  </g>\n"
+            + "</g>\n"
+            + "<use xlink:href=\"#r1\" x=\"100\" y=\"5\"/>\n"
+            + "<use xlink:href=\"#layer1\" x=\"200\"/>\n"
+            + "<use xlink:href=\"#r2\" y=\"100\"/>\n"
+            + "<a xlink:href=\"http://www.jhotdraw.org\"><polygon points=\"0,0 10,10 0,10\"/></a>\n"
+            + "<text x=\"10\" y=\"200\" font-size=\"12\">Hello</text>\n"
+            + "<g stroke=\"#ff00ff\">\n"
+            + "  <rect id=\"r2\" x=\"1\" y=\"2\" width=\"3\" height=\"4\"/>\n"
+            + "  <rect x=\"5\" y=\"2\" width=\"3\" height=\"4\"/>\n"
+            + "</g>\n"
+            + "</svg>\n";
+
+    /**
+     * Creates a document with enough paths, points and transforms to split
+     * the parallel parse tasks, including values which cannot be parsed and
+     * points with percentages, which depend on the viewport.
+     */
+    static String createShapesSVG(int count) {
+        StringBuilder buf = new StringBuilder();
+        buf.append("<?xml version=\"1.0\"?>\n");
+        buf.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"1000\" height=\"1000\">\n");
+        for (int i = 0; i < count; i++) {
+            int x = i * 7 % 900;
+            int y = i * 13 % 900;
+            buf.append("<g transform=\"translate(").append(x).append(',').append(y).append(") rotate(").append(i % 90).append(")\">\n");
+            buf.append("  <path d=\"M0,0 L").append(10 + i % 30).append(",0 Q20,").append(i % 17)
+                    .append(" 10,20 a5,5 0 0 1 5,5 Z m3,3 h4 v4 z\"/>\n");
+            buf.append("  <polyline points=\"0,0 ").append(i % 11).append(",5 20,").append(i % 5).append(" 30,5\" fill=\"none\"/>\n");
+            buf.append("  <polygon transform=\"scale(1.5) skewX(").append(i % 20).append(")\" points=\"0,0 10,10 0,10\"/>\n");
+            buf.append("</g>\n");
+            if (i % 10 == 0) {
+                buf.append("<path d=\"M0,0 L10,10 X20\"/>\n");
+                buf.append("<polyline points=\"10%,20% 30%,40% ").append(i % 50).append("%,5%\"/>\n");
+            }
+        }
+        buf.append("</svg>\n");
+        return buf.toString();
+    }
+
+    static Drawing read(String svg, SVGInputFormat format, boolean isStreaming) throws IOException {
+        Drawing drawing = new DefaultDrawing();
+        ByteArrayInputStream in = new ByteArrayInputStream(svg.getBytes(StandardCharsets.UTF_8));
+        if (isStreaming) {
+            format.readStreaming(in, drawing, true);
+        } else {
+            format.read(in, drawing, true);
+        }
+        return drawing;
+    }
+
+    /**
+     * Asserts that the figures have the same classes, bounds and attributes,
+     * and that their children are equal.
+     */
+    static void assertFiguresEqual(String message, List<Figure> expected, List<Figure> actual) {
+        assertEquals(message + " figure count", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Figure e = expected.get(i);
+            Figure a = actual.get(i);
+            String path = message + "/" + i + ":" + e.getClass().getSimpleName();
+            assertEquals(path, e.getClass(), a.getClass());
+            assertEquals(path + " bounds", e.getBounds(), a.getBounds());
+            Map<AttributeKey<?>, Object> ea = e.getAttributes();
+            Map<AttributeKey<?>, Object> aa = a.getAttributes();
+            assertEquals(path + " attribute keys", ea.keySet(), aa.keySet());
+            for (Map.Entry<AttributeKey<?>, Object> entry : ea.entrySet()) {
+                assertEquals(path + " " + entry.getKey(), entry.getValue(), aa.get(entry.getKey()));
+            }
+            if (e instanceof CompositeFigure) {
+                assertFiguresEqual(path, ((CompositeFigure) e).getChildren(), ((CompositeFigure) a).getChildren());
+            }
+        }
+    }
+
+    /**
+     * Test that the streaming reader reads the same figures as the DOM
+     * reader, although it releases the elements which are not referenced.
+     */
+    @Test
+    public void readStreamingReadsSameFiguresAsRead() throws IOException {
+        Drawing expected = read(REFERENCES_SVG, new SVGInputFormat(), false);
+        assertEquals(8, expected.getChildCount());
+        for (int batchSize : new int[]{1, 3, 1000}) {
+            SVGInputFormat format = new SVGInputFormat();
+            format.setBatchSize(batchSize);
+            Drawing actual = read(REFERENCES_SVG, format, true);
+            assertFiguresEqual("batch size " + batchSize, expected.getChildren(), actual.getChildren());
+        }
+    }
+
+    /**
+     * Test that parsing path data, points and transforms in parallel yields
+     * the same figures as parsing them sequentially.
+     */
+    @Test
+    public void readParallelReadsSameFiguresAsSequential() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String svg : new String[]{REFERENCES_SVG, createShapesSVG(5), createShapesSVG(200)}) {
+                for (boolean isStreaming : new boolean[]{false, true}) {
+                    Drawing expected = read(svg, new SVGInputFormat(), isStreaming);
+                    SVGInputFormat format = new SVGInputFormat();
+                    format.setParsePool(pool);
+                    Drawing actual = read(svg, format, isStreaming);
+                    assertFiguresEqual(isStreaming ? "streaming" : "dom", expected.getChildren(), actual.getChildren());
+
+                    format = new SVGInputFormat();
+                    format.setParallel(true);
+                    actual = read(svg, format, isStreaming);
+                    assertFiguresEqual(isStreaming ? "streaming common pool" : "dom common pool", expected.getChildren(), actual.getChildren());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Test that the values are parsed sequentially, if the parse pool
+     * rejects the parse tasks.
+     */
+    @Test
+    public void readFallsBackToSequentialParsingIfPoolFails() throws IOException {
+        String svg = createShapesSVG(50);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        pool.shutdown();
+        for (boolean isStreaming : new boolean[]{false, true}) {
+            Drawing expected = read(svg, new SVGInputFormat(), isStreaming);
+            SVGInputFormat format = new SVGInputFormat();
+            format.setParsePool(pool);
+            Drawing actual = read(svg, format, isStreaming);
+            assertFiguresEqual(isStreaming ? "streaming" : "dom", expected.getChildren(), actual.getChildren());
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.jhotdraw.samples.svg.io;
+
+import org.jhotdraw.geom.BezierPath;
+import org.junit.Test;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class SVGPathParserTest {
+    SVGPathParser parser = new SVGPathParser();
+
+    /**
+     * Test that numbers are parsed to the same value as Double.parseDouble(),
+     * including numbers which are not handled by the fast path.
+     */
+    @Test
+    public void parseNumberIsCorrectlyRounded() {
+        String[] numbers = {"0", "-0", "+1", ".5", "5.", "-.25", "1e3", "1E-3", "0.1", "0.3",
+            "123456789012345678901234567890", "1.7976931348623157e308", "4.9e-324",
+            "9007199254740993", "0.000000000000000000000000123"};
+        for (String str : numbers) {
+            assertEquals(str, Double.doubleToLongBits(Double.parseDouble(str)),
+                    Double.doubleToLongBits(parser.parseNumber(str)));
+        }
+        Random r = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            String str = Double.toString(Double.longBitsToDouble(r.nextLong()));
+            if (!str.contains("N") && !str.contains("I")) {
+                assertEquals(str, Double.parseDouble(str), parser.parseNumber(str), 0d);
+            }
+        }
+    }
+
+    /**
+     * Test that numbers need not be separated if they can be told apart.
+     */
+    @Test
+    public void parsePathWithCompactNumbers() throws IOException {
+        BezierPath[] paths = parser.parsePath("M1-2.5.5.5L10e-1,3");
+        assertEquals(1, paths.length);
+        assertEquals(3, paths[0].size());
+        assertEquals(new Point2D.Double(1, -2.5), paths[0].get(0, 0));
+        assertEquals(new Point2D.Double(0.5, 0.5), paths[0].get(1, 0));
+        assertEquals(new Point2D.Double(1, 3), paths[0].get(2, 0));
+    }
+
+    /**
+     * Test relative commands, implicit commands and closing a subpath.
+     */
+    @Test
+    public void parsePathWithRelativeCommands() throws IOException {
+        BezierPath[] paths = parser.parsePath("m10 10 10 0 v10 h-10 z m5 5 l1 1");
+        assertEquals(2, paths.length);
+        assertTrue(paths[0].isClosed());
+        assertEquals(4, paths[0].size());
+        assertEquals(new Point2D.Double(20, 20), paths[0].get(2, 0));
+        assertEquals(new Point2D.Double(15, 15), paths[1].get(0, 0));
+        assertEquals(new Point2D.Double(16, 16), paths[1].get(1, 0));
+    }
+
+    /**
+     * Test that the flags of an arc need not be separated from the following
+     * number.
+     */
+    @Test
+    public void parsePathWithCompactArcFlags() throws IOException {
+        BezierPath[] compact = parser.parsePath("M0 0a5 5 0 1010 0");
+        BezierPath[] separated = parser.parsePath("M0 0 a 5 5 0 1 0 10 0");
+        assertEquals(separated[0].size(), compact[0].size());
+        assertEquals(separated[0].get(compact[0].size() - 1, 0), compact[0].get(compact[0].size() - 1, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void parsePathWithMissingCoordinate() throws IOException {
+        parser.parsePath("M0 0 L10");
+    }
+
+    @Test
+    public void parsePoints() throws IOException {
+        Point2D.Double[] points = parser.parsePoints("1,2 3 4,5");
+        assertEquals(2, points.length);
+        assertEquals(new Point2D.Double(3, 4), points[1]);
+    }
+
+    @Test
+    public void parseTransform() throws IOException {
+        AffineTransform expected = new AffineTransform();
+        expected.translate(10, 20);
+        expected.scale(2, 2);
+        expected.rotate(Math.PI / 2, 1, 1);
+        assertEquals(expected, parser.parseTransform("translate(10,20) scale(2) rotate(90 1 1)"));
+        assertEquals(new AffineTransform(), parser.parseTransform("none"));
+    }
+
+    /**
+     * Test that an ignored ref(...) transform is reported to the logger of
+     * the input format.
+     */
+    @Test
+    public void parseTransformLogsIgnoredRef() throws IOException {
+        final List<LogRecord> records = new ArrayList<LogRecord>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(SVGInputFormat.class.getName());
+        logger.addHandler(handler);
+        try {
+            AffineTransform t = parser.parseTransform("translate(1,2) ref(svg) scale(2)");
+            AffineTransform expected = new AffineTransform();
+            expected.translate(1, 2);
+            expected.scale(2, 2);
+            assertEquals(expected, t);
+        } finally {
+            logger.removeHandler(handler);
+        }
+        assertEquals(1, records.size());
+        assertEquals(Level.WARNING, records.get(0).getLevel());
+    }
+}
@@ -9,6 +9,8 @@ package org.jhotdraw.geom;
 
 import java.awt.geom.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Provides algorithms for fitting Bezier curves to a set of digitized points.
@@ -27,6 +29,29 @@ import java.util.*;
  */
 public class Bezier {
 
+    /**
+     * The minimal angle for corner points.
+     */
+    static final double CORNER_ANGLE = 77 / 180d * Math.PI;
+    /**
+     * Result of {@link #classifyCorner}: the point is a corner.
+     */
+    static final int CORNER = 0;
+    /**
+     * Result of {@link #classifyCorner}: the point is not a corner.
+     */
+    static final int NO_CORNER = 1;
+    /**
+     * Result of {@link #classifyCorner}: there is no succeeding point which is
+     * far enough away to decide whether the point is a corner.
+     */
+    static final int UNDECIDED = 2;
+    /**
+     * Paths and ranges of segments with fewer points than this are fitted
+     * sequentially.
+     */
+    private static final int PARALLEL_FIT_THRESHOLD = 512;
+
     /**
      * Prevent instance creation.
      */
@@ -70,59 +95,88 @@ public class Bezier {
      * digitized points.
      */
     public static BezierPath fitBezierPath(java.util.List<Point2D.Double> digitizedPoints, double error) {
-        // Split into segments at corners
-        ArrayList<ArrayList<Point2D.Double>> segments;
-        segments = splitAtCorners(digitizedPoints, 77 / 180d * Math.PI, error * error);
-        // Clean up the data in the segments
-        for (int i = 0, n = segments.size(); i < n; i++) {
-            ArrayList<Point2D.Double> seg = segments.get(i);
-            seg = removeClosePoints(seg, error * 2);
-            seg = reduceNoise(seg, 0.8);
-            segments.set(i, seg);
-        }
-        // Create fitted bezier path
+        double[] xy = new double[digitizedPoints.size() * 2];
+        int i = 0;
+        for (Point2D.Double p : digitizedPoints) {
+            xy[i++] = p.x;
+            xy[i++] = p.y;
+        }
+        return fitBezierPath(xy, digitizedPoints.size(), error);
+    }
+
+    /**
+     * Fits a bezier path to the specified digitized points.
+     * <p>
+     * The points are split into segments at corners. Each segment is cleaned
+     * up with {@link #removeClosePoints} and {@link #reduceNoise}, before
+     * bezier curves are fitted to it.
+     *
+     * @param xy digitized points, stored as x, y pairs.
+     * @param count the number of points in the array.
+     * @param error the maximal allowed error between the bezier path and the
+     * digitized points.
+     */
+    public static BezierPath fitBezierPath(double[] xy, int count, double error) {
+        int[] bounds = findSegments(xy, count, error);
+        CurveBuffer buf = new CurveBuffer();
+        for (int i = 0; i < bounds.length - 1; i++) {
+            fitSegment(xy, bounds[i], bounds[i + 1], error, i == 0, buf);
+        }
         BezierPath fittedPath = new BezierPath();
-        // Quickly deal with empty dataset
-        boolean isEmpty = false;
-        for (ArrayList<Point2D.Double> seg : segments) {
-            if (seg.isEmpty()) {
-                isEmpty = false;
-                break;
-            }
+        buf.appendTo(fittedPath);
+        return fittedPath;
+    }
+
+    /**
+     * Fits a bezier path to the specified digitized points, and fits the
+     * segments between corners in parallel.
+     * <p>
+     * The result is the same as the one of {@link #fitBezierPath(double[], int, double)}.
+     * The corners are found sequentially. The segments between the corners
+     * are fitted by tasks on the specified fork-join pool.
+     *
+     * @param xy digitized points, stored as x, y pairs.
+     * @param count the number of points in the array.
+     * @param error the maximal allowed error between the bezier path and the
+     * digitized points.
+     * @param pool the fork-join pool. Specify null to use the common pool.
+     */
+    public static BezierPath fitBezierPath(double[] xy, int count, double error, ForkJoinPool pool) {
+        int[] bounds = findSegments(xy, count, error);
+        int segmentCount = bounds.length - 1;
+        if (segmentCount < 2 || count < PARALLEL_FIT_THRESHOLD) {
+            return fitBezierPath(xy, count, error);
         }
-        if (!isEmpty) {
-            // Process each segment of digitized points
-            double errorSquared = error * error;
-            for (ArrayList<Point2D.Double> seg : segments) {
-                switch (seg.size()) {
-                    case 0:
-                        break;
-                    case 1:
-                        fittedPath.add(new BezierPath.Node(seg.get(0)));
-                        break;
-                    case 2:
-                        if (fittedPath.isEmpty()) {
-                            fittedPath.add(new BezierPath.Node(seg.get(0)));
-                        }
-                        fittedPath.lineTo(seg.get(1).x, seg.get(1).y);
-                        break;
-                    default:
-                        if (fittedPath.isEmpty()) {
-                            fittedPath.add(new BezierPath.Node(seg.get(0)));
-                        }
-                        /*  Unit tangent vectors at endpoints */
-                        Point2D.Double tHat1;
-                        Point2D.Double tHat2;
-                        tHat1 = computeLeftTangent(seg, 0);
-                        tHat2 = computeRightTangent(seg, seg.size() - 1);
-                        fitCubic(seg, 0, seg.size() - 1, tHat1, tHat2, errorSquared, fittedPath);
-                        break;
-                }
-            }
+        CurveBuffer[] results = new CurveBuffer[segmentCount];
+        (pool == null ? ForkJoinPool.commonPool() : pool).invoke(
+                new SegmentFitTask(xy, bounds, error, results, 0, segmentCount));
+        BezierPath fittedPath = new BezierPath();
+        for (CurveBuffer buf : results) {
+            buf.appendTo(fittedPath);
         }
         return fittedPath;
     }
 
+    /**
+     * Splits the digitized points into segments at each corner point.
+     *
+     * @return the indices of the first point of each segment, followed by the
+     * index of the last point. The last point of a segment is the first point
+     * of the subsequent segment. Returns an empty array if there are no
+     * points.
+     */
+    private static int[] findSegments(double[] xy, int count, double error) {
+        if (count == 0) {
+            return new int[0];
+        }
+        double minDistance = error * error;
+        int[] corners = findCorners(xy, count, CORNER_ANGLE, minDistance * minDistance);
+        int[] bounds = new int[corners.length + 2];
+        System.arraycopy(corners, 0, bounds, 1, corners.length);
+        bounds[bounds.length - 1] = count - 1;
+        return bounds;
+    }
+
     /**
      * Fits a bezier path to the specified list of digitized points.
      * <p>
@@ -133,11 +187,13 @@ public class Bezier {
      * digitized points.
      */
     public static BezierPath fitBezierPath(BezierPath digitizedPoints, double error) {
-        ArrayList<Point2D.Double> d = new ArrayList<>(digitizedPoints.size());
-        for (BezierPath.Node n : digitizedPoints) {
-            d.add(new Point2D.Double(n.x[0], n.y[0]));
+        double[] xy = new double[digitizedPoints.size() * 2];
+        for (int i = 0, n = digitizedPoints.size(); i < n; i++) {
+            BezierPath.Node node = digitizedPoints.get(i);
+            xy[i * 2] = node.x[0];
+            xy[i * 2 + 1] = node.y[0];
         }
-        return fitBezierPath(d, error);
+        return fitBezierPath(xy, digitizedPoints.size(), error);
     }
 
     /**
@@ -330,85 +386,257 @@ public class Bezier {
         return cleaned;
     }
 
+    /**
+     * Finds the corners in the specified point buffer, using the same
+     * criteria as {@link #findCorners}.
+     *
+     * @param xy Digitized points, stored as x, y pairs.
+     * @param count Number of points in the buffer.
+     * @param minAngle Minimal angle for corner points
+     * @param squaredDistance Squared minimal distance between a point and
+     * adjacent points for corner detection
+     * @return indices of the corners in ascending order.
+     */
+    private static int[] findCorners(double[] xy, int count, double minAngle, double squaredDistance) {
+        int[] corners = new int[8];
+        int cornerCount = 0;
+        int previousCorner = -1;
+        for (int i = 1; i < count - 1; i++) {
+            if (classifyCorner(xy, i, count, previousCorner, minAngle, squaredDistance) == CORNER) {
+                if (cornerCount == corners.length) {
+                    corners = Arrays.copyOf(corners, cornerCount * 2);
+                }
+                corners[cornerCount++] = i;
+                previousCorner = i;
+            }
+        }
+        return Arrays.copyOf(corners, cornerCount);
+    }
+
+    /**
+     * Decides whether the point at the specified index is a corner.
+     * <p>
+     * Only the points before {@code limit} are used for finding a succeeding
+     * point. If none of them is far enough away, {@link #UNDECIDED} is
+     * returned.
+     *
+     * @param xy Digitized points, stored as x, y pairs.
+     * @param i Index of the point.
+     * @param limit Index after the last point which may be used as successor.
+     * @param previousCorner Index of the previous corner or -1.
+     * @param minAngle Minimal angle for corner points
+     * @param squaredDistance Squared minimal distance between a point and
+     * adjacent points for corner detection
+     * @return {@link #CORNER}, {@link #NO_CORNER} or {@link #UNDECIDED}.
+     */
+    static int classifyCorner(double[] xy, int i, int limit, int previousCorner, double minAngle, double squaredDistance) {
+        double px = xy[i * 2];
+        double py = xy[i * 2 + 1];
+        // search for a preceding point for corner detection
+        int prev = -1;
+        for (int j = i - 1; j >= 0; j--) {
+            if (j == previousCorner || squaredDistance(xy, j, px, py) >= squaredDistance) {
+                prev = j;
+                break;
+            }
+        }
+        if (prev == -1) {
+            return NO_CORNER;
+        }
+        // search for a succeeding point for corner detection
+        int next = -1;
+        for (int j = i + 1; j < limit; j++) {
+            if (squaredDistance(xy, j, px, py) >= squaredDistance) {
+                next = j;
+                break;
+            }
+        }
+        if (next == -1) {
+            return UNDECIDED;
+        }
+        double aPrev = Math.atan2(xy[prev * 2 + 1] - py, xy[prev * 2] - px);
+        double aNext = Math.atan2(xy[next * 2 + 1] - py, xy[next * 2] - px);
+        double angle = Math.abs(aPrev - aNext);
+        return (angle < Math.PI - minAngle || angle > Math.PI + minAngle) ? CORNER : NO_CORNER;
+    }
+
+    /**
+     * Cleans up a segment of digitized points, which is delimited by corners,
+     * and fits bezier curves to it.
+     * <p>
+     * This does the same as {@link #removeClosePoints}, {@link #reduceNoise}
+     * and the fitting of a segment in {@link #fitBezierPath(java.util.List, double)}.
+     *
+     * @param xy Digitized points, stored as x, y pairs.
+     * @param first Index of the first point of the segment.
+     * @param last Index of the last point of the segment.
+     * @param error the maximal allowed error.
+     * @param isFirstSegment True if this is the first segment of the path.
+     * @param out The buffer to which the fitted curves are added.
+     */
+    static void fitSegment(double[] xy, int first, int last, double error, boolean isFirstSegment, CurveBuffer out) {
+        if (last < first) {
+            return;
+        }
+        double[] d = new double[(last - first + 1) * 2];
+        int n = removeClosePoints(xy, first, last, error * 2, d);
+        reduceNoise(d, n, 0.8);
+        switch (n) {
+            case 1:
+                out.node(d[0], d[1]);
+                break;
+            case 2:
+                if (isFirstSegment) {
+                    out.node(d[0], d[1]);
+                } else {
+                    out.setCurrentPoint(d[0], d[1]);
+                }
+                out.lineTo(d[2], d[3]);
+                break;
+            default:
+                if (isFirstSegment) {
+                    out.node(d[0], d[1]);
+                } else {
+                    out.setCurrentPoint(d[0], d[1]);
+                }
+                /*  Unit tangent vectors at endpoints */
+                double[] tHat1 = computeLeftTangent(d, 0);
+                double[] tHat2 = computeRightTangent(d, n - 1);
+                fitCubic(d, n, 0, n - 1, tHat1, tHat2, error * error, out);
+                break;
+        }
+    }
+
+    /**
+     * Copies the points from first to last into the cleaned buffer, and
+     * removes points which are closer together than the specified minimal
+     * distance, like {@link #removeClosePoints(java.util.List, double)}.
+     *
+     * @return the number of points in the cleaned buffer.
+     */
+    private static int removeClosePoints(double[] xy, int first, int last, double minDistance, double[] cleaned) {
+        double prevX = xy[first * 2];
+        double prevY = xy[first * 2 + 1];
+        cleaned[0] = prevX;
+        cleaned[1] = prevY;
+        int n = 1;
+        if (minDistance == 0) {
+            for (int i = first; i <= last; i++) {
+                double x = xy[i * 2];
+                double y = xy[i * 2 + 1];
+                if (prevX != x || prevY != y) {
+                    cleaned[n * 2] = prevX = x;
+                    cleaned[n * 2 + 1] = prevY = y;
+                    n++;
+                }
+            }
+        } else {
+            double squaredDistance = minDistance * minDistance;
+            for (int i = first; i <= last; i++) {
+                double x = xy[i * 2];
+                double y = xy[i * 2 + 1];
+                double dx = prevX - x;
+                double dy = prevY - y;
+                if ((dx * dx) + (dy * dy) > squaredDistance) {
+                    cleaned[n * 2] = prevX = x;
+                    cleaned[n * 2 + 1] = prevY = y;
+                    n++;
+                }
+            }
+            if (prevX != xy[last * 2] || prevY != xy[last * 2 + 1]) {
+                cleaned[n * 2 - 2] = xy[last * 2];
+                cleaned[n * 2 - 1] = xy[last * 2 + 1];
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Reduces noise from the digitized points in place, like
+     * {@link #reduceNoise(java.util.List, double)}.
+     */
+    private static void reduceNoise(double[] d, int n, double weight) {
+        double pnWeight = (1d - weight) / 2d; // weight of previous and next
+        double prevX = d[0];
+        double prevY = d[1];
+        for (int i = 1; i < n - 1; i++) {
+            double curX = d[i * 2];
+            double curY = d[i * 2 + 1];
+            d[i * 2] = curX * weight + pnWeight * prevX + pnWeight * d[i * 2 + 2];
+            d[i * 2 + 1] = curY * weight + pnWeight * prevY + pnWeight * d[i * 2 + 3];
+            prevX = curX;
+            prevY = curY;
+        }
+    }
+
     /**
      * Fit one or multiple subsequent cubic bezier curves to a (sub)set of
      * digitized points. The digitized points represent a smooth curve without
      * corners.
      *
-     * @param d Array of digitized points. Must not contain subsequent
-     * coincident points.
+     * @param d Array of digitized points, stored as x, y pairs. Must not
+     * contain subsequent coincident points.
+     * @param n Number of points in d.
      * @param first Indice of first point in d.
      * @param last Indice of last point in d.
      * @param tHat1 Unit tangent vectors at start point.
      * @param tHat2 Unit tanget vector at end point.
      * @param errorSquared User-defined errorSquared squared.
-     * @param bezierPath Path to which the bezier curve segments are added.
+     * @param out Buffer to which the bezier curve segments are added.
      */
-    private static void fitCubic(ArrayList<Point2D.Double> d, int first, int last,
-            Point2D.Double tHat1, Point2D.Double tHat2,
-            double errorSquared, BezierPath bezierPath) {
-        Point2D.Double[] bezCurve;
+    private static void fitCubic(double[] d, int n, int first, int last,
+            double[] tHat1, double[] tHat2,
+            double errorSquared, CurveBuffer out) {
         /*Control points of fitted Bezier curve*/
-        double[] u;
+        double[] bezCurve;
         /*  Parameter values for point  */
-        double maxError;
+        double[] u;
         /*  Maximum fitting errorSquared */
-        int[] splitPoint = new int[1];
+        double maxError;
         /*  Point to split point set at.
         This is an array of size one, because we need it as an input/output parameter.
          */
-        int nPts;
+        int[] splitPoint = new int[1];
         /*  Number of points in subset  */
-        double iterationError;
+        int nPts;
         /* Error below which you try iterating  */
-        int maxIterations = 4;
+        double iterationError;
         /*  Max times to try iterating  */
-        Point2D.Double tHatCenter;
+        int maxIterations = 4;
         /* Unit tangent vector at splitPoint */
-        int i;
+        double[] tHatCenter;
         // clone unit tangent vectors, so that we can alter their coordinates
         // without affecting the input values.
-        tHat1 = (Point2D.Double) tHat1.clone();
-        tHat2 = (Point2D.Double) tHat2.clone();
+        tHat1 = tHat1.clone();
+        tHat2 = tHat2.clone();
         iterationError = errorSquared * errorSquared;
         nPts = last - first + 1;
         /*  Use heuristic if region only has two points in it */
         if (nPts == 2) {
-            double dist = v2DistanceBetween2Points(d.get(last), d.get(first)) / 3.0;
-            bezCurve = new Point2D.Double[4];
-            for (i = 0; i < bezCurve.length; i++) {
-                bezCurve[i] = new Point2D.Double();
-            }
-            bezCurve[0] = d.get(first);
-            bezCurve[3] = d.get(last);
-            v2Add(bezCurve[0], v2Scale(tHat1, dist), bezCurve[1]);
-            v2Add(bezCurve[3], v2Scale(tHat2, dist), bezCurve[2]);
-            bezierPath.curveTo(
-                    bezCurve[1].x, bezCurve[1].y,
-                    bezCurve[2].x, bezCurve[2].y,
-                    bezCurve[3].x, bezCurve[3].y);
+            bezCurve = generateBezier(d, first, last, tHat1, tHat2);
+            out.curveTo(bezCurve[2], bezCurve[3], bezCurve[4], bezCurve[5], bezCurve[6], bezCurve[7]);
             return;
         }
         /*  Parameterize points, and attempt to fit curve */
         u = chordLengthParameterize(d, first, last);
-        bezCurve = generateBezier(d, first, last, u, tHat1, tHat2);
+        bezCurve = generateBezier(d, first, last, tHat1, tHat2);
         /*  Find max deviation of points to fitted curve */
         maxError = computeMaxError(d, first, last, bezCurve, u, splitPoint);
         if (maxError < errorSquared) {
-            addCurveTo(bezCurve, bezierPath, errorSquared, first == 0 && last == d.size() - 1);
+            addCurveTo(bezCurve, out, errorSquared, first == 0 && last == n - 1);
             return;
         }
         /*  If errorSquared not too large, try some reparameterization  */
- /*  and iteration */
+        /*  and iteration */
         if (maxError < iterationError) {
-            double[] uPrime;
             /*  Improved parameter values */
-            for (i = 0; i < maxIterations; i++) {
+            double[] uPrime;
+            for (int i = 0; i < maxIterations; i++) {
                 uPrime = reparameterize(d, first, last, u, bezCurve);
-                bezCurve = generateBezier(d, first, last, uPrime, tHat1, tHat2);
+                bezCurve = generateBezier(d, first, last, tHat1, tHat2);
                 maxError = computeMaxError(d, first, last, bezCurve, uPrime, splitPoint);
                 if (maxError < errorSquared) {
-                    addCurveTo(bezCurve, bezierPath, errorSquared, first == 0 && last == d.size() - 1);
+                    addCurveTo(bezCurve, out, errorSquared, first == 0 && last == n - 1);
                     return;
                 }
                 u = uPrime;
@@ -417,38 +645,32 @@ public class Bezier {
         /* Fitting failed -- split at max errorSquared point and fit recursively */
         tHatCenter = computeCenterTangent(d, splitPoint[0]);
         if (first < splitPoint[0]) {
-            fitCubic(d, first, splitPoint[0], tHat1, tHatCenter, errorSquared, bezierPath);
+            fitCubic(d, n, first, splitPoint[0], tHat1, tHatCenter, errorSquared, out);
         } else {
-            bezierPath.lineTo(d.get(splitPoint[0]).x, d.get(splitPoint[0]).y);
-            //   System.err.println("Can't split any further " + first + ".." + splitPoint[0]);
+            out.lineTo(d[splitPoint[0] * 2], d[splitPoint[0] * 2 + 1]);
         }
-        v2Negate(tHatCenter);
+        tHatCenter[0] = -tHatCenter[0];
+        tHatCenter[1] = -tHatCenter[1];
         if (splitPoint[0] < last) {
-            fitCubic(d, splitPoint[0], last, tHatCenter, tHat2, errorSquared, bezierPath);
+            fitCubic(d, n, splitPoint[0], last, tHatCenter, tHat2, errorSquared, out);
         } else {
-            bezierPath.lineTo(d.get(last).x, d.get(last).y);
-            //  System.err.println("Can't split any further " + splitPoint[0] + ".." + last);
+            out.lineTo(d[last * 2], d[last * 2 + 1]);
         }
     }
 
     /**
-     * Adds the curve to the bezier path.
+     * Adds the curve to the buffer.
      *
      * @param bezCurve
-     * @param bezierPath
+     * @param out
      */
-    private static void addCurveTo(Point2D.Double[] bezCurve, BezierPath bezierPath, double errorSquared, boolean connectsCorners) {
-        BezierPath.Node lastNode = bezierPath.get(bezierPath.size() - 1);
+    private static void addCurveTo(double[] bezCurve, CurveBuffer out, double errorSquared, boolean connectsCorners) {
         double error = Math.sqrt(errorSquared);
-        if (connectsCorners && Geom.lineContainsPoint(lastNode.x[0], lastNode.y[0], bezCurve[3].x, bezCurve[3].y, bezCurve[1].x, bezCurve[1].y, error)
-                && Geom.lineContainsPoint(lastNode.x[0], lastNode.y[0], bezCurve[3].x, bezCurve[3].y, bezCurve[2].x, bezCurve[2].y, error)) {
-            bezierPath.lineTo(
-                    bezCurve[3].x, bezCurve[3].y);
+        if (connectsCorners && Geom.lineContainsPoint(out.currentX, out.currentY, bezCurve[6], bezCurve[7], bezCurve[2], bezCurve[3], error)
+                && Geom.lineContainsPoint(out.currentX, out.currentY, bezCurve[6], bezCurve[7], bezCurve[4], bezCurve[5], error)) {
+            out.lineTo(bezCurve[6], bezCurve[7]);
         } else {
-            bezierPath.curveTo(
-                    bezCurve[1].x, bezCurve[1].y,
-                    bezCurve[2].x, bezCurve[2].y,
-                    bezCurve[3].x, bezCurve[3].y);
+            out.curveTo(bezCurve[2], bezCurve[3], bezCurve[4], bezCurve[5], bezCurve[6], bezCurve[7]);
         }
     }
 
@@ -458,11 +680,9 @@ public class Bezier {
      * @param d Digitized points.
      * @param end Index to "left" end of region.
      */
-    private static Point2D.Double computeLeftTangent(ArrayList<Point2D.Double> d, int end) {
-        Point2D.Double tHat1;
-        tHat1 = v2SubII(d.get(end + 1), d.get(end));
-        tHat1 = v2Normalize(tHat1);
-        return tHat1;
+    private static double[] computeLeftTangent(double[] d, int end) {
+        double[] tHat1 = {d[end * 2 + 2] - d[end * 2], d[end * 2 + 3] - d[end * 2 + 1]};
+        return v2Normalize(tHat1);
     }
 
     /**
@@ -471,11 +691,9 @@ public class Bezier {
      * @param d Digitized points.
      * @param end Index to "right" end of region.
      */
-    private static Point2D.Double computeRightTangent(ArrayList<Point2D.Double> d, int end) {
-        Point2D.Double tHat2;
-        tHat2 = v2SubII(d.get(end - 1), d.get(end));
-        tHat2 = v2Normalize(tHat2);
-        return tHat2;
+    private static double[] computeRightTangent(double[] d, int end) {
+        double[] tHat2 = {d[end * 2 - 2] - d[end * 2], d[end * 2 - 1] - d[end * 2 + 1]};
+        return v2Normalize(tHat2);
     }
 
     /**
@@ -484,15 +702,13 @@ public class Bezier {
      * @param d Digitized points.
      * @param center Index to "center" end of region.
      */
-    private static Point2D.Double computeCenterTangent(ArrayList<Point2D.Double> d, int center) {
-        Point2D.Double V1, V2,
-                tHatCenter = new Point2D.Double();
-        V1 = v2SubII(d.get(center - 1), d.get(center));
-        V2 = v2SubII(d.get(center), d.get(center + 1));
-        tHatCenter.x = (V1.x + V2.x) / 2.0;
-        tHatCenter.y = (V1.y + V2.y) / 2.0;
-        tHatCenter = v2Normalize(tHatCenter);
-        return tHatCenter;
+    private static double[] computeCenterTangent(double[] d, int center) {
+        double v1x = d[center * 2 - 2] - d[center * 2];
+        double v1y = d[center * 2 - 1] - d[center * 2 + 1];
+        double v2x = d[center * 2] - d[center * 2 + 2];
+        double v2y = d[center * 2 + 1] - d[center * 2 + 3];
+        double[] tHatCenter = {(v1x + v2x) / 2.0, (v1y + v2y) / 2.0};
+        return v2Normalize(tHatCenter);
     }
 
     /**
@@ -503,20 +719,18 @@ public class Bezier {
      * @param first Indice of first point of region in d.
      * @param last Indice of last point of region in d.
      */
-    private static double[] chordLengthParameterize(ArrayList<Point2D.Double> d, int first, int last) {
-        int i;
-        double[] u;
+    private static double[] chordLengthParameterize(double[] d, int first, int last) {
         /*  Parameterization */
-        u = new double[last - first + 1];
+        double[] u = new double[last - first + 1];
         u[0] = 0.0;
-        for (i = first + 1; i <= last; i++) {
+        for (int i = first + 1; i <= last; i++) {
             u[i - first] = u[i - first - 1]
-                    + v2DistanceBetween2Points(d.get(i), d.get(i - 1));
+                    + Math.sqrt(squaredDistance(d, i, d[i * 2 - 2], d[i * 2 - 1]));
         }
-        for (i = first + 1; i <= last; i++) {
+        for (int i = first + 1; i <= last; i++) {
             u[i - first] = u[i - first] / u[last - first];
         }
-        return (u);
+        return u;
     }
 
     /**
@@ -529,58 +743,49 @@ public class Bezier {
      * @param u Current parameter values.
      * @param bezCurve Current fitted curve.
      */
-    private static double[] reparameterize(ArrayList<Point2D.Double> d, int first, int last, double[] u, Point2D.Double[] bezCurve) {
-        int nPts = last - first + 1;
-        int i;
-        double[] uPrime;
+    private static double[] reparameterize(double[] d, int first, int last, double[] u, double[] bezCurve) {
         /*  New parameter values */
-        uPrime = new double[nPts];
-        for (i = first; i <= last; i++) {
-            uPrime[i - first] = newtonRaphsonRootFind(bezCurve, d.get(i), u[i - first]);
+        double[] uPrime = new double[last - first + 1];
+        for (int i = first; i <= last; i++) {
+            uPrime[i - first] = newtonRaphsonRootFind(bezCurve, d[i * 2], d[i * 2 + 1], u[i - first]);
         }
-        return (uPrime);
+        return uPrime;
     }
 
     /**
      * Use Newton-Raphson iteration to find better root.
      *
-     * @param Q Current fitted bezier curve.
-     * @param P Digitized point.
+     * @param q Current fitted bezier curve.
+     * @param px Digitized point x.
+     * @param py Digitized point y.
      * @param u Parameter value vor P.
      */
-    private static double newtonRaphsonRootFind(Point2D.Double[] Q, Point2D.Double P, double u) {
-        double numerator, denominator;
-        Point2D.Double[] Q1 = new Point2D.Double[3], Q2 = new Point2D.Double[2];
-        /*  Q' and Q''   */
-        Point2D.Double Q_u, Q1_u, Q2_u;
-        /*u evaluated at Q, Q', & Q'' */
-        double uPrime;
-        /*  Improved u */
-        int i;
-        /* Compute Q(u) */
-        Q_u = bezierII(3, Q, u);
+    private static double newtonRaphsonRootFind(double[] q, double px, double py, double u) {
         /* Generate control vertices for Q' */
-        for (i = 0; i <= 2; i++) {
-            Q1[i] = new Point2D.Double(
-                    (Q[i + 1].x - Q[i].x) * 3.0,
-                    (Q[i + 1].y - Q[i].y) * 3.0);
-        }
+        double q10x = (q[2] - q[0]) * 3.0;
+        double q10y = (q[3] - q[1]) * 3.0;
+        double q11x = (q[4] - q[2]) * 3.0;
+        double q11y = (q[5] - q[3]) * 3.0;
+        double q12x = (q[6] - q[4]) * 3.0;
+        double q12y = (q[7] - q[5]) * 3.0;
         /* Generate control vertices for Q'' */
-        for (i = 0; i <= 1; i++) {
-            Q2[i] = new Point2D.Double(
-                    (Q1[i + 1].x - Q1[i].x) * 2.0,
-                    (Q1[i + 1].y - Q1[i].y) * 2.0);
-        }
-        /* Compute Q'(u) and Q''(u) */
-        Q1_u = bezierII(2, Q1, u);
-        Q2_u = bezierII(1, Q2, u);
+        double q20x = (q11x - q10x) * 2.0;
+        double q20y = (q11y - q10y) * 2.0;
+        double q21x = (q12x - q11x) * 2.0;
+        double q21y = (q12y - q11y) * 2.0;
+        /* Compute Q(u), Q'(u) and Q''(u) */
+        double qux = bezier3(q[0], q[2], q[4], q[6], u);
+        double quy = bezier3(q[1], q[3], q[5], q[7], u);
+        double q1ux = bezier2(q10x, q11x, q12x, u);
+        double q1uy = bezier2(q10y, q11y, q12y, u);
+        double q2ux = bezier1(q20x, q21x, u);
+        double q2uy = bezier1(q20y, q21y, u);
         /* Compute f(u)/f'(u) */
-        numerator = (Q_u.x - P.x) * (Q1_u.x) + (Q_u.y - P.y) * (Q1_u.y);
-        denominator = (Q1_u.x) * (Q1_u.x) + (Q1_u.y) * (Q1_u.y)
-                + (Q_u.x - P.x) * (Q2_u.x) + (Q_u.y - P.y) * (Q2_u.y);
+        double numerator = (qux - px) * (q1ux) + (quy - py) * (q1uy);
+        double denominator = (q1ux) * (q1ux) + (q1uy) * (q1uy)
+                + (qux - px) * (q2ux) + (quy - py) * (q2uy);
         /* u = u - f(u)/f'(u) */
-        uPrime = u - (numerator / denominator);
-        return (uPrime);
+        return u - (numerator / denominator);
     }
 
     /**
@@ -596,209 +801,253 @@ public class Bezier {
      * @param splitPoint Point of maximum error (input/output parameter, must be
      * an array of 1)
      */
-    private static double computeMaxError(ArrayList<Point2D.Double> d, int first, int last, Point2D.Double[] bezCurve, double[] u, int[] splitPoint) {
-        int i;
-        double maxDist;
-        /*  Maximum error */
-        double dist;
-        /*  Current error */
-        Point2D.Double P;
-        /*  Point on curve */
-        Point2D.Double v;
-        /*  Vector from point to curve */
+    private static double computeMaxError(double[] d, int first, int last, double[] bezCurve, double[] u, int[] splitPoint) {
         splitPoint[0] = (last - first + 1) / 2;
-        maxDist = 0.0;
-        for (i = first + 1; i < last; i++) {
-            P = bezierII(3, bezCurve, u[i - first]);
-            v = v2SubII(P, d.get(i));
-            dist = v2SquaredLength(v);
+        /*  Maximum error */
+        double maxDist = 0.0;
+        for (int i = first + 1; i < last; i++) {
+            double t = u[i - first];
+            double dist = squaredDistance(d, i,
+                    bezier3(bezCurve[0], bezCurve[2], bezCurve[4], bezCurve[6], t),
+                    bezier3(bezCurve[1], bezCurve[3], bezCurve[5], bezCurve[7], t));
             if (dist >= maxDist) {
                 maxDist = dist;
                 splitPoint[0] = i;
             }
         }
-        return (maxDist);
+        return maxDist;
     }
 
     /**
-     * Use least-squares method to find Bezier control points for region.
+     * Use the Wu/Barsky heuristic to find Bezier control points for region.
+     * <p>
+     * This method scales the tangent vectors to a third of the distance between
+     * the first and the last point.
      *
      * @param d Array of digitized points.
      * @param first Indice of first point in d.
      * @param last Indice of last point in d.
-     * @param uPrime Parameter values for region .
      * @param tHat1 Unit tangent vectors at start point.
      * @param tHat2 Unit tanget vector at end point.
-     * @return A cubic bezier curve consisting of 4 control points.
+     * @return A cubic bezier curve consisting of 4 control points, stored as
+     * x, y pairs.
      */
-    private static Point2D.Double[] generateBezier(ArrayList<Point2D.Double> d, int first, int last, double[] uPrime, Point2D.Double tHat1, Point2D.Double tHat2) {
-        Point2D.Double[] bezCurve;
-        bezCurve = new Point2D.Double[4];
-        for (int i = 0; i < bezCurve.length; i++) {
-            bezCurve[i] = new Point2D.Double();
-        }
-        /*  Use the Wu/Barsky heuristic*/
-        double dist = v2DistanceBetween2Points(d.get(last), d.get(first)) / 3.0;
-        bezCurve[0] = d.get(first);
-        bezCurve[3] = d.get(last);
-        v2Add(bezCurve[0], v2Scale(tHat1, dist), bezCurve[1]);
-        v2Add(bezCurve[3], v2Scale(tHat2, dist), bezCurve[2]);
-        return (bezCurve);
+    private static double[] generateBezier(double[] d, int first, int last, double[] tHat1, double[] tHat2) {
+        double dist = Math.sqrt(squaredDistance(d, last, d[first * 2], d[first * 2 + 1])) / 3.0;
+        v2Scale(tHat1, dist);
+        v2Scale(tHat2, dist);
+        double x0 = d[first * 2];
+        double y0 = d[first * 2 + 1];
+        double x3 = d[last * 2];
+        double y3 = d[last * 2 + 1];
+        return new double[]{x0, y0, x0 + tHat1[0], y0 + tHat1[1], x3 + tHat2[0], y3 + tHat2[1], x3, y3};
     }
 
     /**
-     * Evaluate a Bezier curve at a particular parameter value.
-     *
-     * @param degree The degree of the bezier curve.
-     * @param V Array of control points.
-     * @param t Parametric value to find point for.
-     */
-    private static Point2D.Double bezierII(int degree, Point2D.Double[] V, double t) {
-        int i, j;
-        Point2D.Double q;
-        /* Point on curve at parameter t */
-        Point2D.Double[] vTemp;
-        /* Local copy of control points  */
- /* Copy array */
-        vTemp = new Point2D.Double[degree + 1];
-        for (i = 0; i <= degree; i++) {
-            vTemp[i] = (Point2D.Double) V[i].clone();
-        }
-        /* Triangle computation */
-        for (i = 1; i <= degree; i++) {
-            for (j = 0; j <= degree - i; j++) {
-                vTemp[j].x = (1.0 - t) * vTemp[j].x + t * vTemp[j + 1].x;
-                vTemp[j].y = (1.0 - t) * vTemp[j].y + t * vTemp[j + 1].y;
-            }
-        }
-        q = vTemp[0];
-        return q;
+     * Evaluates a cubic bezier curve at a particular parameter value.
+     */
+    private static double bezier3(double p0, double p1, double p2, double p3, double t) {
+        double s = 1.0 - t;
+        double a0 = s * p0 + t * p1;
+        double a1 = s * p1 + t * p2;
+        double a2 = s * p2 + t * p3;
+        return bezier2(a0, a1, a2, t);
     }
 
-    /* -------------------------------------------------------------------------
-     * GraphicsGems.c
-     * 2d and 3d Vector C Library
-     * by Andrew Glassner
-     * from "Graphics Gems", Academic Press, 1990
-     * -------------------------------------------------------------------------
-     */
     /**
-     * Return the distance between two points
+     * Evaluates a quadratic bezier curve at a particular parameter value.
      */
-    private static double v2DistanceBetween2Points(Point2D.Double a, Point2D.Double b) {
-        return Math.sqrt(v2SquaredDistanceBetween2Points(a, b));
+    private static double bezier2(double p0, double p1, double p2, double t) {
+        double s = 1.0 - t;
+        double a0 = s * p0 + t * p1;
+        double a1 = s * p1 + t * p2;
+        return bezier1(a0, a1, t);
     }
 
     /**
-     * Return the distance between two points
+     * Evaluates a linear bezier curve at a particular parameter value.
      */
-    private static double v2SquaredDistanceBetween2Points(Point2D.Double a, Point2D.Double b) {
-        double dx = a.x - b.x;
-        double dy = a.y - b.y;
-        return (dx * dx) + (dy * dy);
+    private static double bezier1(double p0, double p1, double t) {
+        return (1.0 - t) * p0 + t * p1;
     }
 
     /**
-     * Scales the input vector to the new length and returns it.
+     * Holds the nodes, lines and curves of a fitted bezier path, until they
+     * are added to a {@link BezierPath}.
      * <p>
-     * This method alters the value of the input point!
+     * Segments of a path can be fitted into separate buffers, and added to
+     * the path in sequence.
      */
-    private static Point2D.Double v2Scale(Point2D.Double v, double newlen) {
-        double len = v2Length(v);
-        if (len != 0.0) {
-            v.x *= newlen / len;
-            v.y *= newlen / len;
+    static final class CurveBuffer {
+
+        private static final byte NODE = 0;
+        private static final byte LINE = 1;
+        private static final byte CURVE = 2;
+        private byte[] ops = new byte[16];
+        private int opCount;
+        private double[] coords = new double[96];
+        private int coordCount;
+        /**
+         * The end point of the last node, line or curve.
+         */
+        private double currentX;
+        private double currentY;
+
+        void setCurrentPoint(double x, double y) {
+            currentX = x;
+            currentY = y;
         }
-        return v;
-    }
 
-    /**
-     * Scales the input vector by the specified factor and returns it.
-     * <p>
-     * This method alters the value of the input point!
-     */
-    private static Point2D.Double v2ScaleIII(Point2D.Double v, double s) {
-        Point2D.Double result = new Point2D.Double();
-        result.x = v.x * s;
-        result.y = v.y * s;
-        return result;
-    }
+        void node(double x, double y) {
+            add(NODE, x, y);
+        }
 
-    /**
-     * Returns length of input vector.
-     */
-    private static double v2Length(Point2D.Double a) {
-        return Math.sqrt(v2SquaredLength(a));
-    }
+        void lineTo(double x, double y) {
+            add(LINE, x, y);
+        }
 
-    /**
-     * Returns squared length of input vector.
-     */
-    private static double v2SquaredLength(Point2D.Double a) {
-        return (a.x * a.x) + (a.y * a.y);
+        void curveTo(double x1, double y1, double x2, double y2, double x3, double y3) {
+            ensureCapacity(6);
+            coords[coordCount++] = x1;
+            coords[coordCount++] = y1;
+            coords[coordCount++] = x2;
+            coords[coordCount++] = y2;
+            add(CURVE, x3, y3);
+        }
+
+        private void add(byte op, double x, double y) {
+            ensureCapacity(2);
+            coords[coordCount++] = x;
+            coords[coordCount++] = y;
+            if (opCount == ops.length) {
+                ops = Arrays.copyOf(ops, opCount * 2);
+            }
+            ops[opCount++] = op;
+            currentX = x;
+            currentY = y;
+        }
+
+        private void ensureCapacity(int n) {
+            if (coordCount + n > coords.length) {
+                coords = Arrays.copyOf(coords, Math.max(coordCount + n, coords.length * 2));
+            }
+        }
+
+        /**
+         * Adds the contents of this buffer to the specified path.
+         */
+        void appendTo(BezierPath path) {
+            double[] c = coords;
+            for (int i = 0, j = 0; i < opCount; i++) {
+                switch (ops[i]) {
+                    case NODE:
+                        path.add(new BezierPath.Node(c[j], c[j + 1]));
+                        j += 2;
+                        break;
+                    case LINE:
+                        path.lineTo(c[j], c[j + 1]);
+                        j += 2;
+                        break;
+                    default:
+                        path.curveTo(c[j], c[j + 1], c[j + 2], c[j + 3], c[j + 4], c[j + 5]);
+                        j += 6;
+                        break;
+                }
+            }
+        }
     }
 
     /**
-     * Return vector sum c = a+b.
+     * Fits the segments of a path on a fork-join pool.
      * <p>
-     * This method alters the value of c.
+     * Each segment is fitted into its own buffer. Ranges of segments, which
+     * contain only few points, are fitted sequentially by a single task.
      */
-    private static Point2D.Double v2Add(Point2D.Double a, Point2D.Double b, Point2D.Double c) {
-        c.x = a.x + b.x;
-        c.y = a.y + b.y;
-        return c;
-    }
+    private static final class SegmentFitTask extends RecursiveAction {
 
-    /**
-     * Return vector sum = a+b.
-     */
-    private static Point2D.Double v2AddII(Point2D.Double a, Point2D.Double b) {
-        Point2D.Double c = new Point2D.Double();
-        c.x = a.x + b.x;
-        c.y = a.y + b.y;
-        return c;
+        private static final long serialVersionUID = 1L;
+        private final double[] xy;
+        private final int[] bounds;
+        private final double error;
+        private final CurveBuffer[] results;
+        private final int from;
+        private final int to;
+
+        SegmentFitTask(double[] xy, int[] bounds, double error, CurveBuffer[] results, int from, int to) {
+            this.xy = xy;
+            this.bounds = bounds;
+            this.error = error;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1 || bounds[to] - bounds[from] < PARALLEL_FIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    CurveBuffer buf = new CurveBuffer();
+                    fitSegment(xy, bounds[i], bounds[i + 1], error, i == 0, buf);
+                    results[i] = buf;
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new SegmentFitTask(xy, bounds, error, results, from, mid),
+                        new SegmentFitTask(xy, bounds, error, results, mid, to));
+            }
+        }
     }
 
     /**
-     * Negates the input vector and returns it.
+     * Returns the squared distance between point i in the buffer and the
+     * specified point.
      */
-    private static Point2D.Double v2Negate(Point2D.Double v) {
-        v.x = -v.x;
-        v.y = -v.y;
-        return v;
+    private static double squaredDistance(double[] xy, int i, double x, double y) {
+        double dx = xy[i * 2] - x;
+        double dy = xy[i * 2 + 1] - y;
+        return (dx * dx) + (dy * dy);
     }
 
     /**
-     * Return the dot product of vectors a and b.
+     * Scales the input vector to the new length and returns it.
+     * <p>
+     * This method alters the value of the input vector!
      */
-    private static double v2Dot(Point2D.Double a, Point2D.Double b) {
-        return (a.x * b.x) + (a.y * b.y);
+    private static double[] v2Scale(double[] v, double newlen) {
+        double len = Math.sqrt((v[0] * v[0]) + (v[1] * v[1]));
+        if (len != 0.0) {
+            v[0] *= newlen / len;
+            v[1] *= newlen / len;
+        }
+        return v;
     }
 
     /**
      * Normalizes the input vector and returns it.
      */
-    private static Point2D.Double v2Normalize(Point2D.Double v) {
-        double len = v2Length(v);
+    private static double[] v2Normalize(double[] v) {
+        double len = Math.sqrt((v[0] * v[0]) + (v[1] * v[1]));
         if (len != 0.0) {
-            v.x /= len;
-            v.y /= len;
+            v[0] /= len;
+            v[1] /= len;
         }
         return v;
     }
 
+    /* -------------------------------------------------------------------------
+     * GraphicsGems.c
+     * 2d and 3d Vector C Library
+     * by Andrew Glassner
+     * from "Graphics Gems", Academic Press, 1990
+     * -------------------------------------------------------------------------
+     */
     /**
-     * Subtract Vector a from Vector b.
-     *
-     * @param a Vector a - the value is not changed by this method
-     * @param b Vector b - the value is not changed by this method
-     * @return Vector a subtracted by Vector v.
-     */
-    private static Point2D.Double v2SubII(Point2D.Double a, Point2D.Double b) {
-        Point2D.Double c = new Point2D.Double();
-        c.x = a.x - b.x;
-        c.y = a.y - b.y;
-        return (c);
+     * Return the distance between two points
+     */
+    private static double v2SquaredDistanceBetween2Points(Point2D.Double a, Point2D.Double b) {
+        double dx = a.x - b.x;
+        double dy = a.y - b.y;
+        return (dx * dx) + (dy * dy);
     }
 
     /**
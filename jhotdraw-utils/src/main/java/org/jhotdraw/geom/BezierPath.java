@@ -56,6 +56,15 @@ public class BezierPath extends ArrayList<BezierPath.Node>
      * We cache a Rectangle2D.Double instance to speed up getBounds operations.
      */
     private transient Rectangle2D.Double bounds;
+    /**
+     * We cache the most recently used flattened paths to speed up hit
+     * testing and the computation of points on the path.
+     */
+    private transient FlattenedPath[] flattenedPaths;
+    /**
+     * The maximal number of flattened paths that are cached.
+     */
+    private static final int MAX_FLATTENED_PATHS = 3;
     /**
      * We cache the index of the outermost node to speed up method indexOfOutermostNode();
      */
@@ -334,6 +343,7 @@ public class BezierPath extends ArrayList<BezierPath.Node>
     public void invalidatePath() {
         generalPath = null;
         bounds = null;
+        flattenedPaths = null;
         outer = -1;
     }
 
@@ -346,6 +356,29 @@ public class BezierPath extends ArrayList<BezierPath.Node>
         }
     }
 
+    /**
+     * Returns the flattened path for the specified flatness. The flattened
+     * path is cached until {@link #invalidatePath} is called.
+     */
+    private FlattenedPath getFlattenedPath(double flatness) {
+        if (flattenedPaths == null) {
+            flattenedPaths = new FlattenedPath[MAX_FLATTENED_PATHS];
+        }
+        int i = 0;
+        while (i < MAX_FLATTENED_PATHS - 1
+                && flattenedPaths[i] != null && flattenedPaths[i].getFlatness() != flatness) {
+            i++;
+        }
+        FlattenedPath fp = flattenedPaths[i];
+        if (fp == null || fp.getFlatness() != flatness) {
+            fp = new FlattenedPath(this, flatness);
+        }
+        // Move the flattened path to the front
+        System.arraycopy(flattenedPaths, 0, flattenedPaths, 1, i);
+        flattenedPaths[0] = fp;
+        return fp;
+    }
+
     /**
      * Converts the BezierPath into a Path2D.Double.
      */
@@ -432,11 +465,15 @@ public class BezierPath extends ArrayList<BezierPath.Node>
      * Returns true, if the outline of this bezier path contains the specified
      * point.
      *
+     * The result is the same as the one of {@link Shapes#outlineContains},
+     * but the flattened path and an index of its segments are cached, so that
+     * only the segments near the point need to be tested.
+     *
      * @param p The point to be tested.
      * @param tolerance The tolerance for the test.
      */
     public boolean outlineContains(Point2D.Double p, double tolerance) {
-        return Shapes.outlineContains(this, p, tolerance);
+        return getFlattenedPath(tolerance).outlineContains(p.x, p.y, tolerance);
     }
 
     @Override
@@ -650,8 +687,11 @@ public class BezierPath extends ArrayList<BezierPath.Node>
     @Override
     public BezierPath clone() {
         BezierPath that = (BezierPath) super.clone();
-        for (int i = 0, n = this.size(); i < n; i++) {
-            that.set(i, (Node) this.get(i).clone());
+        that.flattenedPaths = null;
+        // Subclasses which do not store their nodes in the list have to
+        // copy their nodes themselves
+        for (int i = 0, n = super.size(); i < n; i++) {
+            that.set(i, (Node) super.get(i).clone());
         }
         return that;
     }
@@ -711,7 +751,8 @@ public class BezierPath extends ArrayList<BezierPath.Node>
      * If no edge crosses the line, the nearest C0 control point is returned.
      */
     public Point2D.Double chop(Point2D.Double p) {
-        return Geom.chop(this, p);
+        Rectangle2D.Double r = getBounds2D();
+        return getFlattenedPath(1).chop(p.x, p.y, r.getCenterX(), r.getCenterY());
     }
 
     /**
@@ -756,37 +797,8 @@ public class BezierPath extends ArrayList<BezierPath.Node>
         } else if (relative >= 1) {
             return get(size() - 1).getControlPoint(0);
         }
-        validatePath();
-        // Compute the relative point on the path
-        double len = getLengthOfPath(flatness);
-        double relativeLen = len * relative;
-        double pos = 0;
-        double[] coords = new double[6];
-        PathIterator i = generalPath.getPathIterator(new AffineTransform(), flatness);
-        double prevX = coords[0];
-        double prevY = coords[1];
-        i.next();
-        for (; !i.isDone(); i.next()) {
-            i.currentSegment(coords);
-            double segLen = Geom.length(prevX, prevY, coords[0], coords[1]);
-            if (pos + segLen >= relativeLen) {
-                //if (true) return new Point2D.Double(coords[0], coords[1]);
-                // Compute the relative Point2D.Double on the line
-                /*
-                return new Point2D.Double(
-                prevX * pos / len + coords[0] * (pos + segLen) / len,
-                prevY * pos / len + coords[1] * (pos + segLen) / len
-                );*/
-                double factor = (relativeLen - pos) / segLen;
-                return new Point2D.Double(
-                        prevX * (1 - factor) + coords[0] * factor,
-                        prevY * (1 - factor) + coords[1] * factor);
-            }
-            pos += segLen;
-            prevX = coords[0];
-            prevY = coords[1];
-        }
-        throw new InternalError("We should never get here");
+        FlattenedPath fp = getFlattenedPath(flatness);
+        return fp.getPointAt(fp.getLength() * relative);
     }
 
     /**
@@ -795,19 +807,7 @@ public class BezierPath extends ArrayList<BezierPath.Node>
      * @param flatness the flatness used to approximate the length.
      */
     public double getLengthOfPath(double flatness) {
-        double len = 0;
-        PathIterator i = generalPath.getPathIterator(new AffineTransform(), flatness);
-        double[] coords = new double[6];
-        double prevX = coords[0];
-        double prevY = coords[1];
-        i.next();
-        for (; !i.isDone(); i.next()) {
-            i.currentSegment(coords);
-            len += Geom.length(prevX, prevY, coords[0], coords[1]);
-            prevX = coords[0];
-            prevY = coords[1];
-        }
-        return len;
+        return getFlattenedPath(flatness).getLength();
     }
 
     /**
@@ -0,0 +1,363 @@
+/*
+ * @(#)FlattenedPath.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.geom;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+
+/**
+ * A flattened, immutable copy of the outline of a shape, with a bounding
+ * volume hierarchy over its line segments.
+ * <p>
+ * The vertices of the polyline are stored in a packed {@code double} array.
+ * A closing segment is represented by repeating the start point of the
+ * sub-path, so that every segment goes from a vertex to the next vertex.
+ * <p>
+ * The segments are grouped into a binary tree of bounding boxes. Because
+ * consecutive segments of a path lie close to each other, the tree is built
+ * by halving the range of segment indices. Each leaf holds at most
+ * {@link #LEAF_SIZE} segments. The nodes are stored in depth-first order:
+ * the left child of a node immediately follows the node.
+ * <p>
+ * In addition, the cumulative length of the path is stored for each segment,
+ * so that points on the path can be found with a binary search. Closing
+ * segments do not add to the length of the path.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+final class FlattenedPath {
+
+    /**
+     * The maximal number of segments in a leaf of the tree.
+     */
+    static final int LEAF_SIZE = 8;
+    private final double flatness;
+    /**
+     * The vertices, two values per vertex.
+     */
+    private double[] xy = new double[32];
+    private int vertexCount;
+    /**
+     * The index of the start vertex of each segment.
+     */
+    private int[] segments = new int[16];
+    /**
+     * The length of the path up to the end of each segment.
+     */
+    private double[] lengths = new double[16];
+    private int segmentCount;
+    /**
+     * The bounds of the nodes of the tree, four values per node:
+     * x1, y1, x2, y2.
+     */
+    private double[] nodeBounds;
+    /**
+     * The first segment, the end of the segments, and the index of the right
+     * child of each node. The right child is -1 for leaves.
+     */
+    private int[] nodeFrom;
+    private int[] nodeTo;
+    private int[] nodeRight;
+    private int nodeCount;
+    private int depth;
+
+    /**
+     * Flattens the specified shape.
+     *
+     * @param shape the shape
+     * @param flatness the maximal distance between the polyline and the curves
+     * of the shape
+     */
+    public FlattenedPath(Shape shape, double flatness) {
+        this.flatness = flatness;
+        double[] coords = new double[6];
+        double moveX = 0, moveY = 0;
+        double length = 0;
+        boolean hasVertex = false;
+        for (PathIterator i = shape.getPathIterator(null, flatness); !i.isDone(); i.next()) {
+            switch (i.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    moveX = coords[0];
+                    moveY = coords[1];
+                    addVertex(moveX, moveY);
+                    hasVertex = true;
+                    break;
+                case PathIterator.SEG_LINETO:
+                    if (hasVertex) {
+                        length += addSegment(coords[0], coords[1], length, false);
+                    } else {
+                        addVertex(coords[0], coords[1]);
+                        hasVertex = true;
+                    }
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    if (hasVertex) {
+                        addSegment(moveX, moveY, length, true);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        buildTree();
+    }
+
+    private void addVertex(double x, double y) {
+        if (vertexCount * 2 + 2 > xy.length) {
+            xy = Arrays.copyOf(xy, xy.length * 2);
+        }
+        xy[vertexCount * 2] = x;
+        xy[vertexCount * 2 + 1] = y;
+        vertexCount++;
+    }
+
+    /**
+     * Adds a segment from the last vertex to the specified point, and
+     * returns its length.
+     */
+    private double addSegment(double x, double y, double length, boolean isClosing) {
+        int from = vertexCount - 1;
+        double segmentLength = isClosing ? 0 : Geom.length(xy[from * 2], xy[from * 2 + 1], x, y);
+        addVertex(x, y);
+        if (segmentCount == segments.length) {
+            segments = Arrays.copyOf(segments, segmentCount * 2);
+            lengths = Arrays.copyOf(lengths, segmentCount * 2);
+        }
+        segments[segmentCount] = from;
+        lengths[segmentCount] = length + segmentLength;
+        segmentCount++;
+        return segmentLength;
+    }
+
+    private void buildTree() {
+        int capacity = Math.max(1, 4 * segmentCount / LEAF_SIZE + 1);
+        nodeBounds = new double[capacity * 4];
+        nodeFrom = new int[capacity];
+        nodeTo = new int[capacity];
+        nodeRight = new int[capacity];
+        if (segmentCount > 0) {
+            buildNode(0, segmentCount, 1);
+        }
+    }
+
+    /**
+     * Builds the node for the specified range of segments, and returns its
+     * index.
+     */
+    private int buildNode(int from, int to, int level) {
+        if (nodeCount == nodeFrom.length) {
+            int capacity = nodeCount * 2;
+            nodeBounds = Arrays.copyOf(nodeBounds, capacity * 4);
+            nodeFrom = Arrays.copyOf(nodeFrom, capacity);
+            nodeTo = Arrays.copyOf(nodeTo, capacity);
+            nodeRight = Arrays.copyOf(nodeRight, capacity);
+        }
+        depth = Math.max(depth, level);
+        int node = nodeCount++;
+        nodeFrom[node] = from;
+        nodeTo[node] = to;
+        int b = node * 4;
+        if (to - from <= LEAF_SIZE) {
+            nodeRight[node] = -1;
+            double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+            double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+            for (int s = from; s < to; s++) {
+                int v = segments[s] * 2;
+                x1 = Math.min(x1, Math.min(xy[v], xy[v + 2]));
+                y1 = Math.min(y1, Math.min(xy[v + 1], xy[v + 3]));
+                x2 = Math.max(x2, Math.max(xy[v], xy[v + 2]));
+                y2 = Math.max(y2, Math.max(xy[v + 1], xy[v + 3]));
+            }
+            nodeBounds[b] = x1;
+            nodeBounds[b + 1] = y1;
+            nodeBounds[b + 2] = x2;
+            nodeBounds[b + 3] = y2;
+        } else {
+            int mid = (from + to) >>> 1;
+            int left = buildNode(from, mid, level + 1);
+            int right = buildNode(mid, to, level + 1);
+            nodeRight[node] = right;
+            int lb = left * 4;
+            int rb = right * 4;
+            nodeBounds[b] = Math.min(nodeBounds[lb], nodeBounds[rb]);
+            nodeBounds[b + 1] = Math.min(nodeBounds[lb + 1], nodeBounds[rb + 1]);
+            nodeBounds[b + 2] = Math.max(nodeBounds[lb + 2], nodeBounds[rb + 2]);
+            nodeBounds[b + 3] = Math.max(nodeBounds[lb + 3], nodeBounds[rb + 3]);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the flatness with which the path was flattened.
+     */
+    public double getFlatness() {
+        return flatness;
+    }
+
+    /**
+     * Returns the number of line segments.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Returns the length of the path, without the closing segments.
+     */
+    public double getLength() {
+        return segmentCount == 0 ? 0 : lengths[segmentCount - 1];
+    }
+
+    /**
+     * Returns true, if a segment of the path contains the specified point.
+     * <p>
+     * The segments are tested with
+     * {@link Geom#lineContainsPoint(double, double, double, double, double, double, double)},
+     * so that the result is the same as the one of
+     * {@link Shapes#outlineContains}.
+     */
+    public boolean outlineContains(double px, double py, double tolerance) {
+        if (nodeCount == 0) {
+            return false;
+        }
+        // lineContainsPoint rejects all points outside of the grown bounds
+        // of the segment
+        double grow = Math.max(2, (int) Math.ceil(tolerance));
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 4;
+            if (px < nodeBounds[b] - grow || py < nodeBounds[b + 1] - grow
+                    || px > nodeBounds[b + 2] + grow || py > nodeBounds[b + 3] + grow) {
+                continue;
+            }
+            if (nodeRight[node] == -1) {
+                for (int s = nodeFrom[node], end = nodeTo[node]; s < end; s++) {
+                    int v = segments[s] * 2;
+                    if (Geom.lineContainsPoint(xy[v], xy[v + 1], xy[v + 2], xy[v + 3],
+                            px, py, tolerance)) {
+                        return true;
+                    }
+                }
+            } else {
+                stack[top++] = nodeRight[node];
+                stack[top++] = node + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the point at the specified length along the path.
+     * The point is found with a binary search over the cumulative lengths of
+     * the segments.
+     */
+    public Point2D.Double getPointAt(double length) {
+        if (segmentCount == 0) {
+            return vertexCount == 0 ? null : new Point2D.Double(xy[0], xy[1]);
+        }
+        int s = Arrays.binarySearch(lengths, 0, segmentCount, length);
+        if (s < 0) {
+            s = -s - 1;
+            if (s == segmentCount) {
+                int v = (segments[segmentCount - 1] + 1) * 2;
+                return new Point2D.Double(xy[v], xy[v + 1]);
+            }
+        } else {
+            // Move to the first segment which ends at this length
+            while (s > 0 && lengths[s - 1] == length) {
+                s--;
+            }
+        }
+        int v = segments[s] * 2;
+        double start = s == 0 ? 0 : lengths[s - 1];
+        double segmentLength = lengths[s] - start;
+        if (segmentLength == 0) {
+            return new Point2D.Double(xy[v], xy[v + 1]);
+        }
+        double factor = (length - start) / segmentLength;
+        return new Point2D.Double(
+                xy[v] * (1 - factor) + xy[v + 2] * factor,
+                xy[v + 1] * (1 - factor) + xy[v + 3] * factor);
+    }
+
+    /**
+     * Returns the intersection of the path with the line from the specified
+     * point to the specified center which is closest to the point.
+     * If no segment crosses the line, the vertex closest to the center is
+     * returned. This is the same as {@link Geom#chop(Shape, Point2D.Double)}
+     * on the flattened path.
+     */
+    public Point2D.Double chop(double px, double py, double cx, double cy) {
+        double bestX = -1;
+        double bestY = -1;
+        double best = Double.MAX_VALUE;
+        if (nodeCount > 0) {
+            double lx1 = Math.min(px, cx), ly1 = Math.min(py, cy);
+            double lx2 = Math.max(px, cx), ly2 = Math.max(py, cy);
+            double dx = cx - px;
+            double dy = cy - py;
+            int[] stack = new int[depth + 1];
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                int b = node * 4;
+                double x1 = nodeBounds[b], y1 = nodeBounds[b + 1];
+                double x2 = nodeBounds[b + 2], y2 = nodeBounds[b + 3];
+                if (x2 < lx1 || y2 < ly1 || x1 > lx2 || y1 > ly2) {
+                    continue;
+                }
+                // Skip the node if all its corners lie on the same side of the line
+                double c1 = dx * (y1 - py) - dy * (x1 - px);
+                double c2 = dx * (y1 - py) - dy * (x2 - px);
+                double c3 = dx * (y2 - py) - dy * (x1 - px);
+                double c4 = dx * (y2 - py) - dy * (x2 - px);
+                if ((c1 > 0 && c2 > 0 && c3 > 0 && c4 > 0)
+                        || (c1 < 0 && c2 < 0 && c3 < 0 && c4 < 0)) {
+                    continue;
+                }
+                if (nodeRight[node] == -1) {
+                    for (int s = nodeFrom[node], end = nodeTo[node]; s < end; s++) {
+                        int v = segments[s] * 2;
+                        Point2D.Double p = Geom.intersect(
+                                xy[v], xy[v + 1], xy[v + 2], xy[v + 3],
+                                px, py, cx, cy);
+                        if (p != null) {
+                            double d = Geom.length2(p.x, p.y, px, py);
+                            if (d < best) {
+                                best = d;
+                                bestX = p.x;
+                                bestY = p.y;
+                            }
+                        }
+                    }
+                } else {
+                    stack[top++] = nodeRight[node];
+                    stack[top++] = node + 1;
+                }
+            }
+        }
+        if (best == Double.MAX_VALUE) {
+            for (int v = 0, n = vertexCount * 2; v < n; v += 2) {
+                double d = Geom.length2(cx, cy, xy[v], xy[v + 1]);
+                if (d < best) {
+                    best = d;
+                    bestX = xy[v];
+                    bestY = xy[v + 1];
+                }
+            }
+        }
+        return new Point2D.Double(bestX, bestY);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * @(#)IncrementalBezierFitter.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.*;
+import java.util.Arrays;
+
+/**
+ * Fits a bezier path to digitized points while they arrive, for example
+ * while the user drags the mouse.
+ * <p>
+ * The fitter splits the points into segments at corners, like
+ * {@link Bezier#fitBezierPath(double[], int, double)}. As soon as a corner
+ * can no longer be affected by subsequent points, the segment which ends at
+ * the corner is fitted, and its curves are kept. Only the trailing segment
+ * is fitted each time {@link #getFittedPath} is called.
+ * <p>
+ * The fitted path is the same as the one which is returned by
+ * {@code Bezier.fitBezierPath} for all points, which have been added to the
+ * fitter.
+ * <p>
+ * The last point may be replaced with {@link #setLastPoint}, because drawing
+ * tools often move the last point instead of adding a new one, when the
+ * mouse moves along a straight line.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class IncrementalBezierFitter {
+
+    /**
+     * The maximal allowed error between the bezier path and the digitized
+     * points.
+     */
+    private final double error;
+    /**
+     * The squared minimal distance between a point and adjacent points for
+     * corner detection.
+     */
+    private final double cornerDistance;
+    /**
+     * The digitized points, stored as x, y pairs.
+     */
+    private double[] xy = new double[64];
+    private int count;
+    /**
+     * Index of the first point, for which we have not yet decided whether
+     * it is a corner.
+     */
+    private int undecided = 1;
+    /**
+     * Index of the last corner, or -1 if there are no corners yet.
+     */
+    private int lastCorner = -1;
+    /**
+     * The curves of the segments up to the last corner.
+     */
+    private Bezier.CurveBuffer fittedSegments = new Bezier.CurveBuffer();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param error the maximal allowed error between the bezier path and the
+     * digitized points.
+     */
+    public IncrementalBezierFitter(double error) {
+        this.error = error;
+        double minDistance = error * error;
+        this.cornerDistance = minDistance * minDistance;
+    }
+
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * Returns the number of digitized points.
+     */
+    public int getPointCount() {
+        return count;
+    }
+
+    /**
+     * Adds a digitized point.
+     */
+    public void addPoint(Point2D.Double p) {
+        addPoint(p.x, p.y);
+    }
+
+    /**
+     * Adds a digitized point.
+     */
+    public void addPoint(double x, double y) {
+        if (count * 2 == xy.length) {
+            xy = Arrays.copyOf(xy, xy.length * 2);
+        }
+        xy[count * 2] = x;
+        xy[count * 2 + 1] = y;
+        count++;
+        fitCompletedSegments();
+    }
+
+    /**
+     * Replaces the last digitized point.
+     *
+     * @throws IllegalStateException if there are no points.
+     */
+    public void setLastPoint(double x, double y) {
+        if (count == 0) {
+            throw new IllegalStateException("no points");
+        }
+        xy[count * 2 - 2] = x;
+        xy[count * 2 - 1] = y;
+    }
+
+    /**
+     * Removes all points.
+     */
+    public void clear() {
+        count = 0;
+        undecided = 1;
+        lastCorner = -1;
+        fittedSegments = new Bezier.CurveBuffer();
+    }
+
+    /**
+     * Returns a new bezier path which is fitted to the digitized points.
+     */
+    public BezierPath getFittedPath() {
+        BezierPath fittedPath = new BezierPath();
+        fittedSegments.appendTo(fittedPath);
+        if (count > 0) {
+            // The remaining corners may still change with subsequent points
+            Bezier.CurveBuffer buf = new Bezier.CurveBuffer();
+            int previousCorner = lastCorner;
+            int first = Math.max(0, lastCorner);
+            boolean isFirstSegment = lastCorner == -1;
+            for (int i = undecided; i < count - 1; i++) {
+                if (Bezier.classifyCorner(xy, i, count, previousCorner,
+                        Bezier.CORNER_ANGLE, cornerDistance) == Bezier.CORNER) {
+                    Bezier.fitSegment(xy, first, i, error, isFirstSegment, buf);
+                    isFirstSegment = false;
+                    first = previousCorner = i;
+                }
+            }
+            Bezier.fitSegment(xy, first, count - 1, error, isFirstSegment, buf);
+            buf.appendTo(fittedPath);
+        }
+        return fittedPath;
+    }
+
+    /**
+     * Decides for as many points as possible whether they are corners, and
+     * fits the segments between the corners.
+     * <p>
+     * The last point is never used for a decision, because it may be replaced.
+     */
+    private void fitCompletedSegments() {
+        int limit = count - 1;
+        for (; undecided < limit; undecided++) {
+            int result = Bezier.classifyCorner(xy, undecided, limit, lastCorner,
+                    Bezier.CORNER_ANGLE, cornerDistance);
+            if (result == Bezier.UNDECIDED) {
+                break;
+            }
+            if (result == Bezier.CORNER) {
+                Bezier.fitSegment(xy, Math.max(0, lastCorner), undecided, error, lastCorner == -1, fittedSegments);
+                lastCorner = undecided;
+            }
+        }
+    }
+}
@@ -0,0 +1,826 @@
+/*
+ * @(#)PackedBezierPath.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link BezierPath} which stores its nodes in packed arrays instead of
+ * node objects.
+ * <p>
+ * The control points of all nodes are stored in a single {@code double}
+ * array, six values per node: x0, y0, x1, y1, x2, y2. The mask and the
+ * {@code keepColinear} hint of each node are stored in a {@code byte} array.
+ * A path with a large number of nodes takes less than half of the memory of
+ * a {@code BezierPath}, and {@link #transform}, {@link #getBounds2D} and
+ * {@link #toGeneralPath} run over the arrays without touching node objects.
+ * <p>
+ * The {@code List<BezierPath.Node>} interface is a view of the packed arrays.
+ * {@link #get(int)} and the iterators return detached copies of the nodes.
+ * Changing a returned node does not change the path: the node has to be
+ * written back with {@link #set(int, BezierPath.Node)}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class PackedBezierPath extends BezierPath {
+
+    private static final long serialVersionUID = 1L;
+    /**
+     * The number of coordinates per node.
+     */
+    private static final int NODE_SIZE = 6;
+    /**
+     * The bit in the mask array which holds the keepColinear hint.
+     */
+    private static final int KEEP_COLINEAR_BIT = 4;
+    private double[] coords;
+    private byte[] masks;
+    private int nodeCount;
+    /**
+     * We cache the bounds to speed up getBounds operations.
+     */
+    private transient Rectangle2D.Double packedBounds;
+
+    /**
+     * Creates an empty path.
+     */
+    public PackedBezierPath() {
+        this(10);
+    }
+
+    /**
+     * Creates an empty path with the specified initial capacity.
+     *
+     * @param capacity the number of nodes for which space is allocated
+     */
+    public PackedBezierPath(int capacity) {
+        coords = new double[Math.max(1, capacity) * NODE_SIZE];
+        masks = new byte[Math.max(1, capacity)];
+    }
+
+    /**
+     * Creates a packed copy of the specified path.
+     */
+    public PackedBezierPath(BezierPath that) {
+        this(that.size());
+        setTo(that);
+        setClosed(that.isClosed());
+        setWindingRule(that.getWindingRule());
+    }
+
+    /**
+     * Returns a copy of this path which stores its nodes in node objects.
+     */
+    public BezierPath toBezierPath() {
+        BezierPath that = new BezierPath();
+        that.ensureCapacity(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            that.add(get(i));
+        }
+        that.setClosed(isClosed());
+        that.setWindingRule(getWindingRule());
+        return that;
+    }
+
+    // NODE VIEW
+    @Override
+    public int size() {
+        return nodeCount;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return nodeCount == 0;
+    }
+
+    /**
+     * Returns a detached copy of the specified node.
+     */
+    @Override
+    public Node get(int index) {
+        checkIndex(index, nodeCount);
+        int c = index * NODE_SIZE;
+        Node node = new Node(masks[index] & C1C2_MASK,
+                coords[c], coords[c + 1],
+                coords[c + 2], coords[c + 3],
+                coords[c + 4], coords[c + 5]);
+        node.keepColinear = (masks[index] & KEEP_COLINEAR_BIT) != 0;
+        return node;
+    }
+
+    /**
+     * Writes the specified node into the path, and returns a copy of the
+     * node that was previously at this index.
+     */
+    @Override
+    public Node set(int index, Node node) {
+        Node old = get(index);
+        write(index, node);
+        return old;
+    }
+
+    @Override
+    public boolean add(Node node) {
+        add(nodeCount, node);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Node node) {
+        checkIndex(index, nodeCount + 1);
+        ensureCapacity(nodeCount + 1);
+        System.arraycopy(coords, index * NODE_SIZE, coords, (index + 1) * NODE_SIZE, (nodeCount - index) * NODE_SIZE);
+        System.arraycopy(masks, index, masks, index + 1, nodeCount - index);
+        nodeCount++;
+        modCount++;
+        write(index, node);
+    }
+
+    @Override
+    public Node remove(int index) {
+        Node old = get(index);
+        removeRange(index, index + 1);
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index == -1) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > nodeCount || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex:" + fromIndex + ", toIndex:" + toIndex + ", size:" + nodeCount);
+        }
+        System.arraycopy(coords, toIndex * NODE_SIZE, coords, fromIndex * NODE_SIZE, (nodeCount - toIndex) * NODE_SIZE);
+        System.arraycopy(masks, toIndex, masks, fromIndex, nodeCount - toIndex);
+        nodeCount -= toIndex - fromIndex;
+        modCount++;
+    }
+
+    @Override
+    public void clear() {
+        nodeCount = 0;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Node> c) {
+        return addAll(nodeCount, c);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Node> c) {
+        checkIndex(index, nodeCount + 1);
+        ensureCapacity(nodeCount + c.size());
+        for (Node node : c) {
+            add(index++, node);
+        }
+        return !c.isEmpty();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(new Predicate<Node>() {
+            @Override
+            public boolean test(Node node) {
+                return c.contains(node);
+            }
+        });
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        Objects.requireNonNull(c);
+        return removeIf(new Predicate<Node>() {
+            @Override
+            public boolean test(Node node) {
+                return !c.contains(node);
+            }
+        });
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Node> filter) {
+        int j = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (!filter.test(get(i))) {
+                if (i != j) {
+                    System.arraycopy(coords, i * NODE_SIZE, coords, j * NODE_SIZE, NODE_SIZE);
+                    masks[j] = masks[i];
+                }
+                j++;
+            }
+        }
+        boolean isChanged = j != nodeCount;
+        if (isChanged) {
+            nodeCount = j;
+            modCount++;
+        }
+        return isChanged;
+    }
+
+    @Override
+    public void replaceAll(UnaryOperator<Node> operator) {
+        for (int i = 0; i < nodeCount; i++) {
+            write(i, operator.apply(get(i)));
+        }
+    }
+
+    @Override
+    public void sort(Comparator<? super Node> c) {
+        Node[] nodes = toArray(new Node[nodeCount]);
+        Arrays.sort(nodes, c);
+        for (int i = 0; i < nodes.length; i++) {
+            write(i, nodes[i]);
+        }
+        modCount++;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Node> action) {
+        for (int i = 0; i < nodeCount; i++) {
+            action.accept(get(i));
+        }
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        for (int i = 0; i < nodeCount; i++) {
+            if (get(i).equals(o)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        for (int i = nodeCount - 1; i >= 0; i--) {
+            if (get(i).equals(o)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) != -1;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return toArray(new Node[nodeCount]);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        if (a.length < nodeCount) {
+            a = (T[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), nodeCount);
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            a[i] = (T) get(i);
+        }
+        if (a.length > nodeCount) {
+            a[nodeCount] = null;
+        }
+        return a;
+    }
+
+    @Override
+    public Iterator<Node> iterator() {
+        return new NodeIterator(0);
+    }
+
+    @Override
+    public ListIterator<Node> listIterator() {
+        return new NodeIterator(0);
+    }
+
+    @Override
+    public ListIterator<Node> listIterator(int index) {
+        checkIndex(index, nodeCount + 1);
+        return new NodeIterator(index);
+    }
+
+    @Override
+    public Spliterator<Node> spliterator() {
+        return Spliterators.spliterator(this, Spliterator.ORDERED);
+    }
+
+    @Override
+    public List<Node> subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > nodeCount || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("fromIndex:" + fromIndex + ", toIndex:" + toIndex + ", size:" + nodeCount);
+        }
+        return new SubList(fromIndex, toIndex);
+    }
+
+    @Override
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > masks.length) {
+            int capacity = Math.max(minCapacity, masks.length + (masks.length >> 1));
+            coords = Arrays.copyOf(coords, capacity * NODE_SIZE);
+            masks = Arrays.copyOf(masks, capacity);
+        }
+    }
+
+    @Override
+    public void trimToSize() {
+        int capacity = Math.max(1, nodeCount);
+        if (capacity < masks.length) {
+            coords = Arrays.copyOf(coords, capacity * NODE_SIZE);
+            masks = Arrays.copyOf(masks, capacity);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof List)) {
+            return false;
+        }
+        List<?> that = (List<?>) o;
+        if (that.size() != nodeCount) {
+            return false;
+        }
+        Iterator<?> i = that.iterator();
+        for (int j = 0; j < nodeCount; j++) {
+            if (!get(j).equals(i.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hashCode = 1;
+        for (int i = 0; i < nodeCount; i++) {
+            hashCode = 31 * hashCode + get(i).hashCode();
+        }
+        return hashCode;
+    }
+
+    private void write(int index, Node node) {
+        checkIndex(index, nodeCount);
+        int c = index * NODE_SIZE;
+        for (int i = 0; i < 3; i++) {
+            coords[c + i * 2] = node.x[i];
+            coords[c + i * 2 + 1] = node.y[i];
+        }
+        masks[index] = (byte) ((node.mask & C1C2_MASK) | (node.keepColinear ? KEEP_COLINEAR_BIT : 0));
+    }
+
+    private static void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index:" + index + ", Size:" + limit);
+        }
+    }
+
+    // CONVENIENCE METHODS
+    @Override
+    public void set(int nodeIndex, int ctrlIndex, Point2D.Double p) {
+        checkIndex(nodeIndex, nodeCount);
+        int c = nodeIndex * NODE_SIZE + ctrlIndex * 2;
+        coords[c] = p.x;
+        coords[c + 1] = p.y;
+    }
+
+    @Override
+    public Point2D.Double get(int nodeIndex, int ctrlIndex) {
+        checkIndex(nodeIndex, nodeCount);
+        int c = nodeIndex * NODE_SIZE + ctrlIndex * 2;
+        return new Point2D.Double(coords[c], coords[c + 1]);
+    }
+
+    /**
+     * Returns the mask of the specified node.
+     */
+    public int getMask(int nodeIndex) {
+        checkIndex(nodeIndex, nodeCount);
+        return masks[nodeIndex] & C1C2_MASK;
+    }
+
+    @Override
+    public void lineTo(double x1, double y1) {
+        if (nodeCount == 0) {
+            throw new IllegalPathStateException("lineTo only allowed when not empty");
+        }
+        masks[nodeCount - 1] &= ~KEEP_COLINEAR_BIT;
+        add(new Node(x1, y1));
+    }
+
+    @Override
+    public void curveTo(double x1, double y1,
+            double x2, double y2,
+            double x3, double y3) {
+        if (nodeCount == 0) {
+            throw new IllegalPathStateException("curveTo only allowed when not empty");
+        }
+        Node lastPoint = get(nodeCount - 1);
+        lastPoint.mask |= C2_MASK;
+        lastPoint.x[2] = x1;
+        lastPoint.y[2] = y1;
+        if ((lastPoint.mask & C1C2_MASK) == C1C2_MASK) {
+            lastPoint.keepColinear = Math.abs(
+                    Geom.angle(lastPoint.x[0], lastPoint.y[0],
+                            lastPoint.x[1], lastPoint.y[1])
+                    - Geom.angle(lastPoint.x[2], lastPoint.y[2],
+                            lastPoint.x[0], lastPoint.y[0])) < 0.001;
+        }
+        write(nodeCount - 1, lastPoint);
+        add(new Node(C1_MASK, x3, y3, x2, y2, x3, y3));
+    }
+
+    @Override
+    public void setTo(BezierPath that) {
+        if (that instanceof PackedBezierPath) {
+            PackedBezierPath p = (PackedBezierPath) that;
+            ensureCapacity(p.nodeCount);
+            System.arraycopy(p.coords, 0, coords, 0, p.nodeCount * NODE_SIZE);
+            System.arraycopy(p.masks, 0, masks, 0, p.nodeCount);
+            nodeCount = p.nodeCount;
+            modCount++;
+        } else {
+            int n = that.size();
+            ensureCapacity(n);
+            nodeCount = n;
+            modCount++;
+            for (int i = 0; i < n; i++) {
+                write(i, that.get(i));
+            }
+        }
+    }
+
+    @Override
+    public PackedBezierPath clone() {
+        PackedBezierPath that = (PackedBezierPath) super.clone();
+        that.coords = this.coords.clone();
+        that.masks = this.masks.clone();
+        return that;
+    }
+
+    // SHAPE
+    @Override
+    public void invalidatePath() {
+        super.invalidatePath();
+        packedBounds = null;
+    }
+
+    /**
+     * Transforms all control points with a single call to
+     * {@link AffineTransform#transform(double[], int, double[], int, int)}.
+     */
+    @Override
+    public void transform(AffineTransform tx) {
+        tx.transform(coords, 0, coords, 0, nodeCount * 3);
+        invalidatePath();
+    }
+
+    @Override
+    public Rectangle2D.Double getBounds2D() {
+        if (packedBounds == null) {
+            if (nodeCount == 0) {
+                packedBounds = new Rectangle2D.Double();
+            } else {
+                double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+                double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+                boolean isClosed = isClosed();
+                for (int i = 0, c = 0; i < nodeCount; i++, c += NODE_SIZE) {
+                    int mask = masks[i];
+                    x1 = Math.min(x1, coords[c]);
+                    y1 = Math.min(y1, coords[c + 1]);
+                    x2 = Math.max(x2, coords[c]);
+                    y2 = Math.max(y2, coords[c + 1]);
+                    // Same as BezierPath: C1 of the first node and C2 of the
+                    // last node are only used if the path is closed
+                    if ((mask & C1_MASK) != 0 && (i != 0 || isClosed || nodeCount == 1)) {
+                        x1 = Math.min(x1, coords[c + 2]);
+                        y1 = Math.min(y1, coords[c + 3]);
+                        x2 = Math.max(x2, coords[c + 2]);
+                        y2 = Math.max(y2, coords[c + 3]);
+                    }
+                    if ((mask & C2_MASK) != 0 && (i != nodeCount - 1 || isClosed || nodeCount == 1)) {
+                        x1 = Math.min(x1, coords[c + 4]);
+                        y1 = Math.min(y1, coords[c + 5]);
+                        x2 = Math.max(x2, coords[c + 4]);
+                        y2 = Math.max(y2, coords[c + 5]);
+                    }
+                }
+                packedBounds = new Rectangle2D.Double(x1, y1, x2 - x1, y2 - y1);
+            }
+        }
+        return (Rectangle2D.Double) packedBounds.clone();
+    }
+
+    @Override
+    public Path2D.Double toGeneralPath() {
+        Path2D.Double gp = new Path2D.Double(getWindingRule(), nodeCount + 2);
+        if (nodeCount == 0) {
+            gp.moveTo(0, 0);
+            gp.lineTo(0, 0 + 1);
+        } else if (nodeCount == 1) {
+            gp.moveTo(coords[0], coords[1]);
+            gp.lineTo(coords[0], coords[1] + 1);
+        } else {
+            gp.moveTo(coords[0], coords[1]);
+            for (int i = 1; i < nodeCount; i++) {
+                appendSegment(gp, i - 1, i);
+            }
+            if (isClosed()) {
+                appendSegment(gp, nodeCount - 1, 0);
+                gp.closePath();
+            }
+        }
+        return gp;
+    }
+
+    private void appendSegment(Path2D.Double gp, int previous, int current) {
+        int p = previous * NODE_SIZE;
+        int c = current * NODE_SIZE;
+        if ((masks[previous] & C2_MASK) == 0) {
+            if ((masks[current] & C1_MASK) == 0) {
+                gp.lineTo(coords[c], coords[c + 1]);
+            } else {
+                gp.quadTo(coords[c + 2], coords[c + 3], coords[c], coords[c + 1]);
+            }
+        } else {
+            if ((masks[current] & C1_MASK) == 0) {
+                gp.quadTo(coords[p + 4], coords[p + 5], coords[c], coords[c + 1]);
+            } else {
+                gp.curveTo(coords[p + 4], coords[p + 5],
+                        coords[c + 2], coords[c + 3],
+                        coords[c], coords[c + 1]);
+            }
+        }
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at) {
+        return new PackedPathIterator(at);
+    }
+
+    @Override
+    public PathIterator getPathIterator(AffineTransform at, double flatness) {
+        return new FlatteningPathIterator(new PackedPathIterator(at), flatness);
+    }
+
+    @Override
+    public Point2D.Double getCenter() {
+        double sx = 0;
+        double sy = 0;
+        for (int i = 0, c = 0; i < nodeCount; i++, c += NODE_SIZE) {
+            sx += coords[c];
+            sy += coords[c + 1];
+        }
+        return new Point2D.Double(sx / nodeCount, sy / nodeCount);
+    }
+
+    @Override
+    public Point2D.Double[] toPolygonArray() {
+        Point2D.Double[] points = new Point2D.Double[nodeCount];
+        for (int i = 0, c = 0; i < nodeCount; i++, c += NODE_SIZE) {
+            points[i] = new Point2D.Double(coords[c], coords[c + 1]);
+        }
+        return points;
+    }
+
+    /**
+     * Iterates over detached copies of the nodes. Changes through
+     * {@code set}, {@code add} and {@code remove} are written into the path.
+     */
+    private class NodeIterator implements ListIterator<Node> {
+
+        private int cursor;
+        private int lastReturned = -1;
+
+        public NodeIterator(int index) {
+            cursor = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < nodeCount;
+        }
+
+        @Override
+        public Node next() {
+            if (cursor >= nodeCount) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = cursor++;
+            return get(lastReturned);
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return cursor > 0;
+        }
+
+        @Override
+        public Node previous() {
+            if (cursor <= 0) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = --cursor;
+            return get(lastReturned);
+        }
+
+        @Override
+        public int nextIndex() {
+            return cursor;
+        }
+
+        @Override
+        public int previousIndex() {
+            return cursor - 1;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned < 0) {
+                throw new IllegalStateException();
+            }
+            PackedBezierPath.this.remove(lastReturned);
+            cursor = lastReturned;
+            lastReturned = -1;
+        }
+
+        @Override
+        public void set(Node node) {
+            if (lastReturned < 0) {
+                throw new IllegalStateException();
+            }
+            write(lastReturned, node);
+        }
+
+        @Override
+        public void add(Node node) {
+            PackedBezierPath.this.add(cursor++, node);
+            lastReturned = -1;
+        }
+    }
+
+    /**
+     * A view of a range of the nodes.
+     */
+    private class SubList extends AbstractList<Node> {
+
+        private final int offset;
+        private int size;
+
+        public SubList(int fromIndex, int toIndex) {
+            offset = fromIndex;
+            size = toIndex - fromIndex;
+        }
+
+        @Override
+        public Node get(int index) {
+            checkIndex(index, size);
+            return PackedBezierPath.this.get(offset + index);
+        }
+
+        @Override
+        public Node set(int index, Node node) {
+            checkIndex(index, size);
+            return PackedBezierPath.this.set(offset + index, node);
+        }
+
+        @Override
+        public void add(int index, Node node) {
+            checkIndex(index, size + 1);
+            PackedBezierPath.this.add(offset + index, node);
+            size++;
+            modCount++;
+        }
+
+        @Override
+        public Node remove(int index) {
+            checkIndex(index, size);
+            size--;
+            modCount++;
+            return PackedBezierPath.this.remove(offset + index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Iterates over the segments of the path. The segments are the same as
+     * the ones of a {@link BezierPathIterator}.
+     */
+    private class PackedPathIterator implements PathIterator {
+
+        private final AffineTransform affine;
+        private int index;
+
+        public PackedPathIterator(AffineTransform at) {
+            affine = at;
+        }
+
+        @Override
+        public int getWindingRule() {
+            return PackedBezierPath.this.getWindingRule();
+        }
+
+        @Override
+        public boolean isDone() {
+            return index >= nodeCount + (isClosed() ? 2 : 0);
+        }
+
+        @Override
+        public void next() {
+            if (!isDone()) {
+                index++;
+            }
+        }
+
+        @Override
+        public int currentSegment(float[] coords) {
+            double[] cd = new double[6];
+            int type = currentSegment(cd);
+            for (int i = 0; i < coords.length && i < cd.length; i++) {
+                coords[i] = (float) cd[i];
+            }
+            return type;
+        }
+
+        @Override
+        public int currentSegment(double[] segment) {
+            int numCoords;
+            int type;
+            if (index > nodeCount) {
+                return SEG_CLOSE;
+            } else if (index == 0) {
+                type = SEG_MOVETO;
+                numCoords = 1;
+                segment[0] = coords[0];
+                segment[1] = coords[1];
+            } else if (index == nodeCount && nodeCount <= 1) {
+                // Same as BezierPathIterator: a closed path with a single
+                // node has no closing segment
+                return SEG_MOVETO;
+            } else {
+                int previous = index - 1;
+                int current = index == nodeCount ? 0 : index;
+                int p = previous * NODE_SIZE;
+                int c = current * NODE_SIZE;
+                if ((masks[previous] & C2_MASK) == 0) {
+                    if ((masks[current] & C1_MASK) == 0) {
+                        type = SEG_LINETO;
+                        numCoords = 1;
+                        segment[0] = coords[c];
+                        segment[1] = coords[c + 1];
+                    } else {
+                        type = SEG_QUADTO;
+                        numCoords = 2;
+                        System.arraycopy(coords, c + 2, segment, 0, 2);
+                        System.arraycopy(coords, c, segment, 2, 2);
+                    }
+                } else {
+                    if ((masks[current] & C1_MASK) == 0) {
+                        type = SEG_QUADTO;
+                        numCoords = 2;
+                        System.arraycopy(coords, p + 4, segment, 0, 2);
+                        System.arraycopy(coords, c, segment, 2, 2);
+                    } else {
+                        type = SEG_CUBICTO;
+                        numCoords = 3;
+                        System.arraycopy(coords, p + 4, segment, 0, 2);
+                        System.arraycopy(coords, c + 2, segment, 2, 2);
+                        System.arraycopy(coords, c, segment, 4, 2);
+                    }
+                }
+            }
+            if (affine != null) {
+                affine.transform(segment, 0, segment, 0, numCoords);
+            }
+            return type;
+        }
+    }
+}
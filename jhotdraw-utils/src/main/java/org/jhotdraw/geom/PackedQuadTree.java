@@ -0,0 +1,719 @@
+/*
+ * @(#)PackedQuadTree.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.Rectangle2D;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A QuadTree which stores its objects and nodes in packed primitive arrays.
+ * <p>
+ * Unlike {@link QuadTree}, this class does not store references to objects.
+ * Each object is identified by an {@code int} id, which is assigned by the
+ * tree when the object is added. The bounds of the objects and the nodes are
+ * stored in {@code double} arrays, and the nodes are allocated from a pool.
+ * <p>
+ * Queries do not allocate objects. The ids of the found objects are either
+ * written into a buffer provided by the caller, or they are passed to a
+ * {@link Visitor}.
+ * <p>
+ * Each object is stored in the smallest node which fully contains its bounds.
+ * Therefore the bounds of an object can be updated in place with
+ * {@link #update}, without having to remove and add it again.
+ * <p>
+ * This class is not thread safe. Queries may run concurrently, as long as the
+ * tree is not modified.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class PackedQuadTree implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A visitor for the ids found by a query.
+     */
+    public interface Visitor {
+
+        /**
+         * Visits an object.
+         *
+         * @param id the id of the object
+         * @return true to continue the query, false to stop it
+         */
+        public boolean visit(int id);
+    }
+    /**
+     * Value for "no node" or "no object".
+     */
+    private static final int NONE = -1;
+    /**
+     * Pseudo node which holds all objects outside of the bounds of the root
+     * node.
+     */
+    private static final int OUTSIDE = -2;
+    private int maxCapacity = 32;
+    private int minSize = 32;
+    private int maxOutside = 32;
+    /**
+     * Bounds of the objects: x, y, width, height.
+     */
+    private double[] objBounds;
+    /**
+     * The node which holds the object, {@link #OUTSIDE}, or {@link #NONE} if
+     * the id is free.
+     */
+    private int[] objNode;
+    /**
+     * The next object in the same node, or the next free id.
+     */
+    private int[] objNext;
+    /**
+     * The previous object in the same node.
+     */
+    private int[] objPrev;
+    private int objCapacity;
+    private int freeId = NONE;
+    private int size;
+    /**
+     * Bounds of the nodes: x, y, width, height.
+     */
+    private double[] nodeBounds;
+    /**
+     * The first of the four consecutive child nodes, or {@link #NONE} if the
+     * node is a leaf.
+     */
+    private int[] nodeChild;
+    /**
+     * The first object of the node.
+     */
+    private int[] nodeFirst;
+    /**
+     * The number of objects held by the node.
+     */
+    private int[] nodeCount;
+    private int nodeCapacity;
+    private int nodeSize;
+    private int outsideFirst = NONE;
+    private int outsideCount;
+    private boolean isReorganizing;
+
+    /**
+     * Creates a new instance.
+     */
+    public PackedQuadTree() {
+        this(new Rectangle2D.Double(0, 0, 800, 600));
+    }
+
+    public PackedQuadTree(Rectangle2D.Double bounds) {
+        objCapacity = 64;
+        objBounds = new double[objCapacity * 4];
+        objNode = new int[objCapacity];
+        objNext = new int[objCapacity];
+        objPrev = new int[objCapacity];
+        nodeCapacity = 16;
+        nodeBounds = new double[nodeCapacity * 4];
+        nodeChild = new int[nodeCapacity];
+        nodeFirst = new int[nodeCapacity];
+        nodeCount = new int[nodeCapacity];
+        Arrays.fill(objNode, NONE);
+        createRoot(bounds.x, bounds.y, bounds.width, bounds.height);
+    }
+
+    /**
+     * Returns the number of objects in the tree.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds an object with the specified bounds.
+     *
+     * @return the id of the object
+     */
+    public int add(double x, double y, double w, double h) {
+        int id = allocateId();
+        setBounds(id, x, y, w, h);
+        insert(id);
+        size++;
+        return id;
+    }
+
+    public int add(Rectangle2D r) {
+        return add(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    /**
+     * Removes the object with the specified id. The id may be reused by
+     * subsequent invocations of {@code add}.
+     */
+    public void remove(int id) {
+        if (!isValid(id)) {
+            return;
+        }
+        unlink(id);
+        objNode[id] = NONE;
+        objNext[id] = freeId;
+        freeId = id;
+        size--;
+    }
+
+    /**
+     * Updates the bounds of the object with the specified id.
+     * <p>
+     * The object is only moved to a different node, if the new bounds do not
+     * fit into its current node anymore, or if they fit into a child of its
+     * current node.
+     */
+    public void update(int id, double x, double y, double w, double h) {
+        if (!isValid(id)) {
+            throw new IllegalArgumentException("Illegal id:" + id);
+        }
+        setBounds(id, x, y, w, h);
+        int node = objNode[id];
+        if (node != OUTSIDE && fitsInto(id, node)
+                && (nodeChild[node] == NONE || childFor(id, node) == NONE)) {
+            return;
+        }
+        unlink(id);
+        insert(id);
+    }
+
+    public void update(int id, Rectangle2D r) {
+        update(id, r.getX(), r.getY(), r.getWidth(), r.getHeight());
+    }
+
+    /**
+     * Updates the bounds of multiple objects.
+     * <p>
+     * If at least a quarter of the objects of the tree is updated, the tree
+     * is rebuilt with {@link #reorganize} instead of moving the objects one
+     * by one.
+     *
+     * @param ids the ids of the objects
+     * @param bounds the new bounds of the objects: x, y, width and height
+     * for each id
+     * @param count the number of objects to update
+     */
+    public void updateAll(int[] ids, double[] bounds, int count) {
+        if (count * 4 < size) {
+            for (int i = 0; i < count; i++) {
+                int j = i * 4;
+                update(ids[i], bounds[j], bounds[j + 1], bounds[j + 2], bounds[j + 3]);
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!isValid(ids[i])) {
+                throw new IllegalArgumentException("Illegal id:" + ids[i]);
+            }
+            int j = i * 4;
+            setBounds(ids[i], bounds[j], bounds[j + 1], bounds[j + 2], bounds[j + 3]);
+        }
+        reorganize();
+    }
+
+    /**
+     * Returns true, if the specified id denotes an object of this tree.
+     */
+    public boolean isValid(int id) {
+        return id >= 0 && id < objCapacity && objNode[id] != NONE;
+    }
+
+    /**
+     * Returns the bounds of the object with the specified id.
+     */
+    public Rectangle2D.Double getBounds(int id, Rectangle2D.Double r) {
+        int i = id * 4;
+        r.setRect(objBounds[i], objBounds[i + 1], objBounds[i + 2], objBounds[i + 3]);
+        return r;
+    }
+
+    /**
+     * Removes all objects.
+     */
+    public void clear() {
+        double[] b = Arrays.copyOf(nodeBounds, 4);
+        Arrays.fill(objNode, NONE);
+        freeId = NONE;
+        size = 0;
+        outsideFirst = NONE;
+        outsideCount = 0;
+        createRoot(b[0], b[1], b[2], b[3]);
+    }
+
+    /**
+     * Computes new bounds for the root node, so that it contains all
+     * objects, and rebuilds the tree.
+     */
+    public void reorganize() {
+        if (size == 0) {
+            return;
+        }
+        double x0 = Double.POSITIVE_INFINITY;
+        double y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY;
+        double y1 = Double.NEGATIVE_INFINITY;
+        for (int id = 0; id < objCapacity; id++) {
+            if (objNode[id] != NONE) {
+                int i = id * 4;
+                x0 = Math.min(x0, objBounds[i]);
+                y0 = Math.min(y0, objBounds[i + 1]);
+                x1 = Math.max(x1, objBounds[i] + objBounds[i + 2]);
+                y1 = Math.max(y1, objBounds[i + 1] + objBounds[i + 3]);
+            }
+        }
+        outsideFirst = NONE;
+        outsideCount = 0;
+        createRoot(x0, y0, x1 - x0, y1 - y0);
+        isReorganizing = true;
+        try {
+            for (int id = 0; id < objCapacity; id++) {
+                if (objNode[id] != NONE) {
+                    insert(id);
+                }
+            }
+        } finally {
+            isReorganizing = false;
+        }
+    }
+
+    /**
+     * Finds all objects which contain the specified point.
+     *
+     * @param buffer receives the ids of the found objects
+     * @return the number of found objects. If this number is greater than
+     * the length of the buffer, only the first {@code buffer.length} ids have
+     * been written into the buffer.
+     */
+    public int findContains(double px, double py, int[] buffer) {
+        int count = findContains(0, px, py, buffer, 0);
+        for (int id = outsideFirst; id != NONE; id = objNext[id]) {
+            if (contains(id, px, py)) {
+                count = put(buffer, count, id);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds all objects which intersect the specified rectangle.
+     *
+     * @param buffer receives the ids of the found objects
+     * @return the number of found objects. If this number is greater than
+     * the length of the buffer, only the first {@code buffer.length} ids have
+     * been written into the buffer.
+     */
+    public int findIntersects(double x, double y, double w, double h, int[] buffer) {
+        int count = findIntersects(0, x, y, w, h, buffer, 0);
+        for (int id = outsideFirst; id != NONE; id = objNext[id]) {
+            if (intersects(id, x, y, w, h)) {
+                count = put(buffer, count, id);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds all objects which are inside the specified rectangle.
+     *
+     * @param buffer receives the ids of the found objects
+     * @return the number of found objects. If this number is greater than
+     * the length of the buffer, only the first {@code buffer.length} ids have
+     * been written into the buffer.
+     */
+    public int findInside(double x, double y, double w, double h, int[] buffer) {
+        int count = findInside(0, x, y, w, h, buffer, 0);
+        for (int id = outsideFirst; id != NONE; id = objNext[id]) {
+            if (isInside(id, x, y, w, h)) {
+                count = put(buffer, count, id);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Visits all objects which contain the specified point.
+     *
+     * @return false if the visitor has stopped the query
+     */
+    public boolean visitContains(double px, double py, Visitor visitor) {
+        if (!visitContains(0, px, py, visitor)) {
+            return false;
+        }
+        for (int id = outsideFirst; id != NONE; id = objNext[id]) {
+            if (contains(id, px, py) && !visitor.visit(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visits all objects which intersect the specified rectangle.
+     *
+     * @return false if the visitor has stopped the query
+     */
+    public boolean visitIntersects(double x, double y, double w, double h, Visitor visitor) {
+        if (!visitIntersects(0, x, y, w, h, visitor)) {
+            return false;
+        }
+        for (int id = outsideFirst; id != NONE; id = objNext[id]) {
+            if (intersects(id, x, y, w, h) && !visitor.visit(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findContains(int node, double px, double py, int[] buffer, int count) {
+        if (!nodeContains(node, px, py)) {
+            return count;
+        }
+        for (int id = nodeFirst[node]; id != NONE; id = objNext[id]) {
+            if (contains(id, px, py)) {
+                count = put(buffer, count, id);
+            }
+        }
+        int child = nodeChild[node];
+        if (child != NONE) {
+            for (int i = 0; i < 4; i++) {
+                count = findContains(child + i, px, py, buffer, count);
+            }
+        }
+        return count;
+    }
+
+    private int findIntersects(int node, double x, double y, double w, double h, int[] buffer, int count) {
+        if (!nodeIntersects(node, x, y, w, h)) {
+            return count;
+        }
+        for (int id = nodeFirst[node]; id != NONE; id = objNext[id]) {
+            if (intersects(id, x, y, w, h)) {
+                count = put(buffer, count, id);
+            }
+        }
+        int child = nodeChild[node];
+        if (child != NONE) {
+            for (int i = 0; i < 4; i++) {
+                count = findIntersects(child + i, x, y, w, h, buffer, count);
+            }
+        }
+        return count;
+    }
+
+    private int findInside(int node, double x, double y, double w, double h, int[] buffer, int count) {
+        if (!nodeIntersects(node, x, y, w, h)) {
+            return count;
+        }
+        for (int id = nodeFirst[node]; id != NONE; id = objNext[id]) {
+            if (isInside(id, x, y, w, h)) {
+                count = put(buffer, count, id);
+            }
+        }
+        int child = nodeChild[node];
+        if (child != NONE) {
+            for (int i = 0; i < 4; i++) {
+                count = findInside(child + i, x, y, w, h, buffer, count);
+            }
+        }
+        return count;
+    }
+
+    private boolean visitContains(int node, double px, double py, Visitor visitor) {
+        if (!nodeContains(node, px, py)) {
+            return true;
+        }
+        for (int id = nodeFirst[node]; id != NONE; id = objNext[id]) {
+            if (contains(id, px, py) && !visitor.visit(id)) {
+                return false;
+            }
+        }
+        int child = nodeChild[node];
+        if (child != NONE) {
+            for (int i = 0; i < 4; i++) {
+                if (!visitContains(child + i, px, py, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean visitIntersects(int node, double x, double y, double w, double h, Visitor visitor) {
+        if (!nodeIntersects(node, x, y, w, h)) {
+            return true;
+        }
+        for (int id = nodeFirst[node]; id != NONE; id = objNext[id]) {
+            if (intersects(id, x, y, w, h) && !visitor.visit(id)) {
+                return false;
+            }
+        }
+        int child = nodeChild[node];
+        if (child != NONE) {
+            for (int i = 0; i < 4; i++) {
+                if (!visitIntersects(child + i, x, y, w, h, visitor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int put(int[] buffer, int count, int id) {
+        if (count < buffer.length) {
+            buffer[count] = id;
+        }
+        return count + 1;
+    }
+
+    /**
+     * Same semantics as {@code Rectangle2D.contains(x, y)}.
+     */
+    private boolean contains(int id, double px, double py) {
+        int i = id * 4;
+        double x0 = objBounds[i];
+        double y0 = objBounds[i + 1];
+        return px >= x0 && py >= y0
+                && px < x0 + objBounds[i + 2] && py < y0 + objBounds[i + 3];
+    }
+
+    /**
+     * Same semantics as {@code Rectangle2D.intersects(x, y, w, h)}.
+     */
+    private boolean intersects(int id, double x, double y, double w, double h) {
+        int i = id * 4;
+        double w0 = objBounds[i + 2];
+        double h0 = objBounds[i + 3];
+        if (w <= 0 || h <= 0 || w0 <= 0 || h0 <= 0) {
+            return false;
+        }
+        double x0 = objBounds[i];
+        double y0 = objBounds[i + 1];
+        return x + w > x0 && y + h > y0 && x < x0 + w0 && y < y0 + h0;
+    }
+
+    /**
+     * Same semantics as {@code new Rectangle2D.Double(x, y, w, h).contains(bounds of id)}.
+     */
+    private boolean isInside(int id, double x, double y, double w, double h) {
+        int i = id * 4;
+        double w0 = objBounds[i + 2];
+        double h0 = objBounds[i + 3];
+        if (w <= 0 || h <= 0 || w0 <= 0 || h0 <= 0) {
+            return false;
+        }
+        double x0 = objBounds[i];
+        double y0 = objBounds[i + 1];
+        return x0 >= x && y0 >= y && x0 + w0 <= x + w && y0 + h0 <= y + h;
+    }
+
+    private boolean nodeContains(int node, double px, double py) {
+        int i = node * 4;
+        return px >= nodeBounds[i] && py >= nodeBounds[i + 1]
+                && px < nodeBounds[i] + nodeBounds[i + 2]
+                && py < nodeBounds[i + 1] + nodeBounds[i + 3];
+    }
+
+    /**
+     * Tests if a node intersects a rectangle. Objects may touch the border of
+     * a node, therefore the border is included in the test.
+     */
+    private boolean nodeIntersects(int node, double x, double y, double w, double h) {
+        int i = node * 4;
+        return x + w >= nodeBounds[i] && y + h >= nodeBounds[i + 1]
+                && x <= nodeBounds[i] + nodeBounds[i + 2]
+                && y <= nodeBounds[i + 1] + nodeBounds[i + 3];
+    }
+
+    /**
+     * Tests if the bounds of an object fit into a node.
+     */
+    private boolean fitsInto(int id, int node) {
+        int i = id * 4;
+        int j = node * 4;
+        return objBounds[i] >= nodeBounds[j]
+                && objBounds[i + 1] >= nodeBounds[j + 1]
+                && objBounds[i] + objBounds[i + 2] <= nodeBounds[j] + nodeBounds[j + 2]
+                && objBounds[i + 1] + objBounds[i + 3] <= nodeBounds[j + 1] + nodeBounds[j + 3];
+    }
+
+    /**
+     * Returns the child of the node into which the object fits, or
+     * {@link #NONE}.
+     */
+    private int childFor(int id, int node) {
+        int child = nodeChild[node];
+        for (int i = 0; i < 4; i++) {
+            if (fitsInto(id, child + i)) {
+                return child + i;
+            }
+        }
+        return NONE;
+    }
+
+    private void setBounds(int id, double x, double y, double w, double h) {
+        int i = id * 4;
+        objBounds[i] = x;
+        objBounds[i + 1] = y;
+        objBounds[i + 2] = w;
+        objBounds[i + 3] = h;
+    }
+
+    /**
+     * Inserts an object into the smallest node into which it fits.
+     */
+    private void insert(int id) {
+        if (!fitsInto(id, 0)) {
+            link(id, OUTSIDE);
+            if (outsideCount > maxOutside && !isReorganizing) {
+                reorganize();
+            }
+            return;
+        }
+        int node = 0;
+        while (true) {
+            if (nodeChild[node] == NONE) {
+                if (nodeCount[node] >= maxCapacity
+                        && nodeBounds[node * 4 + 2] > minSize
+                        && nodeBounds[node * 4 + 3] > minSize) {
+                    split(node);
+                } else {
+                    break;
+                }
+            }
+            int child = childFor(id, node);
+            if (child == NONE) {
+                break;
+            }
+            node = child;
+        }
+        link(id, node);
+    }
+
+    /**
+     * Splits a leaf node into four children, and moves all objects which fit
+     * into a child down into it.
+     */
+    private void split(int node) {
+        int i = node * 4;
+        double x = nodeBounds[i];
+        double y = nodeBounds[i + 1];
+        double w = nodeBounds[i + 2];
+        double h = nodeBounds[i + 3];
+        double hw = w / 2;
+        double hh = h / 2;
+        int child = allocateNodes();
+        initNode(child, x, y, hw, hh);
+        initNode(child + 1, x + hw, y, w - hw, hh);
+        initNode(child + 2, x, y + hh, hw, h - hh);
+        initNode(child + 3, x + hw, y + hh, w - hw, h - hh);
+        nodeChild[node] = child;
+        for (int id = nodeFirst[node]; id != NONE;) {
+            int next = objNext[id];
+            int target = childFor(id, node);
+            if (target != NONE) {
+                unlink(id);
+                link(id, target);
+            }
+            id = next;
+        }
+    }
+
+    private void link(int id, int node) {
+        int first;
+        if (node == OUTSIDE) {
+            first = outsideFirst;
+            outsideFirst = id;
+            outsideCount++;
+        } else {
+            first = nodeFirst[node];
+            nodeFirst[node] = id;
+            nodeCount[node]++;
+        }
+        objNode[id] = node;
+        objPrev[id] = NONE;
+        objNext[id] = first;
+        if (first != NONE) {
+            objPrev[first] = id;
+        }
+    }
+
+    private void unlink(int id) {
+        int node = objNode[id];
+        int prev = objPrev[id];
+        int next = objNext[id];
+        if (prev != NONE) {
+            objNext[prev] = next;
+        } else if (node == OUTSIDE) {
+            outsideFirst = next;
+        } else {
+            nodeFirst[node] = next;
+        }
+        if (next != NONE) {
+            objPrev[next] = prev;
+        }
+        if (node == OUTSIDE) {
+            outsideCount--;
+        } else {
+            nodeCount[node]--;
+        }
+    }
+
+    private int allocateId() {
+        if (freeId != NONE) {
+            int id = freeId;
+            freeId = objNext[id];
+            return id;
+        }
+        if (size == objCapacity) {
+            int newCapacity = objCapacity * 2;
+            objBounds = Arrays.copyOf(objBounds, newCapacity * 4);
+            objNode = Arrays.copyOf(objNode, newCapacity);
+            objNext = Arrays.copyOf(objNext, newCapacity);
+            objPrev = Arrays.copyOf(objPrev, newCapacity);
+            Arrays.fill(objNode, objCapacity, newCapacity, NONE);
+            objCapacity = newCapacity;
+        }
+        // Without free ids, all ids below size are in use.
+        return size;
+    }
+
+    private int allocateNodes() {
+        if (nodeSize + 4 > nodeCapacity) {
+            int newCapacity = nodeCapacity * 2;
+            nodeBounds = Arrays.copyOf(nodeBounds, newCapacity * 4);
+            nodeChild = Arrays.copyOf(nodeChild, newCapacity);
+            nodeFirst = Arrays.copyOf(nodeFirst, newCapacity);
+            nodeCount = Arrays.copyOf(nodeCount, newCapacity);
+            nodeCapacity = newCapacity;
+        }
+        int node = nodeSize;
+        nodeSize += 4;
+        return node;
+    }
+
+    private void initNode(int node, double x, double y, double w, double h) {
+        int i = node * 4;
+        nodeBounds[i] = x;
+        nodeBounds[i + 1] = y;
+        nodeBounds[i + 2] = w;
+        nodeBounds[i + 3] = h;
+        nodeChild[node] = NONE;
+        nodeFirst[node] = NONE;
+        nodeCount[node] = 0;
+    }
+
+    private void createRoot(double x, double y, double w, double h) {
+        nodeSize = 1;
+        initNode(0, x, y, w, h);
+    }
+}
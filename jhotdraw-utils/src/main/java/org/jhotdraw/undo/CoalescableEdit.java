@@ -0,0 +1,39 @@
+/*
+ * @(#)CoalescableEdit.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.undo;
+
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * An {@code UndoableEdit} which can absorb a following edit on the same
+ * subject, for example a second change of the same attribute of the same
+ * figure.
+ * <p>
+ * Unlike {@link UndoableEdit#addEdit}, which is called by every
+ * {@code UndoManager}, {@link #coalesce} is only called by an
+ * {@link UndoRedoManager}, when the edits follow each other within its
+ * coalescing delay. This way, a series of edits made in quick succession,
+ * such as the steps of a slider drag or of a repeated arrow key, becomes a
+ * single undoable step, whereas edits which are made separately stay
+ * separate.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public interface CoalescableEdit extends UndoableEdit {
+
+    /**
+     * Merges the specified edit into this edit, if both edits have the same
+     * subject. After a successful merge, undoing this edit undoes both edits,
+     * and redoing this edit redoes both edits.
+     *
+     * @param anEdit An edit which has been made after this edit.
+     * @return True, if the edit has been merged into this edit.
+     */
+    public boolean coalesce(UndoableEdit anEdit);
+}
@@ -0,0 +1,32 @@
+/*
+ * @(#)SizedEdit.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.undo;
+
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * An {@code UndoableEdit} which can estimate how much memory it retains.
+ * <p>
+ * {@link UndoRedoManager} uses the estimate to limit the memory used by the
+ * undo history. Edits which do not implement this interface are estimated
+ * with {@link UndoRedoManager#DEFAULT_EDIT_SIZE}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public interface SizedEdit extends UndoableEdit {
+
+    /**
+     * Returns the estimated number of bytes retained by this edit, including
+     * its undo and redo data, but not including objects which are shared with
+     * the model, such as the figures it changes.
+     * {@link UndoRedoManager#estimateSize(Object)} can be used to estimate
+     * the size of the undo and redo data.
+     */
+    public long getEstimatedSize();
+}
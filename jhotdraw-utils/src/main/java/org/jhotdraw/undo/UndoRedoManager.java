@@ -8,6 +8,7 @@
 package org.jhotdraw.undo;
 
 import java.awt.event.*;
+import java.awt.geom.*;
 import java.beans.*;
 import java.util.*;
 import javax.swing.*;
@@ -16,11 +17,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import dk.sdu.mmmi.featuretracer.lib.FeatureEntryPoint;
+import org.jhotdraw.geom.BezierPath;
 import org.jhotdraw.util.*;
 
 /**
  * Same as javax.swing.UndoManager but provides actions for undo and
  * redo operations.
+ * <p>
+ * In addition, the manager limits the memory used by the undo history, and
+ * it coalesces edits which are made in quick succession on the same subject.
+ * <ul>
+ * <li>The memory used by an edit is estimated with
+ * {@link SizedEdit#getEstimatedSize}. Edits which do not implement
+ * {@code SizedEdit} are estimated with {@link #DEFAULT_EDIT_SIZE}. When the
+ * estimated size of all edits exceeds the memory limit, the oldest edits are
+ * discarded. The most recent edit is always kept.</li>
+ * <li>When a {@link CoalescableEdit} is followed by another edit within the
+ * coalescing delay, the manager asks the first edit to absorb the second
+ * one, so that both are undone in a single step.</li>
+ * </ul>
  *
  * @author Werner Randelshofer
  * @version $Id$
@@ -31,6 +46,28 @@ public class UndoRedoManager extends UndoManager {
     protected PropertyChangeSupport propertySupport = new PropertyChangeSupport(this);
     private static final boolean DEBUG = false;
     private static final Logger LOGGER = LoggerFactory.getLogger(UndoRedoManager.class);
+    /**
+     * The estimated size of an edit which does not implement
+     * {@link SizedEdit}.
+     */
+    public static final long DEFAULT_EDIT_SIZE = 256;
+    /**
+     * The default memory limit of the undo history in bytes.
+     */
+    public static final long DEFAULT_MEMORY_LIMIT = 32L * 1024 * 1024;
+    /**
+     * The default coalescing delay in milliseconds.
+     */
+    public static final long DEFAULT_COALESCING_DELAY = 500;
+    /**
+     * The default maximal number of edits.
+     */
+    public static final int DEFAULT_EDIT_LIMIT = 1000;
+    /**
+     * The maximal nesting depth, up to which {@link #estimateSize} visits
+     * the elements of arrays, collections and maps.
+     */
+    private static final int MAX_ESTIMATE_DEPTH = 4;
     /**
      * The resource bundle used for internationalisation.
      */
@@ -49,6 +86,29 @@ public class UndoRedoManager extends UndoManager {
      * this flag is true.
      */
     private boolean undoOrRedoInProgress;
+    /**
+     * The maximal estimated size of the undo history in bytes.
+     */
+    private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+    /**
+     * The estimated size of each edit, at the time when it has been added or
+     * when another edit has been coalesced into it.
+     */
+    private IdentityHashMap<UndoableEdit, Long> editSizes = new IdentityHashMap<UndoableEdit, Long>();
+    /**
+     * The sum of the values in {@code editSizes}.
+     */
+    private long estimatedSize;
+    /**
+     * The maximal time in milliseconds between two edits, which are
+     * coalesced. A value of 0 disables coalescing.
+     */
+    private long coalescingDelay = DEFAULT_COALESCING_DELAY;
+    /**
+     * The time in milliseconds, when the last edit has been added. This is 0,
+     * if the next edit must not be coalesced with the last edit.
+     */
+    private long lastAddTime;
     /**
      * Sending this UndoableEdit event to the UndoRedoManager
      * disables the Undo and Redo functions of the manager.
@@ -142,6 +202,7 @@ public class UndoRedoManager extends UndoManager {
         getLabels();
         undoAction = new UndoAction();
         redoAction = new RedoAction();
+        setLimit(DEFAULT_EDIT_LIMIT);
     }
 
     public static void setLocale(Locale l) {
@@ -154,6 +215,9 @@ public class UndoRedoManager extends UndoManager {
     @Override
     public synchronized void discardAllEdits() {
         super.discardAllEdits();
+        editSizes.clear();
+        estimatedSize = 0;
+        lastAddTime = 0;
         updateActions();
         setHasSignificantEdits(false);
     }
@@ -200,14 +264,209 @@ public class UndoRedoManager extends UndoManager {
             anEdit.die();
             return true;
         }
-        boolean success = super.addEdit(anEdit);
+        long now = System.currentTimeMillis();
+        boolean isCoalesced = coalesceEdit(anEdit, now);
+        lastAddTime = now;
+        boolean success;
+        if (isCoalesced) {
+            anEdit.die();
+            success = true;
+        } else {
+            success = super.addEdit(anEdit);
+        }
+        updateEstimatedSize();
+        trimForMemoryLimit();
         updateActions();
-        if (success && anEdit.isSignificant() && editToBeUndone() == anEdit) {
+        if (success && anEdit.isSignificant() && (isCoalesced || editToBeUndone() == anEdit)) {
             setHasSignificantEdits(true);
         }
         return success;
     }
 
+    /**
+     * Merges the specified edit into the last edit, if the last edit is a
+     * {@link CoalescableEdit}, it has been added within the coalescing delay,
+     * and it has not been undone.
+     */
+    private boolean coalesceEdit(UndoableEdit anEdit, long now) {
+        if (coalescingDelay <= 0 || lastAddTime == 0 || now - lastAddTime > coalescingDelay
+                || !isInProgress() || edits.isEmpty()) {
+            return false;
+        }
+        UndoableEdit last = edits.lastElement();
+        return last instanceof CoalescableEdit && last.canUndo()
+                && ((CoalescableEdit) last).coalesce(anEdit);
+    }
+
+    /**
+     * Updates the estimated size after an edit has been added. Only the
+     * size of the last edit is estimated again, because the new edit is
+     * either appended or merged into the last edit.
+     */
+    private void updateEstimatedSize() {
+        if (edits.isEmpty()) {
+            return;
+        }
+        UndoableEdit last = edits.lastElement();
+        long size = estimateEditSize(last);
+        Long oldSize = editSizes.put(last, size);
+        estimatedSize += size - (oldSize == null ? 0 : oldSize);
+        if (editSizes.size() != edits.size()) {
+            // An edit has been replaced without being trimmed
+            editSizes.clear();
+            estimatedSize = 0;
+            for (UndoableEdit edit : edits) {
+                size = estimateEditSize(edit);
+                editSizes.put(edit, size);
+                estimatedSize += size;
+            }
+        }
+    }
+
+    /**
+     * Removes the edits from the estimated size, before they are removed.
+     */
+    @Override
+    protected void trimEdits(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            Long size = editSizes.remove(edits.elementAt(i));
+            if (size != null) {
+                estimatedSize -= size;
+            }
+        }
+        super.trimEdits(from, to);
+    }
+
+    /**
+     * Discards the oldest edits, until the estimated size of the remaining
+     * edits is within the memory limit. The most recent undoable edit and the
+     * redoable edits are always kept.
+     */
+    private void trimForMemoryLimit() {
+        if (estimatedSize <= memoryLimit) {
+            return;
+        }
+        int lastUndoable = edits.size() - 1;
+        while (lastUndoable >= 0 && !edits.elementAt(lastUndoable).canUndo()) {
+            lastUndoable--;
+        }
+        long total = estimatedSize;
+        int count = 0;
+        while (count < lastUndoable && total > memoryLimit) {
+            Long size = editSizes.get(edits.elementAt(count));
+            total -= (size == null) ? 0 : size;
+            count++;
+        }
+        if (count > 0) {
+            trimEdits(0, count - 1);
+        }
+    }
+
+    /**
+     * Sets the maximal estimated size of the undo history in bytes.
+     */
+    public synchronized void setMemoryLimit(long newValue) {
+        memoryLimit = newValue;
+        if (isInProgress()) {
+            trimForMemoryLimit();
+            updateActions();
+        }
+    }
+
+    /**
+     * Returns the maximal estimated size of the undo history in bytes.
+     */
+    public synchronized long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Returns the estimated size of the undo history in bytes.
+     */
+    public synchronized long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * Sets the maximal time in milliseconds between two edits, which are
+     * coalesced. A value of 0 disables coalescing.
+     */
+    public synchronized void setCoalescingDelay(long newValue) {
+        coalescingDelay = newValue;
+    }
+
+    /**
+     * Returns the maximal time in milliseconds between two edits, which are
+     * coalesced.
+     */
+    public synchronized long getCoalescingDelay() {
+        return coalescingDelay;
+    }
+
+    /**
+     * Returns the estimated size of the specified edit in bytes.
+     */
+    public static long estimateEditSize(UndoableEdit edit) {
+        return (edit instanceof SizedEdit) ? ((SizedEdit) edit).getEstimatedSize() : DEFAULT_EDIT_SIZE;
+    }
+
+    /**
+     * Returns a rough estimate of the number of bytes retained by the
+     * specified undo or redo data. The estimate knows the shapes, points and
+     * paths used by figures for their transform restore data, and visits the
+     * elements of arrays, collections and maps.
+     */
+    public static long estimateSize(Object data) {
+        return estimateSize(data, 0);
+    }
+
+    private static long estimateSize(Object data, int depth) {
+        if (data == null) {
+            return 0;
+        }
+        if (data instanceof BezierPath) {
+            return 48 + ((BezierPath) data).size() * 120L;
+        }
+        if (data instanceof Point2D) {
+            return 32;
+        }
+        if (data instanceof RectangularShape || data instanceof Line2D) {
+            return 48;
+        }
+        if (data instanceof CharSequence) {
+            return 40 + 2L * ((CharSequence) data).length();
+        }
+        if (data instanceof AffineTransform) {
+            return 72;
+        }
+        if (depth >= MAX_ESTIMATE_DEPTH) {
+            return 32;
+        }
+        if (data instanceof Object[]) {
+            Object[] array = (Object[]) data;
+            long size = 16 + 8L * array.length;
+            for (Object element : array) {
+                size += estimateSize(element, depth + 1);
+            }
+            return size;
+        }
+        if (data instanceof Collection) {
+            long size = 32;
+            for (Object element : (Collection<?>) data) {
+                size += 24 + estimateSize(element, depth + 1);
+            }
+            return size;
+        }
+        if (data instanceof Map) {
+            long size = 48;
+            for (Object value : ((Map<?, ?>) data).values()) {
+                size += 32 + estimateSize(value, depth + 1);
+            }
+            return size;
+        }
+        return 32;
+    }
+
     /**
      * Gets the undo action for use as an Undo menu item.
      */
@@ -269,6 +528,7 @@ public class UndoRedoManager extends UndoManager {
             super.undo();
         } finally {
             undoOrRedoInProgress = false;
+            lastAddTime = 0;
             updateActions();
         }
     }
@@ -287,6 +547,7 @@ public class UndoRedoManager extends UndoManager {
             super.redo();
         } finally {
             undoOrRedoInProgress = false;
+            lastAddTime = 0;
             updateActions();
         }
     }
@@ -304,6 +565,7 @@ public class UndoRedoManager extends UndoManager {
             super.undoOrRedo();
         } finally {
             undoOrRedoInProgress = false;
+            lastAddTime = 0;
             updateActions();
         }
     }
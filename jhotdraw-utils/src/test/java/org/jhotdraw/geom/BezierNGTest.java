@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.geom;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the batch, parallel and incremental curve fitting of {@link Bezier}.
+ */
+public class BezierNGTest {
+
+    public BezierNGTest() {
+    }
+
+    /**
+     * Creates a freehand stroke with occasional corners and repeated points.
+     */
+    private static double[] createStroke(Random r, int count) {
+        double[] xy = new double[count * 2];
+        double x = 0;
+        double y = 0;
+        double angle = 0;
+        for (int i = 0; i < count; i++) {
+            if (r.nextInt(60) == 0) {
+                angle += 1.5 + r.nextDouble();
+            } else {
+                angle += r.nextGaussian() * 0.1;
+            }
+            double step = r.nextInt(10) == 0 ? 0 : r.nextDouble() * 4;
+            x += Math.cos(angle) * step;
+            y += Math.sin(angle) * step;
+            xy[i * 2] = Math.round(x);
+            xy[i * 2 + 1] = Math.round(y);
+        }
+        return xy;
+    }
+
+    private static void assertSamePath(BezierPath actual, BezierPath expected) {
+        assertEquals(actual.size(), expected.size(), "size");
+        for (int i = 0, n = expected.size(); i < n; i++) {
+            BezierPath.Node a = actual.get(i);
+            BezierPath.Node e = expected.get(i);
+            assertEquals(a.mask, e.mask, "mask of node " + i);
+            assertEquals(a.keepColinear, e.keepColinear, "keepColinear of node " + i);
+            assertTrue(Arrays.equals(a.x, e.x), "x of node " + i);
+            assertTrue(Arrays.equals(a.y, e.y), "y of node " + i);
+        }
+    }
+
+    @Test
+    public void testFittedPathConnectsEndPoints() {
+        Random r = new Random(3);
+        double[] xy = createStroke(r, 500);
+        BezierPath path = Bezier.fitBezierPath(xy, 500, 1.5);
+        assertTrue(path.size() > 1);
+        assertEquals(path.get(0).x[0], xy[0]);
+        assertEquals(path.get(0).y[0], xy[1]);
+        assertEquals(path.get(path.size() - 1).x[0], xy[998]);
+        assertEquals(path.get(path.size() - 1).y[0], xy[999]);
+    }
+
+    @Test
+    public void testParallelFitSameAsSequential() {
+        Random r = new Random(5);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int t = 0; t < 20; t++) {
+                int count = 1000 + r.nextInt(5000);
+                double[] xy = createStroke(r, count);
+                double error = 0.5 + r.nextDouble() * 2;
+                assertSamePath(Bezier.fitBezierPath(xy, count, error, pool),
+                        Bezier.fitBezierPath(xy, count, error));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testIncrementalFitSameAsBatch() {
+        Random r = new Random(7);
+        for (int t = 0; t < 50; t++) {
+            int count = r.nextInt(800);
+            double[] xy = createStroke(r, count);
+            double error = 0.5 + r.nextDouble() * 2;
+            IncrementalBezierFitter fitter = new IncrementalBezierFitter(error);
+            for (int i = 0; i < count; i++) {
+                if (i > 0 && r.nextInt(5) == 0) {
+                    // Add a point and move it to its final location later
+                    fitter.addPoint(xy[i * 2] + 10, xy[i * 2 + 1] - 10);
+                    if (r.nextBoolean()) {
+                        fitter.getFittedPath();
+                    }
+                    fitter.setLastPoint(xy[i * 2], xy[i * 2 + 1]);
+                } else {
+                    fitter.addPoint(xy[i * 2], xy[i * 2 + 1]);
+                }
+                if (i == count / 2) {
+                    assertSamePath(fitter.getFittedPath(), Bezier.fitBezierPath(xy, i + 1, error));
+                }
+            }
+            assertEquals(fitter.getPointCount(), count);
+            assertSamePath(fitter.getFittedPath(), Bezier.fitBezierPath(xy, count, error));
+        }
+    }
+}
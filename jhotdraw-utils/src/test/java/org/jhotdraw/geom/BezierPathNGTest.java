@@ -18,9 +18,11 @@
  */
 package org.jhotdraw.geom;
 
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
+import java.util.Random;
 import static org.testng.Assert.*;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
@@ -135,4 +137,78 @@ public class BezierPathNGTest {
             pathIterator.next();
         }
     }
+
+    @Test
+    public void testOutlineContainsMatchesShapes() {
+        BezierPath instance = new BezierPath();
+        Random r = new Random(7);
+        instance.moveTo(0, 0);
+        for (int i = 0; i < 500; i++) {
+            if (i % 3 == 0) {
+                instance.curveTo(r.nextDouble() * 200, r.nextDouble() * 200,
+                        r.nextDouble() * 200, r.nextDouble() * 200,
+                        r.nextDouble() * 200, r.nextDouble() * 200);
+            } else {
+                instance.lineTo(r.nextDouble() * 200, r.nextDouble() * 200);
+            }
+        }
+        instance.setClosed(true);
+        for (double tolerance : new double[]{0.5, 2, 5}) {
+            for (int i = 0; i < 2000; i++) {
+                Point2D.Double p = new Point2D.Double(r.nextDouble() * 220 - 10, r.nextDouble() * 220 - 10);
+                assertEquals(instance.outlineContains(p, tolerance),
+                        Shapes.outlineContains(instance, p, tolerance), "point " + p + " tolerance " + tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void testOutlineContainsAfterTransform() {
+        BezierPath instance = new BezierPath();
+        instance.moveTo(0, 0);
+        instance.lineTo(100, 0);
+        assertTrue(instance.outlineContains(new Point2D.Double(50, 1), 2));
+        instance.transform(AffineTransform.getTranslateInstance(0, 50));
+        assertFalse(instance.outlineContains(new Point2D.Double(50, 1), 2));
+        assertTrue(instance.outlineContains(new Point2D.Double(50, 51), 2));
+        BezierPath clone = instance.clone();
+        clone.transform(AffineTransform.getTranslateInstance(0, 50));
+        assertTrue(instance.outlineContains(new Point2D.Double(50, 51), 2));
+        assertTrue(clone.outlineContains(new Point2D.Double(50, 101), 2));
+    }
+
+    @Test
+    public void testPointOnPath() {
+        BezierPath instance = new BezierPath();
+        instance.moveTo(10, 10);
+        instance.lineTo(40, 10);
+        instance.lineTo(40, 20);
+        assertEquals(instance.getLengthOfPath(1), 40.0, 1e-9);
+        Point2D.Double p = instance.getPointOnPath(0.5, 1);
+        assertEquals(p.x, 30.0, 1e-9);
+        assertEquals(p.y, 10.0, 1e-9);
+        p = instance.getPointOnPath(0.875, 1);
+        assertEquals(p.x, 40.0, 1e-9);
+        assertEquals(p.y, 15.0, 1e-9);
+    }
+
+    @Test
+    public void testChop() {
+        BezierPath instance = new BezierPath();
+        instance.moveTo(10, 10);
+        instance.lineTo(30, 10);
+        instance.lineTo(30, 30);
+        instance.lineTo(10, 30);
+        instance.setClosed(true);
+        Point2D.Double p = instance.chop(new Point2D.Double(100, 20));
+        assertEquals(p.x, 30.0, 1e-9);
+        assertEquals(p.y, 20.0, 1e-9);
+        p = instance.chop(new Point2D.Double(20, -50));
+        assertEquals(p.x, 20.0, 1e-9);
+        assertEquals(p.y, 10.0, 1e-9);
+        // The closing segment is part of the outline
+        p = instance.chop(new Point2D.Double(-50, 20));
+        assertEquals(p.x, 10.0, 1e-9);
+        assertEquals(p.y, 20.0, 1e-9);
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.util.Iterator;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Compares a {@link PackedBezierPath} with a {@link BezierPath} which holds
+ * the same nodes.
+ */
+public class PackedBezierPathNGTest {
+
+    public PackedBezierPathNGTest() {
+    }
+
+    private static BezierPath createPath(Random r, int nodeCount) {
+        BezierPath path = new BezierPath();
+        path.moveTo(r.nextDouble() * 100, r.nextDouble() * 100);
+        for (int i = 1; i < nodeCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    path.curveTo(r.nextDouble() * 100, r.nextDouble() * 100,
+                            r.nextDouble() * 100, r.nextDouble() * 100,
+                            r.nextDouble() * 100, r.nextDouble() * 100);
+                    break;
+                case 1:
+                    path.quadTo(r.nextDouble() * 100, r.nextDouble() * 100,
+                            r.nextDouble() * 100, r.nextDouble() * 100);
+                    break;
+                default:
+                    path.lineTo(r.nextDouble() * 100, r.nextDouble() * 100);
+                    break;
+            }
+        }
+        return path;
+    }
+
+    private static void assertSameSegments(PathIterator expected, PathIterator actual) {
+        double[] e = new double[6];
+        double[] a = new double[6];
+        assertEquals(actual.getWindingRule(), expected.getWindingRule());
+        for (; !expected.isDone(); expected.next(), actual.next()) {
+            assertFalse(actual.isDone());
+            int type = expected.currentSegment(e);
+            assertEquals(actual.currentSegment(a), type);
+            int n = type == PathIterator.SEG_CUBICTO ? 6 : type == PathIterator.SEG_QUADTO ? 4 : type == PathIterator.SEG_CLOSE ? 0 : 2;
+            for (int i = 0; i < n; i++) {
+                assertEquals(a[i], e[i], 1e-9);
+            }
+        }
+        assertTrue(actual.isDone());
+    }
+
+    @Test
+    public void testSameShapeAsBezierPath() {
+        Random r = new Random(3);
+        for (boolean isClosed : new boolean[]{false, true}) {
+            BezierPath path = createPath(r, 100);
+            path.setClosed(isClosed);
+            PackedBezierPath packed = new PackedBezierPath(path);
+            assertEquals(packed, path);
+            assertEquals(path, packed);
+            assertEquals(packed.isClosed(), isClosed);
+            assertEquals(packed.getBounds2D(), path.getBounds2D());
+            assertSameSegments(path.getPathIterator(null), packed.getPathIterator(null));
+            assertSameSegments(path.toGeneralPath().getPathIterator(null), packed.toGeneralPath().getPathIterator(null));
+
+            AffineTransform tx = new AffineTransform(1.5, 0.25, -0.5, 2, 10, -20);
+            path.transform(tx);
+            packed.transform(tx);
+            assertEquals(packed.getBounds2D().getX(), path.getBounds2D().getX(), 1e-9);
+            assertEquals(packed.getBounds2D().getMaxY(), path.getBounds2D().getMaxY(), 1e-9);
+            assertSameSegments(path.getPathIterator(null, 0.5), packed.getPathIterator(null, 0.5));
+            for (int i = 0; i < 200; i++) {
+                Point2D.Double p = new Point2D.Double(r.nextDouble() * 300 - 50, r.nextDouble() * 300 - 50);
+                assertEquals(packed.outlineContains(p, 2), path.outlineContains(p, 2));
+                assertEquals(packed.contains(p), path.contains(p));
+            }
+            assertEquals(packed.toBezierPath(), path);
+        }
+    }
+
+    @Test
+    public void testNodeView() {
+        PackedBezierPath packed = new PackedBezierPath(1);
+        packed.moveTo(0, 0);
+        packed.lineTo(10, 0);
+        packed.curveTo(10, 5, 5, 10, 0, 10);
+        assertEquals(packed.size(), 3);
+        assertFalse(packed.get(0).keepColinear);
+        assertEquals(packed.getMask(1), BezierPath.C2_MASK);
+        assertEquals(packed.getMask(2), BezierPath.C1_MASK);
+
+        // Nodes are detached copies
+        BezierPath.Node node = packed.get(1);
+        node.moveTo(20, 20);
+        assertEquals(packed.get(1, 0), new Point2D.Double(10, 0));
+        packed.set(1, node);
+        assertEquals(packed.get(1, 0), new Point2D.Double(20, 20));
+        packed.set(1, 0, new Point2D.Double(30, 30));
+        assertEquals(packed.get(1).x[0], 30.0);
+
+        packed.add(1, new BezierPath.Node(5, 5));
+        assertEquals(packed.size(), 4);
+        assertEquals(packed.get(1, 0), new Point2D.Double(5, 5));
+        assertEquals(packed.get(2, 0), new Point2D.Double(30, 30));
+        assertEquals(packed.remove(1), new BezierPath.Node(5, 5));
+        assertEquals(packed.size(), 3);
+
+        int count = 0;
+        for (Iterator<BezierPath.Node> i = packed.iterator(); i.hasNext(); count++) {
+            i.next();
+        }
+        assertEquals(count, 3);
+
+        PackedBezierPath clone = packed.clone();
+        clone.set(0, 0, new Point2D.Double(-1, -1));
+        assertEquals(packed.get(0, 0), new Point2D.Double(0, 0));
+        clone.setTo(packed);
+        assertEquals(clone, packed);
+
+        packed.clear();
+        assertTrue(packed.isEmpty());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Compares the query results of {@link PackedQuadTree} with a brute force
+ * search.
+ */
+public class PackedQuadTreeNGTest {
+
+    public PackedQuadTreeNGTest() {
+    }
+
+    @Test
+    public void testQueriesMatchBruteForce() {
+        Random rnd = new Random(42);
+        PackedQuadTree tree = new PackedQuadTree();
+        HashMap<Integer, Rectangle2D.Double> expected = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            Rectangle2D.Double r = randomRect(rnd);
+            expected.put(tree.add(r), r);
+        }
+        ArrayList<Integer> ids = new ArrayList<>(expected.keySet());
+        for (int i = 0; i < 500; i++) {
+            int id = ids.get(rnd.nextInt(ids.size()));
+            Rectangle2D.Double r = randomRect(rnd);
+            tree.update(id, r);
+            expected.put(id, r);
+        }
+        for (int i = 0; i < 300; i++) {
+            Integer id = ids.remove(rnd.nextInt(ids.size()));
+            tree.remove(id);
+            expected.remove(id);
+        }
+        assertEquals(tree.size(), expected.size());
+
+        int[] buffer = new int[4];
+        for (int i = 0; i < 200; i++) {
+            double px = rnd.nextDouble() * 3000 - 500;
+            double py = rnd.nextDouble() * 3000 - 500;
+            int count = tree.findContains(px, py, buffer);
+            if (count > buffer.length) {
+                buffer = new int[count];
+                tree.findContains(px, py, buffer);
+            }
+            int[] actual = Arrays.copyOf(buffer, count);
+            ArrayList<Integer> brute = new ArrayList<>();
+            for (Map.Entry<Integer, Rectangle2D.Double> entry : expected.entrySet()) {
+                if (entry.getValue().contains(px, py)) {
+                    brute.add(entry.getKey());
+                }
+            }
+            assertSameIds(actual, brute);
+
+            Rectangle2D.Double q = randomRect(rnd);
+            count = tree.findIntersects(q.x, q.y, q.width, q.height, buffer);
+            if (count > buffer.length) {
+                buffer = new int[count];
+                tree.findIntersects(q.x, q.y, q.width, q.height, buffer);
+            }
+            actual = Arrays.copyOf(buffer, count);
+            brute.clear();
+            for (Map.Entry<Integer, Rectangle2D.Double> entry : expected.entrySet()) {
+                if (entry.getValue().intersects(q)) {
+                    brute.add(entry.getKey());
+                }
+            }
+            assertSameIds(actual, brute);
+        }
+    }
+
+    @Test
+    public void testUpdateAll() {
+        Random rnd = new Random(7);
+        PackedQuadTree tree = new PackedQuadTree();
+        HashMap<Integer, Rectangle2D.Double> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            Rectangle2D.Double r = randomRect(rnd);
+            expected.put(tree.add(r), r);
+        }
+        ArrayList<Integer> ids = new ArrayList<>(expected.keySet());
+        // A small batch updates in place, a large batch rebuilds the tree
+        for (int count : new int[]{50, 600}) {
+            int[] batch = new int[count];
+            double[] bounds = new double[count * 4];
+            for (int i = 0; i < count; i++) {
+                batch[i] = ids.get(i * ids.size() / count);
+                Rectangle2D.Double r = randomRect(rnd);
+                r.x += 3000;
+                bounds[i * 4] = r.x;
+                bounds[i * 4 + 1] = r.y;
+                bounds[i * 4 + 2] = r.width;
+                bounds[i * 4 + 3] = r.height;
+                expected.put(batch[i], r);
+            }
+            tree.updateAll(batch, bounds, count);
+            assertEquals(tree.size(), expected.size());
+            int[] buffer = new int[expected.size()];
+            for (int i = 0; i < 100; i++) {
+                Rectangle2D.Double q = randomRect(rnd);
+                q.x += rnd.nextInt(2) * 3000;
+                int found = tree.findIntersects(q.x, q.y, q.width, q.height, buffer);
+                ArrayList<Integer> brute = new ArrayList<>();
+                for (Map.Entry<Integer, Rectangle2D.Double> entry : expected.entrySet()) {
+                    if (entry.getValue().intersects(q)) {
+                        brute.add(entry.getKey());
+                    }
+                }
+                assertSameIds(Arrays.copyOf(buffer, found), brute);
+            }
+        }
+    }
+
+    private static Rectangle2D.Double randomRect(Random rnd) {
+        return new Rectangle2D.Double(
+                rnd.nextDouble() * 2000 - 200, rnd.nextDouble() * 2000 - 200,
+                rnd.nextDouble() * 200, rnd.nextDouble() * 200);
+    }
+
+    private static void assertSameIds(int[] actual, ArrayList<Integer> expected) {
+        int[] e = new int[expected.size()];
+        for (int i = 0; i < e.length; i++) {
+            e[i] = expected.get(i);
+        }
+        Arrays.sort(e);
+        Arrays.sort(actual);
+        assertEquals(actual, e);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.undo;
+
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.UndoableEdit;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the memory limit and the coalescing of {@link UndoRedoManager}.
+ */
+public class UndoRedoManagerNGTest {
+
+    public UndoRedoManagerNGTest() {
+    }
+
+    @Test
+    public void testMemoryLimitDiscardsOldestEdits() {
+        UndoRedoManager manager = new UndoRedoManager();
+        manager.setCoalescingDelay(0);
+        manager.setMemoryLimit(1000);
+        int[] value = new int[1];
+        for (int i = 0; i < 10; i++) {
+            manager.addEdit(new ValueEdit(value, i, i + 1, 300));
+            value[0] = i + 1;
+        }
+        assertTrue(manager.getEstimatedSize() <= 1000);
+        int undone = 0;
+        while (manager.canUndo()) {
+            manager.undo();
+            undone++;
+        }
+        assertEquals(undone, 3);
+        assertEquals(value[0], 7);
+    }
+
+    @Test
+    public void testMostRecentEditIsKept() {
+        UndoRedoManager manager = new UndoRedoManager();
+        manager.setMemoryLimit(100);
+        int[] value = new int[1];
+        manager.addEdit(new ValueEdit(value, 0, 1, 300));
+        value[0] = 1;
+        assertTrue(manager.canUndo());
+        manager.undo();
+        assertEquals(value[0], 0);
+    }
+
+    @Test
+    public void testCoalescing() {
+        UndoRedoManager manager = new UndoRedoManager();
+        manager.setCoalescingDelay(60000);
+        int[] value = new int[1];
+        for (int i = 0; i < 5; i++) {
+            manager.addEdit(new ValueEdit(value, i, i + 1, 300));
+            value[0] = i + 1;
+        }
+        manager.undo();
+        assertEquals(value[0], 0);
+        assertFalse(manager.canUndo());
+        manager.redo();
+        assertEquals(value[0], 5);
+    }
+
+    @Test
+    public void testNoCoalescingAfterUndo() {
+        UndoRedoManager manager = new UndoRedoManager();
+        manager.setCoalescingDelay(60000);
+        int[] value = new int[1];
+        manager.addEdit(new ValueEdit(value, 0, 1, 300));
+        value[0] = 1;
+        manager.undo();
+        manager.addEdit(new ValueEdit(value, 0, 2, 300));
+        value[0] = 2;
+        manager.addEdit(new ValueEdit(value, 2, 3, 300));
+        value[0] = 3;
+        manager.undo();
+        assertEquals(value[0], 0);
+        assertFalse(manager.canUndo());
+    }
+
+    @Test
+    public void testEstimatedSizeIsKeptUpToDate() {
+        SummingUndoRedoManager manager = new SummingUndoRedoManager();
+        manager.setCoalescingDelay(0);
+        manager.setMemoryLimit(2000);
+        int[] value = new int[1];
+        for (int i = 0; i < 8; i++) {
+            manager.addEdit(new ValueEdit(value, i, i + 1, 100 + i * 50));
+            value[0] = i + 1;
+            assertEquals(manager.getEstimatedSize(), manager.sumEstimatedSizes());
+        }
+        manager.undo();
+        manager.undo();
+        assertEquals(manager.getEstimatedSize(), manager.sumEstimatedSizes());
+        // Discards the redoable edits
+        manager.addEdit(new ValueEdit(value, 6, 9, 700));
+        assertEquals(manager.getEstimatedSize(), manager.sumEstimatedSizes());
+        // Grows the last edit
+        manager.setCoalescingDelay(60000);
+        manager.addEdit(new ValueEdit(value, 9, 10, 400));
+        assertEquals(manager.getEstimatedSize(), manager.sumEstimatedSizes());
+        assertTrue(manager.getEstimatedSize() <= 2000);
+        manager.setLimit(2);
+        assertEquals(manager.getEstimatedSize(), manager.sumEstimatedSizes());
+        manager.setMemoryLimit(500);
+        assertEquals(manager.getEstimatedSize(), manager.sumEstimatedSizes());
+        manager.discardAllEdits();
+        assertEquals(manager.getEstimatedSize(), 0);
+    }
+
+    /**
+     * Sums up the estimated sizes of all edits.
+     */
+    private static class SummingUndoRedoManager extends UndoRedoManager {
+
+        private static final long serialVersionUID = 1L;
+
+        public synchronized long sumEstimatedSizes() {
+            long total = 0;
+            for (UndoableEdit edit : edits) {
+                total += estimateEditSize(edit);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Sets an element of an array. The size of an edit grows with the edits
+     * which are coalesced into it.
+     */
+    private static class ValueEdit extends AbstractUndoableEdit implements CoalescableEdit, SizedEdit {
+
+        private static final long serialVersionUID = 1L;
+        private final int[] target;
+        private final int oldValue;
+        private int newValue;
+        private long size;
+
+        public ValueEdit(int[] target, int oldValue, int newValue, long size) {
+            this.target = target;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.size = size;
+        }
+
+        @Override
+        public void undo() {
+            super.undo();
+            target[0] = oldValue;
+        }
+
+        @Override
+        public void redo() {
+            super.redo();
+            target[0] = newValue;
+        }
+
+        @Override
+        public boolean coalesce(UndoableEdit anEdit) {
+            if (anEdit instanceof ValueEdit && ((ValueEdit) anEdit).target == target) {
+                newValue = ((ValueEdit) anEdit).newValue;
+                size += ((ValueEdit) anEdit).size;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public long getEstimatedSize() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+/*
+ * @(#)BinaryDOMInput.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.xml;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * {@code BinaryDOMInput} reads an element tree which has been written by
+ * {@link BinaryDOMOutput}.
+ * <p>
+ * Since {@code DOMInput} allows to open the child elements of the current
+ * element in any order, the elements are read into a lightweight tree. The
+ * attribute values are kept as numbers, booleans and strings, so that numbers
+ * do not have to be parsed from text.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class BinaryDOMInput implements DOMInput {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * An element or a text in the tree.
+     */
+    private static class Node {
+
+        /**
+         * The name of the element, or null if this node is a text.
+         */
+        private final String tagName;
+        private final Node parent;
+        private String text;
+        private String[] names = NO_NAMES;
+        /**
+         * Holds String, Integer, Double, Float and Boolean objects.
+         */
+        private Object[] values = NO_VALUES;
+        private int attributeCount;
+        private ArrayList<Node> children;
+        /**
+         * Speeds up opening the children with the same name one after the
+         * other.
+         */
+        private String lastOpenedName;
+        private int lastOpenedIndex;
+        private int lastOpenedPosition = -1;
+        /**
+         * The number of child elements, or -1 if it has not been counted
+         * yet.
+         */
+        private int elementCount = -1;
+
+        public Node(String tagName, Node parent) {
+            this.tagName = tagName;
+            this.parent = parent;
+        }
+
+        public void addAttribute(String name, Object value) {
+            for (int i = 0; i < attributeCount; i++) {
+                if (names[i].equals(name)) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            if (attributeCount == names.length) {
+                names = Arrays.copyOf(names, attributeCount * 2 + 2);
+                values = Arrays.copyOf(values, attributeCount * 2 + 2);
+            }
+            names[attributeCount] = name;
+            values[attributeCount++] = value;
+        }
+
+        public Object getAttribute(String name) {
+            for (int i = 0; i < attributeCount; i++) {
+                if (names[i].equals(name)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        public void addChild(Node child) {
+            if (children == null) {
+                children = new ArrayList<Node>();
+            }
+            children.add(child);
+        }
+    }
+    private static final String[] NO_NAMES = new String[0];
+    private static final Object[] NO_VALUES = new Object[0];
+    /**
+     * This map is used to unmarshall references to objects.
+     */
+    private HashMap<Integer, Object> idobjects = new HashMap<Integer, Object>();
+    /**
+     * The root of the tree. This node is not an element.
+     */
+    private Node document;
+    /**
+     * The current node used for input.
+     */
+    private Node current;
+    private String doctype;
+    /**
+     * The factory used to create objects from tag names.
+     */
+    private DOMFactory factory;
+    private ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private ArrayList<String> strings;
+
+    /**
+     * Creates a new instance which reads from the specified channel.
+     * This method reads up to the end of the document, but does not close
+     * the channel.
+     */
+    public BinaryDOMInput(DOMFactory factory, ReadableByteChannel channel) throws IOException {
+        this.factory = factory;
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+        strings = new ArrayList<String>();
+        try {
+            readDocument();
+        } finally {
+            buffer = null;
+            strings = null;
+            this.channel = null;
+        }
+        current = document;
+    }
+
+    /**
+     * Creates a new instance which reads from the specified input stream.
+     */
+    public BinaryDOMInput(DOMFactory factory, InputStream in) throws IOException {
+        this(factory, Channels.newChannel(in));
+    }
+
+    /**
+     * Returns the doctype of the document, or null if the document has no
+     * doctype.
+     */
+    public String getDoctype() {
+        return doctype;
+    }
+
+    private void readDocument() throws IOException {
+        for (byte b : BinaryDOMOutput.MAGIC) {
+            if (readByte() != b) {
+                throw new IOException("Not a binary DOM document.");
+            }
+        }
+        int version = (int) readVarInt();
+        if (version != BinaryDOMOutput.VERSION) {
+            throw new IOException("Unsupported binary DOM version: " + version);
+        }
+        document = new Node(null, null);
+        Node node = document;
+        for (int type = readByte(); type != BinaryDOMOutput.END; type = readByte()) {
+            if (type == BinaryDOMOutput.OPEN) {
+                Node child = new Node(readString(), node);
+                node.addChild(child);
+                node = child;
+            } else if (type == BinaryDOMOutput.CLOSE) {
+                if (node == document) {
+                    throw new IOException("Too many closed elements.");
+                }
+                node = node.parent;
+            } else if (type == BinaryDOMOutput.TEXT) {
+                Node text = new Node(null, node);
+                text.text = readText();
+                node.addChild(text);
+            } else if (type == BinaryDOMOutput.DOCTYPE) {
+                doctype = readText();
+            } else {
+                String name = readString();
+                Object value;
+                if (type == BinaryDOMOutput.STRING) {
+                    value = readString();
+                } else if (type == BinaryDOMOutput.INT) {
+                    value = (int) readSignedVarInt();
+                } else if (type == BinaryDOMOutput.DECIMAL) {
+                    int scale = (int) readVarInt();
+                    if (scale > BinaryDOMOutput.MAX_DECIMAL_SCALE) {
+                        throw new IOException("Illegal decimal scale: " + scale);
+                    }
+                    value = readSignedVarInt() / BinaryDOMOutput.POWERS_OF_TEN[scale];
+                } else if (type == BinaryDOMOutput.DOUBLE) {
+                    ensureAvailable(8);
+                    value = buffer.getDouble();
+                } else if (type == BinaryDOMOutput.FLOAT) {
+                    ensureAvailable(4);
+                    value = buffer.getFloat();
+                } else if (type == BinaryDOMOutput.TRUE) {
+                    value = Boolean.TRUE;
+                } else if (type == BinaryDOMOutput.FALSE) {
+                    value = Boolean.FALSE;
+                } else {
+                    throw new IOException("Illegal record type: " + type);
+                }
+                if (node == document) {
+                    throw new IOException("Attribute outside of an element: " + name);
+                }
+                node.addAttribute(name, value);
+            }
+        }
+    }
+
+    private void ensureAvailable(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            buffer.compact();
+            while (buffer.position() < n) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Unexpected end of binary DOM document.");
+                }
+            }
+            buffer.flip();
+        }
+    }
+
+    private int readByte() throws IOException {
+        ensureAvailable(1);
+        return buffer.get() & 0xff;
+    }
+
+    private long readVarInt() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+    private long readSignedVarInt() throws IOException {
+        long value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private String readText() throws IOException {
+        int length = (int) readVarInt();
+        if (length <= buffer.capacity()) {
+            ensureAvailable(length);
+            String text = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return text;
+        }
+        byte[] bytes = new byte[length];
+        for (int off = 0; off < length;) {
+            ensureAvailable(1);
+            int len = Math.min(buffer.remaining(), length - off);
+            buffer.get(bytes, off, len);
+            off += len;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private String readString() throws IOException {
+        int index = (int) readVarInt();
+        if (index == 0) {
+            String str = readText();
+            strings.add(str);
+            return str;
+        }
+        if (index > strings.size()) {
+            throw new IOException("Illegal string index: " + index);
+        }
+        return strings.get(index - 1);
+    }
+
+    /**
+     * Returns the tag name of the current element.
+     */
+    @Override
+    public String getTagName() {
+        return current.tagName;
+    }
+
+    private static String toString(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            // Remove the awkard .0 at the end of each number, like
+            // JavaxDOMOutput does
+            String str = value.toString();
+            return str.endsWith(".0") ? str.substring(0, str.length() - 2) : str;
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Gets an attribute of the current element.
+     */
+    @Override
+    public String getAttribute(String name, String defaultValue) {
+        Object value = current.getAttribute(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        String str = toString(value);
+        return (str.length() == 0) ? defaultValue : str;
+    }
+
+    /**
+     * Gets the text of the current element.
+     */
+    @Override
+    public String getText() {
+        return getText(null);
+    }
+
+    /**
+     * Gets the text of the current element.
+     */
+    @Override
+    public String getText(String defaultValue) {
+        if (current.children == null) {
+            return defaultValue;
+        }
+        StringBuilder buf = new StringBuilder();
+        getText(current, buf);
+        return buf.toString();
+    }
+
+    private static void getText(Node n, StringBuilder buf) {
+        if (n.text != null) {
+            buf.append(n.text);
+        }
+        if (n.children != null) {
+            for (Node child : n.children) {
+                getText(child, buf);
+            }
+        }
+    }
+
+    /**
+     * Gets an attribute of the current element and of all parent elements.
+     */
+    @Override
+    public java.util.List<String> getInheritedAttribute(String name) {
+        LinkedList<String> values = new LinkedList<String>();
+        for (Node node = current; node != document; node = node.parent) {
+            Object value = node.getAttribute(name);
+            values.addFirst(value == null ? "" : toString(value));
+        }
+        return values;
+    }
+
+    /**
+     * Gets an attribute of the current element.
+     */
+    @Override
+    public int getAttribute(String name, int defaultValue) {
+        Object value = current.getAttribute(name);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        String str = (value == null) ? "" : toString(value);
+        return (str.length() == 0) ? defaultValue : Long.decode(str).intValue();
+    }
+
+    /**
+     * Gets an attribute of the current element.
+     */
+    @Override
+    public double getAttribute(String name, double defaultValue) {
+        Object value = current.getAttribute(name);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        String str = (value == null) ? "" : toString(value);
+        return (str.length() == 0) ? defaultValue : Double.parseDouble(str);
+    }
+
+    /**
+     * Gets an attribute of the current element.
+     */
+    @Override
+    public boolean getAttribute(String name, boolean defaultValue) {
+        Object value = current.getAttribute(name);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        String str = (value == null) ? "" : toString(value);
+        return (str.length() == 0) ? defaultValue : Boolean.valueOf(str).booleanValue();
+    }
+
+    /**
+     * Returns the number of child elements of the current element.
+     */
+    @Override
+    public int getElementCount() {
+        if (current.elementCount < 0) {
+            int count = 0;
+            if (current.children != null) {
+                for (Node node : current.children) {
+                    if (node.tagName != null) {
+                        count++;
+                    }
+                }
+            }
+            current.elementCount = count;
+        }
+        return current.elementCount;
+    }
+
+    /**
+     * Returns the number of child elements with the specified tag name
+     * of the current element.
+     */
+    @Override
+    public int getElementCount(String tagName) {
+        int count = 0;
+        if (current.children != null) {
+            for (Node node : current.children) {
+                if (tagName.equals(node.tagName)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Opens the element with the specified index and makes it the current node.
+     */
+    @Override
+    public void openElement(int index) {
+        findElement(null, index);
+    }
+
+    /**
+     * Opens the last element with the specified name and makes it the current node.
+     */
+    @Override
+    public void openElement(String tagName) {
+        if (!findElement(tagName, 0)) {
+            throw new IllegalArgumentException("element not found:" + tagName);
+        }
+    }
+
+    /**
+     * Opens the element with the specified name and index and makes it the
+     * current node.
+     */
+    @Override
+    public void openElement(String tagName, int index) {
+        if (!findElement(tagName, index)) {
+            throw new IllegalArgumentException("no such child " + tagName + "[" + index + "]");
+        }
+    }
+
+    /**
+     * Opens the child element with the specified name and index, and makes
+     * it the current node.
+     *
+     * @param tagName the name of the element, or null for any element
+     * @return true if the element has been found
+     */
+    private boolean findElement(String tagName, int index) {
+        Node node = current;
+        if (node.children == null) {
+            return false;
+        }
+        int count = 0;
+        int start = 0;
+        if (node.lastOpenedPosition >= 0 && index > node.lastOpenedIndex
+                && Objects.equals(tagName, node.lastOpenedName)) {
+            count = node.lastOpenedIndex + 1;
+            start = node.lastOpenedPosition + 1;
+        }
+        for (int i = start, n = node.children.size(); i < n; i++) {
+            Node child = node.children.get(i);
+            if (child.tagName != null
+                    && (tagName == null || tagName.equals(child.tagName))) {
+                if (count++ == index) {
+                    node.lastOpenedName = tagName;
+                    node.lastOpenedIndex = index;
+                    node.lastOpenedPosition = i;
+                    current = child;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes the current element.
+     * The parent of the current element becomes the current element.
+     */
+    @Override
+    public void closeElement() {
+        current = current.parent;
+    }
+
+    /**
+     * Reads an object from the current element.
+     */
+    @Override
+    public Object readObject() throws IOException {
+        return readObject(0);
+    }
+
+    /**
+     * Reads an object from the current element.
+     */
+    @Override
+    public Object readObject(int index) throws IOException {
+        if (!findElement(null, index)) {
+            throw new IOException("no such child [" + index + "]");
+        }
+        Object o;
+        Object ref = current.getAttribute("ref");
+        Object id = current.getAttribute("id");
+        if (ref != null && id != null) {
+            throw new IOException("Element has both an id and a ref attribute: <" + getTagName() + " id=" + id + " ref=" + ref + ">");
+        }
+        if (id != null && idobjects.containsKey(id)) {
+            throw new IOException("Duplicate id attribute: <" + getTagName() + " id=" + id + ">");
+        }
+        if (ref != null && !idobjects.containsKey(ref)) {
+            throw new IOException("Illegal ref attribute value: <" + getTagName() + " ref=" + ref + ">");
+        }
+        // Keep track of objects which have an ID
+        if (ref != null) {
+            o = idobjects.get(ref);
+        } else {
+            o = factory.read(this);
+            if (id instanceof Integer) {
+                idobjects.put((Integer) id, o);
+            }
+            if (o instanceof DOMStorable) {
+                ((DOMStorable) o).read(this);
+            }
+        }
+        closeElement();
+        return o;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * @(#)BinaryDOMOutput.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.xml;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * {@code BinaryDOMOutput} writes the element tree of a {@code DOMOutput} in a
+ * compact binary encoding directly to a channel, without building a DOM
+ * document in memory.
+ * <p>
+ * The encoding starts with the magic bytes {@code "JHDB"} and a version
+ * number, followed by a sequence of records. Each record starts with a
+ * record type byte:
+ * <ul>
+ * <li>{@code OPEN name} opens an element.</li>
+ * <li>{@code CLOSE} closes the current element.</li>
+ * <li>{@code STRING name value}, {@code INT name value},
+ * {@code DECIMAL name scale value}, {@code DOUBLE name value},
+ * {@code FLOAT name value}, {@code TRUE name}, {@code FALSE name} add an
+ * attribute to the current element.</li>
+ * <li>{@code TEXT text} adds text to the current element.</li>
+ * <li>{@code DOCTYPE text} sets the doctype.</li>
+ * <li>{@code END} ends the document.</li>
+ * </ul>
+ * Element names, attribute names and string values are written into a
+ * string table: the first occurrence of a string is written as 0 followed by
+ * the UTF-8 encoded string, later occurrences are written as the index of the
+ * string in the table plus one. Since the element names of objects are
+ * provided by the {@link DOMFactory}, the type of a figure is written as a
+ * small integer after its first occurrence.
+ * <p>
+ * Integers and lengths are written as variable length quantities with 7 bits
+ * per byte. Signed values are zig-zag encoded. A double which has at most
+ * {@value #MAX_DECIMAL_SCALE} decimal places, as it is typical for the
+ * coordinates of a figure, is written as a variable length integer with a
+ * decimal scale. All other doubles are written with 8 bytes.
+ * <p>
+ * {@code DOMOutput} methods can not throw an {@code IOException}. If writing
+ * to the channel fails, the exception is thrown by the next call to
+ * {@link #writeObject} or {@link #finish}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class BinaryDOMOutput implements DOMOutput {
+
+    static final byte[] MAGIC = {'J', 'H', 'D', 'B'};
+    static final int VERSION = 1;
+    static final int END = 0;
+    static final int OPEN = 1;
+    static final int CLOSE = 2;
+    static final int STRING = 3;
+    static final int INT = 4;
+    static final int DECIMAL = 5;
+    static final int DOUBLE = 6;
+    static final int FLOAT = 7;
+    static final int TRUE = 8;
+    static final int FALSE = 9;
+    static final int TEXT = 10;
+    static final int DOCTYPE = 11;
+    static final int MAX_DECIMAL_SCALE = 6;
+    static final double[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+    /**
+     * Doubles with a larger magnitude are not scaled, because they can not
+     * be represented exactly by a long.
+     */
+    private static final double MAX_SCALED_VALUE = 1L << 53;
+    private static final int BUFFER_SIZE = 65536;
+    /**
+     * The channel used for output.
+     */
+    private WritableByteChannel channel;
+    private ByteBuffer buffer;
+    /**
+     * Maps the strings which have been written to their index in the string
+     * table.
+     */
+    private HashMap<String, Integer> strings;
+    /**
+     * This map is used to marshall references to objects.
+     */
+    private HashMap<Object, Integer> objectids;
+    /**
+     * This map is used to cache prototype objects.
+     */
+    private HashMap<String, Object> prototypes;
+    /**
+     * The names of the open elements.
+     */
+    private ArrayList<String> openElements;
+    /**
+     * The first exception which occurred while writing to the channel.
+     */
+    private IOException error;
+    /**
+     * The factory used to create objects.
+     */
+    private DOMFactory factory;
+
+    /**
+     * Creates a new instance which writes to the specified channel.
+     */
+    public BinaryDOMOutput(DOMFactory factory, WritableByteChannel channel) {
+        this.factory = factory;
+        this.channel = channel;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        strings = new HashMap<String, Integer>();
+        objectids = new HashMap<Object, Integer>();
+        openElements = new ArrayList<String>();
+        buffer.put(MAGIC);
+        writeVarInt(VERSION);
+    }
+
+    /**
+     * Creates a new instance which writes to the specified output stream.
+     */
+    public BinaryDOMOutput(DOMFactory factory, OutputStream out) {
+        this(factory, Channels.newChannel(out));
+    }
+
+    /**
+     * Writes the end of the document and the buffered data to the channel.
+     * This method does not close the channel.
+     */
+    public void finish() throws IOException {
+        ensureCapacity(1);
+        buffer.put((byte) END);
+        flush();
+    }
+
+    /**
+     * Writes the buffered data to the channel.
+     */
+    public void flush() throws IOException {
+        if (error == null) {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        buffer.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (buffer.remaining() < n) {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining() && error == null) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            buffer.clear();
+        }
+    }
+
+    private void writeVarInt(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void writeSignedVarInt(long value) {
+        writeVarInt((value << 1) ^ (value >> 63));
+    }
+
+    private void writeText(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        for (int off = 0; off < bytes.length;) {
+            ensureCapacity(1);
+            int len = Math.min(buffer.remaining(), bytes.length - off);
+            buffer.put(bytes, off, len);
+            off += len;
+        }
+    }
+
+    private void writeString(String str) {
+        Integer index = strings.get(str);
+        if (index == null) {
+            strings.put(str, strings.size());
+            writeVarInt(0);
+            writeText(str);
+        } else {
+            writeVarInt(index + 1);
+        }
+    }
+
+    private void writeRecord(int type, String name) {
+        ensureCapacity(1);
+        buffer.put((byte) type);
+        writeString(name);
+    }
+
+    @Override
+    public void setDoctype(String doctype) {
+        ensureCapacity(1);
+        buffer.put((byte) DOCTYPE);
+        writeText(doctype);
+    }
+
+    @Override
+    public void openElement(String tagName) {
+        writeRecord(OPEN, tagName);
+        openElements.add(tagName);
+    }
+
+    @Override
+    public void closeElement() {
+        ensureCapacity(1);
+        buffer.put((byte) CLOSE);
+        openElements.remove(openElements.size() - 1);
+    }
+
+    /**
+     * Comments are not written by this output.
+     */
+    @Override
+    public void addComment(String comment) {
+    }
+
+    @Override
+    public void addText(String text) {
+        ensureCapacity(1);
+        buffer.put((byte) TEXT);
+        writeText(text);
+    }
+
+    @Override
+    public void addAttribute(String name, String value) {
+        if (value != null) {
+            writeRecord(STRING, name);
+            writeString(value);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, String value, String defaultValue) {
+        if (!value.equals(defaultValue)) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, int value) {
+        writeRecord(INT, name);
+        writeSignedVarInt(value);
+    }
+
+    @Override
+    public void addAttribute(String name, int value, int defaultValue) {
+        if (value != defaultValue) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, boolean value) {
+        writeRecord(value ? TRUE : FALSE, name);
+    }
+
+    @Override
+    public void addAttribute(String name, boolean value, boolean defaultValue) {
+        if (value != defaultValue) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, float value) {
+        writeRecord(FLOAT, name);
+        ensureCapacity(4);
+        buffer.putFloat(value);
+    }
+
+    @Override
+    public void addAttribute(String name, float value, float defaultValue) {
+        if (value != defaultValue) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, double value) {
+        if (Math.abs(value) < MAX_SCALED_VALUE
+                && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0d)) {
+            for (int scale = 0; scale <= MAX_DECIMAL_SCALE; scale++) {
+                double scaled = Math.rint(value * POWERS_OF_TEN[scale]);
+                if (Math.abs(scaled) >= MAX_SCALED_VALUE) {
+                    break;
+                }
+                if (scaled / POWERS_OF_TEN[scale] == value) {
+                    writeRecord(DECIMAL, name);
+                    writeVarInt(scale);
+                    writeSignedVarInt((long) scaled);
+                    return;
+                }
+            }
+        }
+        writeRecord(DOUBLE, name);
+        ensureCapacity(8);
+        buffer.putDouble(value);
+    }
+
+    @Override
+    public void addAttribute(String name, double value, double defaultValue) {
+        if (value != defaultValue) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void writeObject(Object o) throws IOException {
+        String tagName = factory.getName(o);
+        if (tagName == null) {
+            throw new IllegalArgumentException("no tag name for:" + o);
+        }
+        openElement(tagName);
+        Integer ref = objectids.get(o);
+        if (ref != null) {
+            addAttribute("ref", ref);
+        } else {
+            int id = objectids.size();
+            objectids.put(o, id);
+            addAttribute("id", id);
+            factory.write(this, o);
+        }
+        closeElement();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public Object getPrototype() {
+        if (prototypes == null) {
+            prototypes = new HashMap<String, Object>();
+        }
+        String name = openElements.get(openElements.size() - 1);
+        if (!prototypes.containsKey(name)) {
+            prototypes.put(name, factory.create(name));
+        }
+        return prototypes.get(name);
+    }
+}
@@ -86,6 +86,19 @@ public interface DOMInput {
      */
     public int getElementCount(String tagName);
 
+    /**
+     * Returns true if the current element has a child element with the
+     * specified index.
+     * <p>
+     * Unlike {@link #getElementCount()}, this method does not need to know
+     * all child elements. Loop with this method over the children of an
+     * element, so that a streaming implementation can read the children
+     * one after the other.
+     */
+    public default boolean hasElement(int index) {
+        return index < getElementCount();
+    }
+
     /**
      * Opens the element with the specified index and makes it the current node.
      */
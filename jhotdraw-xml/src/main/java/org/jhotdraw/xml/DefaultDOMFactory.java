@@ -7,25 +7,65 @@
  */
 package org.jhotdraw.xml;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * {@code DefaultDOMFactory} can be used to serialize DOMStorable objects in a
  * DOM with the use of a mapping between Java class names and DOM element names.
+ * <p>
+ * For each element name, the factory holds a {@code Supplier} which creates
+ * the objects. Suppliers for storable classes and prototypes are built once
+ * from method handles, when the class or the prototype is added, so that
+ * creating an object does not need reflection.
+ * <p>
+ * The mappings belong to the factory instance. The factory can be used
+ * concurrently by multiple threads, also while mappings are being added.
  *
  * @author Werner Randelshofer.
  * @version $Id$
  */
 public class DefaultDOMFactory extends JavaPrimitivesDOMFactory {
 
-    private static final HashMap<Class<?>, String> CLASS_TO_NAME = new HashMap<Class<?>, String>();
-    private static final HashMap<String, Object> NAME_TO_PROTOTYPE = new HashMap<String, Object>();
-    private static final HashMap<Class<?>, String> ENUM_TO_NAME = new HashMap<Class<?>, String>();
-    private static final HashMap<String, Class<?>> NAME_TO_ENUM = new HashMap<String, Class<?>>();
+    private static final MethodType CREATE_TYPE = MethodType.methodType(Object.class);
+    private final ConcurrentHashMap<Class<?>, String> classToName = new ConcurrentHashMap<Class<?>, String>();
+    private final ConcurrentHashMap<String, Supplier<?>> nameToSupplier = new ConcurrentHashMap<String, Supplier<?>>();
+    private final ConcurrentHashMap<Class<?>, String> enumToName = new ConcurrentHashMap<Class<?>, String>();
+    private final ConcurrentHashMap<String, Class<?>> nameToEnum = new ConcurrentHashMap<String, Class<?>>();
     @SuppressWarnings("rawtypes")
-    private static final HashMap<Enum, String> ENUM_TO_VALUE = new HashMap<Enum, String>();
+    private final ConcurrentHashMap<Enum, String> enumToValue = new ConcurrentHashMap<Enum, String>();
+    /**
+     * Maps an enum name to the values of the enum constants. The pools are
+     * built on demand. A pool is only used, if it has been built with the
+     * current enum version.
+     */
+    private final ConcurrentHashMap<String, EnumPool> enumPools = new ConcurrentHashMap<String, EnumPool>();
+    /**
+     * The enum version is incremented after an enum mapping has been added.
+     */
+    private final AtomicInteger enumVersion = new AtomicInteger();
+
+    /**
+     * Maps the values of an enum to its constants.
+     */
     @SuppressWarnings("rawtypes")
-    private static final HashMap<String, Set<Enum>> VALUE_TO_ENUM = new HashMap<String, Set<Enum>>();
+    private static class EnumPool {
+
+        /**
+         * The enum version at the time before the pool was built.
+         */
+        private final int version;
+        private final HashMap<String, Enum> values = new HashMap<String, Enum>();
+
+        EnumPool(int version) {
+            this.version = version;
+        }
+    }
 
     /**
      * Creates a new instance.
@@ -35,42 +75,106 @@ public class DefaultDOMFactory extends JavaPrimitivesDOMFactory {
 
     /**
      * Adds a DOMStorable class to the DOMFactory.
+     * The objects are created with the public no-argument constructor of the
+     * class.
      */
     public void addStorableClass(String name, Class<?> c) {
-        NAME_TO_PROTOTYPE.put(name, c);
-        CLASS_TO_NAME.put(c, name);
+        String errorMessage = "Storable class not instantiable by factory: " + name;
+        Supplier<?> supplier;
+        try {
+            supplier = createSupplier(MethodHandles.publicLookup()
+                    .findConstructor(c, MethodType.methodType(void.class)), errorMessage);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            supplier = createFailingSupplier(errorMessage, e);
+        }
+        nameToSupplier.put(name, supplier);
+        classToName.put(c, name);
+    }
+
+    /**
+     * Adds a DOMStorable class to the DOMFactory, which creates its objects
+     * with the specified supplier.
+     */
+    public <T> void addStorableClass(String name, Class<T> c, Supplier<? extends T> supplier) {
+        nameToSupplier.put(name, supplier);
+        classToName.put(c, name);
     }
 
     /**
      * Adds a DOMStorable prototype to the DOMFactory.
+     * The objects are created by cloning the prototype with its public
+     * {@code clone} method.
      */
     public void addStorable(String name, DOMStorable prototype) {
-        NAME_TO_PROTOTYPE.put(name, prototype);
-        CLASS_TO_NAME.put(prototype.getClass(), name);
+        String errorMessage = "Storable prototype not cloneable by factory. Name: " + name;
+        Supplier<?> supplier;
+        try {
+            supplier = createSupplier(MethodHandles.publicLookup()
+                    .unreflect(prototype.getClass().getMethod("clone"))
+                    .bindTo(prototype), errorMessage);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            supplier = createFailingSupplier(errorMessage, e);
+        }
+        nameToSupplier.put(name, supplier);
+        classToName.put(prototype.getClass(), name);
+    }
+
+    /**
+     * Creates a supplier which invokes the specified method handle.
+     *
+     * @param handle a method handle without parameters, which returns an
+     * object.
+     * @param errorMessage the message of the exception which is thrown, if
+     * the method handle fails.
+     */
+    private static Supplier<Object> createSupplier(MethodHandle handle, final String errorMessage) {
+        final MethodHandle create = handle.asType(CREATE_TYPE);
+        return new Supplier<Object>() {
+            @Override
+            public Object get() {
+                try {
+                    return (Object) create.invokeExact();
+                } catch (Throwable e) {
+                    throw createError(errorMessage, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a supplier which always fails, because the method handle for
+     * creating the objects could not be found.
+     */
+    private static Supplier<Object> createFailingSupplier(final String errorMessage, final Exception cause) {
+        return new Supplier<Object>() {
+            @Override
+            public Object get() {
+                throw createError(errorMessage, cause);
+            }
+        };
+    }
+
+    private static IllegalArgumentException createError(String message, Throwable cause) {
+        IllegalArgumentException error = new IllegalArgumentException(message);
+        error.initCause(cause);
+        return error;
     }
 
     /**
      * Adds an Enum class to the DOMFactory.
      */
     public void addEnumClass(String name, Class<?> c) {
-        ENUM_TO_NAME.put(c, name);
-        NAME_TO_ENUM.put(name, c);
+        enumToName.put(c, name);
+        nameToEnum.put(name, c);
+        enumVersion.incrementAndGet();
     }
 
     /**
      * Adds an Enum value to the DOMFactory.
      */
-    @SuppressWarnings("rawtypes")
     public <T extends Enum<T>> void addEnum(String value, Enum<T> e) {
-        ENUM_TO_VALUE.put(e, value);
-        Set<Enum> enums;
-        if (VALUE_TO_ENUM.containsKey(value)) {
-            enums = VALUE_TO_ENUM.get(value);
-        } else {
-            enums = new HashSet<Enum>();
-            VALUE_TO_ENUM.put(value, enums);
-        }
-        enums.add(e);
+        enumToValue.put(e, value);
+        enumVersion.incrementAndGet();
     }
 
     /**
@@ -78,33 +182,16 @@ public class DefaultDOMFactory extends JavaPrimitivesDOMFactory {
      */
     @Override
     public Object create(String name) {
-        Object o = NAME_TO_PROTOTYPE.get(name);
-        if (o == null) {
+        Supplier<?> supplier = nameToSupplier.get(name);
+        if (supplier == null) {
             throw new IllegalArgumentException("Storable name not known to factory: " + name);
         }
-        if (o instanceof Class<?>) {
-            try {
-                return ((Class<?>) o).newInstance();
-            } catch (Exception e) {
-                IllegalArgumentException error = new IllegalArgumentException("Storable class not instantiable by factory: " + name);
-                error.initCause(e);
-                throw error;
-            }
-        } else {
-            try {
-                return o.getClass().getMethod("clone", (Class<?>[]) null).
-                        invoke(o, (Object[]) null);
-            } catch (Exception e) {
-                IllegalArgumentException error = new IllegalArgumentException("Storable prototype not cloneable by factory. Name: " + name);
-                error.initCause(e);
-                throw error;
-            }
-        }
+        return supplier.get();
     }
 
     @Override
     public String getName(Object o) {
-        String name = (o == null) ? null : CLASS_TO_NAME.get(o.getClass());
+        String name = (o == null) ? null : classToName.get(o.getClass());
         if (name == null) {
             name = super.getName(o);
         }
@@ -117,7 +204,7 @@ public class DefaultDOMFactory extends JavaPrimitivesDOMFactory {
     @SuppressWarnings("rawtypes")
     @Override
     protected String getEnumName(Enum e) {
-        String name = ENUM_TO_NAME.get(e.getClass());
+        String name = enumToName.get(e.getClass());
         if (name == null) {
             throw new IllegalArgumentException("Enum class not known to factory:" + e.getClass());
         }
@@ -127,25 +214,40 @@ public class DefaultDOMFactory extends JavaPrimitivesDOMFactory {
     @SuppressWarnings("rawtypes")
     @Override
     protected String getEnumValue(Enum e) {
-        return (ENUM_TO_VALUE.containsKey(e)) ? ENUM_TO_VALUE.get(e) : e.toString();
+        String value = enumToValue.get(e);
+        return (value != null) ? value : e.toString();
     }
 
     @SuppressWarnings({"unchecked", "rawtypes"})
     @Override
     protected <T extends Enum<T>> Enum<T> createEnum(String name, String value) {
-        Class<T> enumClass = (Class<T>) NAME_TO_ENUM.get(name);
-        if (enumClass == null) {
-            throw new IllegalArgumentException("Enum name not known to factory:" + name);
-        }
-        Set<Enum> enums = VALUE_TO_ENUM.get(value);
-        if (enums == null) {
-            return Enum.valueOf(enumClass, value);
-        }
-        for (Enum e : enums) {
-            if (e.getClass() == enumClass) {
-                return e;
+        int version = enumVersion.get();
+        EnumPool pool = enumPools.get(name);
+        if (pool == null || pool.version != version) {
+            // The mappings are read after the version, so that the pool holds
+            // at least all mappings of this version. If a pool with an older
+            // version is put into the map by another thread, it is rebuilt
+            // on the next call.
+            Class<T> enumClass = (Class<T>) nameToEnum.get(name);
+            if (enumClass == null) {
+                throw new IllegalArgumentException("Enum name not known to factory:" + name);
+            }
+            pool = new EnumPool(version);
+            for (T e : enumClass.getEnumConstants()) {
+                pool.values.put(e.name(), e);
             }
+            for (T e : enumClass.getEnumConstants()) {
+                String customValue = enumToValue.get(e);
+                if (customValue != null) {
+                    pool.values.put(customValue, e);
+                }
+            }
+            enumPools.put(name, pool);
+        }
+        Enum e = pool.values.get(value);
+        if (e == null) {
+            throw new IllegalArgumentException("Enum value not known to factory:" + value);
         }
-        throw new IllegalArgumentException("Enum value not known to factory:" + value);
+        return e;
     }
 }
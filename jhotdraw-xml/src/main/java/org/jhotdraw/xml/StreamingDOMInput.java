@@ -0,0 +1,537 @@
+/*
+ * @(#)StreamingDOMInput.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.xml;
+
+import java.io.*;
+import java.util.*;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * {@code StreamingDOMInput} reads XML with a StAX {@code XMLStreamReader}
+ * while the objects are being read, instead of parsing the whole document
+ * into a DOM first like {@link JavaxDOMInput}.
+ * <p>
+ * The input only reads ahead as far as a request needs it. Opening the
+ * next child element, or checking for it with {@link #hasElement}, only reads
+ * the start tag of that element. Requests which need to know all children of
+ * the current element, like {@link #getElementCount()}, {@link #getText()} or
+ * opening a child by name, read the remaining children of the current element
+ * into a lightweight buffer.
+ * <p>
+ * A child element which has been opened before its content was read, is
+ * discarded when it is closed. Such an element can not be opened again.
+ * Therefore, when the children of an element are read one after the other,
+ * for example with {@link #readObject(int)} in a loop over
+ * {@link #hasElement}, only one child is held in memory at a time.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class StreamingDOMInput implements DOMInput {
+
+    /**
+     * An element or a text.
+     */
+    private static class Node {
+
+        /**
+         * The name of the element, or null if this node is a text.
+         */
+        private final String tagName;
+        private final Node parent;
+        private String text;
+        private String[] attributes;
+        /**
+         * The child elements and texts.
+         */
+        private ArrayList<Node> children;
+        /**
+         * The child elements.
+         */
+        private ArrayList<Node> elements;
+        /**
+         * True, when the end tag of the element has been read.
+         */
+        private boolean isComplete;
+        /**
+         * The last child element, if its end tag has not been read yet.
+         */
+        private Node pendingChild;
+        /**
+         * True, if the element has been opened before its content was read.
+         */
+        private boolean isStreamed;
+        private boolean isDiscarded;
+
+        public Node(String tagName, Node parent) {
+            this.tagName = tagName;
+            this.parent = parent;
+        }
+
+        public String getAttribute(String name) {
+            if (attributes != null) {
+                for (int i = 0; i < attributes.length; i += 2) {
+                    if (attributes[i].equals(name)) {
+                        return attributes[i + 1];
+                    }
+                }
+            }
+            return "";
+        }
+
+        public void addChild(Node child) {
+            if (children == null) {
+                children = new ArrayList<Node>();
+            }
+            children.add(child);
+            if (child.tagName != null) {
+                if (elements == null) {
+                    elements = new ArrayList<Node>();
+                }
+                elements.add(child);
+            }
+        }
+
+        public int getElementCount() {
+            return elements == null ? 0 : elements.size();
+        }
+    }
+    /**
+     * This map is used to unmarshall references to objects to
+     * the XML DOM. A key in this map is a String representing a marshalled
+     * reference. A value in this map is an unmarshalled Object.
+     */
+    private HashMap<String, Object> idobjects = new HashMap<String, Object>();
+    /**
+     * The root of the tree. This node is not an element.
+     */
+    private Node document;
+    /**
+     * The current node used for input.
+     */
+    private Node current;
+    /**
+     * The factory used to create objects from XML tag names.
+     */
+    private DOMFactory factory;
+    private XMLStreamReader reader;
+
+    public StreamingDOMInput(DOMFactory factory, InputStream in) throws IOException {
+        this.factory = factory;
+        try {
+            reader = createInputFactory().createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        }
+        document = new Node(null, null);
+        current = document;
+    }
+
+    public StreamingDOMInput(DOMFactory factory, Reader in) throws IOException {
+        this.factory = factory;
+        try {
+            reader = createInputFactory().createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        }
+        document = new Node(null, null);
+        current = document;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        return inputFactory;
+    }
+
+    private static IOException toIOException(XMLStreamException e) {
+        IOException error = new IOException(e.getMessage());
+        error.initCause(e);
+        return error;
+    }
+
+    /**
+     * {@code DOMInput} methods which do not throw an {@code IOException}
+     * report read errors with this exception.
+     */
+    private static IllegalStateException toIllegalStateException(IOException e) {
+        IllegalStateException error = new IllegalStateException(e.getMessage());
+        error.initCause(e);
+        return error;
+    }
+
+    /**
+     * Reads the next child of the specified node. If the child is an
+     * element, only its start tag is read.
+     *
+     * @return false if the end tag of the node has been read
+     */
+    private boolean readChild(Node node) throws IOException {
+        if (node.isComplete) {
+            return false;
+        }
+        if (node.pendingChild != null) {
+            // The content of the previous child must be read first
+            readAll(node.pendingChild);
+            node.pendingChild = null;
+        }
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    Node child = new Node(getName(reader.getPrefix(), reader.getLocalName()), node);
+                    int n = reader.getAttributeCount();
+                    if (n > 0) {
+                        child.attributes = new String[n * 2];
+                        for (int i = 0; i < n; i++) {
+                            child.attributes[i * 2] = getName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+                            child.attributes[i * 2 + 1] = reader.getAttributeValue(i);
+                        }
+                    }
+                    node.addChild(child);
+                    node.pendingChild = child;
+                    return true;
+                } else if (event == XMLStreamConstants.END_ELEMENT
+                        || event == XMLStreamConstants.END_DOCUMENT) {
+                    node.isComplete = true;
+                    return false;
+                } else if (event == XMLStreamConstants.CHARACTERS
+                        || event == XMLStreamConstants.CDATA
+                        || event == XMLStreamConstants.SPACE) {
+                    if (node != document) {
+                        Node text = new Node(null, node);
+                        text.text = reader.getText();
+                        node.addChild(text);
+                        return true;
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        }
+        node.isComplete = true;
+        return false;
+    }
+
+    private static String getName(String prefix, String localName) {
+        return (prefix == null || prefix.isEmpty()) ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * Reads the remaining content of the specified node.
+     */
+    private void readAll(Node node) throws IOException {
+        while (readChild(node)) {
+        }
+    }
+
+    /**
+     * Reads the children of the specified node until it has the specified
+     * number of child elements, or until its end tag has been read.
+     */
+    private void readElements(Node node, int count) {
+        try {
+            while (node.getElementCount() < count && readChild(node)) {
+            }
+        } catch (IOException e) {
+            throw toIllegalStateException(e);
+        }
+    }
+
+    /**
+     * Skips the remaining content of the specified node.
+     */
+    private void skip(Node node) throws IOException {
+        if (node.isComplete) {
+            return;
+        }
+        if (node.pendingChild != null) {
+            skip(node.pendingChild);
+            node.pendingChild = null;
+        }
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth-- == 0) {
+                        break;
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw toIOException(e);
+        }
+        node.isComplete = true;
+    }
+
+    /**
+     * Returns the tag name of the current element.
+     */
+    @Override
+    public String getTagName() {
+        return current.tagName;
+    }
+
+    /**
+     * Gets an attribute of the current element of the DOM Document.
+     */
+    @Override
+    public String getAttribute(String name, String defaultValue) {
+        String value = current.getAttribute(name);
+        return (value.length() == 0) ? defaultValue : value;
+    }
+
+    /**
+     * Gets the text of the current element of the DOM Document.
+     */
+    @Override
+    public String getText() {
+        return getText(null);
+    }
+
+    /**
+     * Gets the text of the current element of the DOM Document.
+     */
+    @Override
+    public String getText(String defaultValue) {
+        try {
+            readAll(current);
+        } catch (IOException e) {
+            throw toIllegalStateException(e);
+        }
+        if (current.children == null) {
+            return defaultValue;
+        }
+        StringBuilder buf = new StringBuilder();
+        getText(current, buf);
+        return buf.toString();
+    }
+
+    private static void getText(Node n, StringBuilder buf) {
+        if (n.text != null) {
+            buf.append(n.text);
+        }
+        if (n.children != null) {
+            for (Node child : n.children) {
+                getText(child, buf);
+            }
+        }
+    }
+
+    /**
+     * Gets an attribute of the current element of the DOM Document and of
+     * all parent DOM elements.
+     */
+    @Override
+    public java.util.List<String> getInheritedAttribute(String name) {
+        LinkedList<String> values = new LinkedList<String>();
+        for (Node node = current; node != document; node = node.parent) {
+            values.addFirst(node.getAttribute(name));
+        }
+        return values;
+    }
+
+    /**
+     * Gets an attribute of the current element of the DOM Document.
+     */
+    @Override
+    public int getAttribute(String name, int defaultValue) {
+        String value = current.getAttribute(name);
+        return (value.length() == 0) ? defaultValue : Long.decode(value).intValue();
+    }
+
+    /**
+     * Gets an attribute of the current element of the DOM Document.
+     */
+    @Override
+    public double getAttribute(String name, double defaultValue) {
+        String value = current.getAttribute(name);
+        return (value.length() == 0) ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * Gets an attribute of the current element of the DOM Document.
+     */
+    @Override
+    public boolean getAttribute(String name, boolean defaultValue) {
+        String value = current.getAttribute(name);
+        return (value.length() == 0) ? defaultValue : Boolean.valueOf(value).booleanValue();
+    }
+
+    /**
+     * Returns the number of child elements of the current element.
+     * This method reads all remaining children of the current element.
+     */
+    @Override
+    public int getElementCount() {
+        readElements(current, Integer.MAX_VALUE);
+        return current.getElementCount();
+    }
+
+    /**
+     * Returns the number of child elements with the specified tag name
+     * of the current element.
+     * This method reads all remaining children of the current element.
+     */
+    @Override
+    public int getElementCount(String tagName) {
+        readElements(current, Integer.MAX_VALUE);
+        int count = 0;
+        for (int i = 0, n = current.getElementCount(); i < n; i++) {
+            if (current.elements.get(i).tagName.equals(tagName)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns true if the current element has a child element with the
+     * specified index. This method reads ahead at most up to the start tag
+     * of that element.
+     */
+    @Override
+    public boolean hasElement(int index) {
+        readElements(current, index + 1);
+        return index < current.getElementCount();
+    }
+
+    /**
+     * Opens the element with the specified index and makes it the current node.
+     */
+    @Override
+    public void openElement(int index) {
+        readElements(current, index + 1);
+        if (index >= current.getElementCount()) {
+            throw new IllegalArgumentException("no such child [" + index + "]");
+        }
+        open(current.elements.get(index));
+    }
+
+    /**
+     * Opens the first element with the specified name and makes it the
+     * current node.
+     */
+    @Override
+    public void openElement(String tagName) {
+        openElement(tagName, 0);
+    }
+
+    /**
+     * Opens the element with the specified name and index and makes it the
+     * current node.
+     */
+    @Override
+    public void openElement(String tagName, int index) {
+        int count = 0;
+        for (int i = 0;; i++) {
+            readElements(current, i + 1);
+            if (i >= current.getElementCount()) {
+                throw new IllegalArgumentException("no such child " + tagName + "[" + index + "]");
+            }
+            Node node = current.elements.get(i);
+            if (node.tagName.equals(tagName) && count++ == index) {
+                open(node);
+                return;
+            }
+        }
+    }
+
+    private void open(Node node) {
+        if (node.isDiscarded) {
+            throw new IllegalStateException("Element has already been read: <" + node.tagName + ">");
+        }
+        if (!node.isComplete && node.parent.pendingChild == node) {
+            node.isStreamed = true;
+        }
+        current = node;
+    }
+
+    /**
+     * Closes the current element of the DOM Document.
+     * The parent of the current element becomes the current element.
+     * If the element has been opened before its content was read, the rest
+     * of its content is skipped and the element is discarded.
+     */
+    @Override
+    public void closeElement() {
+        Node node = current;
+        if (node.isStreamed) {
+            try {
+                skip(node);
+            } catch (IOException e) {
+                throw toIllegalStateException(e);
+            }
+            if (node.parent.pendingChild == node) {
+                node.parent.pendingChild = null;
+            }
+            node.attributes = null;
+            node.children = null;
+            node.elements = null;
+            node.isDiscarded = true;
+        }
+        current = node.parent;
+    }
+
+    /**
+     * Reads an object from the current element.
+     */
+    @Override
+    public Object readObject() throws IOException {
+        return readObject(0);
+    }
+
+    /**
+     * Reads an object from the current element.
+     */
+    @Override
+    public Object readObject(int index) throws IOException {
+        try {
+            openElement(index);
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        Object o;
+        String ref = getAttribute("ref", null);
+        String id = getAttribute("id", null);
+        if (ref != null && id != null) {
+            throw new IOException("Element has both an id and a ref attribute: <" + getTagName() + " id=" + id + " ref=" + ref + ">");
+        }
+        if (id != null && idobjects.containsKey(id)) {
+            throw new IOException("Duplicate id attribute: <" + getTagName() + " id=" + id + ">");
+        }
+        if (ref != null && !idobjects.containsKey(ref)) {
+            throw new IOException("Illegal ref attribute value: <" + getTagName() + " ref=" + ref + ">");
+        }
+        // Keep track of objects which have an ID
+        if (ref != null) {
+            o = idobjects.get(ref);
+        } else {
+            o = factory.read(this);
+            if (id != null) {
+                idobjects.put(id, o);
+            }
+            if (o instanceof DOMStorable) {
+                ((DOMStorable) o).read(this);
+            }
+        }
+        closeElement();
+        return o;
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * @(#)StreamingDOMOutput.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.xml;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * {@code StreamingDOMOutput} writes XML with a StAX {@code XMLStreamWriter}
+ * while the elements are being output, instead of building a DOM document
+ * first like {@link JavaxDOMOutput}.
+ * <p>
+ * The output has the same elements, attributes and number formats as the
+ * output of {@code JavaxDOMOutput}, and can be read with
+ * {@link JavaxDOMInput}. Attributes are written in alphabetical order, and
+ * elements without content as empty-element tags, so that the output is
+ * byte for byte the same, apart from the XML declaration.
+ * <p>
+ * Each object, which is written with {@link #writeObject}, is held in memory
+ * until its element is closed, because {@code DOMStorable} objects may add
+ * attributes to an element after they have added child elements to it.
+ * The elements between the objects, like the {@code figures} element of a
+ * drawing, are written when their first child element or text is added, or
+ * when they are closed. Therefore all attributes of such an element must be
+ * added before its first child.
+ * <p>
+ * {@code DOMOutput} methods can not throw an {@code IOException}. If writing
+ * fails, the exception is thrown by the next call to {@link #writeObject} or
+ * {@link #finish}.
+ *
+ * @author Werner Randelshofer
+ * @version $Id$
+ */
+public class StreamingDOMOutput implements DOMOutput {
+
+    /**
+     * The doctype of the XML document.
+     */
+    private String doctype;
+    /**
+     * This map is used to marshall references to objects to
+     * the XML output. A key in this map is a Java Object, a value in this map
+     * is String representing a marshalled reference to that object.
+     */
+    private HashMap<Object, String> objectids;
+    /**
+     * This map is used to cache prototype objects.
+     */
+    private HashMap<String, Object> prototypes;
+    /**
+     * The names of the open elements.
+     */
+    private ArrayList<String> openElements;
+    /**
+     * The names and values of the attributes of the current element, if its
+     * start tag has not been written yet.
+     */
+    private ArrayList<String> pendingAttributes;
+    private boolean isStartTagPending;
+    /**
+     * The open elements of the object which is currently being written.
+     * The first element is the element of the outermost object.
+     */
+    private ArrayList<BufferedElement> bufferedElements;
+    private boolean isDocumentStarted;
+    /**
+     * The first exception which occurred while writing.
+     */
+    private IOException error;
+    private XMLStreamWriter writer;
+    /**
+     * The writer which has been created by this output, or null.
+     */
+    private Writer sink;
+    /**
+     * The factory used to create objects.
+     */
+    private DOMFactory factory;
+
+    /**
+     * Creates a new instance which writes UTF-8 encoded XML to the specified
+     * output stream.
+     */
+    public StreamingDOMOutput(DOMFactory factory, OutputStream out) throws IOException {
+        this(factory, new BufferedWriter(new OutputStreamWriter(out, "UTF-8")), true);
+    }
+
+    /**
+     * Creates a new instance which writes UTF-8 encoded XML to the specified
+     * channel, for example to a {@code FileChannel}.
+     */
+    public StreamingDOMOutput(DOMFactory factory, WritableByteChannel out) throws IOException {
+        this(factory, Channels.newWriter(out, "UTF-8"), true);
+    }
+
+    /**
+     * Creates a new instance which writes XML to the specified writer.
+     */
+    public StreamingDOMOutput(DOMFactory factory, Writer out) throws IOException {
+        this(factory, out, false);
+    }
+
+    private StreamingDOMOutput(DOMFactory factory, Writer out, boolean isOwnWriter) throws IOException {
+        this.factory = factory;
+        this.sink = isOwnWriter ? out : null;
+        objectids = new HashMap<Object, String>();
+        openElements = new ArrayList<String>();
+        pendingAttributes = new ArrayList<String>();
+        bufferedElements = new ArrayList<BufferedElement>();
+        try {
+            writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+        } catch (XMLStreamException e) {
+            IOException error = new IOException(e.getMessage());
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    /**
+     * Closes all open elements and flushes the output.
+     * This method does not close the underlying stream, channel or writer.
+     */
+    public void finish() throws IOException {
+        while (!openElements.isEmpty()) {
+            closeElement();
+        }
+        try {
+            if (isDocumentStarted) {
+                writer.writeEndDocument();
+            }
+            writer.flush();
+            if (sink != null) {
+                sink.flush();
+            }
+        } catch (XMLStreamException e) {
+            setError(e);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void setError(XMLStreamException e) {
+        if (error == null) {
+            error = new IOException(e.getMessage());
+            error.initCause(e);
+        }
+    }
+
+    private void writeStartTag() throws XMLStreamException {
+        if (isStartTagPending) {
+            writer.writeStartElement(openElements.get(openElements.size() - 1));
+            writePendingAttributes();
+        }
+    }
+
+    private void writePendingAttributes() throws XMLStreamException {
+        writeAttributes(pendingAttributes);
+        pendingAttributes.clear();
+        isStartTagPending = false;
+    }
+
+    /**
+     * Writes the attributes sorted by name, like a DOM serializer does.
+     *
+     * @param attributes names and values of the attributes.
+     */
+    private void writeAttributes(final ArrayList<String> attributes) throws XMLStreamException {
+        int n = attributes.size() / 2;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i * 2;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return attributes.get(i1).compareTo(attributes.get(i2));
+            }
+        });
+        for (Integer i : order) {
+            writer.writeAttribute(attributes.get(i), attributes.get(i + 1));
+        }
+    }
+
+    /**
+     * Writes a buffered element with all its attributes and children.
+     */
+    private void writeBufferedElement(BufferedElement elem) throws XMLStreamException {
+        if (elem.content.isEmpty()) {
+            writer.writeEmptyElement(elem.name);
+            writeAttributes(elem.attributes);
+        } else {
+            writer.writeStartElement(elem.name);
+            writeAttributes(elem.attributes);
+            for (Object child : elem.content) {
+                if (child instanceof BufferedElement) {
+                    writeBufferedElement((BufferedElement) child);
+                } else if (child instanceof Comment) {
+                    writer.writeComment(((Comment) child).text);
+                } else {
+                    writer.writeCharacters((String) child);
+                }
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    @Override
+    public void openElement(String tagName) {
+        openElement(tagName, false);
+    }
+
+    /**
+     * Opens an element.
+     *
+     * @param tagName the name of the element.
+     * @param isObject true if the element holds an object. The elements of
+     * an object are buffered until the object is closed.
+     */
+    private void openElement(String tagName, boolean isObject) {
+        try {
+            if (!isDocumentStarted) {
+                writer.writeStartDocument("UTF-8", "1.0");
+                if (doctype != null) {
+                    writer.writeDTD("<!DOCTYPE " + doctype + ">");
+                }
+                isDocumentStarted = true;
+            }
+            if (bufferedElements.isEmpty()) {
+                writeStartTag();
+            }
+        } catch (XMLStreamException e) {
+            setError(e);
+        }
+        openElements.add(tagName);
+        if (isObject || !bufferedElements.isEmpty()) {
+            BufferedElement elem = new BufferedElement(tagName);
+            if (!bufferedElements.isEmpty()) {
+                bufferedElements.get(bufferedElements.size() - 1).content.add(elem);
+            }
+            bufferedElements.add(elem);
+        } else {
+            isStartTagPending = true;
+        }
+    }
+
+    @Override
+    public void closeElement() {
+        try {
+            if (!bufferedElements.isEmpty()) {
+                BufferedElement elem = bufferedElements.remove(bufferedElements.size() - 1);
+                if (bufferedElements.isEmpty()) {
+                    writeBufferedElement(elem);
+                }
+            } else if (isStartTagPending) {
+                writer.writeEmptyElement(openElements.get(openElements.size() - 1));
+                writePendingAttributes();
+            } else {
+                writer.writeEndElement();
+            }
+        } catch (XMLStreamException e) {
+            setError(e);
+        }
+        openElements.remove(openElements.size() - 1);
+    }
+
+    @Override
+    public void addComment(String comment) {
+        if (!bufferedElements.isEmpty()) {
+            bufferedElements.get(bufferedElements.size() - 1).content.add(new Comment(comment));
+            return;
+        }
+        try {
+            writeStartTag();
+            writer.writeComment(comment);
+        } catch (XMLStreamException e) {
+            setError(e);
+        }
+    }
+
+    @Override
+    public void addText(String text) {
+        if (!bufferedElements.isEmpty()) {
+            bufferedElements.get(bufferedElements.size() - 1).content.add(text);
+            return;
+        }
+        try {
+            writeStartTag();
+            writer.writeCharacters(text);
+        } catch (XMLStreamException e) {
+            setError(e);
+        }
+    }
+
+    /**
+     * Adds an attribute to the current element.
+     *
+     * @throws IllegalStateException if the current element does not belong
+     * to an object, and already has children.
+     */
+    @Override
+    public void addAttribute(String name, String value) {
+        if (value != null) {
+            if (!bufferedElements.isEmpty()) {
+                setAttribute(bufferedElements.get(bufferedElements.size() - 1).attributes, name, value);
+                return;
+            }
+            if (!isStartTagPending) {
+                throw new IllegalStateException("Attribute " + name + " must be added before the children of element "
+                        + (openElements.isEmpty() ? null : openElements.get(openElements.size() - 1)));
+            }
+            setAttribute(pendingAttributes, name, value);
+        }
+    }
+
+    private static void setAttribute(ArrayList<String> attributes, String name, String value) {
+        for (int i = 0, n = attributes.size(); i < n; i += 2) {
+            if (attributes.get(i).equals(name)) {
+                attributes.set(i + 1, value);
+                return;
+            }
+        }
+        attributes.add(name);
+        attributes.add(value);
+    }
+
+    @Override
+    public void addAttribute(String name, int value) {
+        addAttribute(name, Integer.toString(value));
+    }
+
+    @Override
+    public void addAttribute(String name, boolean value) {
+        addAttribute(name, Boolean.toString(value));
+    }
+
+    @Override
+    public void addAttribute(String name, float value) {
+        // Remove the awkard .0 at the end of each number
+        String str = Float.toString(value);
+        if (str.endsWith(".0")) {
+            str = str.substring(0, str.length() - 2);
+        }
+        addAttribute(name, str);
+    }
+
+    @Override
+    public void addAttribute(String name, double value) {
+        // Remove the awkard .0 at the end of each number
+        String str = Double.toString(value);
+        if (str.endsWith(".0")) {
+            str = str.substring(0, str.length() - 2);
+        }
+        addAttribute(name, str);
+    }
+
+    @Override
+    public void writeObject(Object o) throws IOException {
+        String tagName = factory.getName(o);
+        if (tagName == null) {
+            throw new IllegalArgumentException("no tag name for:" + o);
+        }
+        openElement(tagName, true);
+        if (objectids.containsKey(o)) {
+            addAttribute("ref", objectids.get(o));
+        } else {
+            String id = Integer.toString(objectids.size(), 16);
+            objectids.put(o, id);
+            addAttribute("id", id);
+            factory.write(this, o);
+        }
+        closeElement();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, float value, float defaultValue) {
+        if (value != defaultValue) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, int value, int defaultValue) {
+        if (value != defaultValue) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, double value, double defaultValue) {
+        if (value != defaultValue) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, boolean value, boolean defaultValue) {
+        if (value != defaultValue) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public void addAttribute(String name, String value, String defaultValue) {
+        if (!value.equals(defaultValue)) {
+            addAttribute(name, value);
+        }
+    }
+
+    @Override
+    public Object getPrototype() {
+        if (prototypes == null) {
+            prototypes = new HashMap<String, Object>();
+        }
+        String name = openElements.get(openElements.size() - 1);
+        if (!prototypes.containsKey(name)) {
+            prototypes.put(name, factory.create(name));
+        }
+        return prototypes.get(name);
+    }
+
+    /**
+     * An element of an object, which is held in memory until the object has
+     * been written.
+     */
+    private static class BufferedElement {
+
+        private final String name;
+        /**
+         * The names and values of the attributes.
+         */
+        private final ArrayList<String> attributes = new ArrayList<String>();
+        /**
+         * Child elements, comments and text.
+         */
+        private final ArrayList<Object> content = new ArrayList<Object>();
+
+        BufferedElement(String name) {
+            this.name = name;
+        }
+    }
+
+    private static class Comment {
+
+        private final String text;
+
+        Comment(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * Sets the doctype of the XML document. This method must be called
+     * before the first element is opened.
+     */
+    @Override
+    public void setDoctype(String doctype) {
+        this.doctype = doctype;
+    }
+}
@@ -32,7 +32,7 @@ public class CSSRule {
 
     private String selector;
 
-    private static enum SelectorType {
+    static enum SelectorType {
         ALL, ELEMENT_NAME, CLASS_ATTRIBUTE, ID_ATTRIBUTE
     }
     private SelectorType type;
@@ -72,6 +72,34 @@ public class CSSRule {
         this.selector = (type == SelectorType.ELEMENT_NAME) ? selector : selector.substring(1);
     }
 
+    SelectorType getSelectorType() {
+        return type;
+    }
+
+    /**
+     * Returns the selector without the leading '.', '#' or '*' character.
+     */
+    String getSelectorName() {
+        return selector;
+    }
+
+    /**
+     * Returns the specificity of the selector as defined in CSS 2.1. A rule
+     * with a higher specificity overrides rules with a lower specificity.
+     */
+    int getSpecificity() {
+        switch (type) {
+            case ID_ATTRIBUTE:
+                return 100;
+            case CLASS_ATTRIBUTE:
+                return 10;
+            case ELEMENT_NAME:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
     public boolean matches(Element elem) {
         boolean isMatch = false;
         switch (type) {
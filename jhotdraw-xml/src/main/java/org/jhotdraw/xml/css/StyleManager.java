@@ -16,6 +16,16 @@ import org.w3c.dom.Element;
 /**
  * StyleManager applies styling Rules to an XML DOM.
  * This class supports net.n3.nanoxml as well as org.w3c.dom.
+ * <p>
+ * The rules are indexed by the element name, the id and the classes they
+ * select, so that an element is only matched against the rules which can
+ * match it. The rules are applied in the order of the CSS cascade: rules with
+ * a higher specificity first, and among rules with the same specificity, the
+ * rule which was added last first. Since a rule does not overwrite attributes
+ * which are already set, the first rule which sets an attribute wins.
+ * <p>
+ * The matching rules for elements with the same name and class attribute are
+ * computed only once.
  *
  * @author Werner Randelshofer
  * @version $Id$
@@ -23,6 +33,24 @@ import org.w3c.dom.Element;
 public class StyleManager {
 
     private java.util.List<CSSRule> rules;
+    /**
+     * Maps "*", element names, ".class" and "#id" to the rules with
+     * the respective selector. The rules of each bucket are sorted in the
+     * order in which they are applied. This map is null, when it has to be
+     * rebuilt.
+     */
+    private HashMap<String, CSSRule[]> index;
+    /**
+     * Maps each rule to its position in the order in which the rules are
+     * applied.
+     */
+    private IdentityHashMap<CSSRule, Integer> order;
+    /**
+     * Maps an element name and a class attribute to the rules which match
+     * elements with these values, ignoring rules which match an id.
+     */
+    private HashMap<String, CSSRule[]> matchCache;
+    private static final CSSRule[] NO_RULES = new CSSRule[0];
 
     public StyleManager() {
         rules = new ArrayList<CSSRule>();
@@ -30,17 +58,124 @@ public class StyleManager {
 
     public void add(CSSRule rule) {
         rules.add(rule);
+        index = null;
     }
 
     public void applyStylesTo(Element elem) {
-        for (CSSRule rule : rules) {
-            if (rule.matches(elem)) {
-                rule.apply(elem);
+        for (CSSRule rule : getMatchingRules(elem)) {
+            rule.apply(elem);
+        }
+    }
+
+    /**
+     * Returns the rules which match the specified element, in the order in
+     * which they are applied.
+     */
+    public List<CSSRule> getMatchingRules(Element elem) {
+        if (rules.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (index == null) {
+            buildIndex();
+        }
+        String name = elem.getLocalName();
+        String clazz = elem.getAttribute("class");
+        String key = (name == null ? "" : name) + ' ' + (clazz == null ? "" : clazz);
+        CSSRule[] matches = matchCache.get(key);
+        if (matches == null) {
+            ArrayList<CSSRule> candidates = new ArrayList<CSSRule>();
+            addCandidates(candidates, "*");
+            if (name != null) {
+                addCandidates(candidates, name);
+            }
+            if (clazz != null && !clazz.isEmpty()) {
+                HashSet<String> seen = new HashSet<String>();
+                for (String c : clazz.split(" ")) {
+                    if (!c.isEmpty() && seen.add(c)) {
+                        addCandidates(candidates, "." + c);
+                    }
+                }
             }
+            matches = sort(candidates);
+            matchCache.put(key, matches);
+        }
+        String id = elem.getAttribute("id");
+        if (id != null && !id.isEmpty()) {
+            CSSRule[] idRules = index.get("#" + id);
+            if (idRules != null) {
+                ArrayList<CSSRule> candidates = new ArrayList<CSSRule>(Arrays.asList(matches));
+                candidates.addAll(Arrays.asList(idRules));
+                return Arrays.asList(sort(candidates));
+            }
+        }
+        return Arrays.asList(matches);
+    }
+
+    private void addCandidates(List<CSSRule> candidates, String key) {
+        CSSRule[] bucket = index.get(key);
+        if (bucket != null) {
+            candidates.addAll(Arrays.asList(bucket));
+        }
+    }
+
+    private CSSRule[] sort(List<CSSRule> candidates) {
+        if (candidates.isEmpty()) {
+            return NO_RULES;
+        }
+        CSSRule[] sorted = candidates.toArray(new CSSRule[candidates.size()]);
+        Arrays.sort(sorted, new Comparator<CSSRule>() {
+            @Override
+            public int compare(CSSRule r1, CSSRule r2) {
+                return order.get(r1) - order.get(r2);
+            }
+        });
+        return sorted;
+    }
+
+    private void buildIndex() {
+        ArrayList<CSSRule> sorted = new ArrayList<CSSRule>(rules);
+        Collections.reverse(sorted);
+        // The sort is stable, so that later rules stay in front of earlier
+        // rules with the same specificity.
+        Collections.sort(sorted, new Comparator<CSSRule>() {
+            @Override
+            public int compare(CSSRule r1, CSSRule r2) {
+                return r2.getSpecificity() - r1.getSpecificity();
+            }
+        });
+        order = new IdentityHashMap<CSSRule, Integer>();
+        HashMap<String, ArrayList<CSSRule>> buckets = new HashMap<String, ArrayList<CSSRule>>();
+        for (CSSRule rule : sorted) {
+            if (!order.containsKey(rule)) {
+                order.put(rule, order.size());
+                String key;
+                CSSRule.SelectorType type = rule.getSelectorType();
+                if (type == CSSRule.SelectorType.ALL) {
+                    key = "*";
+                } else if (type == CSSRule.SelectorType.CLASS_ATTRIBUTE) {
+                    key = "." + rule.getSelectorName();
+                } else if (type == CSSRule.SelectorType.ID_ATTRIBUTE) {
+                    key = "#" + rule.getSelectorName();
+                } else {
+                    key = rule.getSelectorName();
+                }
+                ArrayList<CSSRule> bucket = buckets.get(key);
+                if (bucket == null) {
+                    bucket = new ArrayList<CSSRule>();
+                    buckets.put(key, bucket);
+                }
+                bucket.add(rule);
+            }
+        }
+        index = new HashMap<String, CSSRule[]>();
+        for (Map.Entry<String, ArrayList<CSSRule>> entry : buckets.entrySet()) {
+            index.put(entry.getKey(), entry.getValue().toArray(new CSSRule[entry.getValue().size()]));
         }
+        matchCache = new HashMap<String, CSSRule[]>();
     }
 
     public void clear() {
         rules.clear();
+        index = null;
     }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.xml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import static org.testng.Assert.*;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link DefaultDOMFactory}.
+ */
+public class DefaultDOMFactoryNGTest {
+
+    public DefaultDOMFactoryNGTest() {
+    }
+
+    public enum Shape {
+        RECTANGLE, ELLIPSE, TRIANGLE
+    }
+
+    public static class Storable implements DOMStorable, Cloneable {
+
+        private int value;
+
+        public Storable() {
+        }
+
+        public Storable(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Storable clone() {
+            try {
+                return (Storable) super.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new InternalError(e);
+            }
+        }
+
+        @Override
+        public void write(DOMOutput out) throws IOException {
+        }
+
+        @Override
+        public void read(DOMInput in) throws IOException {
+        }
+    }
+
+    public static class NotInstantiable implements DOMStorable {
+
+        public NotInstantiable(int value) {
+        }
+
+        @Override
+        public void write(DOMOutput out) throws IOException {
+        }
+
+        @Override
+        public void read(DOMInput in) throws IOException {
+        }
+    }
+
+    @Test
+    public void testCreateStorableClass() {
+        DefaultDOMFactory factory = new DefaultDOMFactory();
+        factory.addStorableClass("s", Storable.class);
+        Object o = factory.create("s");
+        assertEquals(o.getClass(), Storable.class);
+        assertNotSame(factory.create("s"), o);
+        assertEquals(factory.getName(o), "s");
+    }
+
+    @Test
+    public void testCreateStorablePrototype() {
+        DefaultDOMFactory factory = new DefaultDOMFactory();
+        Storable prototype = new Storable(42);
+        factory.addStorable("p", prototype);
+        Storable o = (Storable) factory.create("p");
+        assertNotSame(o, prototype);
+        assertEquals(o.value, 42);
+    }
+
+    @Test
+    public void testCreateWithSupplier() {
+        DefaultDOMFactory factory = new DefaultDOMFactory();
+        factory.addStorableClass("s", Storable.class, new Supplier<Storable>() {
+            @Override
+            public Storable get() {
+                return new Storable(7);
+            }
+        });
+        assertEquals(((Storable) factory.create("s")).value, 7);
+    }
+
+    @Test
+    public void testCreateNotInstantiableClassFails() {
+        DefaultDOMFactory factory = new DefaultDOMFactory();
+        factory.addStorableClass("n", NotInstantiable.class);
+        try {
+            factory.create("n");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("n"));
+            assertTrue(e.getCause() instanceof NoSuchMethodException);
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCreateUnknownNameFails() {
+        new DefaultDOMFactory().create("unknown");
+    }
+
+    @Test
+    public void testCreateEnum() {
+        DefaultDOMFactory factory = new DefaultDOMFactory();
+        factory.addEnumClass("shape", Shape.class);
+        assertSame(factory.createEnum("shape", "ELLIPSE"), Shape.ELLIPSE);
+        factory.addEnum("rect", Shape.RECTANGLE);
+        assertSame(factory.createEnum("shape", "rect"), Shape.RECTANGLE);
+        assertSame(factory.createEnum("shape", "RECTANGLE"), Shape.RECTANGLE);
+        assertEquals(factory.getEnumValue(Shape.RECTANGLE), "rect");
+        assertEquals(factory.getEnumValue(Shape.TRIANGLE), "TRIANGLE");
+        assertEquals(factory.getEnumName(Shape.TRIANGLE), "shape");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCreateUnknownEnumValueFails() {
+        DefaultDOMFactory factory = new DefaultDOMFactory();
+        factory.addEnumClass("shape", Shape.class);
+        factory.createEnum("shape", "circle");
+    }
+
+    /**
+     * Test that enum values which are added while other threads create enums
+     * are visible to subsequent calls.
+     */
+    @Test
+    public void testAddEnumWhileCreatingEnums() throws Exception {
+        final DefaultDOMFactory factory = new DefaultDOMFactory();
+        factory.addEnumClass("shape", Shape.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 200; round++) {
+                final String value = "v" + round;
+                final Shape shape = Shape.values()[round % 3];
+                List<Future<?>> readers = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    readers.add(executor.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() {
+                            for (int j = 0; j < 50; j++) {
+                                factory.createEnum("shape", "ELLIPSE");
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                factory.addEnum(value, shape);
+                for (Future<?> f : readers) {
+                    f.get();
+                }
+                assertSame(factory.createEnum("shape", value), shape, value);
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.xml.css;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import static org.testng.Assert.*;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link StyleManager}.
+ * <p>
+ * The indexed lookup is compared with a linear scan over all rules, which
+ * matches every rule against the element like StyleManager did before the
+ * index was introduced, and orders the matches by the CSS cascade.
+ */
+public class StyleManagerNGTest {
+
+    private static final String[] NAMES = {"rect", "circle", "g", "path"};
+    private static final String[] CLASSES = {"a", "b", "c", "d"};
+    private static final String[] IDS = {"x", "y", "z"};
+    private Document doc;
+
+    public StyleManagerNGTest() {
+    }
+
+    @BeforeMethod
+    public void setUp() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        doc = factory.newDocumentBuilder().newDocument();
+    }
+
+    private Element createElement(String name, String clazz, String id) {
+        Element elem = doc.createElementNS(null, name);
+        if (clazz != null) {
+            elem.setAttribute("class", clazz);
+        }
+        if (id != null) {
+            elem.setAttribute("id", id);
+        }
+        return elem;
+    }
+
+    /**
+     * Returns the rules which match the element, using a linear scan over
+     * the rules in the order in which they were added.
+     */
+    private static List<CSSRule> linearScan(List<CSSRule> rules, Element elem) {
+        ArrayList<CSSRule> matches = new ArrayList<CSSRule>();
+        for (CSSRule rule : rules) {
+            if (rule.matches(elem)) {
+                matches.add(rule);
+            }
+        }
+        Collections.reverse(matches);
+        Collections.sort(matches, new Comparator<CSSRule>() {
+            @Override
+            public int compare(CSSRule r1, CSSRule r2) {
+                return r2.getSpecificity() - r1.getSpecificity();
+            }
+        });
+        return matches;
+    }
+
+    private static void assertSameRules(List<CSSRule> actual, List<CSSRule> expected) {
+        assertEquals(actual.size(), expected.size(), "rules " + actual + " expected " + expected);
+        for (int i = 0; i < actual.size(); i++) {
+            assertSame(actual.get(i), expected.get(i), "rule " + i + " of " + actual);
+        }
+    }
+
+    private void assertMatchesLinearScan(StyleManager manager, List<CSSRule> rules, Element elem) {
+        assertSameRules(manager.getMatchingRules(elem), linearScan(rules, elem));
+    }
+
+    @Test
+    public void testSpecificity() {
+        StyleManager manager = new StyleManager();
+        manager.add(new CSSRule("#x", "fill", "id"));
+        manager.add(new CSSRule(".a", "fill", "class"));
+        manager.add(new CSSRule("rect", "fill", "element"));
+        manager.add(new CSSRule("*", "fill", "all"));
+
+        Element elem = createElement("rect", "a", "x");
+        manager.applyStylesTo(elem);
+        assertEquals(elem.getAttribute("fill"), "id");
+
+        elem = createElement("rect", "a", "y");
+        manager.applyStylesTo(elem);
+        assertEquals(elem.getAttribute("fill"), "class");
+
+        elem = createElement("rect", null, null);
+        manager.applyStylesTo(elem);
+        assertEquals(elem.getAttribute("fill"), "element");
+
+        elem = createElement("circle", "b", null);
+        manager.applyStylesTo(elem);
+        assertEquals(elem.getAttribute("fill"), "all");
+    }
+
+    @Test
+    public void testSpecificityTiesAreResolvedBySourceOrder() {
+        StyleManager manager = new StyleManager();
+        manager.add(new CSSRule(".a", "fill", "first"));
+        manager.add(new CSSRule(".b", "fill", "second"));
+        manager.add(new CSSRule("rect", "stroke", "first"));
+        manager.add(new CSSRule("rect", "stroke", "second"));
+
+        Element elem = createElement("rect", "b a", null);
+        manager.applyStylesTo(elem);
+        assertEquals(elem.getAttribute("fill"), "second");
+        assertEquals(elem.getAttribute("stroke"), "second");
+
+        // The order of the classes in the attribute does not matter
+        elem = createElement("rect", "a b", null);
+        manager.applyStylesTo(elem);
+        assertEquals(elem.getAttribute("fill"), "second");
+    }
+
+    @Test
+    public void testExistingAttributesAreNotOverwritten() {
+        StyleManager manager = new StyleManager();
+        manager.add(new CSSRule("#x", "fill", "id"));
+
+        Element elem = createElement("rect", null, "x");
+        elem.setAttribute("fill", "own");
+        manager.applyStylesTo(elem);
+        assertEquals(elem.getAttribute("fill"), "own");
+    }
+
+    @Test
+    public void testRulesAddedAfterLookup() {
+        ArrayList<CSSRule> rules = new ArrayList<CSSRule>();
+        StyleManager manager = new StyleManager();
+        rules.add(new CSSRule(".a", "fill", "first"));
+        manager.add(rules.get(0));
+        Element elem = createElement("rect", "a", null);
+        assertMatchesLinearScan(manager, rules, elem);
+
+        rules.add(new CSSRule(".a", "fill", "second"));
+        manager.add(rules.get(1));
+        assertMatchesLinearScan(manager, rules, elem);
+        manager.applyStylesTo(elem);
+        assertEquals(elem.getAttribute("fill"), "second");
+
+        manager.clear();
+        assertTrue(manager.getMatchingRules(elem).isEmpty());
+    }
+
+    @Test
+    public void testIdRulesOfElementsWithSameNameAndClass() {
+        ArrayList<CSSRule> rules = new ArrayList<CSSRule>();
+        rules.add(new CSSRule(".a", "fill", "class"));
+        rules.add(new CSSRule("#x", "fill", "x"));
+        rules.add(new CSSRule("#y", "fill", "y"));
+        StyleManager manager = new StyleManager();
+        for (CSSRule rule : rules) {
+            manager.add(rule);
+        }
+        // The second and third element hit the memo of the first element
+        assertMatchesLinearScan(manager, rules, createElement("rect", "a", null));
+        assertMatchesLinearScan(manager, rules, createElement("rect", "a", "x"));
+        assertMatchesLinearScan(manager, rules, createElement("rect", "a", "y"));
+        assertMatchesLinearScan(manager, rules, createElement("rect", "a", "z"));
+    }
+
+    @Test
+    public void testCompoundSelectors() throws IOException {
+        final ArrayList<CSSRule> rules = new ArrayList<CSSRule>();
+        StyleManager manager = new StyleManager() {
+            @Override
+            public void add(CSSRule rule) {
+                rules.add(rule);
+                super.add(rule);
+            }
+        };
+        new CSSParser().parse(
+                "rect, .a { fill: red; stroke: blue }\n"
+                + "rect.a { fill: green }\n"
+                + "g rect { fill: yellow }\n"
+                + ".a, #x, circle { stroke-width: 2 }\n"
+                + "* { opacity: 0.5 }\n"
+                + ".b.c { fill: black }\n", manager);
+        // The parser creates one rule for each selector of a selector list
+        assertEquals(rules.size(), 9);
+        for (String name : NAMES) {
+            for (String clazz : new String[]{null, "a", "b c", "c b a"}) {
+                for (String id : new String[]{null, "x"}) {
+                    Element elem = createElement(name, clazz, id);
+                    Element expected = createElement(name, clazz, id);
+                    manager.applyStylesTo(elem);
+                    for (CSSRule rule : linearScan(rules, expected)) {
+                        rule.apply(expected);
+                    }
+                    for (String attr : new String[]{"fill", "stroke", "stroke-width", "opacity"}) {
+                        assertEquals(elem.getAttribute(attr), expected.getAttribute(attr),
+                                attr + " of " + name + " class=" + clazz + " id=" + id);
+                    }
+                    assertMatchesLinearScan(manager, rules, elem);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRandomRulesMatchLinearScan() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            ArrayList<CSSRule> rules = new ArrayList<CSSRule>();
+            StyleManager manager = new StyleManager();
+            int ruleCount = random.nextInt(30);
+            for (int i = 0; i < ruleCount; i++) {
+                String selector;
+                switch (random.nextInt(4)) {
+                    case 0:
+                        selector = "*";
+                        break;
+                    case 1:
+                        selector = NAMES[random.nextInt(NAMES.length)];
+                        break;
+                    case 2:
+                        selector = "." + CLASSES[random.nextInt(CLASSES.length)];
+                        break;
+                    default:
+                        selector = "#" + IDS[random.nextInt(IDS.length)];
+                        break;
+                }
+                CSSRule rule = new CSSRule(selector, "fill", "r" + i);
+                rules.add(rule);
+                manager.add(rule);
+            }
+            for (int i = 0; i < 40; i++) {
+                StringBuilder clazz = new StringBuilder();
+                for (String c : CLASSES) {
+                    if (random.nextInt(3) == 0) {
+                        if (clazz.length() > 0) {
+                            clazz.append(' ');
+                        }
+                        clazz.append(c);
+                    }
+                }
+                Element elem = createElement(NAMES[random.nextInt(NAMES.length)],
+                        clazz.length() == 0 ? null : clazz.toString(),
+                        random.nextBoolean() ? IDS[random.nextInt(IDS.length)] : null);
+                assertMatchesLinearScan(manager, rules, elem);
+            }
+        }
+    }
+}